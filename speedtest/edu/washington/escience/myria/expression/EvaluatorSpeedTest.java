@@ -0,0 +1,120 @@
+package edu.washington.escience.myria.expression;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.builder.ColumnBuilder;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.expression.evaluate.BooleanEvaluator;
+import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
+import edu.washington.escience.myria.expression.evaluate.GenericEvaluator;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.DateTimeUtils;
+
+/**
+ * Compares evaluating compiled expressions one row at a time with evaluating them over a whole batch.
+ */
+public class EvaluatorSpeedTest {
+
+  final Schema schema = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE, Type.INT_TYPE), ImmutableList.of(
+      "a", "b", "c"));
+
+  /** An empty state schema forces the row-at-a-time evaluator to be compiled. */
+  final Schema stateSchema = Schema.EMPTY_SCHEMA;
+
+  final int numBatches = 5000;
+
+  /** (a + b) * c - a */
+  final Expression arithmetic = new Expression("x", new MinusExpression(new TimesExpression(new PlusExpression(
+      new VariableExpression(0), new VariableExpression(1)), new VariableExpression(2)), new VariableExpression(0)));
+
+  /** a < b and c < 5000 */
+  final Expression predicate = new Expression("p", new AndExpression(new LessThanExpression(new VariableExpression(0),
+      new VariableExpression(1)), new LessThanExpression(new VariableExpression(2), new ConstantExpression(5000))));
+
+  private TupleBatch makeBatch() {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < TupleBatch.BATCH_SIZE; ++i) {
+      tbb.putLong(0, i * 31L % 1000);
+      tbb.putLong(1, i * 17L % 1000);
+      tbb.putInt(2, i);
+    }
+    return tbb.popAny();
+  }
+
+  @Test
+  public void applyRowAtATimeVsBatch() throws DbException, InvocationTargetException {
+    TupleBatch tb = makeBatch();
+    GenericEvaluator eval = new GenericEvaluator(arithmetic, new ExpressionOperatorParameter(schema, stateSchema));
+    eval.compile();
+
+    long checksum = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < numBatches; ++i) {
+      ColumnBuilder<?> builder = ColumnFactory.allocateColumn(Type.LONG_TYPE);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        eval.eval(tb, row, builder, null);
+      }
+      checksum += builder.build().getLong(tb.numTuples() - 1);
+    }
+    long rowTime = System.nanoTime() - start;
+
+    long batchChecksum = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < numBatches; ++i) {
+      Column<?> column = eval.evaluateColumn(tb);
+      batchChecksum += column.getLong(tb.numTuples() - 1);
+    }
+    long batchTime = System.nanoTime() - start;
+
+    assertEquals(checksum, batchChecksum);
+    System.out.println("Apply row-at-a-time: " + DateTimeUtils.nanoElapseToHumanReadable(rowTime));
+    System.out.println("Apply batch: " + DateTimeUtils.nanoElapseToHumanReadable(batchTime));
+  }
+
+  @Test
+  public void filterRowAtATimeVsBatch() throws DbException, InvocationTargetException {
+    TupleBatch tb = makeBatch();
+    GenericEvaluator rowEval = new GenericEvaluator(predicate, new ExpressionOperatorParameter(schema, stateSchema));
+    rowEval.compile();
+    BooleanEvaluator batchEval = new BooleanEvaluator(predicate, new ExpressionOperatorParameter(schema));
+    batchEval.compile();
+
+    long count = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < numBatches; ++i) {
+      ColumnBuilder<?> builder = ColumnFactory.allocateColumn(Type.BOOLEAN_TYPE);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        rowEval.eval(tb, row, builder, null);
+      }
+      Column<?> bits = builder.build();
+      for (int row = 0; row < bits.size(); ++row) {
+        if (bits.getBoolean(row)) {
+          ++count;
+        }
+      }
+    }
+    long rowTime = System.nanoTime() - start;
+
+    long batchCount = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < numBatches; ++i) {
+      batchCount += batchEval.evaluateMask(tb).cardinality();
+    }
+    long batchTime = System.nanoTime() - start;
+
+    assertEquals(count, batchCount);
+    System.out.println("Filter row-at-a-time: " + DateTimeUtils.nanoElapseToHumanReadable(rowTime));
+    System.out.println("Filter batch: " + DateTimeUtils.nanoElapseToHumanReadable(batchTime));
+  }
+}
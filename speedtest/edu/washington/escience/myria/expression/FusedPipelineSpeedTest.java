@@ -0,0 +1,148 @@
+package edu.washington.escience.myria.expression;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.api.MyriaJsonMapperProvider;
+import edu.washington.escience.myria.operator.Apply;
+import edu.washington.escience.myria.operator.Filter;
+import edu.washington.escience.myria.operator.FusedPipeline;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.DateTimeUtils;
+import edu.washington.escience.myria.util.TestEnvVars;
+
+/**
+ * Compares running the filters and applies of the example queries in jsonQueries as separate operators with running
+ * them as one {@link FusedPipeline}. The queries read the TwitterK relation, which has two long columns.
+ */
+public class FusedPipelineSpeedTest {
+
+  final Schema schema = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE), ImmutableList.of("follower",
+      "followee"));
+
+  final int numBatches = 2000;
+
+  final ObjectMapper mapper = MyriaJsonMapperProvider.getMapper();
+
+  private List<TupleBatch> makeBatches() {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < numBatches * TupleBatch.BATCH_SIZE; ++i) {
+      tbb.putLong(0, i * 31L % 1000);
+      tbb.putLong(1, i * 17L % 100);
+    }
+    return tbb.getAll();
+  }
+
+  /**
+   * @param path a JSON query.
+   * @param opType the type of the operator to look for.
+   * @return the first operator of that type in the query.
+   * @throws IOException if the query cannot be read.
+   */
+  private JsonNode findOperator(final String path, final String opType) throws IOException {
+    for (JsonNode fragment : mapper.readTree(new File(path)).get("fragments")) {
+      for (JsonNode op : fragment.get("operators")) {
+        if (opType.equals(op.get("opType").asText())) {
+          return op;
+        }
+      }
+    }
+    throw new IllegalArgumentException("No " + opType + " in " + path);
+  }
+
+  private List<Expression> readEmitExpressions(final String path) throws IOException {
+    List<Expression> expressions = new ArrayList<Expression>();
+    for (JsonNode expression : findOperator(path, "Apply").get("emitExpressions")) {
+      expressions.add(mapper.treeToValue(expression, Expression.class));
+    }
+    return expressions;
+  }
+
+  private static List<ExpressionOperator> roots(final List<Expression> expressions) {
+    List<ExpressionOperator> roots = new ArrayList<ExpressionOperator>();
+    for (Expression expression : expressions) {
+      roots.add(expression.getRootExpressionOperator());
+    }
+    return roots;
+  }
+
+  private static long run(final Operator operator) throws DbException {
+    operator.open(TestEnvVars.get());
+    long count = 0;
+    while (!operator.eos()) {
+      TupleBatch tb = operator.nextReady();
+      if (tb != null) {
+        count += tb.numTuples();
+      }
+    }
+    operator.close();
+    return count;
+  }
+
+  /**
+   * The select and project of join_for_vis_dominik, followed by the LOG($0 + 2) of apply_dominik.
+   */
+  @Test
+  public void filterApplyApply() throws IOException, DbException {
+    Expression predicate =
+        mapper.treeToValue(findOperator("./jsonQueries/join_for_vis_dominik/join.json", "Filter").get("argPredicate"),
+            Expression.class);
+    List<Expression> project = readEmitExpressions("./jsonQueries/join_for_vis_dominik/join.json");
+    List<Expression> log = readEmitExpressions("./jsonQueries/apply_dominik/apply.json");
+
+    List<TupleBatch> batches = makeBatches();
+    long start = System.nanoTime();
+    long count = run(new Apply(new Apply(new Filter(predicate, new TupleSource(batches)), project), log));
+    long separateTime = System.nanoTime() - start;
+
+    List<Expression> composed = new ArrayList<Expression>();
+    for (Expression expression : log) {
+      composed.add(new Expression(expression.getOutputName(), Expressions.substituteColumns(expression
+          .getRootExpressionOperator(), roots(project))));
+    }
+    start = System.nanoTime();
+    long fusedCount = run(new FusedPipeline(new TupleSource(batches), ImmutableList.of(predicate), composed));
+    long fusedTime = System.nanoTime() - start;
+
+    assertEquals(count, fusedCount);
+    System.out.println("Filter, Apply, Apply: " + DateTimeUtils.nanoElapseToHumanReadable(separateTime));
+    System.out.println("Fused: " + DateTimeUtils.nanoElapseToHumanReadable(fusedTime));
+  }
+
+  /**
+   * The LOG($0 + 2) of apply_dominik alone, where fusing only saves the copy of the output.
+   */
+  @Test
+  public void apply() throws IOException, DbException {
+    List<Expression> log = readEmitExpressions("./jsonQueries/apply_dominik/apply.json");
+
+    List<TupleBatch> batches = makeBatches();
+    long start = System.nanoTime();
+    long count = run(new Apply(new TupleSource(batches), log));
+    long separateTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    long fusedCount = run(new FusedPipeline(new TupleSource(batches), ImmutableList.<Expression> of(), log));
+    long fusedTime = System.nanoTime() - start;
+
+    assertEquals(count, fusedCount);
+    System.out.println("Apply: " + DateTimeUtils.nanoElapseToHumanReadable(separateTime));
+    System.out.println("Fused: " + DateTimeUtils.nanoElapseToHumanReadable(fusedTime));
+  }
+}
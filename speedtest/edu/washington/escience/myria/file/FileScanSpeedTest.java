@@ -2,7 +2,9 @@ package edu.washington.escience.myria.file;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -13,6 +15,7 @@ import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
 
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.io.FileSource;
 import edu.washington.escience.myria.operator.FileScan;
 import edu.washington.escience.myria.operator.SinkRoot;
 
@@ -39,4 +42,29 @@ public class FileScanSpeedTest extends AbstractBenchmark {
     LOGGER.info("Read {} tuples from the file.", sink.getCount());
     assertEquals(10000000, sink.getCount());
   }
+
+  @BenchmarkOptions(benchmarkRounds = 2, warmupRounds = 1)
+  @Test
+  public void parallelFileScanTest() throws Exception {
+    Type[] typeAr = { Type.INT_TYPE, Type.INT_TYPE, Type.FLOAT_TYPE, Type.STRING_TYPE };
+    Schema schema = new Schema(Arrays.asList(typeAr));
+
+    // same file as fileScanTest, cut into one byte range per core
+    String filename = "data_nocommit/speedtest/random.csv";
+    int numSplits = Runtime.getRuntime().availableProcessors();
+    FileScan scan = new FileScan(new FileSource(filename), schema, null, null, null, null, numSplits);
+
+    SinkRoot sink = new SinkRoot(scan);
+    long start = System.nanoTime();
+    sink.open(null);
+    while (!sink.eos()) {
+      sink.nextReady();
+    }
+    sink.close();
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    long megabytes = new File(filename).length() / (1024 * 1024);
+    LOGGER.info("Read {} tuples ({} MB) from the file in {} ms using {} splits: {} MB/s", sink.getCount(), megabytes,
+        elapsedMillis, numSplits, megabytes * 1000 / Math.max(1, elapsedMillis));
+    assertEquals(10000000, sink.getCount());
+  }
 }
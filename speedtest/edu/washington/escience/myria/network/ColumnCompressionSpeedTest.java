@@ -0,0 +1,84 @@
+package edu.washington.escience.myria.network;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.ColumnCompression;
+import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.IPCUtils;
+
+/**
+ * Measures the size of serialized tuple batches and the encode and decode throughput with each set of
+ * {@link ColumnCompression} encodings, against the plain protobuf encoding.
+ */
+public class ColumnCompressionSpeedTest {
+
+  /** A typical fact table: a sorted key, low-cardinality foreign keys and strings, and a measure. */
+  final Schema schema = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.INT_TYPE, Type.LONG_TYPE, Type.STRING_TYPE,
+      Type.DOUBLE_TYPE), ImmutableList.of("id", "day", "customer", "status", "amount"));
+
+  final int numTuples = 2 * 1000 * 1000;
+
+  final int repetitions = 3;
+
+  private List<TupleBatch> makeInput() {
+    Random random = new Random(1);
+    String[] statuses = new String[] { "shipped", "pending", "returned", "cancelled" };
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putLong(0, 5000000000L + i);
+      tbb.putInt(1, 16000 + i / 20000);
+      tbb.putLong(2, random.nextInt(100000));
+      tbb.putString(3, statuses[random.nextInt(statuses.length)]);
+      tbb.putDouble(4, random.nextInt(100000) / 100.0);
+    }
+    return tbb.getAll();
+  }
+
+  private void measure(final String name, final List<TupleBatch> input, final int encodings) {
+    long bytes = 0;
+    long encodeNanos = Long.MAX_VALUE;
+    long decodeNanos = Long.MAX_VALUE;
+    for (int r = 0; r < repetitions; ++r) {
+      byte[][] encoded = new byte[input.size()][];
+      long start = System.nanoTime();
+      for (int i = 0; i < encoded.length; ++i) {
+        encoded[i] = input.get(i).toTransportMessage(encodings).toByteArray();
+      }
+      encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+
+      bytes = 0;
+      start = System.nanoTime();
+      for (byte[] b : encoded) {
+        bytes += b.length;
+        try {
+          IPCUtils.tmToTupleBatch(TransportMessage.parseFrom(b).getDataMessage(), schema);
+        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+      decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+    }
+    System.out.printf("%-12s %8.2f bytes/tuple  encode %8.1f Mtuples/s  decode %8.1f Mtuples/s%n", name, bytes * 1.0
+        / numTuples, numTuples * 1000.0 / encodeNanos, numTuples * 1000.0 / decodeNanos);
+  }
+
+  @Test
+  public void encodings() {
+    List<TupleBatch> input = makeInput();
+    measure("plain", input, ColumnCompression.NONE);
+    measure("bitpacking", input, ColumnCompression.BIT_PACKING);
+    measure("runlength", input, ColumnCompression.RUN_LENGTH);
+    measure("dictionary", input, ColumnCompression.DICTIONARY);
+    measure("default", input, ColumnCompression.DEFAULT);
+    measure("all", input, ColumnCompression.ALL);
+  }
+}
@@ -0,0 +1,87 @@
+package edu.washington.escience.myria.network;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.ColumnCompression;
+import edu.washington.escience.myria.parallel.TransportMessageSerializer;
+import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.IPCUtils;
+
+/**
+ * Compares serializing and de-serializing tuple batches through the protobuf classes with
+ * {@link TransportMessageSerializer}, which writes and reads the same bytes directly.
+ */
+public class TupleBatchSerializationSpeedTest {
+
+  final Schema schema = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.INT_TYPE, Type.DOUBLE_TYPE,
+      Type.STRING_TYPE), ImmutableList.of("id", "key", "value", "name"));
+
+  final int numTuples = 2 * 1000 * 1000;
+
+  final int repetitions = 5;
+
+  private List<TupleBatch> makeInput() {
+    Random random = new Random(1);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putLong(0, random.nextLong());
+      tbb.putInt(1, random.nextInt());
+      tbb.putDouble(2, random.nextDouble());
+      tbb.putString(3, "name" + random.nextInt(1000000));
+    }
+    return tbb.getAll();
+  }
+
+  @Test
+  public void serialize() throws IOException {
+    List<TupleBatch> input = makeInput();
+    TransportMessageSerializer serializer = new TransportMessageSerializer(ColumnCompression.NONE);
+    ChannelBuffer[] serialized = new ChannelBuffer[input.size()];
+
+    long protobufWrite = Long.MAX_VALUE;
+    long protobufRead = Long.MAX_VALUE;
+    long directWrite = Long.MAX_VALUE;
+    long directRead = Long.MAX_VALUE;
+    for (int r = 0; r < repetitions; ++r) {
+      long start = System.nanoTime();
+      for (int i = 0; i < serialized.length; ++i) {
+        serialized[i] = ChannelBuffers.wrappedBuffer(input.get(i).toTransportMessage().toByteArray());
+      }
+      protobufWrite = Math.min(protobufWrite, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      for (ChannelBuffer buffer : serialized) {
+        IPCUtils.tmToTupleBatch(TransportMessage.parseFrom(buffer.array()).getDataMessage(), schema);
+      }
+      protobufRead = Math.min(protobufRead, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      for (int i = 0; i < serialized.length; ++i) {
+        serialized[i] = serializer.serialize(input.get(i));
+      }
+      directWrite = Math.min(directWrite, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      for (ChannelBuffer buffer : serialized) {
+        serializer.deSerialize(buffer, null, schema);
+      }
+      directRead = Math.min(directRead, System.nanoTime() - start);
+    }
+    System.out.printf("protobuf: write %8.1f Mtuples/s  read %8.1f Mtuples/s%n", numTuples * 1000.0 / protobufWrite,
+        numTuples * 1000.0 / protobufRead);
+    System.out.printf("direct:   write %8.1f Mtuples/s  read %8.1f Mtuples/s%n", numTuples * 1000.0 / directWrite,
+        numTuples * 1000.0 / directRead);
+  }
+}
@@ -0,0 +1,125 @@
+package edu.washington.escience.myria.storage;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
+import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.util.DateTimeUtils;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * Compares the memory used per build-side tuple, and the build and probe times, of {@link JoinHashTable} with the
+ * {@link IntObjectHashMap} of {@link IntArrayList}s that the hash joins used before.
+ */
+public class JoinHashTableSpeedTest {
+
+  final Schema schema = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE), ImmutableList.of("key", "value"));
+
+  final int[] keys = new int[] { 0 };
+
+  /** Number of build-side tuples. */
+  final int numTuples = 2 * 1000 * 1000;
+
+  /** Number of tuples per distinct key. */
+  final int duplicates = 2;
+
+  private List<TupleBatch> makeInput() {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putLong(0, i % (numTuples / duplicates));
+      tbb.putLong(1, i);
+    }
+    return tbb.getAll();
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; ++i) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  @Test
+  public void memoryPerTuple() {
+    List<TupleBatch> input = makeInput();
+
+    long before = usedMemory();
+    long start = System.nanoTime();
+    IntObjectHashMap<IntArrayList> indices = new IntObjectHashMap<IntArrayList>();
+    MutableTupleBuffer tuples = new MutableTupleBuffer(schema);
+    for (TupleBatch tb : input) {
+      int[] hashCodes = HashUtils.hashSubRows(tb, keys);
+      List<? extends Column<?>> columns = tb.getDataColumns();
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        IntArrayList list = indices.get(hashCodes[row]);
+        if (list == null) {
+          list = new IntArrayList(1);
+          indices.put(hashCodes[row], list);
+        }
+        list.add(tuples.numTuples());
+        for (int column = 0; column < columns.size(); ++column) {
+          tuples.put(column, columns.get(column), row);
+        }
+      }
+    }
+    long oldBuildTime = System.nanoTime() - start;
+    long oldBytes = usedMemory() - before;
+
+    start = System.nanoTime();
+    long oldMatches = 0;
+    for (TupleBatch tb : input) {
+      int[] hashCodes = HashUtils.hashSubRows(tb, keys);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        IntArrayList list = indices.get(hashCodes[row]);
+        for (int i = 0; i < list.size(); ++i) {
+          if (TupleUtils.tupleEquals(tb, keys, row, tuples, keys, list.get(i))) {
+            ++oldMatches;
+          }
+        }
+      }
+    }
+    long oldProbeTime = System.nanoTime() - start;
+    indices = null;
+    tuples = null;
+
+    before = usedMemory();
+    start = System.nanoTime();
+    JoinHashTable table = new JoinHashTable(schema, keys, true);
+    for (TupleBatch tb : input) {
+      int[] hashCodes = HashUtils.hashSubRows(tb, keys);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        table.add(tb, row, hashCodes[row]);
+      }
+    }
+    long newBuildTime = System.nanoTime() - start;
+    long newBytes = usedMemory() - before;
+
+    start = System.nanoTime();
+    long newMatches = 0;
+    for (TupleBatch tb : input) {
+      int[] hashCodes = HashUtils.hashSubRows(tb, keys);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        for (int index = table.find(tb, keys, row, hashCodes[row]); index != -1; index = table.next(index)) {
+          ++newMatches;
+        }
+      }
+    }
+    long newProbeTime = System.nanoTime() - start;
+
+    System.out.println("matches: " + oldMatches + " / " + newMatches);
+    System.out.println("IntObjectHashMap: " + (double) oldBytes / numTuples + " bytes/tuple, build "
+        + DateTimeUtils.nanoElapseToHumanReadable(oldBuildTime) + ", probe "
+        + DateTimeUtils.nanoElapseToHumanReadable(oldProbeTime));
+    System.out.println("JoinHashTable: " + (double) newBytes / numTuples + " bytes/tuple, build "
+        + DateTimeUtils.nanoElapseToHumanReadable(newBuildTime) + ", probe "
+        + DateTimeUtils.nanoElapseToHumanReadable(newProbeTime));
+  }
+}
@@ -0,0 +1,32 @@
+package edu.washington.escience.myria;
+
+import java.io.IOException;
+
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * A {@link TupleWriter} whose serialization of a batch of tuples can be split in two steps: encoding the batch to text,
+ * which may be done by several threads at once, and writing the text, which is done in order by one thread. This lets
+ * a {@link ParallelTupleWriter} encode the batches of a large result on several cores.
+ */
+public interface BatchEncodingTupleWriter extends TupleWriter {
+
+  /**
+   * Encode a batch of tuples. This method may be called concurrently by several threads after
+   * {@link #writeColumnHeaders(java.util.List)}, and must not change the state of the writer.
+   * 
+   * @param tuples the batch of tuples to be encoded.
+   * @return the text of the batch, to be passed to {@link #writeEncoded(String)}.
+   * @throws IOException if there is an error encoding the tuples.
+   */
+  String encodeTuples(ReadableTable tuples) throws IOException;
+
+  /**
+   * Write a batch of tuples encoded by {@link #encodeTuples(ReadableTable)}. Batches are written in order, by one
+   * thread.
+   * 
+   * @param encoded the text of the batch.
+   * @throws IOException if there is an error writing the tuples.
+   */
+  void writeEncoded(String encoded) throws IOException;
+}
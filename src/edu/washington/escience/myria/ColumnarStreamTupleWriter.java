@@ -0,0 +1,260 @@
+package edu.washington.escience.myria;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.primitives.Ints;
+
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * ColumnarStreamTupleWriter is a {@link TupleWriter} that streams tuples column by column, as little-endian buffers
+ * laid out like Apache Arrow arrays, so that a client can wrap each buffer in an array or a dataframe column without
+ * parsing it (e.g. with <code>numpy.frombuffer</code> or <code>pyarrow.Array.from_buffers</code>). Every buffer starts
+ * at a multiple of 8 bytes.
+ * 
+ * <pre>
+ * stream := magic header batch* end
+ * magic  := the 8 ASCII bytes "MYRIACS1"
+ * header := int32 length of the rest of the header, int32 number of columns, and for each column its type name (e.g.
+ *           "LONG_TYPE") and its name, each as an int32 length and UTF-8 bytes; padded
+ * batch  := int32 number of tuples n &gt; 0, int32 0, and the buffers of each column
+ * buffer := int64 length in bytes, bytes; padded
+ * end    := int32 -1, int32 0 if the stream is complete, or
+ *           int32 -2, int32 length, UTF-8 error message; padded if the query failed
+ * </pre>
+ * 
+ * An INT, LONG, FLOAT, or DOUBLE column is one buffer of n values. A DATETIME column is one buffer of n int64
+ * milliseconds since the epoch, UTC. A BOOLEAN column is one buffer of n bits, the first value in the least significant
+ * bit of the first byte. A STRING column is two buffers: n + 1 int32 offsets, and the UTF-8 bytes of the values, the
+ * bytes of value i being those between offsets i and i + 1. Columns have no null values.
+ */
+public class ColumnarStreamTupleWriter implements TupleWriter {
+
+  /** The byte order of the stream. */
+  public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+  /** The alignment of the buffers in the stream, in bytes. */
+  public static final int ALIGNMENT = 8;
+  /** The number of tuples that marks the end of a complete stream. */
+  public static final int END_OF_STREAM = -1;
+  /** The number of tuples that marks the end of the stream of a failed query. */
+  public static final int ERROR = -2;
+  /** The message sent to the client when the query fails. */
+  private static final String ERROR_MESSAGE = "There was an error. Investigate the query status to see the message";
+
+  /** The stream the tuples are written to. */
+  private final CountingOutputStream output;
+  /** The schema of the tuples. */
+  private final Schema schema;
+
+  /**
+   * Constructs a {@link ColumnarStreamTupleWriter} object.
+   * 
+   * @param out the {@link OutputStream} to which the data will be written.
+   * @param schema the schema of the tuples.
+   */
+  public ColumnarStreamTupleWriter(final OutputStream out, final Schema schema) {
+    this.schema = Preconditions.checkNotNull(schema, "schema");
+    output = new CountingOutputStream(new BufferedOutputStream(out));
+  }
+
+  /**
+   * @return the magic bytes that start a stream.
+   */
+  public static byte[] getMagic() {
+    return "MYRIACS1".getBytes(StandardCharsets.US_ASCII);
+  }
+
+  @Override
+  public void writeColumnHeaders(final List<String> columnNames) throws IOException {
+    Preconditions.checkArgument(columnNames.size() == schema.numColumns(), "expected %s column names, not %s", schema
+        .numColumns(), columnNames.size());
+    final byte[][] names = new byte[2 * columnNames.size()][];
+    int length = Integer.SIZE / Byte.SIZE;
+    for (int column = 0; column < columnNames.size(); ++column) {
+      names[2 * column] = schema.getColumnType(column).name().getBytes(StandardCharsets.UTF_8);
+      names[2 * column + 1] = columnNames.get(column).getBytes(StandardCharsets.UTF_8);
+      length += 2 * (Integer.SIZE / Byte.SIZE) + names[2 * column].length + names[2 * column + 1].length;
+    }
+    output.write(getMagic());
+    writeInt(length);
+    writeInt(columnNames.size());
+    for (byte[] name : names) {
+      writeInt(name.length);
+      output.write(name);
+    }
+    pad();
+  }
+
+  @Override
+  public void writeTuples(final ReadableTable tuples) throws IOException {
+    Preconditions.checkArgument(tuples.getSchema().getColumnTypes().equals(schema.getColumnTypes()),
+        "expected tuples of types %s, not %s", schema.getColumnTypes(), tuples.getSchema().getColumnTypes());
+    final int n = tuples.numTuples();
+    if (n == 0) {
+      return;
+    }
+    writeInt(n);
+    writeInt(0);
+    for (int column = 0; column < schema.numColumns(); ++column) {
+      switch (schema.getColumnType(column)) {
+        case INT_TYPE: {
+          final ByteBuffer values = allocate(n * (Integer.SIZE / Byte.SIZE));
+          for (int row = 0; row < n; ++row) {
+            values.putInt(tuples.getInt(column, row));
+          }
+          writeBuffer(values);
+          break;
+        }
+        case LONG_TYPE: {
+          final ByteBuffer values = allocate(n * (Long.SIZE / Byte.SIZE));
+          for (int row = 0; row < n; ++row) {
+            values.putLong(tuples.getLong(column, row));
+          }
+          writeBuffer(values);
+          break;
+        }
+        case FLOAT_TYPE: {
+          final ByteBuffer values = allocate(n * (Float.SIZE / Byte.SIZE));
+          for (int row = 0; row < n; ++row) {
+            values.putFloat(tuples.getFloat(column, row));
+          }
+          writeBuffer(values);
+          break;
+        }
+        case DOUBLE_TYPE: {
+          final ByteBuffer values = allocate(n * (Double.SIZE / Byte.SIZE));
+          for (int row = 0; row < n; ++row) {
+            values.putDouble(tuples.getDouble(column, row));
+          }
+          writeBuffer(values);
+          break;
+        }
+        case DATETIME_TYPE: {
+          final ByteBuffer values = allocate(n * (Long.SIZE / Byte.SIZE));
+          for (int row = 0; row < n; ++row) {
+            values.putLong(tuples.getDateTime(column, row).getMillis());
+          }
+          writeBuffer(values);
+          break;
+        }
+        case BOOLEAN_TYPE: {
+          final byte[] bits = new byte[(n + Byte.SIZE - 1) / Byte.SIZE];
+          for (int row = 0; row < n; ++row) {
+            if (tuples.getBoolean(column, row)) {
+              bits[row / Byte.SIZE] |= 1 << (row % Byte.SIZE);
+            }
+          }
+          writeBuffer(ByteBuffer.wrap(bits));
+          break;
+        }
+        case STRING_TYPE:
+          writeStrings(tuples, column);
+          break;
+      }
+    }
+  }
+
+  /**
+   * Write the offsets and the UTF-8 bytes of a String column.
+   * 
+   * @param tuples the table.
+   * @param column the String column.
+   * @throws IOException if there is an IO exception
+   */
+  private void writeStrings(final ReadableTable tuples, final int column) throws IOException {
+    final int n = tuples.numTuples();
+    final byte[][] strings = new byte[n][];
+    final ByteBuffer offsets = allocate((n + 1) * (Integer.SIZE / Byte.SIZE));
+    long end = 0;
+    offsets.putInt(0);
+    for (int row = 0; row < n; ++row) {
+      strings[row] = tuples.getString(column, row).getBytes(StandardCharsets.UTF_8);
+      end += strings[row].length;
+      offsets.putInt(Ints.checkedCast(end));
+    }
+    writeBuffer(offsets);
+    writeLong(end);
+    for (byte[] string : strings) {
+      output.write(string);
+    }
+    pad();
+  }
+
+  /**
+   * @param bytes the number of bytes.
+   * @return a little-endian buffer of that many bytes.
+   */
+  private static ByteBuffer allocate(final int bytes) {
+    return ByteBuffer.allocate(bytes).order(BYTE_ORDER);
+  }
+
+  /**
+   * Write a buffer, preceded by its length and followed by padding.
+   * 
+   * @param buffer the buffer, written whole.
+   * @throws IOException if there is an IO exception
+   */
+  private void writeBuffer(final ByteBuffer buffer) throws IOException {
+    writeLong(buffer.capacity());
+    output.write(buffer.array());
+    pad();
+  }
+
+  /**
+   * @param v an int to write.
+   * @throws IOException if there is an IO exception
+   */
+  private void writeInt(final int v) throws IOException {
+    output.write(allocate(Integer.SIZE / Byte.SIZE).putInt(v).array());
+  }
+
+  /**
+   * @param v a long to write.
+   * @throws IOException if there is an IO exception
+   */
+  private void writeLong(final long v) throws IOException {
+    output.write(allocate(Long.SIZE / Byte.SIZE).putLong(v).array());
+  }
+
+  /**
+   * Pad the output to a multiple of {@link #ALIGNMENT} bytes.
+   * 
+   * @throws IOException if there is an IO exception
+   */
+  private void pad() throws IOException {
+    final int remainder = (int) (output.getCount() % ALIGNMENT);
+    if (remainder != 0) {
+      output.write(new byte[ALIGNMENT - remainder]);
+    }
+  }
+
+  @Override
+  public void done() throws IOException {
+    writeInt(END_OF_STREAM);
+    writeInt(0);
+    output.flush();
+    output.close();
+  }
+
+  @Override
+  public void error() throws IOException {
+    try {
+      final byte[] message = ERROR_MESSAGE.getBytes(StandardCharsets.UTF_8);
+      writeInt(ERROR);
+      writeInt(message.length);
+      output.write(message);
+      pad();
+      output.flush();
+    } finally {
+      output.close();
+    }
+  }
+}
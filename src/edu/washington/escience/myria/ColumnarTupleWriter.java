@@ -0,0 +1,328 @@
+package edu.washington.escience.myria;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.primitives.Ints;
+
+import edu.washington.escience.myria.storage.ColumnarFile;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * ColumnarTupleWriter is a {@link TupleWriter} that serializes tuples to the columnar file format read by
+ * {@link ColumnarFile}. Each call to {@link #writeTuples(ReadableTable)} writes one or more segments, so callers should
+ * pass full batches to get large segments. The footer that locates the segments is written by {@link #done()}.
+ */
+public class ColumnarTupleWriter implements TupleWriter {
+
+  /** The stream the file is written to. */
+  private final CountingOutputStream output;
+  /** The schema of the tuples. */
+  private final Schema schema;
+  /** The footer, filled in as segments are written. */
+  private final LittleEndianBuffer footer;
+  /** The number of segments written. */
+  private int numSegments;
+
+  /**
+   * Constructs a {@link ColumnarTupleWriter} object. The header of the file is written immediately.
+   *
+   * @param out the {@link OutputStream} to which the data will be written.
+   * @param schema the schema of the tuples.
+   * @throws IOException if there is an IO exception
+   */
+  public ColumnarTupleWriter(final OutputStream out, final Schema schema) throws IOException {
+    this.schema = Preconditions.checkNotNull(schema, "schema");
+    output = new CountingOutputStream(new BufferedOutputStream(out));
+    footer = new LittleEndianBuffer();
+
+    final LittleEndianBuffer header = new LittleEndianBuffer();
+    header.putInt(schema.numColumns());
+    for (int column = 0; column < schema.numColumns(); ++column) {
+      header.putName(schema.getColumnType(column).name());
+      header.putName(schema.getColumnName(column));
+    }
+    output.write(ColumnarFile.getMagic());
+    final ByteBuffer length = ByteBuffer.allocate(Integer.SIZE / Byte.SIZE).order(ColumnarFile.BYTE_ORDER);
+    length.putInt(header.size());
+    output.write(length.array());
+    header.writeTo(output);
+    pad();
+  }
+
+  /*
+   * No-op: the column names are taken from the schema.
+   */
+  @Override
+  public void writeColumnHeaders(final List<String> columnNames) throws IOException {
+  }
+
+  @Override
+  public void writeTuples(final ReadableTable tuples) throws IOException {
+    Preconditions.checkArgument(tuples.getSchema().getColumnTypes().equals(schema.getColumnTypes()),
+        "expected tuples of types %s, not %s", schema.getColumnTypes(), tuples.getSchema().getColumnTypes());
+    for (int from = 0; from < tuples.numTuples(); from += TupleBatch.BATCH_SIZE) {
+      writeSegment(tuples, from, Math.min(tuples.numTuples(), from + TupleBatch.BATCH_SIZE));
+    }
+  }
+
+  /**
+   * Write some tuples of a table as a segment, and add the segment to the footer.
+   *
+   * @param tuples the table.
+   * @param from the first tuple to write.
+   * @param to the tuple after the last one to write.
+   * @throws IOException if there is an IO exception
+   */
+  private void writeSegment(final ReadableTable tuples, final int from, final int to) throws IOException {
+    final int n = to - from;
+    footer.putInt(n);
+    for (int column = 0; column < schema.numColumns(); ++column) {
+      footer.putLong(output.getCount());
+      final Type type = schema.getColumnType(column);
+      byte[][] strings = null;
+      if (type == Type.STRING_TYPE) {
+        strings = encodeStrings(tuples, column, from, to);
+      }
+      final ByteBuffer values = ByteBuffer.allocate(columnBytes(type, n, strings)).order(ColumnarFile.BYTE_ORDER);
+      long min = Long.MAX_VALUE;
+      long max = Long.MIN_VALUE;
+      /* NaN is in no range, so it is left out of the bounds rather than turning them into NaN. */
+      double dmin = Double.POSITIVE_INFINITY;
+      double dmax = Double.NEGATIVE_INFINITY;
+      switch (type) {
+        case INT_TYPE:
+          for (int row = from; row < to; ++row) {
+            final int v = tuples.getInt(column, row);
+            values.putInt(v);
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+          }
+          break;
+        case LONG_TYPE:
+          for (int row = from; row < to; ++row) {
+            final long v = tuples.getLong(column, row);
+            values.putLong(v);
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+          }
+          break;
+        case DATETIME_TYPE:
+          for (int row = from; row < to; ++row) {
+            final long v = tuples.getDateTime(column, row).getMillis();
+            values.putLong(v);
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+          }
+          break;
+        case FLOAT_TYPE:
+          for (int row = from; row < to; ++row) {
+            final float v = tuples.getFloat(column, row);
+            values.putFloat(v);
+            if (!Float.isNaN(v)) {
+              dmin = Math.min(dmin, v);
+              dmax = Math.max(dmax, v);
+            }
+          }
+          break;
+        case DOUBLE_TYPE:
+          for (int row = from; row < to; ++row) {
+            final double v = tuples.getDouble(column, row);
+            values.putDouble(v);
+            if (!Double.isNaN(v)) {
+              dmin = Math.min(dmin, v);
+              dmax = Math.max(dmax, v);
+            }
+          }
+          break;
+        case BOOLEAN_TYPE:
+          for (int row = from; row < to; ++row) {
+            values.put((byte) (tuples.getBoolean(column, row) ? 1 : 0));
+          }
+          break;
+        case STRING_TYPE:
+          putStrings(values, strings);
+          break;
+      }
+      if (type == Type.FLOAT_TYPE || type == Type.DOUBLE_TYPE) {
+        min = Double.doubleToLongBits(dmin);
+        max = Double.doubleToLongBits(dmax);
+      }
+      footer.putLong(min);
+      footer.putLong(max);
+      output.write(values.array(), 0, values.capacity());
+    }
+    ++numSegments;
+  }
+
+  /**
+   * @param tuples a table.
+   * @param column a String column of the table.
+   * @param from the first tuple of the segment.
+   * @param to the tuple after the last one of the segment.
+   * @return the UTF-8 bytes of the strings of the column in the segment.
+   */
+  private static byte[][] encodeStrings(final ReadableTable tuples, final int column, final int from, final int to) {
+    final byte[][] strings = new byte[to - from][];
+    for (int row = from; row < to; ++row) {
+      strings[row - from] = tuples.getString(column, row).getBytes(StandardCharsets.UTF_8);
+    }
+    return strings;
+  }
+
+  /**
+   * @param type the type of a column.
+   * @param n the number of tuples of the segment.
+   * @param strings the UTF-8 bytes of the values of a String column, or null for other types.
+   * @return the number of bytes the values of the column take in the segment, padded.
+   */
+  private static int columnBytes(final Type type, final int n, final byte[][] strings) {
+    long bytes;
+    switch (type) {
+      case BOOLEAN_TYPE:
+        bytes = n;
+        break;
+      case INT_TYPE:
+      case FLOAT_TYPE:
+        bytes = (long) n * (Integer.SIZE / Byte.SIZE);
+        break;
+      case STRING_TYPE:
+        bytes = (long) (n + 1) * (Integer.SIZE / Byte.SIZE);
+        for (byte[] string : strings) {
+          bytes += string.length;
+        }
+        break;
+      default:
+        bytes = (long) n * (Long.SIZE / Byte.SIZE);
+        break;
+    }
+    return Ints.checkedCast(padded(bytes));
+  }
+
+  /**
+   * Put the offsets and then the UTF-8 bytes of the strings of a segment.
+   *
+   * @param values the buffer of the column.
+   * @param strings the UTF-8 bytes of the strings.
+   */
+  private static void putStrings(final ByteBuffer values, final byte[][] strings) {
+    int end = 0;
+    values.putInt(end);
+    for (byte[] string : strings) {
+      end += string.length;
+      values.putInt(end);
+    }
+    for (byte[] string : strings) {
+      values.put(string);
+    }
+  }
+
+  /**
+   * @param bytes a number of bytes.
+   * @return the number rounded up to a multiple of {@link ColumnarFile#ALIGNMENT}.
+   */
+  private static long padded(final long bytes) {
+    return (bytes + ColumnarFile.ALIGNMENT - 1) / ColumnarFile.ALIGNMENT * ColumnarFile.ALIGNMENT;
+  }
+
+  /**
+   * Pad the output to a multiple of {@link ColumnarFile#ALIGNMENT} bytes.
+   *
+   * @throws IOException if there is an IO exception
+   */
+  private void pad() throws IOException {
+    final long count = output.getCount();
+    output.write(new byte[(int) (padded(count) - count)]);
+  }
+
+  @Override
+  public void done() throws IOException {
+    final long footerOffset = output.getCount();
+    final ByteBuffer count = ByteBuffer.allocate(Integer.SIZE / Byte.SIZE).order(ColumnarFile.BYTE_ORDER);
+    count.putInt(numSegments);
+    output.write(count.array());
+    footer.writeTo(output);
+    final ByteBuffer offset = ByteBuffer.allocate(Long.SIZE / Byte.SIZE).order(ColumnarFile.BYTE_ORDER);
+    offset.putLong(footerOffset);
+    output.write(offset.array());
+    output.write(ColumnarFile.getMagic());
+    output.close();
+  }
+
+  @Override
+  public void error() throws IOException {
+    output.close();
+  }
+
+  /**
+   * A growable buffer of little-endian values.
+   */
+  private static final class LittleEndianBuffer {
+    /** The values written so far. */
+    private ByteBuffer buffer = ByteBuffer.allocate(256).order(ColumnarFile.BYTE_ORDER);
+
+    /**
+     * Make room for some more bytes.
+     *
+     * @param bytes the number of bytes.
+     */
+    private void ensure(final int bytes) {
+      if (buffer.remaining() < bytes) {
+        final ByteBuffer larger =
+            ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes)).order(
+                ColumnarFile.BYTE_ORDER);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+      }
+    }
+
+    /**
+     * @param v an int to append.
+     */
+    void putInt(final int v) {
+      ensure(Integer.SIZE / Byte.SIZE);
+      buffer.putInt(v);
+    }
+
+    /**
+     * @param v a long to append.
+     */
+    void putLong(final long v) {
+      ensure(Long.SIZE / Byte.SIZE);
+      buffer.putLong(v);
+    }
+
+    /**
+     * @param name a name to append, as its length and its UTF-8 bytes.
+     */
+    void putName(final String name) {
+      final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      putInt(bytes.length);
+      ensure(bytes.length);
+      buffer.put(bytes);
+    }
+
+    /**
+     * @return the number of bytes appended.
+     */
+    int size() {
+      return buffer.position();
+    }
+
+    /**
+     * @param out the stream to copy the appended bytes to.
+     * @throws IOException if there is an IO exception
+     */
+    void writeTo(final OutputStream out) throws IOException {
+      out.write(buffer.array(), 0, buffer.position());
+    }
+  }
+}
@@ -4,6 +4,7 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.List;
 
 import org.apache.commons.csv.CSVFormat;
@@ -20,10 +21,14 @@ import edu.washington.escience.myria.storage.ReadableTable;
  * CSV files should be compatible with Microsoft Excel.
  * 
  */
-public class CsvTupleWriter implements TupleWriter {
+public class CsvTupleWriter implements BatchEncodingTupleWriter {
 
   /** The CSVWriter used to write the output. */
   private final CSVPrinter csvPrinter;
+  /** The buffered writer under {@link #csvPrinter}, to which encoded batches are written. */
+  private final Writer writer;
+  /** The CSV format. */
+  private final CSVFormat csvFormat;
 
   /**
    * Constructs a {@link CsvTupleWriter} object that will produce an Excel-compatible comma-separated value (CSV) file
@@ -54,7 +59,9 @@ public class CsvTupleWriter implements TupleWriter {
    * @throws IOException if there is an IO exception
    */
   private CsvTupleWriter(final OutputStream out, final CSVFormat csvFormat) throws IOException {
-    csvPrinter = new CSVPrinter(new BufferedWriter(new OutputStreamWriter(out)), csvFormat);
+    this.csvFormat = csvFormat;
+    writer = new BufferedWriter(new OutputStreamWriter(out));
+    csvPrinter = new CSVPrinter(writer, csvFormat);
   }
 
   @Override
@@ -64,13 +71,35 @@ public class CsvTupleWriter implements TupleWriter {
 
   @Override
   public void writeTuples(final ReadableTable tuples) throws IOException {
+    printTuples(csvPrinter, tuples);
+  }
+
+  @Override
+  public String encodeTuples(final ReadableTable tuples) throws IOException {
+    final StringBuilder encoded = new StringBuilder();
+    printTuples(new CSVPrinter(encoded, csvFormat), tuples);
+    return encoded.toString();
+  }
+
+  @Override
+  public void writeEncoded(final String encoded) throws IOException {
+    writer.write(encoded);
+  }
+
+  /**
+   * Serialize every row of a table.
+   * 
+   * @param printer the printer the rows are printed to.
+   * @param tuples the table.
+   * @throws IOException if there is an IO exception
+   */
+  private static void printTuples(final CSVPrinter printer, final ReadableTable tuples) throws IOException {
     final String[] row = new String[tuples.numColumns()];
-    /* Serialize every row into the output stream. */
     for (int i = 0; i < tuples.numTuples(); ++i) {
       for (int j = 0; j < tuples.numColumns(); ++j) {
         row[j] = tuples.getObject(j, i).toString();
       }
-      csvPrinter.printRecord((Object[]) row);
+      printer.printRecord((Object[]) row);
     }
   }
 
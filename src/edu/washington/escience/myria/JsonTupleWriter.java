@@ -32,7 +32,7 @@ import edu.washington.escience.myria.util.DateTimeUtils;
  * 
  * 
  */
-public class JsonTupleWriter implements TupleWriter {
+public class JsonTupleWriter implements BatchEncodingTupleWriter {
 
   /** The names of the columns, escaped for JSON. */
   private ImmutableList<String> escapedColumnNames;
@@ -61,50 +61,6 @@ public class JsonTupleWriter implements TupleWriter {
     }
   }
 
-  /**
-   * @param ch the data to print
-   * @throws IOException if the {@link PrintWriter} has errors.
-   */
-  private void print(final boolean ch) throws IOException {
-    output.print(ch);
-    if (output.checkError()) {
-      throw new IOException("Broken pipe");
-    }
-  }
-
-  /**
-   * @param ch the data to print
-   * @throws IOException if the {@link PrintWriter} has errors.
-   */
-  private void print(final double ch) throws IOException {
-    output.print(ch);
-    if (output.checkError()) {
-      throw new IOException("Broken pipe");
-    }
-  }
-
-  /**
-   * @param ch the data to print
-   * @throws IOException if the {@link PrintWriter} has errors.
-   */
-  private void print(final int ch) throws IOException {
-    output.print(ch);
-    if (output.checkError()) {
-      throw new IOException("Broken pipe");
-    }
-  }
-
-  /**
-   * @param ch the data to print
-   * @throws IOException if the {@link PrintWriter} has errors.
-   */
-  private void print(final long ch) throws IOException {
-    output.print(ch);
-    if (output.checkError()) {
-      throw new IOException("Broken pipe");
-    }
-  }
-
   /**
    * @param str the data to print
    * @throws IOException if the {@link PrintWriter} has errors.
@@ -132,58 +88,63 @@ public class JsonTupleWriter implements TupleWriter {
 
   @Override
   public void writeTuples(final ReadableTable tuples) throws IOException {
+    writeEncoded(encodeTuples(tuples));
+  }
+
+  @Override
+  public String encodeTuples(final ReadableTable tuples) throws IOException {
     Objects.requireNonNull(escapedColumnNames);
     List<Type> columnTypes = tuples.getSchema().getColumnTypes();
-    /* Add a record. */
+    final StringBuilder encoded = new StringBuilder();
+    /* Add a record. Every record starts with the separator, which writeEncoded drops before the first record. */
     for (int i = 0; i < tuples.numTuples(); ++i) {
-      /* Add the record separator (except first record) and open the record with '{'. */
-      if (haveWritten) {
-        print(",{");
-      } else {
-        haveWritten = true;
-        print('{');
-      }
+      encoded.append(",{");
 
-      /*
-       * Write each column of the record. Primitive types can be output as-is; {@link DateTime} objects are quoted and
-       * serialized in ISO8601 format, and {@link String} objects are quoted and escaped for JSON.
-       */
+      /* Add the fields. */
       for (int j = 0; j < tuples.numColumns(); ++j) {
         if (j > 0) {
-          print(',');
+          encoded.append(',');
         }
-        print('"');
-        print(escapedColumnNames.get(j));
-        print("\":");
+        encoded.append('"').append(escapedColumnNames.get(j)).append("\":");
         switch (columnTypes.get(j)) {
           case BOOLEAN_TYPE:
-            print(tuples.getBoolean(j, i));
+            encoded.append(tuples.getBoolean(j, i));
             break;
           case DOUBLE_TYPE:
-            print(tuples.getDouble(j, i));
+            encoded.append(tuples.getDouble(j, i));
             break;
           case FLOAT_TYPE:
-            print(tuples.getFloat(j, i));
+            encoded.append(tuples.getFloat(j, i));
             break;
           case INT_TYPE:
-            print(tuples.getInt(j, i));
+            encoded.append(tuples.getInt(j, i));
             break;
           case LONG_TYPE:
-            print(tuples.getLong(j, i));
+            encoded.append(tuples.getLong(j, i));
             break;
           case DATETIME_TYPE:
-            print('"');
-            print(DateTimeUtils.dateTimeToISO8601(tuples.getDateTime(j, i)));
-            print('"');
+            encoded.append('"').append(DateTimeUtils.dateTimeToISO8601(tuples.getDateTime(j, i))).append('"');
             break;
           case STRING_TYPE:
-            print('"');
-            print(StringEscapeUtils.escapeJson(tuples.getString(j, i)));
-            print('"');
+            encoded.append('"').append(StringEscapeUtils.escapeJson(tuples.getString(j, i))).append('"');
             break;
         }
       }
-      print('}');
+      encoded.append('}');
+    }
+    return encoded.toString();
+  }
+
+  @Override
+  public void writeEncoded(final String encoded) throws IOException {
+    if (encoded.isEmpty()) {
+      return;
+    }
+    if (haveWritten) {
+      print(encoded);
+    } else {
+      haveWritten = true;
+      print(encoded.substring(1));
     }
   }
 
@@ -77,6 +77,16 @@ public final class MyriaConstants {
    */
   public static final String EXEC_ENV_VAR_PROFILING_MODE = "profiling_mode";
 
+  /**
+   * The local directory that operators spill to when they exceed their memory budget.
+   */
+  public static final String EXEC_ENV_VAR_SPILL_DIRECTORY = "spillDirectory";
+
+  /**
+   * The local directory that relative paths of columnar files are resolved against.
+   */
+  public static final String EXEC_ENV_VAR_COLUMNAR_DIRECTORY = "columnarDirectory";
+
   /**
    * Default value for {@link MyriaSystemConfigKeys#FLOW_CONTROL_WRITE_BUFFER_HIGH_MARK_BYTES}.
    */
@@ -87,6 +97,18 @@ public final class MyriaConstants {
    */
   public static final int FLOW_CONTROL_WRITE_BUFFER_LOW_MARK_BYTES_DEFAULT_VALUE = 512 * KB;
 
+  /**
+   * Default number of bytes a {@link edu.washington.escience.myria.storage.TupleBatch} aims at, well below
+   * {@link #FLOW_CONTROL_WRITE_BUFFER_HIGH_MARK_BYTES_DEFAULT_VALUE} so that a few batches fit in a channel's buffer.
+   */
+  public static final int DEFAULT_BATCH_TARGET_BYTES = 1 * MB;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#IPC_COLUMN_ENCODINGS}. Deflate is left out because it costs more CPU
+   * than it saves network on a fast network.
+   */
+  public static final String IPC_COLUMN_ENCODINGS_DEFAULT_VALUE = "bitpacking,runlength,dictionary";
+
   /** Time interval between two heartbeats. */
   public static final int HEARTBEAT_INTERVAL = 1000;
 
@@ -235,9 +257,39 @@ public final class MyriaConstants {
   public static final int DEFAULT_PIPED_INPUT_STREAM_SIZE = 1024 * 1024 * 16;
 
   /**
-   * The maximum number of currently active (running, queued, paused, ...) queries at the master.
+   * The number of bytes that can back up in the pipe of a dataset download before we stop writing tuples and wait for
+   * the client to read them. It is kept small so that a slow client stalls the download query, whose consumer then
+   * stops reading and lets flow control pause the producers on the workers, instead of buffering the relation at the
+   * master. 1 MB.
+   */
+  public static final int DOWNLOAD_PIPE_SIZE = 1024 * 1024;
+
+  /**
+   * The maximum number of threads that encode the tuples of one download or export to text.
+   */
+  public static final int MAX_ENCODING_THREADS = 4;
+
+  /**
+   * The maximum number of queries waiting at the master to be admitted by the query scheduler.
+   */
+  public static final int MAX_QUEUED_QUERIES = 25;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#MAX_CONCURRENT_QUERIES}.
+   */
+  public static final int MAX_CONCURRENT_QUERIES_DEFAULT_VALUE = 4;
+
+  /**
+   * The scheduler admits no more queries while a worker uses more than this fraction of its maximum heap, unless no
+   * query is running.
    */
-  public static final int MAX_ACTIVE_QUERIES = 25;
+  public static final double ADMISSION_MAX_HEAP_FRACTION = 0.85;
+
+  /**
+   * The scheduler admits no more queries while a worker's system load average per available processor is above this
+   * value, unless no query is running.
+   */
+  public static final double ADMISSION_MAX_LOAD_PER_PROCESSOR = 1.5;
 
   /**
    * The relation that stores profiling information about which operators executed when.
@@ -292,6 +344,11 @@ public final class MyriaConstants {
   public static final String[] DEFAULT_JANINO_IMPORTS =
       { "com.google.common.hash.Hashing", "java.nio.charset.Charset" };
 
+  /**
+   * The maximum number of compiled expression classes kept by a worker for reuse by later queries.
+   */
+  public static final int EVALUATOR_CACHE_SIZE = 1000;
+
   /** Private constructor to disallow building utility class. */
   private MyriaConstants() {
   }
@@ -313,4 +370,14 @@ public final class MyriaConstants {
      */
     QUERY
   };
+
+  /** the priority classes of queries. A queued query is admitted only when no query of a higher class is waiting. */
+  public static enum QueryPriority {
+    /** short queries a user is waiting on. */
+    INTERACTIVE,
+    /** the default class. */
+    NORMAL,
+    /** long-running jobs such as ETL. */
+    BATCH
+  };
 }
@@ -52,6 +52,19 @@ public final class MyriaSystemConfigKeys {
    * */
   public static final String FLOW_CONTROL_WRITE_BUFFER_HIGH_MARK_BYTES = "flowcontrol.writebuffer.watermark.high";
 
+  /**
+   * The column encodings that tuple batches may be compressed with when they are sent to another process. A
+   * comma-separated list of <code>bitpacking</code>, <code>runlength</code>, <code>dictionary</code> and
+   * <code>deflate</code>, or <code>all</code> or <code>none</code>. See
+   * {@link edu.washington.escience.myria.column.ColumnCompression}.
+   * */
+  public static final String IPC_COLUMN_ENCODINGS = "ipc.column.encodings";
+
+  /**
+   * The maximum number of queries the master runs at the same time. Further queries wait in the scheduler's queue.
+   * */
+  public static final String MAX_CONCURRENT_QUERIES = "query.max.concurrent";
+
   /**
    * TCP timeout.
    * */
@@ -109,6 +122,12 @@ public final class MyriaSystemConfigKeys {
       config.put(OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER,
           MyriaConstants.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_DEFAULT_VALUE + "");
     }
+    if (!config.containsKey(IPC_COLUMN_ENCODINGS) || config.get(IPC_COLUMN_ENCODINGS) == null) {
+      config.put(IPC_COLUMN_ENCODINGS, MyriaConstants.IPC_COLUMN_ENCODINGS_DEFAULT_VALUE);
+    }
+    if (!config.containsKey(MAX_CONCURRENT_QUERIES) || config.get(MAX_CONCURRENT_QUERIES) == null) {
+      config.put(MAX_CONCURRENT_QUERIES, MyriaConstants.MAX_CONCURRENT_QUERIES_DEFAULT_VALUE + "");
+    }
     if (!config.containsKey(TCP_CONNECTION_TIMEOUT_MILLIS) || config.get(TCP_CONNECTION_TIMEOUT_MILLIS) == null) {
       config.put(TCP_CONNECTION_TIMEOUT_MILLIS, MyriaConstants.TCP_CONNECTION_TIMEOUT_MILLIS_DEFAULT_VALUE + "");
     }
@@ -0,0 +1,121 @@
+package edu.washington.escience.myria;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.util.concurrent.RenamingThreadFactory;
+
+/**
+ * ParallelTupleWriter is a {@link TupleWriter} that encodes batches of tuples on several threads, using a
+ * {@link BatchEncodingTupleWriter}, and writes them in order. At most two batches per thread are encoded or waiting to
+ * be written, so a slow output still blocks {@link #writeTuples(ReadableTable)} and holds back the producer of the
+ * tuples.
+ * 
+ * The tables passed to {@link #writeTuples(ReadableTable)} are encoded after the call returns, so they must not be
+ * modified afterwards; {@link edu.washington.escience.myria.storage.TupleBatch}es are immutable.
+ */
+public final class ParallelTupleWriter implements TupleWriter {
+
+  /** The writer that encodes and writes the batches. */
+  private final BatchEncodingTupleWriter writer;
+  /** The threads that encode the batches. */
+  private final ExecutorService executor;
+  /** The maximum number of batches encoded or waiting to be written. */
+  private final int maxPending;
+  /** The batches encoded or waiting to be written, in order. */
+  private final Deque<Future<String>> pending;
+
+  /**
+   * Constructs a {@link ParallelTupleWriter} object.
+   * 
+   * @param writer the writer that encodes and writes the batches.
+   * @param numThreads the number of threads that encode the batches.
+   */
+  public ParallelTupleWriter(final BatchEncodingTupleWriter writer, final int numThreads) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive, not %s", numThreads);
+    this.writer = Objects.requireNonNull(writer, "writer");
+    executor = Executors.newFixedThreadPool(numThreads, new RenamingThreadFactory("ParallelTupleWriter encoder"));
+    maxPending = 2 * numThreads;
+    pending = new ArrayDeque<>(maxPending);
+  }
+
+  @Override
+  public void writeColumnHeaders(final List<String> columnNames) throws IOException {
+    writer.writeColumnHeaders(columnNames);
+  }
+
+  @Override
+  public void writeTuples(final ReadableTable tuples) throws IOException {
+    if (tuples.numTuples() == 0) {
+      return;
+    }
+    while (pending.size() >= maxPending) {
+      writeNext();
+    }
+    pending.add(executor.submit(new Callable<String>() {
+      @Override
+      public String call() throws IOException {
+        return writer.encodeTuples(tuples);
+      }
+    }));
+  }
+
+  /**
+   * Wait for the oldest pending batch to be encoded, and write it.
+   * 
+   * @throws IOException if there is an error encoding or writing the batch.
+   */
+  private void writeNext() throws IOException {
+    final String encoded;
+    try {
+      encoded = pending.poll().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while encoding tuples");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+    writer.writeEncoded(encoded);
+  }
+
+  @Override
+  public void done() throws IOException {
+    try {
+      while (!pending.isEmpty()) {
+        writeNext();
+      }
+      writer.done();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Override
+  public void error() throws IOException {
+    for (Future<String> batch : pending) {
+      batch.cancel(true);
+    }
+    pending.clear();
+    try {
+      writer.error();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
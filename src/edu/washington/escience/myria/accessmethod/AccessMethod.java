@@ -15,6 +15,7 @@ import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.BatchSizeController;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
@@ -75,15 +76,30 @@ public abstract class AccessMethod {
   public abstract void tupleBatchInsert(final RelationKey relationKey, final TupleBatch tupleBatch) throws DbException;
 
   /**
-   * Runs a query and expose the results as an Iterator<TupleBatch>.
+   * Runs a query and expose the results as an Iterator<TupleBatch>, in batches of about
+   * {@link MyriaConstants#DEFAULT_BATCH_TARGET_BYTES} bytes.
    * 
    * @param queryString the query
    * @param schema the output schema (with SQLite we are not able to reconstruct the schema from the API)
    * @return an Iterator<TupleBatch> containing the results.
    * @throws DbException if there is an error getting tuples.
    */
-  public abstract Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema)
-      throws DbException;
+  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema)
+      throws DbException {
+    return tupleBatchIteratorFromQuery(queryString, schema, MyriaConstants.DEFAULT_BATCH_TARGET_BYTES);
+  }
+
+  /**
+   * Runs a query and expose the results as an Iterator<TupleBatch>, in batches of about the specified number of bytes.
+   * 
+   * @param queryString the query
+   * @param schema the output schema (with SQLite we are not able to reconstruct the schema from the API)
+   * @param batchTargetBytes the number of bytes a batch aims at, see {@link BatchSizeController}.
+   * @return an Iterator<TupleBatch> containing the results.
+   * @throws DbException if there is an error getting tuples.
+   */
+  public abstract Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema,
+      final int batchTargetBytes) throws DbException;
 
   /**
    * Executes a DDL command.
@@ -17,6 +17,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.postgresql.PGConnection;
 import org.postgresql.copy.CopyIn;
 import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.PGCopyInputStream;
 import org.postgresql.copy.PGCopyOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +36,7 @@ import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
 import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.storage.BatchSizeController;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.util.ErrorUtils;
 
@@ -205,9 +207,16 @@ public final class JdbcAccessMethod extends AccessMethod {
   }
 
   @Override
-  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema)
-      throws DbException {
+  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema,
+      final int batchTargetBytes) throws DbException {
     Objects.requireNonNull(jdbcConnection, "jdbcConnection");
+    final BatchSizeController batchSizeController = new BatchSizeController(schema, batchTargetBytes);
+    if (jdbcInfo.getDbms().equals(MyriaConstants.STORAGE_SYSTEM_POSTGRESQL) && schema.numColumns() > 0) {
+      Iterator<TupleBatch> tuples = postgresBinaryCopyIterator(queryString, schema, batchSizeController);
+      if (tuples != null) {
+        return tuples;
+      }
+    }
     try {
       Statement statement;
       if (jdbcInfo.getDbms().equals(MyriaConstants.STORAGE_SYSTEM_POSTGRESQL)) {
@@ -217,7 +226,7 @@ public final class JdbcAccessMethod extends AccessMethod {
          */
         jdbcConnection.setAutoCommit(false);
         statement = jdbcConnection.createStatement();
-        statement.setFetchSize(TupleBatch.BATCH_SIZE);
+        statement.setFetchSize(batchSizeController.getBatchSize());
       } else if (jdbcInfo.getDbms().equals(MyriaConstants.STORAGE_SYSTEM_MYSQL)) {
         /*
          * Special handling for MySQL comes from here:
@@ -229,15 +238,61 @@ public final class JdbcAccessMethod extends AccessMethod {
       } else {
         /* Unknown tricks for this DBMS. Hope it works! */
         statement = jdbcConnection.createStatement();
-        statement.setFetchSize(TupleBatch.BATCH_SIZE);
+        statement.setFetchSize(batchSizeController.getBatchSize());
       }
       final ResultSet resultSet = statement.executeQuery(queryString);
-      return new JdbcTupleBatchIterator(resultSet, schema);
+      return new JdbcTupleBatchIterator(resultSet, schema, batchSizeController);
     } catch (final SQLException e) {
       throw ErrorUtils.mergeSQLException(e);
     }
   }
 
+  /**
+   * Helper function to read the result of a query from PostgreSQL using the binary COPY command, which avoids parsing
+   * the text representation of each value.
+   * 
+   * @param queryString the query.
+   * @param schema the schema of the result.
+   * @param batchSizeController chooses the number of tuples in each TupleBatch.
+   * @return an iterator over the result, or null if the query cannot be copied, e.g., if it is not a SELECT.
+   */
+  private Iterator<TupleBatch> postgresBinaryCopyIterator(final String queryString, final Schema schema,
+      final BatchSizeController batchSizeController) {
+    final String copyString = postgresBinaryCopyQuery(queryString, schema);
+    try {
+      PGCopyInputStream copyOut = new PGCopyInputStream((PGConnection) jdbcConnection, copyString);
+      return new PostgresBinaryTupleBatchIterator(copyOut, jdbcConnection, schema, batchSizeController);
+    } catch (final SQLException | IOException | ClassCastException e) {
+      LOGGER.warn("Reading the result of {} over JDBC, since it cannot be copied: {}", queryString, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * @param queryString a query.
+   * @param schema the schema of the result.
+   * @return a COPY command that outputs the result of the query in the binary format, with each column cast to the
+   *         type that matches its type in the schema.
+   */
+  static String postgresBinaryCopyQuery(final String queryString, final Schema schema) {
+    final List<String> aliases = new ArrayList<String>(schema.numColumns());
+    final List<String> columns = new ArrayList<String>(schema.numColumns());
+    for (int i = 0; i < schema.numColumns(); ++i) {
+      final String alias = "c" + i;
+      final String pgType;
+      if (schema.getColumnType(i) == Type.FLOAT_TYPE) {
+        pgType = "REAL";
+      } else {
+        pgType = typeToDbmsType(schema.getColumnType(i), MyriaConstants.STORAGE_SYSTEM_POSTGRESQL);
+      }
+      aliases.add(alias);
+      columns.add("CAST(q." + alias + " AS " + pgType + ")");
+    }
+    return new StringBuilder("COPY (SELECT ").append(Joiner.on(',').join(columns)).append(" FROM (").append(
+        StringUtils.removeEnd(queryString.trim(), ";")).append(") AS q(").append(Joiner.on(',').join(aliases)).append(
+        ")) TO STDOUT WITH BINARY").toString();
+  }
+
   @Override
   public void close() throws DbException {
     /* Close the db connection. */
@@ -600,16 +655,21 @@ class JdbcTupleBatchIterator implements Iterator<TupleBatch> {
   private TupleBatch nextTB = null;
   /** statement is closed or not. */
   private boolean statementClosed = false;
+  /** Chooses the number of tuples in each TupleBatch. */
+  private final BatchSizeController batchSizeController;
 
   /**
    * Constructs a JdbcTupleBatchIterator from the given ResultSet and Schema objects.
    * 
    * @param resultSet the JDBC ResultSet containing the results.
    * @param schema the Schema of the generated TupleBatch objects.
+   * @param batchSizeController chooses the number of tuples in each TupleBatch.
    */
-  JdbcTupleBatchIterator(final ResultSet resultSet, final Schema schema) {
+  JdbcTupleBatchIterator(final ResultSet resultSet, final Schema schema,
+      final BatchSizeController batchSizeController) {
     this.resultSet = resultSet;
     this.schema = schema;
+    this.batchSizeController = batchSizeController;
   }
 
   @Override
@@ -635,9 +695,10 @@ class JdbcTupleBatchIterator implements Iterator<TupleBatch> {
       return null;
     }
     final int numFields = schema.numColumns();
-    final List<ColumnBuilder<?>> columnBuilders = ColumnFactory.allocateColumns(schema);
+    final int batchSize = batchSizeController.getBatchSize();
+    final List<ColumnBuilder<?>> columnBuilders = ColumnFactory.allocateColumns(schema, batchSize);
     int numTuples = 0;
-    for (numTuples = 0; numTuples < TupleBatch.BATCH_SIZE; ++numTuples) {
+    for (numTuples = 0; numTuples < batchSize; ++numTuples) {
       if (!resultSet.next()) {
         final Connection connection = resultSet.getStatement().getConnection();
         resultSet.getStatement().close();
@@ -656,7 +717,9 @@ class JdbcTupleBatchIterator implements Iterator<TupleBatch> {
         columns.add(cb.build());
       }
 
-      return new TupleBatch(schema, columns, numTuples);
+      TupleBatch tb = new TupleBatch(schema, columns, numTuples);
+      batchSizeController.recordBatch(tb);
+      return tb;
     } else {
       return null;
     }
@@ -0,0 +1,276 @@
+package edu.washington.escience.myria.accessmethod;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.google.common.math.LongMath;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.builder.ColumnBuilder;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.storage.BatchSizeController;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Decodes the output of a PostgreSQL <code>COPY ... TO STDOUT WITH BINARY</code> command into TupleBatches. This is
+ * the inverse of {@link edu.washington.escience.myria.PostgresBinaryTupleWriter}: each value is read from the binary
+ * stream straight into the builder of its column, without the text parsing that the JDBC driver does for a
+ * ResultSet. See http://www.postgresql.org/docs/current/interactive/sql-copy.html.
+ *
+ * The types of the copied columns must match the schema exactly, see
+ * {@link JdbcAccessMethod#postgresBinaryCopyQuery(String, Schema)}. This requires integer time stamps.
+ */
+class PostgresBinaryTupleBatchIterator implements Iterator<TupleBatch> {
+  /** The required 11-byte header of the binary format. */
+  private static final byte[] SIGNATURE = "PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1);
+  /** The field count that marks the end of the tuples. */
+  private static final short TRAILER = -1;
+  /** The length that marks a NULL value. */
+  private static final int NULL_LENGTH = -1;
+
+  /** The copied data. */
+  private final DataInputStream input;
+  /** The connection, which is closed after the last tuple, or null. */
+  private final Connection connection;
+  /** The Schema of the TupleBatches returned by this Iterator. */
+  private final Schema schema;
+  /** Chooses the number of tuples in each TupleBatch. */
+  private final BatchSizeController batchSizeController;
+  /** Next TB. */
+  private TupleBatch nextTB = null;
+  /** Whether the trailer has been read. */
+  private boolean done = false;
+
+  /**
+   * Constructs a PostgresBinaryTupleBatchIterator and reads the header of the binary format.
+   *
+   * @param input the output of the COPY command.
+   * @param connection the connection that runs the COPY command, which is closed after the last tuple, or null.
+   * @param schema the Schema of the generated TupleBatch objects.
+   * @param batchSizeController chooses the number of tuples in each TupleBatch.
+   * @throws IOException if the header is invalid.
+   */
+  PostgresBinaryTupleBatchIterator(final InputStream input, final Connection connection, final Schema schema,
+      final BatchSizeController batchSizeController) throws IOException {
+    this.input = new DataInputStream(new BufferedInputStream(input));
+    this.connection = connection;
+    this.schema = schema;
+    this.batchSizeController = batchSizeController;
+
+    byte[] signature = new byte[SIGNATURE.length];
+    this.input.readFully(signature);
+    if (!Arrays.equals(signature, SIGNATURE)) {
+      throw new IOException("Not the binary COPY format of PostgreSQL");
+    }
+    // 32 bit flags, whose bit 16 means that OIDs are included
+    if ((this.input.readInt() & (1 << 16)) != 0) {
+      throw new IOException("Binary COPY data with OIDs is not supported");
+    }
+    // 32 bit header extension area length, followed by the extension
+    int extensionLength = this.input.readInt();
+    if (this.input.skipBytes(extensionLength) != extensionLength) {
+      throw new IOException("Truncated header extension in binary COPY data");
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (nextTB != null) {
+      return true;
+    }
+    try {
+      nextTB = getNextTB();
+      return null != nextTB;
+    } catch (final IOException | SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return next TupleBatch, null if no more
+   * @throws IOException if the data is invalid or cannot be read
+   * @throws SQLException if the connection cannot be closed
+   */
+  private TupleBatch getNextTB() throws IOException, SQLException {
+    if (done) {
+      return null;
+    }
+    final int numFields = schema.numColumns();
+    final int batchSize = batchSizeController.getBatchSize();
+    final List<ColumnBuilder<?>> columnBuilders = ColumnFactory.allocateColumns(schema, batchSize);
+    int numTuples = 0;
+    for (numTuples = 0; numTuples < batchSize; ++numTuples) {
+      // 16 bit integer number of fields, or the trailer
+      short fieldCount = input.readShort();
+      if (fieldCount == TRAILER) {
+        input.close();
+        if (connection != null) {
+          connection.close();
+        }
+        done = true;
+        break;
+      }
+      if (fieldCount != numFields) {
+        throw new IOException("Expected " + numFields + " fields per tuple in binary COPY data, found " + fieldCount);
+      }
+      for (int colIdx = 0; colIdx < numFields; ++colIdx) {
+        readValue(columnBuilders.get(colIdx), colIdx);
+      }
+    }
+    if (numTuples > 0) {
+      List<Column<?>> columns = new ArrayList<Column<?>>(columnBuilders.size());
+      for (ColumnBuilder<?> cb : columnBuilders) {
+        columns.add(cb.build());
+      }
+
+      TupleBatch tb = new TupleBatch(schema, columns, numTuples);
+      batchSizeController.recordBatch(tb);
+      return tb;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Read one value and append it to the builder of its column. Like the JDBC getters, a NULL number is read as 0 and a
+   * NULL boolean as false.
+   *
+   * @param builder the builder of the column.
+   * @param column the index of the column.
+   * @throws IOException if the value is invalid or cannot be read.
+   */
+  private void readValue(final ColumnBuilder<?> builder, final int column) throws IOException {
+    // 32 bit integer for length of value
+    // n bytes value
+    final int length = input.readInt();
+    if (length == NULL_LENGTH) {
+      switch (schema.getColumnType(column)) {
+        case BOOLEAN_TYPE:
+          builder.appendBoolean(false);
+          return;
+        case DOUBLE_TYPE:
+          builder.appendDouble(0);
+          return;
+        case FLOAT_TYPE:
+          builder.appendFloat(0);
+          return;
+        case INT_TYPE:
+          builder.appendInt(0);
+          return;
+        case LONG_TYPE:
+          builder.appendLong(0);
+          return;
+        default:
+          throw new IOException("Unexpected NULL in column " + schema.getColumnName(column));
+      }
+    }
+
+    switch (schema.getColumnType(column)) {
+      case BOOLEAN_TYPE:
+        checkLength(length, 1, column);
+        builder.appendBoolean(input.readByte() != 0);
+        break;
+      case DOUBLE_TYPE:
+        checkLength(length, 8, column);
+        builder.appendDouble(input.readDouble());
+        break;
+      case FLOAT_TYPE:
+        checkLength(length, 4, column);
+        builder.appendFloat(input.readFloat());
+        break;
+      case INT_TYPE:
+        checkLength(length, 4, column);
+        builder.appendInt(input.readInt());
+        break;
+      case LONG_TYPE:
+        checkLength(length, 8, column);
+        builder.appendLong(input.readLong());
+        break;
+      case DATETIME_TYPE:
+        // microseconds since pg time 0, 2000-01-01 00:00:00, in local time
+        checkLength(length, 8, column);
+        long micros = input.readLong();
+        long secs = toJavaSecs(LongMath.divide(micros, TimeUnit.SECONDS.toMicros(1), RoundingMode.FLOOR));
+        long localMillis =
+            TimeUnit.SECONDS.toMillis(secs)
+                + TimeUnit.MICROSECONDS.toMillis(LongMath.mod(micros, TimeUnit.SECONDS.toMicros(1)));
+        // undo the time zone offset that PostgresBinaryTupleWriter adds
+        builder.appendDateTime(new DateTime(DateTimeZone.getDefault().convertLocalToUTC(localMillis, false)));
+        break;
+      case STRING_TYPE:
+        byte[] utf8Bytes = new byte[length];
+        input.readFully(utf8Bytes);
+        builder.appendString(new String(utf8Bytes, StandardCharsets.UTF_8));
+        break;
+    }
+  }
+
+  /**
+   * @param length the length of a value in the data.
+   * @param expected the length of the binary representation of the type of the column.
+   * @param column the index of the column.
+   * @throws IOException if the lengths differ.
+   */
+  private void checkLength(final int length, final int expected, final int column) throws IOException {
+    if (length != expected) {
+      throw new IOException("Expected " + expected + " bytes for a value of column " + schema.getColumnName(column)
+          + " of type " + schema.getColumnType(column) + ", found " + length);
+    }
+  }
+
+  /**
+   * Converts the given postgresql seconds to java seconds. The inverse of the conversion in
+   * {@link edu.washington.escience.myria.PostgresBinaryTupleWriter}, valid for any year 100 BC onwards.
+   *
+   * from /org/postgresql/jdbc2/TimestampUtils.java
+   *
+   * @param seconds Postgresql seconds.
+   * @return Java seconds.
+   */
+  @SuppressWarnings("checkstyle:magicnumber")
+  private static long toJavaSecs(final long seconds) {
+    long secs = seconds;
+    // postgres epoc to java epoc
+    secs += 946684800L;
+
+    // Julian/Greagorian calendar cutoff point
+    if (secs < -12219292800L) { // October 4, 1582 -> October 15, 1582
+      secs += 86400 * 10;
+      if (secs < -14825808000L) { // 1500-02-28 -> 1500-03-01
+        int extraLeaps = (int) ((secs + 14825808000L) / 3155760000L);
+        extraLeaps--;
+        extraLeaps -= extraLeaps / 4;
+        secs += extraLeaps * 86400L;
+      }
+    }
+
+    return secs;
+  }
+
+  @Override
+  public TupleBatch next() {
+    TupleBatch tmp = nextTB;
+    nextTB = null;
+    return tmp;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException("PostgresBinaryTupleBatchIterator.remove()");
+  }
+}
@@ -28,6 +28,7 @@ import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
 import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.storage.BatchSizeController;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
@@ -189,8 +190,8 @@ public final class SQLiteAccessMethod extends AccessMethod {
   private static final int MAX_RETRY_ATTEMPTS = 1000;
 
   @Override
-  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema)
-      throws DbException {
+  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema,
+      final int batchTargetBytes) throws DbException {
     Objects.requireNonNull(sqliteConnection);
     Objects.requireNonNull(schema);
 
@@ -232,7 +233,8 @@ public final class SQLiteAccessMethod extends AccessMethod {
       throw new DbException(e);
     }
 
-    return new SQLiteTupleBatchIterator(statement, schema, sqliteConnection);
+    return new SQLiteTupleBatchIterator(statement, schema, sqliteConnection, new BatchSizeController(schema,
+        batchTargetBytes));
   }
 
   @Override
@@ -471,6 +473,8 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
   private final SQLiteConnection connection;
   /** The Schema of the TupleBatches returned by this Iterator. */
   private final Schema schema;
+  /** Chooses the number of tuples in each TupleBatch. */
+  private final BatchSizeController batchSizeController;
 
   /**
    * Wraps a SQLiteStatement result set in an Iterator<TupleBatch>.
@@ -478,11 +482,14 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
    * @param statement the SQLiteStatement containing the results.
    * @param schema the Schema describing the format of the TupleBatch containing these results.
    * @param connection the connection to the SQLite database.
+   * @param batchSizeController chooses the number of tuples in each TupleBatch.
    */
-  SQLiteTupleBatchIterator(final SQLiteStatement statement, final Schema schema, final SQLiteConnection connection) {
+  SQLiteTupleBatchIterator(final SQLiteStatement statement, final Schema schema, final SQLiteConnection connection,
+      final BatchSizeController batchSizeController) {
     this.statement = statement;
     this.connection = connection;
     this.schema = schema;
+    this.batchSizeController = batchSizeController;
   }
 
   /**
@@ -501,6 +508,7 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
         statement.step();
       }
       this.schema = schema;
+      batchSizeController = new BatchSizeController(schema, MyriaConstants.DEFAULT_BATCH_TARGET_BYTES);
     } catch (final SQLiteException e) {
       throw new RuntimeException(e);
     }
@@ -520,15 +528,16 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
   public TupleBatch next() {
     /* Allocate TupleBatch parameters */
     final int numFields = schema.numColumns();
-    final List<ColumnBuilder<?>> columnBuilders = ColumnFactory.allocateColumns(schema);
+    final int batchSize = batchSizeController.getBatchSize();
+    final List<ColumnBuilder<?>> columnBuilders = ColumnFactory.allocateColumns(schema, batchSize);
 
     /**
-     * Loop through resultSet, adding one row at a time. Stop when numTuples hits BATCH_SIZE or there are no more
+     * Loop through resultSet, adding one row at a time. Stop when numTuples hits the batch size or there are no more
      * results.
      */
     int numTuples;
     try {
-      for (numTuples = 0; numTuples < TupleBatch.BATCH_SIZE && statement.hasRow(); ++numTuples) {
+      for (numTuples = 0; numTuples < batchSize && statement.hasRow(); ++numTuples) {
         for (int column = 0; column < numFields; ++column) {
           columnBuilders.get(column).appendFromSQLite(statement, column);
         }
@@ -544,7 +553,9 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
       columns.add(cb.build());
     }
 
-    return new TupleBatch(schema, columns, numTuples);
+    TupleBatch tb = new TupleBatch(schema, columns, numTuples);
+    batchSizeController.recordBatch(tb);
+    return tb;
   }
 
   @Override
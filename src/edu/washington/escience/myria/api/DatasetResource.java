@@ -1,11 +1,15 @@
 package edu.washington.escience.myria.api;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.ws.rs.Consumes;
@@ -36,25 +40,31 @@ import com.wordnik.swagger.annotations.ApiOperation;
 import com.wordnik.swagger.annotations.ApiResponse;
 import com.wordnik.swagger.annotations.ApiResponses;
 
+import edu.washington.escience.myria.ColumnarStreamTupleWriter;
 import edu.washington.escience.myria.CsvTupleWriter;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.JsonTupleWriter;
 import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.ParallelTupleWriter;
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.TupleWriter;
 import edu.washington.escience.myria.accessmethod.AccessMethod.IndexRef;
 import edu.washington.escience.myria.api.encoding.DatasetEncoding;
 import edu.washington.escience.myria.api.encoding.DatasetStatus;
+import edu.washington.escience.myria.api.encoding.ParallelDatasetEncoding;
 import edu.washington.escience.myria.api.encoding.TipsyDatasetEncoding;
 import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.io.InputStreamSource;
 import edu.washington.escience.myria.operator.BinaryFileScan;
+import edu.washington.escience.myria.operator.EmptyRelation;
 import edu.washington.escience.myria.operator.FileScan;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.TipsyFileScan;
+import edu.washington.escience.myria.operator.UnionAll;
 import edu.washington.escience.myria.parallel.Server;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.MyriaUtils;
 
 /**
  * This is the class that handles API calls to create or fetch datasets.
@@ -136,14 +146,26 @@ public final class DatasetResource {
     if (cleanFormat.equals("json")) {
       return cleanFormat;
     }
-    throw new MyriaApiException(Status.BAD_REQUEST, "format must be 'csv', 'tsv', or 'json'");
+    /* Columnar is legal */
+    if (cleanFormat.equals("columnar")) {
+      return cleanFormat;
+    }
+    throw new MyriaApiException(Status.BAD_REQUEST, "format must be 'csv', 'tsv', 'json', or 'columnar'");
+  }
+
+  /**
+   * @return the number of threads that encode the tuples of a download.
+   */
+  private static int encodingThreads() {
+    return Math.min(MyriaConstants.MAX_ENCODING_THREADS, Runtime.getRuntime().availableProcessors());
   }
 
   /**
    * @param userName the user who owns the target relation.
    * @param programName the program to which the target relation belongs.
    * @param relationName the name of the target relation.
-   * @param format the format of the output data. Valid options are (case-insensitive) "csv", "tsv", and "json".
+   * @param format the format of the output data. Valid options are (case-insensitive) "csv", "tsv", "json",
+   *          and "columnar".
    * @return metadata about the specified relation.
    * @throws DbException if there is an error in the database.
    */
@@ -170,7 +192,7 @@ public final class DatasetResource {
     PipedOutputStream writerOutput = new PipedOutputStream();
     PipedInputStream input;
     try {
-      input = new PipedInputStream(writerOutput, MyriaConstants.DEFAULT_PIPED_INPUT_STREAM_SIZE);
+      input = new PipedInputStream(writerOutput, MyriaConstants.DOWNLOAD_PIPE_SIZE);
     } catch (IOException e) {
       throw new DbException(e);
     }
@@ -186,9 +208,9 @@ public final class DatasetResource {
       /* CSV or TSV : set application/octet-stream, attachment, and filename. */
       try {
         if (validFormat.equals("csv")) {
-          writer = new CsvTupleWriter(writerOutput);
+          writer = new ParallelTupleWriter(new CsvTupleWriter(writerOutput), encodingThreads());
         } else {
-          writer = new CsvTupleWriter('\t', writerOutput);
+          writer = new ParallelTupleWriter(new CsvTupleWriter('\t', writerOutput), encodingThreads());
         }
       } catch (IOException e) {
         throw new DbException(e);
@@ -201,7 +223,24 @@ public final class DatasetResource {
     } else if (validFormat.equals("json")) {
       /* JSON: set application/json. */
       response.type(MyriaApiConstants.JSON_UTF_8);
-      writer = new JsonTupleWriter(writerOutput);
+      writer = new ParallelTupleWriter(new JsonTupleWriter(writerOutput), encodingThreads());
+    } else if (validFormat.equals("columnar")) {
+      /* Columnar: set application/octet-stream, attachment, and filename. */
+      Schema schema;
+      try {
+        schema = server.getSchema(relationKey);
+      } catch (CatalogException e) {
+        throw new DbException(e);
+      }
+      if (schema == null) {
+        throw new MyriaApiException(Status.NOT_FOUND, "That dataset was not found");
+      }
+      writer = new ColumnarStreamTupleWriter(writerOutput, schema);
+      ContentDisposition contentDisposition =
+          ContentDisposition.type("attachment").fileName(relationKey.toString() + ".columnar").build();
+
+      response.header("Content-Disposition", contentDisposition);
+      response.type(MediaType.APPLICATION_OCTET_STREAM);
     } else {
       /* Should not be possible to get here. */
       throw new IllegalStateException("format should have been validated by now, and yet we got here");
@@ -214,6 +253,46 @@ public final class DatasetResource {
     return response.build();
   }
 
+  /**
+   * Export a relation to a directory of a shared file system, without sending it through the master: each worker
+   * writes its partition of the relation to its own file in the directory.
+   * 
+   * @param userName the user who owns the target relation.
+   * @param programName the program to which the target relation belongs.
+   * @param relationName the name of the target relation.
+   * @param format the format of the files. Valid options are (case-insensitive) "csv", "tsv", "json",
+   *          and "columnar".
+   * @param path the absolute path of the directory, which must be shared by the workers.
+   * @return the file written by each worker.
+   * @throws DbException if there is an error in the database.
+   */
+  @POST
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("/user-{userName}/program-{programName}/relation-{relationName}/export")
+  public Response exportDataset(@PathParam("userName") final String userName,
+      @PathParam("programName") final String programName, @PathParam("relationName") final String relationName,
+      @QueryParam("format") final String format, @QueryParam("path") final String path) throws DbException {
+    RelationKey relationKey = RelationKey.of(userName, programName, relationName);
+    String validFormat = validateFormat(format);
+    if (path == null || !new File(path).isAbsolute()) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "path must be an absolute path shared by the workers");
+    }
+    try {
+      if (server.getSchema(relationKey) == null) {
+        throw new MyriaApiException(Status.NOT_FOUND, "That dataset was not found");
+      }
+    } catch (CatalogException e) {
+      throw new DbException(e);
+    }
+
+    try {
+      return Response.ok(server.exportDataset(relationKey, path, validFormat)).build();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Response.status(Status.SERVICE_UNAVAILABLE).entity("Interrupted").build();
+    }
+  }
+
   /**
    * @param numTB the number of {@link TupleBatch}es to download from each worker.
    * @param format the format of the output data. Valid options are (case-insensitive) "csv", "tsv", and "json".
@@ -230,6 +309,9 @@ public final class DatasetResource {
 
     /* Validate the request format. This will throw a MyriaApiException if format is invalid. */
     String validFormat = validateFormat(format);
+    if (validFormat.equals("columnar")) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "format must be 'csv', 'tsv', or 'json'");
+    }
 
     /*
      * Allocate the pipes by which the {@link DataOutput} operator will talk to the {@link StreamingOutput} object that
@@ -238,7 +320,7 @@ public final class DatasetResource {
     PipedOutputStream writerOutput = new PipedOutputStream();
     PipedInputStream input;
     try {
-      input = new PipedInputStream(writerOutput, MyriaConstants.DEFAULT_PIPED_INPUT_STREAM_SIZE);
+      input = new PipedInputStream(writerOutput, MyriaConstants.DOWNLOAD_PIPE_SIZE);
     } catch (IOException e) {
       throw new DbException(e);
     }
@@ -254,9 +336,9 @@ public final class DatasetResource {
       /* CSV or TSV : set application/octet-stream, attachment, and filename. */
       try {
         if (validFormat.equals("csv")) {
-          writer = new CsvTupleWriter(writerOutput);
+          writer = new ParallelTupleWriter(new CsvTupleWriter(writerOutput), encodingThreads());
         } else {
-          writer = new CsvTupleWriter('\t', writerOutput);
+          writer = new ParallelTupleWriter(new CsvTupleWriter('\t', writerOutput), encodingThreads());
         }
       } catch (IOException e) {
         throw new DbException(e);
@@ -269,7 +351,7 @@ public final class DatasetResource {
     } else if (validFormat.equals("json")) {
       /* JSON: set application/json. */
       response.type(MyriaApiConstants.JSON_UTF_8);
-      writer = new JsonTupleWriter(writerOutput);
+      writer = new ParallelTupleWriter(new JsonTupleWriter(writerOutput), encodingThreads());
     } else {
       /* Should not be possible to get here. */
       throw new IllegalStateException("format should have been validated by now, and yet we got here");
@@ -401,7 +483,34 @@ public final class DatasetResource {
    */
   private Response doIngest(final RelationKey relationKey, final Operator source, final Set<Integer> workers,
       final List<List<IndexRef>> indexes, final Boolean overwrite, final ResponseBuilder builder) throws DbException {
+    Set<Integer> actualWorkers = checkIngest(relationKey, workers, overwrite);
 
+    /* Do the ingest, blocking until complete. */
+    DatasetStatus status = null;
+    try {
+      status = server.ingestDataset(relationKey, actualWorkers, indexes, source);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Response.status(Status.SERVICE_UNAVAILABLE).entity("Interrupted").build();
+    }
+
+    /* In the response, tell the client the path to the relation. */
+    URI datasetUri = getCanonicalResourcePath(uriInfo, relationKey);
+    status.setUri(datasetUri);
+    return builder.entity(status).build();
+  }
+
+  /**
+   * Check that a dataset can be ingested.
+   * 
+   * @param relationKey the destination relation for the data
+   * @param workers the workers on which the data will be stored, or null for all alive workers
+   * @param overwrite whether an existing relation should be overwritten
+   * @return the workers on which the data will be stored
+   * @throws DbException on any error
+   */
+  private Set<Integer> checkIngest(final RelationKey relationKey, final Set<Integer> workers, final Boolean overwrite)
+      throws DbException {
     /* Validate the workers that will ingest this dataset. */
     if (server.getAliveWorkers().size() == 0) {
       throw new MyriaApiException(Status.SERVICE_UNAVAILABLE, "There are no alive workers to receive this dataset.");
@@ -424,20 +533,60 @@ public final class DatasetResource {
     } catch (CatalogException e) {
       throw new DbException(e);
     }
+    return actualWorkers;
+  }
+
+  /**
+   * Ingest a dataset without sending it through the master: each worker reads a part of a shared source, or some of a
+   * list of sources, and inserts the tuples into its own database. Each worker logs its progress.
+   * 
+   * @param dataset the dataset to be ingested.
+   * @return the created dataset resource.
+   * @throws DbException if there is an error in the database.
+   */
+  @POST
+  @Path("/parallel")
+  @Consumes(MediaType.APPLICATION_JSON)
+  public Response newDatasetParallel(final ParallelDatasetEncoding dataset) throws DbException {
+    dataset.validate();
+    int[] workers = MyriaUtils.integerSetToIntArray(checkIngest(dataset.relationKey, dataset.workers,
+        dataset.overwrite));
+
+    Map<Integer, Operator> workerSources = new HashMap<>();
+    for (int i = 0; i < workers.length; ++i) {
+      Operator scan;
+      if (dataset.source != null) {
+        scan = new FileScan(dataset.source, dataset.schema, dataset.delimiter, dataset.quote, dataset.escape,
+            dataset.numberOfSkippedLines, dataset.numSplitsPerWorker, i, workers.length);
+      } else {
+        /* Spread the sources over the workers, round robin. */
+        List<Operator> scans = new ArrayList<>();
+        for (int j = i; j < dataset.sources.size(); j += workers.length) {
+          scans.add(new FileScan(dataset.sources.get(j), dataset.schema, dataset.delimiter, dataset.quote,
+              dataset.escape, dataset.numberOfSkippedLines, dataset.numSplitsPerWorker));
+        }
+        if (scans.isEmpty()) {
+          scan = EmptyRelation.of(dataset.schema);
+        } else if (scans.size() == 1) {
+          scan = scans.get(0);
+        } else {
+          scan = new UnionAll(scans.toArray(new Operator[scans.size()]));
+        }
+      }
+      workerSources.put(workers[i], scan);
+    }
 
-    /* Do the ingest, blocking until complete. */
     DatasetStatus status = null;
     try {
-      status = server.ingestDataset(relationKey, actualWorkers, indexes, source);
+      status = server.parallelIngestDataset(dataset.relationKey, dataset.indexes, workerSources);
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       return Response.status(Status.SERVICE_UNAVAILABLE).entity("Interrupted").build();
     }
 
-    /* In the response, tell the client the path to the relation. */
-    URI datasetUri = getCanonicalResourcePath(uriInfo, relationKey);
+    URI datasetUri = getCanonicalResourcePath(uriInfo, dataset.relationKey);
     status.setUri(datasetUri);
-    return builder.entity(status).build();
+    return Response.created(datasetUri).entity(status).build();
   }
 
   /**
@@ -113,6 +113,19 @@ public final class QueryResource {
         .build();
   }
 
+  /**
+   * Get the state of the query scheduler: the running and queued queries, the queue-wait and run-time statistics of
+   * each priority class, and the latest load reported by each worker.
+   * 
+   * @return the state of the query scheduler.
+   */
+  @GET
+  @Path("scheduler")
+  public Response getSchedulerStatus() {
+    return Response.ok().cacheControl(MyriaApiUtils.doNotCache()).entity(server.getQueryManager().getSchedulerStatus())
+        .build();
+  }
+
   /**
    * Get information about a query. This includes when it started, when it finished, its URL, etc.
    * 
@@ -2,14 +2,16 @@ package edu.washington.escience.myria.api.encoding;
 
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.operator.agg.Aggregate;
+import edu.washington.escience.myria.operator.agg.AggregationPhase;
 import edu.washington.escience.myria.operator.agg.AggregatorFactory;
 
 public class AggregateEncoding extends UnaryOperatorEncoding<Aggregate> {
   @Required
   public AggregatorFactory[] aggregators;
+  public AggregationPhase argPhase = AggregationPhase.COMPLETE;
 
   @Override
   public Aggregate construct(ConstructArgs args) {
-    return new Aggregate(null, aggregators);
+    return new Aggregate(null, argPhase, aggregators);
   }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package edu.washington.escience.myria.api.encoding;
+
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.ColumnarFileInsert;
+
+/**
+ * A JSON-able wrapper for the expected wire message for materializing a relation in a columnar file.
+ */
+public class ColumnarFileInsertEncoding extends UnaryOperatorEncoding<ColumnarFileInsert> {
+  /** The path of the file, absolute or relative to the columnar directory of each worker. */
+  @Required
+  public String filename;
+
+  @Override
+  public ColumnarFileInsert construct(ConstructArgs args) {
+    return new ColumnarFileInsert(null, filename);
+  }
+}
@@ -0,0 +1,33 @@
+package edu.washington.escience.myria.api.encoding;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.ColumnarFileScan;
+
+/**
+ * A JSON-able wrapper for the expected wire message for a scan of a columnar file.
+ */
+public class ColumnarFileScanEncoding extends LeafOperatorEncoding<ColumnarFileScan> {
+  /** The schema of the relation stored in the file. */
+  @Required
+  public Schema schema;
+  /** The path of the file, absolute or relative to the columnar directory of each worker. */
+  @Required
+  public String filename;
+  /** The column whose zone maps are used to skip segments. If null, all segments are read. */
+  public Integer argRangeColumn;
+  /** The lower bound of the values of argRangeColumn looked for, inclusive. */
+  public Double argRangeMin;
+  /** The upper bound of the values of argRangeColumn looked for, inclusive. */
+  public Double argRangeMax;
+
+  @Override
+  public ColumnarFileScan construct(ConstructArgs args) {
+    if (argRangeColumn == null) {
+      return new ColumnarFileScan(schema, filename);
+    }
+    double min = argRangeMin == null ? Double.NEGATIVE_INFINITY : argRangeMin;
+    double max = argRangeMax == null ? Double.POSITIVE_INFINITY : argRangeMax;
+    return new ColumnarFileScan(schema, filename, argRangeColumn, min, max);
+  }
+}
@@ -14,9 +14,10 @@ public class FileScanEncoding extends LeafOperatorEncoding<FileScan> {
   public Character quote;
   public Character escape;
   public Integer skip;
+  public Integer numSplits;
 
   @Override
   public FileScan construct(ConstructArgs args) {
-    return new FileScan(source, schema, delimiter, quote, escape, skip);
+    return new FileScan(source, schema, delimiter, quote, escape, skip, numSplits);
   }
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package edu.washington.escience.myria.api.encoding;
+
+import java.util.List;
+
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.operator.FusedPipeline;
+
+public class FusedPipelineEncoding extends UnaryOperatorEncoding<FusedPipeline> {
+
+  /** The predicates that a tuple must satisfy to be output, over the schema of the child. */
+  @Required
+  public List<Expression> argPredicates;
+  /** The expressions that compute the output columns from the schema of the child. optional. */
+  public List<Expression> emitExpressions;
+
+  @Override
+  public FusedPipeline construct(final ConstructArgs args) {
+    return new FusedPipeline(null, argPredicates, emitExpressions);
+  }
+}
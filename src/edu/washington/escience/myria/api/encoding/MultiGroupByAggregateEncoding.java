@@ -1,6 +1,7 @@
 package edu.washington.escience.myria.api.encoding;
 
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.agg.AggregationPhase;
 import edu.washington.escience.myria.operator.agg.AggregatorFactory;
 import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
 
@@ -10,9 +11,10 @@ public class MultiGroupByAggregateEncoding extends UnaryOperatorEncoding<MultiGr
   public int[] argGroupFields;
   @Required
   public AggregatorFactory[] aggregators;
+  public AggregationPhase argPhase = AggregationPhase.COMPLETE;
 
   @Override
   public MultiGroupByAggregate construct(ConstructArgs args) {
-    return new MultiGroupByAggregate(null, argGroupFields, aggregators);
+    return new MultiGroupByAggregate(null, argGroupFields, argPhase, aggregators);
   }
 }
@@ -27,13 +27,17 @@ import edu.washington.escience.myria.operator.Operator;
     @Type(name = "BroadcastProducer", value = BroadcastProducerEncoding.class),
     @Type(name = "CollectConsumer", value = CollectConsumerEncoding.class),
     @Type(name = "CollectProducer", value = CollectProducerEncoding.class),
+    @Type(name = "ColumnarFileInsert", value = ColumnarFileInsertEncoding.class),
+    @Type(name = "ColumnarFileScan", value = ColumnarFileScanEncoding.class),
     @Type(name = "Consumer", value = ConsumerEncoding.class), @Type(name = "Counter", value = CounterEncoding.class),
     @Type(name = "DbInsert", value = DbInsertEncoding.class),
     @Type(name = "DbQueryScan", value = QueryScanEncoding.class),
     @Type(name = "Difference", value = DifferenceEncoding.class),
     @Type(name = "DupElim", value = DupElimEncoding.class), @Type(name = "Empty", value = EmptyRelationEncoding.class),
     @Type(name = "EOSController", value = EOSControllerEncoding.class),
+    @Type(name = "ExternalOrderBy", value = ExternalOrderByEncoding.class),
     @Type(name = "FileScan", value = FileScanEncoding.class), @Type(name = "Filter", value = FilterEncoding.class),
+    @Type(name = "FusedPipeline", value = FusedPipelineEncoding.class),
     @Type(name = "HyperShuffleProducer", value = HyperShuffleProducerEncoding.class),
     @Type(name = "HyperShuffleConsumer", value = HyperShuffleConsumerEncoding.class),
     @Type(name = "IDBController", value = IDBControllerEncoding.class),
@@ -45,6 +49,7 @@ import edu.washington.escience.myria.operator.Operator;
     @Type(name = "Merge", value = MergeEncoding.class), @Type(name = "MergeJoin", value = MergeJoinEncoding.class),
     @Type(name = "MultiGroupByAggregate", value = MultiGroupByAggregateEncoding.class),
     @Type(name = "NChiladaFileScan", value = NChiladaFileScanEncoding.class),
+    @Type(name = "ParallelPipeline", value = ParallelPipelineEncoding.class),
     @Type(name = "RightHashCountingJoin", value = RightHashCountingJoinEncoding.class),
     @Type(name = "RightHashJoin", value = RightHashJoinEncoding.class),
     @Type(name = "SeaFlowScan", value = SeaFlowFileScanEncoding.class),
@@ -62,6 +67,7 @@ import edu.washington.escience.myria.operator.Operator;
     @Type(name = "TempInsert", value = TempInsertEncoding.class),
     @Type(name = "TempTableScan", value = TempTableScanEncoding.class),
     @Type(name = "TipsyFileScan", value = TipsyFileScanEncoding.class),
+    @Type(name = "TopK", value = TopKEncoding.class),
     @Type(name = "UnionAll", value = UnionAllEncoding.class) })
 public abstract class OperatorEncoding<T extends Operator> extends MyriaApiEncoding {
 
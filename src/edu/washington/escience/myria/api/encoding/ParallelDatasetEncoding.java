@@ -0,0 +1,53 @@
+package edu.washington.escience.myria.api.encoding;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.accessmethod.AccessMethod.IndexRef;
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.io.DataSource;
+import edu.washington.escience.myria.io.SplittableDataSource;
+
+/**
+ * A dataset that the workers ingest directly, without sending the data through the master. Either every worker reads a
+ * part of one shared source, or the data is already split into several sources that are spread over the workers.
+ */
+public class ParallelDatasetEncoding extends MyriaApiEncoding {
+  @Required
+  public RelationKey relationKey;
+  @Required
+  public Schema schema;
+  public Set<Integer> workers;
+  /** A source that every worker can read, such as a file on a shared file system. Each worker reads a part of it. */
+  public DataSource source;
+  /** Sources that are each read whole by one worker. */
+  public List<DataSource> sources;
+  public Character delimiter;
+  public Character escape;
+  public Integer numberOfSkippedLines;
+  public Character quote;
+  public List<List<IndexRef>> indexes;
+  public Boolean overwrite;
+  /** The number of byte ranges each worker parses in parallel. */
+  public Integer numSplitsPerWorker;
+
+  @Override
+  protected void validateExtra() throws MyriaApiException {
+    if ((source == null) == (sources == null)) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "Exactly one of source and sources must be given.");
+    }
+    if (source != null && !(source instanceof SplittableDataSource)) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "The source must be a file or a URI that can be split.");
+    }
+    if (sources != null && sources.isEmpty()) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "The list of sources must not be empty.");
+    }
+    if (numSplitsPerWorker != null && numSplitsPerWorker <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "numSplitsPerWorker must be positive.");
+    }
+  }
+}
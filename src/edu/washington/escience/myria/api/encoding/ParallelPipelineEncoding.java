@@ -0,0 +1,32 @@
+package edu.washington.escience.myria.api.encoding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.MoreObjects;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.ParallelPipeline;
+
+public class ParallelPipelineEncoding extends UnaryOperatorEncoding<ParallelPipeline> {
+
+  /** The unary operators of the pipeline, from the bottom up. Their argChild fields are ignored. */
+  @Required
+  public List<UnaryOperatorEncoding<?>> argStages;
+  /** The number of threads, or 0 to use one per processor. optional. */
+  public int argNumThreads = 0;
+
+  @Override
+  public ParallelPipeline construct(final ConstructArgs args) throws MyriaApiException {
+    List<Operator> stages = new ArrayList<Operator>(argStages.size());
+    for (UnaryOperatorEncoding<?> stage : argStages) {
+      Operator op = stage.construct(args);
+      op.setOpName(MoreObjects.firstNonNull(stage.opName, "Operator" + String.valueOf(stage.opId)));
+      op.setOpId(stage.opId);
+      stages.add(op);
+    }
+    return new ParallelPipeline(null, stages, argNumThreads);
+  }
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -29,6 +30,10 @@ import edu.washington.escience.myria.api.MyriaApiException;
 import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.expression.ConstantExpression;
 import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.ExpressionOperator;
+import edu.washington.escience.myria.expression.Expressions;
+import edu.washington.escience.myria.expression.RandomExpression;
+import edu.washington.escience.myria.expression.TypeOfExpression;
 import edu.washington.escience.myria.expression.VariableExpression;
 import edu.washington.escience.myria.operator.Apply;
 import edu.washington.escience.myria.operator.DbQueryScan;
@@ -36,14 +41,19 @@ import edu.washington.escience.myria.operator.IDBController;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.RootOperator;
 import edu.washington.escience.myria.operator.SinkRoot;
+import edu.washington.escience.myria.operator.TopK;
 import edu.washington.escience.myria.operator.UpdateCatalog;
+import edu.washington.escience.myria.operator.agg.AggregationPhase;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
 import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
 import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
 import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
+import edu.washington.escience.myria.operator.agg.UserDefinedAggregatorFactory;
 import edu.washington.escience.myria.operator.network.CollectConsumer;
 import edu.washington.escience.myria.operator.network.CollectProducer;
 import edu.washington.escience.myria.operator.network.Consumer;
 import edu.washington.escience.myria.operator.network.EOSController;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction;
 import edu.washington.escience.myria.parallel.ExchangePairID;
 import edu.washington.escience.myria.parallel.JsonSubQuery;
 import edu.washington.escience.myria.parallel.RelationWriteMetadata;
@@ -66,6 +76,17 @@ public class QueryConstruct {
    */
   public static Map<Integer, SubQueryPlan> instantiate(final List<PlanFragmentEncoding> fragments,
       final ConstructArgs args) throws CatalogException {
+    checkSpreadHeavyHitters(fragments);
+    /* Replace full sorts that are followed by a limit with top-K operators. */
+    useTopK(fragments);
+    /* Optionally, compile chains of filters and projections into single operators. */
+    if (args.isFuseOperators()) {
+      fusePipelines(fragments);
+    }
+    /* Optionally, run pipelines on several threads of each worker. */
+    if (args.getPipelineThreads() > 0) {
+      useParallelPipelines(fragments, args.getPipelineThreads());
+    }
     /* First, we need to know which workers run on each plan. */
     setupWorkersForFragments(fragments, args);
     /* Next, we need to know which pipes (operators) are produced and consumed on which workers. */
@@ -99,18 +120,587 @@ public class QueryConstruct {
     return plan;
   }
 
+  /**
+   * Check that every shuffle that spreads heavy hitters round-robin (see {@link SkewAwareHashPartitionFunction})
+   * feeds a hash join directly. Spreading the keys of any other consumer, e.g., the groups of an aggregate, would split
+   * tuples that must meet on one worker.
+   * 
+   * @param fragments the JSON-encoded query fragments.
+   */
+  static void checkSpreadHeavyHitters(final List<PlanFragmentEncoding> fragments) {
+    Map<Integer, OperatorEncoding<?>> parents = new HashMap<Integer, OperatorEncoding<?>>();
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> op : fragment.operators) {
+        if (op instanceof UnaryOperatorEncoding) {
+          parents.put(((UnaryOperatorEncoding<?>) op).argChild, op);
+        } else if (op instanceof BinaryOperatorEncoding) {
+          parents.put(((BinaryOperatorEncoding<?>) op).argChild1, op);
+          parents.put(((BinaryOperatorEncoding<?>) op).argChild2, op);
+        } else if (op instanceof NaryOperatorEncoding) {
+          for (Integer child : ((NaryOperatorEncoding<?>) op).argChildren) {
+            parents.put(child, op);
+          }
+        }
+      }
+    }
+    Set<Integer> spreading = new HashSet<Integer>();
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> op : fragment.operators) {
+        if (op instanceof ShuffleProducerEncoding
+            && ((ShuffleProducerEncoding) op).argPf instanceof SkewAwareHashPartitionFunction) {
+          SkewAwareHashPartitionFunction pf = (SkewAwareHashPartitionFunction) ((ShuffleProducerEncoding) op).argPf;
+          if (pf.hasHeavyHitters() && !pf.isBroadcastHeavyHitters()) {
+            spreading.add(op.opId);
+          }
+        }
+      }
+    }
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> op : fragment.operators) {
+        if (!(op instanceof AbstractConsumerEncoding)) {
+          continue;
+        }
+        Integer producer = ((AbstractConsumerEncoding<?>) op).getArgOperatorId();
+        if (spreading.contains(producer)) {
+          OperatorEncoding<?> parent = parents.get(op.opId);
+          Preconditions.checkArgument(parent instanceof SymmetricHashJoinEncoding
+              || parent instanceof RightHashJoinEncoding || parent instanceof SymmetricHashCountingJoinEncoding
+              || parent instanceof RightHashCountingJoinEncoding,
+              "shuffle %s spreads heavy hitters, but its consumer %s does not feed a hash join", producer, op.opId);
+        }
+      }
+    }
+  }
+
+  /**
+   * Rewrite the plan to use {@link TopK} where it avoids sorting a whole relation. Within a fragment, a Limit whose
+   * child is an InMemoryOrderBy becomes a single TopK. A TopK that reads from a CollectConsumer also gets a local TopK
+   * below the matching CollectProducer, so that each worker sends at most K tuples. Both rewrites are idempotent, since
+   * the same fragments may be instantiated more than once.
+   * 
+   * @param fragments the JSON-encoded query fragments.
+   */
+  private static void useTopK(final List<PlanFragmentEncoding> fragments) {
+    Map<Integer, OperatorEncoding<?>> allOperators = new HashMap<Integer, OperatorEncoding<?>>();
+    Map<Integer, PlanFragmentEncoding> opOwnerFragment = new HashMap<Integer, PlanFragmentEncoding>();
+    int maxOpId = 0;
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> op : fragment.operators) {
+        allOperators.put(op.opId, op);
+        opOwnerFragment.put(op.opId, fragment);
+        maxOpId = Math.max(maxOpId, op.opId);
+      }
+    }
+
+    for (PlanFragmentEncoding fragment : fragments) {
+      List<OperatorEncoding<? extends Operator>> operators =
+          new ArrayList<OperatorEncoding<? extends Operator>>(fragment.operators.size());
+      Set<Integer> fused = new HashSet<Integer>();
+      for (OperatorEncoding<? extends Operator> op : fragment.operators) {
+        if (op instanceof LimitEncoding) {
+          LimitEncoding limit = (LimitEncoding) op;
+          OperatorEncoding<?> child = allOperators.get(limit.argChild);
+          if (child instanceof InMemoryOrderByEncoding && opOwnerFragment.get(child.opId) == fragment
+              && limit.numTuples <= Integer.MAX_VALUE) {
+            InMemoryOrderByEncoding order = (InMemoryOrderByEncoding) child;
+            TopKEncoding topK = new TopKEncoding();
+            topK.opId = limit.opId;
+            topK.opName = limit.opName;
+            topK.argChild = order.argChild;
+            topK.argSortColumns = order.argSortColumns;
+            topK.argAscending = order.argAscending;
+            topK.argK = limit.numTuples.intValue();
+            allOperators.put(topK.opId, topK);
+            allOperators.remove(order.opId);
+            fused.add(order.opId);
+            op = topK;
+          }
+        }
+        operators.add(op);
+      }
+      for (Iterator<OperatorEncoding<? extends Operator>> it = operators.iterator(); it.hasNext();) {
+        if (fused.contains(it.next().opId)) {
+          it.remove();
+        }
+      }
+      fragment.operators = operators;
+    }
+
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> op : ImmutableList.copyOf(fragment.operators)) {
+        if (!(op instanceof TopKEncoding)) {
+          continue;
+        }
+        TopKEncoding topK = (TopKEncoding) op;
+        OperatorEncoding<?> child = allOperators.get(topK.argChild);
+        if (!(child instanceof CollectConsumerEncoding)) {
+          continue;
+        }
+        OperatorEncoding<?> producer = allOperators.get(((CollectConsumerEncoding) child).argOperatorId);
+        if (!(producer instanceof CollectProducerEncoding)) {
+          continue;
+        }
+        CollectProducerEncoding collect = (CollectProducerEncoding) producer;
+        if (allOperators.get(collect.argChild) instanceof TopKEncoding) {
+          continue;
+        }
+        TopKEncoding localTopK = new TopKEncoding();
+        localTopK.opId = ++maxOpId;
+        localTopK.opName = "Local" + MoreObjects.firstNonNull(topK.opName, "TopK" + topK.opId);
+        localTopK.argChild = collect.argChild;
+        localTopK.argSortColumns = topK.argSortColumns;
+        localTopK.argAscending = topK.argAscending;
+        localTopK.argK = topK.argK;
+        /* Replace the producer rather than modify the encoding given by the caller. */
+        CollectProducerEncoding newCollect = new CollectProducerEncoding();
+        newCollect.opId = collect.opId;
+        newCollect.opName = collect.opName;
+        newCollect.argChild = localTopK.opId;
+        List<OperatorEncoding<? extends Operator>> producerOperators = opOwnerFragment.get(collect.opId).operators;
+        producerOperators.set(producerOperators.indexOf(collect), newCollect);
+        producerOperators.add(localTopK);
+        allOperators.put(newCollect.opId, newCollect);
+        allOperators.put(localTopK.opId, localTopK);
+      }
+    }
+  }
+
+  /**
+   * Rewrite the plan to replace each chain of at least two {@link FilterEncoding} and {@link ApplyEncoding} operators
+   * within a fragment by a single {@link FusedPipelineEncoding}, whose predicates and output expressions are composed
+   * over the input of the chain and compiled into one loop. The fused operator takes the id of the top of the chain, so
+   * that its parent is unchanged. A chain is cut where composing would evaluate a non-trivial expression more than once
+   * per tuple, or where an expression refers to the type of an input column. The rewrite is idempotent, since the same
+   * fragments may be instantiated more than once.
+   * 
+   * @param fragments the JSON-encoded query fragments.
+   */
+  static void fusePipelines(final List<PlanFragmentEncoding> fragments) {
+    for (PlanFragmentEncoding fragment : fragments) {
+      Map<Integer, OperatorEncoding<?>> operators = new HashMap<Integer, OperatorEncoding<?>>();
+      Set<Integer> fusableChildren = new HashSet<Integer>();
+      for (OperatorEncoding<?> op : fragment.operators) {
+        operators.put(op.opId, op);
+        if (isFusable(op)) {
+          fusableChildren.add(((UnaryOperatorEncoding<?>) op).argChild);
+        }
+      }
+
+      Map<Integer, OperatorEncoding<? extends Operator>> replaced =
+          new HashMap<Integer, OperatorEncoding<? extends Operator>>();
+      Set<Integer> fused = new HashSet<Integer>();
+      for (OperatorEncoding<?> op : fragment.operators) {
+        if (!isFusable(op) || fusableChildren.contains(op.opId)) {
+          continue;
+        }
+        /* op is the top of a chain: walk down to its bottom. */
+        List<UnaryOperatorEncoding<?>> chain = new ArrayList<UnaryOperatorEncoding<?>>();
+        OperatorEncoding<?> stage = op;
+        while (isFusable(stage) && !chain.contains(stage)) {
+          chain.add(0, (UnaryOperatorEncoding<?>) stage);
+          stage = operators.get(((UnaryOperatorEncoding<?>) stage).argChild);
+        }
+
+        PipelineChain pipeline = null;
+        for (UnaryOperatorEncoding<?> link : chain) {
+          if (pipeline != null && pipeline.canAppend(link)) {
+            pipeline.append(link);
+            continue;
+          }
+          if (pipeline != null && pipeline.numStages() > 1) {
+            replaced.put(pipeline.getTop().opId, pipeline.toEncoding());
+            fused.addAll(pipeline.getFusedBelowTop());
+          }
+          pipeline = new PipelineChain(link);
+        }
+        if (pipeline.numStages() > 1) {
+          replaced.put(pipeline.getTop().opId, pipeline.toEncoding());
+          fused.addAll(pipeline.getFusedBelowTop());
+        }
+      }
+
+      if (replaced.isEmpty()) {
+        continue;
+      }
+      List<OperatorEncoding<? extends Operator>> rewritten =
+          new ArrayList<OperatorEncoding<? extends Operator>>(fragment.operators.size());
+      for (OperatorEncoding<? extends Operator> op : fragment.operators) {
+        if (fused.contains(op.opId)) {
+          continue;
+        }
+        rewritten.add(MoreObjects.<OperatorEncoding<? extends Operator>> firstNonNull(replaced.get(op.opId), op));
+      }
+      LOGGER.debug("Fused {} operators into {} pipelines", fused.size() + replaced.size(), replaced.size());
+      fragment.operators = rewritten;
+    }
+  }
+
+  /**
+   * @param op an operator encoding, may be null.
+   * @return true if the operator can be part of a {@link FusedPipelineEncoding}.
+   */
+  private static boolean isFusable(final OperatorEncoding<?> op) {
+    return op != null && (op.getClass() == FilterEncoding.class || op.getClass() == ApplyEncoding.class);
+  }
+
+  /**
+   * A chain of {@link FilterEncoding} and {@link ApplyEncoding} operators being fused, from the bottom up. The
+   * predicates and the output columns of the chain are kept composed over the input of its bottom operator.
+   */
+  private static final class PipelineChain {
+    /** The fused operators, from the bottom up. */
+    private final List<UnaryOperatorEncoding<?>> stages = new ArrayList<UnaryOperatorEncoding<?>>();
+    /** The predicates of the chain, over its input. */
+    private final List<Expression> predicates = new ArrayList<Expression>();
+    /** The expressions that compute the output columns from the input, or null if the input columns are output. */
+    private List<ExpressionOperator> columns;
+    /** The names of the output columns, or null if the input columns are output. */
+    private List<String> names;
+    /** How many times each output column has been substituted into the predicates composed after it. */
+    private int[] substituted;
+
+    /**
+     * @param bottom the bottom operator of the chain.
+     */
+    private PipelineChain(final UnaryOperatorEncoding<?> bottom) {
+      append(bottom);
+    }
+
+    /**
+     * @return the number of operators in the chain.
+     */
+    private int numStages() {
+      return stages.size();
+    }
+
+    /**
+     * @return the top operator of the chain.
+     */
+    private UnaryOperatorEncoding<?> getTop() {
+      return stages.get(stages.size() - 1);
+    }
+
+    /**
+     * @return the ids of the operators of the chain except the top.
+     */
+    private List<Integer> getFusedBelowTop() {
+      List<Integer> ids = new ArrayList<Integer>();
+      for (UnaryOperatorEncoding<?> stage : stages.subList(0, stages.size() - 1)) {
+        ids.add(stage.opId);
+      }
+      return ids;
+    }
+
+    /**
+     * @param stage a filter or an apply.
+     * @return the expressions of the operator.
+     */
+    private static List<Expression> getExpressions(final UnaryOperatorEncoding<?> stage) {
+      if (stage instanceof FilterEncoding) {
+        return ImmutableList.of(((FilterEncoding) stage).argPredicate);
+      }
+      return ((ApplyEncoding) stage).emitExpressions;
+    }
+
+    /**
+     * @param stage a filter or an apply whose child is the top of the chain.
+     * @return true if the expressions of the operator can be composed with the output columns of the chain without
+     *         evaluating a computed column more than once per tuple, counting the predicates already composed. This
+     *         also keeps a non-deterministic column, such as {@link RandomExpression}, from taking a different value
+     *         in each place that refers to it.
+     */
+    private boolean canAppend(final UnaryOperatorEncoding<?> stage) {
+      if (columns == null) {
+        return true;
+      }
+      int[] counts = substituted.clone();
+      for (Expression expression : getExpressions(stage)) {
+        if (expression.hasOperator(TypeOfExpression.class)) {
+          return false;
+        }
+        Expressions.countColumnReferences(expression.getRootExpressionOperator(), counts);
+      }
+      for (int column = 0; column < counts.length; ++column) {
+        ExpressionOperator op = columns.get(column);
+        if (counts[column] > 1 && !(op instanceof VariableExpression || op instanceof ConstantExpression)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Add an operator to the top of the chain.
+     * 
+     * @param stage a filter or an apply whose child is the top of the chain.
+     */
+    private void append(final UnaryOperatorEncoding<?> stage) {
+      if (stage instanceof FilterEncoding) {
+        ExpressionOperator predicate = ((FilterEncoding) stage).argPredicate.getRootExpressionOperator();
+        if (columns != null) {
+          Expressions.countColumnReferences(predicate, substituted);
+        }
+        predicates.add(new Expression(compose(predicate)));
+      } else {
+        List<ExpressionOperator> newColumns = new ArrayList<ExpressionOperator>();
+        List<String> newNames = new ArrayList<String>();
+        for (Expression expression : ((ApplyEncoding) stage).emitExpressions) {
+          newColumns.add(compose(expression.getRootExpressionOperator()));
+          newNames.add(expression.getOutputName());
+        }
+        columns = newColumns;
+        names = newNames;
+        substituted = new int[newColumns.size()];
+      }
+      stages.add(stage);
+    }
+
+    /**
+     * @param op an expression over the output of the chain.
+     * @return the expression over the input of the chain.
+     */
+    private ExpressionOperator compose(final ExpressionOperator op) {
+      if (columns == null) {
+        return op;
+      }
+      return Expressions.substituteColumns(op, columns);
+    }
+
+    /**
+     * @return an operator that does the work of the whole chain.
+     */
+    private FusedPipelineEncoding toEncoding() {
+      UnaryOperatorEncoding<?> top = getTop();
+      FusedPipelineEncoding fused = new FusedPipelineEncoding();
+      fused.opId = top.opId;
+      fused.opName = "Fused" + MoreObjects.firstNonNull(top.opName, "Pipeline" + top.opId);
+      fused.argChild = stages.get(0).argChild;
+      fused.argPredicates = predicates;
+      if (columns != null) {
+        fused.emitExpressions = new ArrayList<Expression>();
+        for (int column = 0; column < columns.size(); ++column) {
+          fused.emitExpressions.add(new Expression(names.get(column), columns.get(column)));
+        }
+      }
+      return fused;
+    }
+  }
+
+  /**
+   * Rewrite the plan to run each chain of filters, applies and fused pipelines within a fragment on several threads of
+   * each worker, using a {@link ParallelPipelineEncoding}. If the chain is followed by an aggregate, the aggregate is
+   * split: each thread computes the {@link AggregationPhase#PARTIAL} phase over its morsels, and the aggregate above
+   * the pipeline merges them in the {@link AggregationPhase#FINAL} phase. An aggregate directly above another operator,
+   * e.g., a scan, is split the same way, with the partial aggregate as the only stage of the pipeline. Otherwise the
+   * chain is only rewritten when its parent does not depend on the order of its input, since the threads output their
+   * batches in no particular order. The rewrite is idempotent, since the same fragments may be instantiated more than
+   * once.
+   * 
+   * @param fragments the JSON-encoded query fragments.
+   * @param numThreads the number of threads of each pipeline.
+   */
+  static void useParallelPipelines(final List<PlanFragmentEncoding> fragments, final int numThreads) {
+    int maxOpId = 0;
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> op : fragment.operators) {
+        maxOpId = Math.max(maxOpId, op.opId);
+      }
+    }
+
+    for (PlanFragmentEncoding fragment : fragments) {
+      Map<Integer, OperatorEncoding<?>> operators = new HashMap<Integer, OperatorEncoding<?>>();
+      Map<Integer, OperatorEncoding<?>> parents = new HashMap<Integer, OperatorEncoding<?>>();
+      for (OperatorEncoding<?> op : fragment.operators) {
+        operators.put(op.opId, op);
+        if (op instanceof UnaryOperatorEncoding) {
+          parents.put(((UnaryOperatorEncoding<?>) op).argChild, op);
+        }
+      }
+
+      List<OperatorEncoding<? extends Operator>> added = new ArrayList<OperatorEncoding<? extends Operator>>();
+      Map<Integer, OperatorEncoding<? extends Operator>> replaced =
+          new HashMap<Integer, OperatorEncoding<? extends Operator>>();
+      Set<Integer> moved = new HashSet<Integer>();
+      for (OperatorEncoding<?> op : fragment.operators) {
+        List<UnaryOperatorEncoding<?>> chain = new ArrayList<UnaryOperatorEncoding<?>>();
+        OperatorEncoding<?> parent;
+        int input;
+        if (isParallelStage(op) && !isParallelStage(parents.get(op.opId))) {
+          /* op is the top of a chain: walk down to its bottom. */
+          OperatorEncoding<?> stage = op;
+          while (isParallelStage(stage) && !chain.contains(stage)) {
+            chain.add(0, (UnaryOperatorEncoding<?>) stage);
+            stage = operators.get(((UnaryOperatorEncoding<?>) stage).argChild);
+          }
+          parent = parents.get(op.opId);
+          input = chain.get(0).argChild;
+        } else if (op instanceof UnaryOperatorEncoding
+            && !isParallelStage(operators.get(((UnaryOperatorEncoding<?>) op).argChild))) {
+          /* op may be an aggregate over an empty chain. */
+          parent = op;
+          input = ((UnaryOperatorEncoding<?>) op).argChild;
+        } else {
+          continue;
+        }
+
+        UnaryOperatorEncoding<?> partial = toPartialAggregate(parent);
+        if (chain.isEmpty() && partial == null) {
+          continue;
+        }
+        ParallelPipelineEncoding pipeline = new ParallelPipelineEncoding();
+        pipeline.argChild = input;
+        pipeline.argNumThreads = numThreads;
+        pipeline.argStages = new ArrayList<UnaryOperatorEncoding<?>>(chain);
+        if (partial != null) {
+          /* The partial aggregate runs in every thread, and the parent merges the partial aggregates. */
+          partial.opId = ++maxOpId;
+          pipeline.argStages.add(partial);
+          pipeline.opId = ++maxOpId;
+          pipeline.opName = "Parallel" + MoreObjects.firstNonNull(parent.opName, "Aggregate" + parent.opId);
+          replaced.put(parent.opId, toFinalAggregate(parent, partial, pipeline.opId));
+          added.add(pipeline);
+        } else if (isOrderInsensitive(parent)) {
+          UnaryOperatorEncoding<?> top = chain.get(chain.size() - 1);
+          pipeline.opId = top.opId;
+          pipeline.opName = "Parallel" + MoreObjects.firstNonNull(top.opName, "Pipeline" + top.opId);
+          replaced.put(top.opId, pipeline);
+        } else {
+          continue;
+        }
+        for (UnaryOperatorEncoding<?> link : chain) {
+          moved.add(link.opId);
+        }
+        if (partial == null) {
+          moved.remove(pipeline.opId);
+        }
+      }
+
+      if (replaced.isEmpty()) {
+        continue;
+      }
+      List<OperatorEncoding<? extends Operator>> rewritten = new ArrayList<OperatorEncoding<? extends Operator>>();
+      for (OperatorEncoding<? extends Operator> op : fragment.operators) {
+        if (moved.contains(op.opId)) {
+          continue;
+        }
+        rewritten.add(MoreObjects.<OperatorEncoding<? extends Operator>> firstNonNull(replaced.get(op.opId), op));
+      }
+      rewritten.addAll(added);
+      LOGGER.debug("Running {} pipelines on {} threads", replaced.size(), numThreads);
+      fragment.operators = rewritten;
+    }
+  }
+
+  /**
+   * @param op an operator encoding, may be null.
+   * @return true if the operator can be part of a {@link ParallelPipelineEncoding}.
+   */
+  private static boolean isParallelStage(final OperatorEncoding<?> op) {
+    return isFusable(op) || (op != null && op.getClass() == FusedPipelineEncoding.class);
+  }
+
+  /**
+   * @param op the parent of a pipeline, may be null.
+   * @return true if the output of the parent does not depend on the order of its input.
+   */
+  private static boolean isOrderInsensitive(final OperatorEncoding<?> op) {
+    return op instanceof AbstractProducerEncoding || op instanceof DbInsertEncoding || op instanceof TempInsertEncoding
+        || op instanceof ColumnarFileInsertEncoding || op instanceof SinkRootEncoding || op instanceof DupElimEncoding
+        || op instanceof InMemoryOrderByEncoding || op instanceof ExternalOrderByEncoding || op instanceof TopKEncoding;
+  }
+
+  /**
+   * @param op the parent of a pipeline, may be null.
+   * @return the partial phase of the parent, without an id or a child, or null if the parent is not an aggregate that
+   *         can be computed in two phases.
+   */
+  private static UnaryOperatorEncoding<?> toPartialAggregate(final OperatorEncoding<?> op) {
+    int[] groupFields;
+    AggregatorFactory[] aggregators;
+    if (op instanceof AggregateEncoding && ((AggregateEncoding) op).argPhase == AggregationPhase.COMPLETE) {
+      groupFields = null;
+      aggregators = ((AggregateEncoding) op).aggregators;
+    } else if (op instanceof MultiGroupByAggregateEncoding
+        && ((MultiGroupByAggregateEncoding) op).argPhase == AggregationPhase.COMPLETE) {
+      groupFields = ((MultiGroupByAggregateEncoding) op).argGroupFields;
+      aggregators = ((MultiGroupByAggregateEncoding) op).aggregators;
+    } else if (op instanceof SingleGroupByAggregateEncoding) {
+      groupFields = new int[] { ((SingleGroupByAggregateEncoding) op).argGroupField };
+      aggregators = ((SingleGroupByAggregateEncoding) op).aggregators;
+    } else {
+      return null;
+    }
+    for (AggregatorFactory factory : aggregators) {
+      if (factory instanceof UserDefinedAggregatorFactory) {
+        return null;
+      }
+    }
+
+    UnaryOperatorEncoding<?> partial;
+    if (groupFields == null) {
+      AggregateEncoding aggregate = new AggregateEncoding();
+      aggregate.aggregators = aggregators;
+      aggregate.argPhase = AggregationPhase.PARTIAL;
+      partial = aggregate;
+    } else {
+      MultiGroupByAggregateEncoding aggregate = new MultiGroupByAggregateEncoding();
+      aggregate.argGroupFields = groupFields;
+      aggregate.aggregators = aggregators;
+      aggregate.argPhase = AggregationPhase.PARTIAL;
+      partial = aggregate;
+    }
+    partial.opName = "Partial" + MoreObjects.firstNonNull(op.opName, "Aggregate" + op.opId);
+    return partial;
+  }
+
+  /**
+   * @param op an aggregate.
+   * @param partial the partial phase of the aggregate, see {@link #toPartialAggregate(OperatorEncoding)}.
+   * @param child the id of the operator that outputs the partial aggregates.
+   * @return the final phase of the aggregate, which replaces it.
+   */
+  private static UnaryOperatorEncoding<?> toFinalAggregate(final OperatorEncoding<?> op,
+      final UnaryOperatorEncoding<?> partial, final int child) {
+    UnaryOperatorEncoding<?> merge;
+    if (partial instanceof AggregateEncoding) {
+      AggregateEncoding aggregate = new AggregateEncoding();
+      aggregate.aggregators = ((AggregateEncoding) partial).aggregators;
+      aggregate.argPhase = AggregationPhase.FINAL;
+      merge = aggregate;
+    } else {
+      MultiGroupByAggregateEncoding partialGroups = (MultiGroupByAggregateEncoding) partial;
+      MultiGroupByAggregateEncoding aggregate = new MultiGroupByAggregateEncoding();
+      /* The partial phase outputs the group fields first. */
+      aggregate.argGroupFields = new int[partialGroups.argGroupFields.length];
+      for (int i = 0; i < aggregate.argGroupFields.length; ++i) {
+        aggregate.argGroupFields[i] = i;
+      }
+      aggregate.aggregators = partialGroups.aggregators;
+      aggregate.argPhase = AggregationPhase.FINAL;
+      merge = aggregate;
+    }
+    merge.opId = op.opId;
+    merge.opName = op.opName;
+    merge.argChild = child;
+    return merge;
+  }
+
   /**
    * Set the query execution options for the specified plans.
    * 
    * @param plans the physical query plan
    * @param ftMode the fault tolerance mode under which the query will be executed
    * @param profilingMode how the query should be profiled
+   * @param offHeapState whether long-lived operator state should be stored off the heap
+   * @param batchTargetBytes the number of bytes a tuple batch should aim at
    */
   public static void setQueryExecutionOptions(final Map<Integer, SubQueryPlan> plans, final FTMode ftMode,
-      @Nonnull final Set<ProfilingMode> profilingMode) {
+      @Nonnull final Set<ProfilingMode> profilingMode, final boolean offHeapState, final int batchTargetBytes) {
     for (SubQueryPlan plan : plans.values()) {
       plan.setFTMode(ftMode);
       plan.setProfilingMode(profilingMode);
+      plan.setOffHeapState(offHeapState);
+      plan.setBatchTargetBytes(batchTargetBytes);
     }
   }
 
@@ -493,10 +1083,25 @@ public class QueryConstruct {
   public final static class ConstructArgs {
     private final Server server;
     private final long queryId;
+    /** Whether chains of filters and projections are compiled into single operators. */
+    private final boolean fuseOperators;
+    /** The number of threads that each pipeline runs on, or 0 to run pipelines on the thread of their fragment. */
+    private final int pipelineThreads;
 
     public ConstructArgs(@Nonnull final Server server, final long queryId) {
+      this(server, queryId, false);
+    }
+
+    public ConstructArgs(@Nonnull final Server server, final long queryId, final boolean fuseOperators) {
+      this(server, queryId, fuseOperators, 0);
+    }
+
+    public ConstructArgs(@Nonnull final Server server, final long queryId, final boolean fuseOperators,
+        final int pipelineThreads) {
       this.server = Preconditions.checkNotNull(server, "server");
       this.queryId = queryId;
+      this.fuseOperators = fuseOperators;
+      this.pipelineThreads = pipelineThreads;
     }
 
     public long getQueryId() {
@@ -506,5 +1111,13 @@ public class QueryConstruct {
     public Server getServer() {
       return server;
     }
+
+    public boolean isFuseOperators() {
+      return fuseOperators;
+    }
+
+    public int getPipelineThreads() {
+      return pipelineThreads;
+    }
   }
 }
@@ -7,8 +7,10 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Verify;
 import com.google.common.collect.ImmutableList;
 
+import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.FTMode;
 import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
+import edu.washington.escience.myria.MyriaConstants.QueryPriority;
 import edu.washington.escience.myria.api.MyriaApiException;
 import edu.washington.escience.myria.api.encoding.plan.SubPlanEncoding;
 import edu.washington.escience.myria.api.encoding.plan.SubQueryEncoding;
@@ -31,6 +33,18 @@ public class QueryEncoding extends MyriaApiEncoding {
   public List<ProfilingMode> profilingMode = ImmutableList.of();
   /** The fault-tolerance mode used in this query, default: none. */
   public FTMode ftMode = FTMode.NONE;
+  /** Whether long-lived operator state, such as the tuples kept by an IDBController, is stored off the heap. */
+  public boolean offHeapState = false;
+  /** The number of bytes a tuple batch aims at; batches of wide tuples hold fewer tuples. */
+  public int batchTargetBytes = MyriaConstants.DEFAULT_BATCH_TARGET_BYTES;
+  /** Whether chains of filters and projections are compiled into single operators, default: false. */
+  public boolean fuseOperators = false;
+  /** The number of threads that each pipeline runs on in a worker, default: 0, which runs it on a single thread. */
+  public int pipelineThreads = 0;
+  /** The scheduling class of this query, default: normal. */
+  public QueryPriority priority = QueryPriority.NORMAL;
+  /** The user who submitted this query. optional. Queries of different users share the cluster fairly. */
+  public String user;
 
   /** The old physical query plan encoding. */
   public List<PlanFragmentEncoding> fragments;
@@ -41,6 +55,8 @@ public class QueryEncoding extends MyriaApiEncoding {
   protected void validateExtra() throws MyriaApiException {
     Preconditions.checkArgument((fragments == null) ^ (plan == null),
         "exactly one of fragments or plan must be specified");
+    Preconditions.checkArgument(batchTargetBytes > 0, "batchTargetBytes must be positive");
+    Preconditions.checkArgument(pipelineThreads >= 0, "pipelineThreads must be non-negative");
     /* If they gave us an old plan type, convert it to a new plan type. */
     if (fragments != null) {
       plan = new SubQueryEncoding(fragments);
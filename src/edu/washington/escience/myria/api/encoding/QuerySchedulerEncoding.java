@@ -0,0 +1,53 @@
+package edu.washington.escience.myria.api.encoding;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import edu.washington.escience.myria.MyriaConstants.QueryPriority;
+
+/**
+ * Encodes the REST response describing the state of the query scheduler.
+ */
+public class QuerySchedulerEncoding {
+  /** The maximum number of queries that run at the same time. */
+  @JsonProperty
+  public int maxConcurrentQueries;
+  /** The queries that are running, in the order they were admitted. */
+  @JsonProperty
+  public List<Long> running;
+  /** The queries that are waiting to be admitted, in the order they were submitted. */
+  @JsonProperty
+  public List<Long> queued;
+  /** Queue-wait and run-time statistics of each priority class. */
+  @JsonProperty
+  public Map<QueryPriority, PriorityStatistics> priorities;
+  /** The latest resource measurements reported by each worker, e.g. heapUsedBytes. */
+  @JsonProperty
+  public Map<Integer, Map<String, Long>> workers;
+
+  /**
+   * Queue-wait and run-time statistics of the queries of one priority class.
+   */
+  public static class PriorityStatistics {
+    /** The number of queries admitted. */
+    @JsonProperty
+    public long admitted;
+    /** The number of admitted queries that have finished. */
+    @JsonProperty
+    public long finished;
+    /** The total time admitted queries spent in the queue, in milliseconds. */
+    @JsonProperty
+    public long totalQueueWaitMillis;
+    /** The longest time an admitted query spent in the queue, in milliseconds. */
+    @JsonProperty
+    public long maxQueueWaitMillis;
+    /** The total time finished queries spent running, in milliseconds. */
+    @JsonProperty
+    public long totalRunMillis;
+    /** The longest time a finished query spent running, in milliseconds. */
+    @JsonProperty
+    public long maxRunMillis;
+  }
+}
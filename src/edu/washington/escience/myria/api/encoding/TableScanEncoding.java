@@ -17,6 +17,10 @@ public class TableScanEncoding extends LeafOperatorEncoding<DbQueryScan> {
   @Required
   public RelationKey relationKey;
   public Integer storedRelationId;
+  /** The number of connections that scan ranges of the relation in parallel on each worker. optional. */
+  public Integer numPartitions;
+  /** The integral column whose values split the relation into ranges, default: the ctid in PostgreSQL. optional. */
+  public Integer partitionColumn;
 
   @Override
   public DbQueryScan construct(ConstructArgs args) {
@@ -28,6 +32,10 @@ public class TableScanEncoding extends LeafOperatorEncoding<DbQueryScan> {
       throw new MyriaApiException(Status.INTERNAL_SERVER_ERROR, e);
     }
     Preconditions.checkArgument(schema != null, "Specified relation %s does not exist.", relationKey);
-    return new DbQueryScan(relationKey, schema);
+    DbQueryScan scan = new DbQueryScan(relationKey, schema);
+    if (numPartitions != null) {
+      scan.setPartitions(numPartitions, partitionColumn);
+    }
+    return scan;
   }
 }
\ No newline at end of file
@@ -0,0 +1,224 @@
+package edu.washington.escience.myria.column;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * A process-wide pool of the {@link TupleBatch#BATCH_SIZE}-element primitive arrays backing int, long, float and
+ * double columns. Column builders take their arrays from here, and the arrays of a {@link TupleBatch} come back when
+ * the last reference to the batch is released (see {@link TupleBatch#release()}). Each type has its own bounded pool,
+ * so an idle worker holds on to at most {@link #MAX_POOLED_ARRAYS} arrays of each type.
+ *
+ *
+ */
+public final class ColumnArrayPool {
+
+  /** The maximum number of free arrays kept for each type. */
+  public static final int MAX_POOLED_ARRAYS = 256;
+
+  /** Free int arrays. */
+  private static final BlockingQueue<int[]> INTS = new ArrayBlockingQueue<int[]>(MAX_POOLED_ARRAYS);
+  /** Free long arrays. */
+  private static final BlockingQueue<long[]> LONGS = new ArrayBlockingQueue<long[]>(MAX_POOLED_ARRAYS);
+  /** Free float arrays. */
+  private static final BlockingQueue<float[]> FLOATS = new ArrayBlockingQueue<float[]>(MAX_POOLED_ARRAYS);
+  /** Free double arrays. */
+  private static final BlockingQueue<double[]> DOUBLES = new ArrayBlockingQueue<double[]>(MAX_POOLED_ARRAYS);
+
+  /** The number of arrays handed out from the pool. */
+  private static final AtomicLong HITS = new AtomicLong();
+  /** The number of arrays that had to be allocated because the pool was empty. */
+  private static final AtomicLong MISSES = new AtomicLong();
+  /** The number of arrays returned to the pool. */
+  private static final AtomicLong RECYCLED = new AtomicLong();
+  /** The number of bytes in the arrays returned to the pool. */
+  private static final AtomicLong BYTES_RECYCLED = new AtomicLong();
+
+  /** Utility class cannot be constructed. */
+  private ColumnArrayPool() {
+  }
+
+  /**
+   * Count a lookup in the pool.
+   *
+   * @param array the array found in the pool, or null.
+   * @return true if the lookup was a hit.
+   */
+  private static boolean countLookup(final Object array) {
+    if (array == null) {
+      MISSES.incrementAndGet();
+      return false;
+    }
+    HITS.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Count an array returned to the pool.
+   *
+   * @param offered whether the pool had room for the array.
+   * @param bytes the size of the array in bytes.
+   */
+  private static void countRecycle(final boolean offered, final long bytes) {
+    if (offered) {
+      RECYCLED.incrementAndGet();
+      BYTES_RECYCLED.addAndGet(bytes);
+    }
+  }
+
+  /**
+   * @param length the number of elements. Only arrays of {@link TupleBatch#BATCH_SIZE} elements are pooled.
+   * @return an int array of the specified length. Its contents are undefined.
+   */
+  public static int[] allocateInts(final int length) {
+    if (length != TupleBatch.BATCH_SIZE) {
+      return new int[length];
+    }
+    int[] array = INTS.poll();
+    if (countLookup(array)) {
+      return array;
+    }
+    return new int[TupleBatch.BATCH_SIZE];
+  }
+
+  /**
+   * @param length the number of elements. Only arrays of {@link TupleBatch#BATCH_SIZE} elements are pooled.
+   * @return a long array of the specified length. Its contents are undefined.
+   */
+  public static long[] allocateLongs(final int length) {
+    if (length != TupleBatch.BATCH_SIZE) {
+      return new long[length];
+    }
+    long[] array = LONGS.poll();
+    if (countLookup(array)) {
+      return array;
+    }
+    return new long[TupleBatch.BATCH_SIZE];
+  }
+
+  /**
+   * @param length the number of elements. Only arrays of {@link TupleBatch#BATCH_SIZE} elements are pooled.
+   * @return a float array of the specified length. Its contents are undefined.
+   */
+  public static float[] allocateFloats(final int length) {
+    if (length != TupleBatch.BATCH_SIZE) {
+      return new float[length];
+    }
+    float[] array = FLOATS.poll();
+    if (countLookup(array)) {
+      return array;
+    }
+    return new float[TupleBatch.BATCH_SIZE];
+  }
+
+  /**
+   * @param length the number of elements. Only arrays of {@link TupleBatch#BATCH_SIZE} elements are pooled.
+   * @return a double array of the specified length. Its contents are undefined.
+   */
+  public static double[] allocateDoubles(final int length) {
+    if (length != TupleBatch.BATCH_SIZE) {
+      return new double[length];
+    }
+    double[] array = DOUBLES.poll();
+    if (countLookup(array)) {
+      return array;
+    }
+    return new double[TupleBatch.BATCH_SIZE];
+  }
+
+  /**
+   * Return the array backing the specified column to the pool. Columns that are not backed by a whole
+   * {@link TupleBatch#BATCH_SIZE}-element primitive array are ignored. The caller must guarantee that nothing reads the
+   * column afterwards.
+   *
+   * @param column the column whose array is no longer used.
+   */
+  public static void recycle(final Column<?> column) {
+    if (column instanceof IntArrayColumn) {
+      int[] array = ((IntArrayColumn) column).getArray();
+      if (array.length == TupleBatch.BATCH_SIZE) {
+        countRecycle(INTS.offer(array), (long) Integer.SIZE / Byte.SIZE * array.length);
+      }
+    } else if (column instanceof LongColumn) {
+      long[] array = ((LongColumn) column).getArray();
+      if (array.length == TupleBatch.BATCH_SIZE) {
+        countRecycle(LONGS.offer(array), (long) Long.SIZE / Byte.SIZE * array.length);
+      }
+    } else if (column instanceof FloatColumn) {
+      float[] array = ((FloatColumn) column).getArray();
+      if (array.length == TupleBatch.BATCH_SIZE) {
+        countRecycle(FLOATS.offer(array), (long) Float.SIZE / Byte.SIZE * array.length);
+      }
+    } else if (column instanceof DoubleColumn) {
+      double[] array = ((DoubleColumn) column).getArray();
+      if (array.length == TupleBatch.BATCH_SIZE) {
+        countRecycle(DOUBLES.offer(array), (long) Double.SIZE / Byte.SIZE * array.length);
+      }
+    }
+  }
+
+  /**
+   * @return the number of arrays handed out from the pool.
+   */
+  public static long getHits() {
+    return HITS.get();
+  }
+
+  /**
+   * @return the number of arrays that had to be allocated because the pool was empty.
+   */
+  public static long getMisses() {
+    return MISSES.get();
+  }
+
+  /**
+   * @return the fraction of array requests served from the pool, or 0 if there were none.
+   */
+  public static double getHitRate() {
+    long hits = HITS.get();
+    long total = hits + MISSES.get();
+    if (total == 0) {
+      return 0;
+    }
+    return (double) hits / total;
+  }
+
+  /**
+   * @return the number of arrays returned to the pool.
+   */
+  public static long getRecycled() {
+    return RECYCLED.get();
+  }
+
+  /**
+   * @return the number of bytes in the arrays returned to the pool.
+   */
+  public static long getBytesRecycled() {
+    return BYTES_RECYCLED.get();
+  }
+
+  /**
+   * @return a one-line summary of the pool statistics, for logging.
+   */
+  public static String statistics() {
+    return String.format("hits=%d misses=%d hitRate=%.3f recycled=%d bytesRecycled=%d", getHits(), getMisses(),
+        getHitRate(), getRecycled(), getBytesRecycled());
+  }
+
+  /**
+   * Drop all free arrays and reset the statistics. Used by tests.
+   */
+  public static void clear() {
+    INTS.clear();
+    LONGS.clear();
+    FLOATS.clear();
+    DOUBLES.clear();
+    HITS.set(0);
+    MISSES.set(0);
+    RECYCLED.set(0);
+    BYTES_RECYCLED.set(0);
+  }
+}
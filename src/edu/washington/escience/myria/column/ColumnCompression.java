@@ -0,0 +1,893 @@
+package edu.washington.escience.myria.column;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.joda.time.DateTime;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnknownFieldSet;
+
+import edu.washington.escience.myria.proto.DataProto.BooleanColumnMessage;
+import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
+import edu.washington.escience.myria.proto.DataProto.DateTimeColumnMessage;
+import edu.washington.escience.myria.proto.DataProto.DoubleColumnMessage;
+import edu.washington.escience.myria.proto.DataProto.FloatColumnMessage;
+import edu.washington.escience.myria.proto.DataProto.IntColumnMessage;
+import edu.washington.escience.myria.proto.DataProto.LongColumnMessage;
+import edu.washington.escience.myria.proto.DataProto.StringColumnMessage;
+
+/**
+ * Compressed encodings of columns in the wire format.
+ *
+ * A compressed column is carried in the <code>data</code> field of the usual {@link ColumnMessage} of its type, and the
+ * column message is marked with field {@link #ENCODING_FIELD_NUMBER}, which is reserved for this in
+ * <code>column.proto</code>. The checked-in protobuf classes do not declare the field and keep it as an unknown field,
+ * so only marked columns are ever decoded, whatever bytes a plain column starts with.
+ *
+ * The payload starts with a tag byte that names the encoding:
+ * <ul>
+ * <li>frame of reference: the values minus their minimum, bit-packed to the width of the largest one.</li>
+ * <li>delta: the differences between consecutive values, bit-packed by frame of reference. Wins on sorted columns.</li>
+ * <li>run-length: the values of the runs of equal values, and the bit-packed lengths of the runs. BOOLEAN runs
+ * alternate, so only the value of the first run is stored.</li>
+ * <li>dictionary: the distinct strings, and the bit-packed code of every value.</li>
+ * <li>plain strings: the UTF-8 bytes of the strings, and their bit-packed lengths.</li>
+ * </ul>
+ * If the tag has {@link #DEFLATED} set, the rest of the payload is also compressed with {@link Deflater}.
+ *
+ * Which encodings a process may send is a bitmask of {@link #BIT_PACKING}, {@link #RUN_LENGTH}, {@link #DICTIONARY}
+ * and {@link #DEFLATE}. Every process can decode all of them, and the two ends of a connection exchange their masks
+ * when they connect, so a sender only uses encodings that the receiver knows.
+ */
+public final class ColumnCompression {
+  /** Frame-of-reference and delta bit-packing of INT, LONG and DATETIME columns, and bit-packed string lengths. */
+  public static final int BIT_PACKING = 1;
+  /** Run-length encoding of INT, LONG, DATETIME, STRING and BOOLEAN columns. */
+  public static final int RUN_LENGTH = 1 << 1;
+  /** Dictionary encoding of STRING columns. */
+  public static final int DICTIONARY = 1 << 2;
+  /** A Deflate block over the encoded column. Costs more CPU than the other encodings. */
+  public static final int DEFLATE = 1 << 3;
+  /** No compression. */
+  public static final int NONE = 0;
+  /** All the encodings. */
+  public static final int ALL = BIT_PACKING | RUN_LENGTH | DICTIONARY | DEFLATE;
+  /** The encodings that are used unless configured otherwise: all but {@link #DEFLATE}. */
+  public static final int DEFAULT = BIT_PACKING | RUN_LENGTH | DICTIONARY;
+
+  /** The field of {@link ColumnMessage} that marks a compressed column. */
+  public static final int ENCODING_FIELD_NUMBER = 15;
+  /** The value of {@link #ENCODING_FIELD_NUMBER} in a compressed column: the payload starts with a tag byte. */
+  private static final long TAGGED_PAYLOAD = 1;
+  /** The fields that mark a compressed column. */
+  private static final UnknownFieldSet COMPRESSED = UnknownFieldSet.newBuilder().addField(ENCODING_FIELD_NUMBER,
+      UnknownFieldSet.Field.newBuilder().addVarint(TAGGED_PAYLOAD).build()).build();
+
+  /** Tag of plain strings. */
+  private static final byte TAG_PLAIN = 0;
+  /** Tag of frame-of-reference bit-packing. */
+  private static final byte TAG_FRAME_OF_REFERENCE = 1;
+  /** Tag of delta bit-packing. */
+  private static final byte TAG_DELTA = 2;
+  /** Tag of run-length encoding. */
+  private static final byte TAG_RUN_LENGTH = 3;
+  /** Tag of dictionary encoding. */
+  private static final byte TAG_DICTIONARY = 4;
+  /** Set in the tag if the rest of the payload is deflated. */
+  private static final byte DEFLATED = (byte) 0x80;
+
+  /** Utility class cannot be instantiated. */
+  private ColumnCompression() {
+  }
+
+  /**
+   * @param names a comma-separated list of the names of encodings, <code>all</code>, or <code>none</code>. If null, the
+   *          default encodings.
+   * @return the bitmask of the named encodings.
+   */
+  public static int parse(final String names) {
+    if (names == null) {
+      return DEFAULT;
+    }
+    int encodings = NONE;
+    for (String name : Splitter.on(',').trimResults().omitEmptyStrings().split(names)) {
+      switch (name.toLowerCase()) {
+        case "bitpacking":
+          encodings |= BIT_PACKING;
+          break;
+        case "runlength":
+          encodings |= RUN_LENGTH;
+          break;
+        case "dictionary":
+          encodings |= DICTIONARY;
+          break;
+        case "deflate":
+          encodings |= DEFLATE;
+          break;
+        case "all":
+          encodings |= ALL;
+          break;
+        case "none":
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown column encoding " + name);
+      }
+    }
+    return encodings;
+  }
+
+  /**
+   * Compress a column.
+   *
+   * @param column the column.
+   * @param encodings the encodings that may be used.
+   * @return the compressed column, or null if none of the encodings makes it smaller than its plain encoding.
+   */
+  public static ColumnMessage compress(final Column<?> column, final int encodings) {
+    final int numTuples = column.size();
+    if (encodings == NONE || numTuples == 0) {
+      return null;
+    }
+    switch (column.getType()) {
+      case INT_TYPE: {
+        final long[] values = new long[numTuples];
+        for (int i = 0; i < numTuples; ++i) {
+          values[i] = column.getInt(i);
+        }
+        final ByteString data = compressLongs(values, encodings, numTuples * Integer.SIZE / Byte.SIZE);
+        if (data == null) {
+          return null;
+        }
+        return mark(ColumnMessage.newBuilder().setType(ColumnMessage.Type.INT).setIntColumn(
+            IntColumnMessage.newBuilder().setData(data)));
+      }
+      case LONG_TYPE: {
+        final long[] values = new long[numTuples];
+        for (int i = 0; i < numTuples; ++i) {
+          values[i] = column.getLong(i);
+        }
+        final ByteString data = compressLongs(values, encodings, numTuples * Long.SIZE / Byte.SIZE);
+        if (data == null) {
+          return null;
+        }
+        return mark(ColumnMessage.newBuilder().setType(ColumnMessage.Type.LONG).setLongColumn(
+            LongColumnMessage.newBuilder().setData(data)));
+      }
+      case DATETIME_TYPE: {
+        final long[] values = new long[numTuples];
+        for (int i = 0; i < numTuples; ++i) {
+          values[i] = column.getDateTime(i).getMillis();
+        }
+        final ByteString data = compressLongs(values, encodings, numTuples * Long.SIZE / Byte.SIZE);
+        if (data == null) {
+          return null;
+        }
+        return mark(ColumnMessage.newBuilder().setType(ColumnMessage.Type.DATETIME).setDateColumn(
+            DateTimeColumnMessage.newBuilder().setData(data)));
+      }
+      case FLOAT_TYPE: {
+        if ((encodings & DEFLATE) == 0) {
+          return null;
+        }
+        final Output out = new Output(numTuples * Float.SIZE / Byte.SIZE + 1);
+        out.buffer.put(TAG_PLAIN);
+        for (int i = 0; i < numTuples; ++i) {
+          out.buffer.putFloat(column.getFloat(i));
+        }
+        final ByteString data = finish(out, encodings, numTuples * Float.SIZE / Byte.SIZE);
+        if (data == null) {
+          return null;
+        }
+        return mark(ColumnMessage.newBuilder().setType(ColumnMessage.Type.FLOAT).setFloatColumn(
+            FloatColumnMessage.newBuilder().setData(data)));
+      }
+      case DOUBLE_TYPE: {
+        if ((encodings & DEFLATE) == 0) {
+          return null;
+        }
+        final Output out = new Output(numTuples * Double.SIZE / Byte.SIZE + 1);
+        out.buffer.put(TAG_PLAIN);
+        for (int i = 0; i < numTuples; ++i) {
+          out.buffer.putDouble(column.getDouble(i));
+        }
+        final ByteString data = finish(out, encodings, numTuples * Double.SIZE / Byte.SIZE);
+        if (data == null) {
+          return null;
+        }
+        return mark(ColumnMessage.newBuilder().setType(ColumnMessage.Type.DOUBLE).setDoubleColumn(
+            DoubleColumnMessage.newBuilder().setData(data)));
+      }
+      case STRING_TYPE: {
+        final ByteString data = compressStrings(column, encodings);
+        if (data == null) {
+          return null;
+        }
+        return mark(ColumnMessage.newBuilder().setType(ColumnMessage.Type.STRING).setStringColumn(
+            StringColumnMessage.newBuilder().setData(data)));
+      }
+      case BOOLEAN_TYPE: {
+        final ByteString data = compressBooleans(column, encodings);
+        if (data == null) {
+          return null;
+        }
+        return mark(ColumnMessage.newBuilder().setType(ColumnMessage.Type.BOOLEAN).setBooleanColumn(
+            BooleanColumnMessage.newBuilder().setData(data)));
+      }
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * @param message a column message, with the compressed column set.
+   * @return the column message, marked as compressed.
+   */
+  private static ColumnMessage mark(final ColumnMessage.Builder message) {
+    return message.setUnknownFields(COMPRESSED).build();
+  }
+
+  /**
+   * Decompress a column.
+   *
+   * @param message the message that holds the column.
+   * @param numTuples the number of values in the column.
+   * @return the column, or null if the message holds a plain column.
+   */
+  public static Column<?> decompress(final ColumnMessage message, final int numTuples) {
+    final UnknownFieldSet fields = message.getUnknownFields();
+    if (!fields.hasField(ENCODING_FIELD_NUMBER)) {
+      return null;
+    }
+    final List<Long> encoding = fields.getField(ENCODING_FIELD_NUMBER).getVarintList();
+    Preconditions.checkArgument(encoding.size() == 1 && encoding.get(0) == TAGGED_PAYLOAD,
+        "Unknown column encoding %s", encoding);
+    switch (message.getType()) {
+      case INT: {
+        final ByteString data = message.getIntColumn().getData();
+        final long[] values = decompressLongs(open(data), numTuples);
+        final int[] ints = new int[numTuples];
+        for (int i = 0; i < numTuples; ++i) {
+          ints[i] = (int) values[i];
+        }
+        return new IntArrayColumn(ints, numTuples);
+      }
+      case LONG: {
+        final ByteString data = message.getLongColumn().getData();
+        return new LongColumn(decompressLongs(open(data), numTuples), numTuples);
+      }
+      case DATETIME: {
+        final ByteString data = message.getDateColumn().getData();
+        final long[] values = decompressLongs(open(data), numTuples);
+        final DateTime[] dates = new DateTime[numTuples];
+        for (int i = 0; i < numTuples; ++i) {
+          dates[i] = new DateTime(values[i]);
+        }
+        return new DateTimeColumn(dates, numTuples);
+      }
+      case FLOAT: {
+        final ByteString data = message.getFloatColumn().getData();
+        final ByteBuffer in = open(data);
+        Preconditions.checkArgument(in.get() == TAG_PLAIN, "Unknown column encoding");
+        final float[] values = new float[numTuples];
+        for (int i = 0; i < numTuples; ++i) {
+          values[i] = in.getFloat();
+        }
+        return new FloatColumn(values, numTuples);
+      }
+      case DOUBLE: {
+        final ByteString data = message.getDoubleColumn().getData();
+        final ByteBuffer in = open(data);
+        Preconditions.checkArgument(in.get() == TAG_PLAIN, "Unknown column encoding");
+        final double[] values = new double[numTuples];
+        for (int i = 0; i < numTuples; ++i) {
+          values[i] = in.getDouble();
+        }
+        return new DoubleColumn(values, numTuples);
+      }
+      case STRING:
+        return new StringArrayColumn(decompressStrings(open(message.getStringColumn().getData()), numTuples),
+            numTuples);
+      case BOOLEAN:
+        return new BooleanColumn(decompressBooleans(open(message.getBooleanColumn().getData()), numTuples),
+            numTuples);
+      default:
+        throw new IllegalArgumentException("Unknown column type " + message.getType());
+    }
+  }
+
+  /**
+   * @param values the values of an INT, LONG or DATETIME column.
+   * @param encodings the encodings that may be used.
+   * @param plainBytes the size of the plain encoding of the column.
+   * @return the compressed column, or null if it is not smaller than plainBytes.
+   */
+  private static ByteString compressLongs(final long[] values, final int encodings, final int plainBytes) {
+    final int n = values.length;
+    long min = values[0];
+    long max = values[0];
+    long minDelta = 0;
+    long maxDelta = 0;
+    int numRuns = 1;
+    for (int i = 1; i < n; ++i) {
+      final long v = values[i];
+      min = Math.min(min, v);
+      max = Math.max(max, v);
+      final long delta = v - values[i - 1];
+      if (i == 1) {
+        minDelta = delta;
+        maxDelta = delta;
+      } else {
+        minDelta = Math.min(minDelta, delta);
+        maxDelta = Math.max(maxDelta, delta);
+      }
+      if (delta != 0) {
+        ++numRuns;
+      }
+    }
+
+    byte tag = -1;
+    long bestBytes = Long.MAX_VALUE;
+    if ((encodings & BIT_PACKING) != 0) {
+      final long forBytes = Long.SIZE / Byte.SIZE + 1 + packedBytes(n, width(max - min));
+      if (forBytes < bestBytes) {
+        tag = TAG_FRAME_OF_REFERENCE;
+        bestBytes = forBytes;
+      }
+      final long deltaBytes = 2 * Long.SIZE / Byte.SIZE + 1 + packedBytes(n - 1, width(maxDelta - minDelta));
+      if (deltaBytes < bestBytes) {
+        tag = TAG_DELTA;
+        bestBytes = deltaBytes;
+      }
+    }
+    long[] runValues = null;
+    long[] runLengths = null;
+    if ((encodings & RUN_LENGTH) != 0 && numRuns <= n / 2) {
+      runValues = new long[numRuns];
+      runLengths = new long[numRuns];
+      int run = 0;
+      runValues[0] = values[0];
+      for (int i = 1; i < n; ++i) {
+        if (values[i] != values[i - 1]) {
+          ++run;
+          runValues[run] = values[i];
+        }
+        ++runLengths[run];
+      }
+      ++runLengths[0];
+      final long rleBytes =
+          Integer.SIZE / Byte.SIZE + Long.SIZE / Byte.SIZE + 2 + packedBytes(numRuns, width(max - min))
+              + packedBytes(numRuns, width(max(runLengths) - 1));
+      if (rleBytes < bestBytes) {
+        tag = TAG_RUN_LENGTH;
+        bestBytes = rleBytes;
+      }
+    }
+    if (tag == -1 && (encodings & DEFLATE) == 0) {
+      return null;
+    }
+
+    final Output out = new Output((int) Math.min(bestBytes, plainBytes) + 1);
+    switch (tag) {
+      case TAG_FRAME_OF_REFERENCE:
+        out.buffer.put(TAG_FRAME_OF_REFERENCE);
+        packFrameOfReference(values, n, min, max, out);
+        break;
+      case TAG_DELTA: {
+        out.buffer.put(TAG_DELTA);
+        out.buffer.putLong(values[0]);
+        final long[] deltas = new long[n - 1];
+        for (int i = 1; i < n; ++i) {
+          deltas[i - 1] = values[i] - values[i - 1];
+        }
+        packFrameOfReference(deltas, n - 1, minDelta, maxDelta, out);
+        break;
+      }
+      case TAG_RUN_LENGTH:
+        out.buffer.put(TAG_RUN_LENGTH);
+        out.buffer.putInt(numRuns);
+        packFrameOfReference(runValues, numRuns, min, max, out);
+        packFrameOfReference(runLengths, numRuns, 1, max(runLengths), out);
+        break;
+      default:
+        out.buffer.put(TAG_PLAIN);
+        for (long v : values) {
+          out.ensure(Long.SIZE / Byte.SIZE);
+          out.buffer.putLong(v);
+        }
+        break;
+    }
+    return finish(out, encodings, plainBytes);
+  }
+
+  /**
+   * @param in the payload of a compressed INT, LONG or DATETIME column, after {@link #open}.
+   * @param n the number of values.
+   * @return the values.
+   */
+  private static long[] decompressLongs(final ByteBuffer in, final int n) {
+    final byte tag = in.get();
+    final long[] values = new long[n];
+    switch (tag) {
+      case TAG_PLAIN:
+        for (int i = 0; i < n; ++i) {
+          values[i] = in.getLong();
+        }
+        break;
+      case TAG_FRAME_OF_REFERENCE:
+        unpackFrameOfReference(in, n, values, 0);
+        break;
+      case TAG_DELTA:
+        values[0] = in.getLong();
+        unpackFrameOfReference(in, n - 1, values, 1);
+        for (int i = 1; i < n; ++i) {
+          values[i] += values[i - 1];
+        }
+        break;
+      case TAG_RUN_LENGTH: {
+        final int numRuns = in.getInt();
+        final long[] runValues = new long[numRuns];
+        final long[] runLengths = new long[numRuns];
+        unpackFrameOfReference(in, numRuns, runValues, 0);
+        unpackFrameOfReference(in, numRuns, runLengths, 0);
+        int i = 0;
+        for (int run = 0; run < numRuns; ++run) {
+          Arrays.fill(values, i, i + (int) runLengths[run], runValues[run]);
+          i += runLengths[run];
+        }
+        Preconditions.checkArgument(i == n, "Run-length encoded column has %s values instead of %s", i, n);
+        break;
+      }
+      default:
+        throw new IllegalArgumentException("Unknown column encoding " + tag);
+    }
+    return values;
+  }
+
+  /**
+   * @param column a STRING column.
+   * @param encodings the encodings that may be used.
+   * @return the compressed column, or null if none of the encodings applies.
+   */
+  private static ByteString compressStrings(final Column<?> column, final int encodings) {
+    final int n = column.size();
+    final String[] values = new String[n];
+    int numRuns = 0;
+    for (int i = 0; i < n; ++i) {
+      values[i] = column.getString(i);
+      if (i == 0 || !values[i].equals(values[i - 1])) {
+        ++numRuns;
+      }
+    }
+
+    Map<String, Integer> dictionary = null;
+    if ((encodings & DICTIONARY) != 0) {
+      dictionary = new HashMap<String, Integer>();
+      for (String value : values) {
+        if (!dictionary.containsKey(value)) {
+          if (dictionary.size() >= n / 2) {
+            dictionary = null;
+            break;
+          }
+          dictionary.put(value, dictionary.size());
+        }
+      }
+    }
+    final boolean runLength = (encodings & RUN_LENGTH) != 0 && numRuns <= n / 2;
+
+    final Output out = new Output(n * 4 + 16);
+    if (runLength && (dictionary == null || numRuns * 2 <= dictionary.size())) {
+      out.buffer.put(TAG_RUN_LENGTH);
+      out.buffer.putInt(numRuns);
+      final String[] runValues = new String[numRuns];
+      final long[] runLengths = new long[numRuns];
+      int run = -1;
+      for (int i = 0; i < n; ++i) {
+        if (i == 0 || !values[i].equals(values[i - 1])) {
+          ++run;
+          runValues[run] = values[i];
+        }
+        ++runLengths[run];
+      }
+      packStrings(runValues, numRuns, out);
+      packFrameOfReference(runLengths, numRuns, 1, max(runLengths), out);
+    } else if (dictionary != null) {
+      out.buffer.put(TAG_DICTIONARY);
+      out.buffer.putInt(dictionary.size());
+      final String[] words = new String[dictionary.size()];
+      for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+        words[entry.getValue()] = entry.getKey();
+      }
+      packStrings(words, words.length, out);
+      final long[] codes = new long[n];
+      for (int i = 0; i < n; ++i) {
+        codes[i] = dictionary.get(values[i]);
+      }
+      packFrameOfReference(codes, n, 0, words.length - 1, out);
+    } else if ((encodings & (BIT_PACKING | DEFLATE)) != 0) {
+      out.buffer.put(TAG_PLAIN);
+      packStrings(values, n, out);
+    } else {
+      return null;
+    }
+    /* The plain size of a STRING column depends on its indices, so the encoded column is always used. */
+    return finish(out, encodings, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param in the payload of a compressed STRING column, after {@link #open}.
+   * @param n the number of values.
+   * @return the values.
+   */
+  private static String[] decompressStrings(final ByteBuffer in, final int n) {
+    final byte tag = in.get();
+    switch (tag) {
+      case TAG_PLAIN:
+        return unpackStrings(in, n);
+      case TAG_RUN_LENGTH: {
+        final int numRuns = in.getInt();
+        final String[] runValues = unpackStrings(in, numRuns);
+        final long[] runLengths = new long[numRuns];
+        unpackFrameOfReference(in, numRuns, runLengths, 0);
+        final String[] values = new String[n];
+        int i = 0;
+        for (int run = 0; run < numRuns; ++run) {
+          Arrays.fill(values, i, i + (int) runLengths[run], runValues[run]);
+          i += runLengths[run];
+        }
+        Preconditions.checkArgument(i == n, "Run-length encoded column has %s values instead of %s", i, n);
+        return values;
+      }
+      case TAG_DICTIONARY: {
+        final String[] words = unpackStrings(in, in.getInt());
+        final long[] codes = new long[n];
+        unpackFrameOfReference(in, n, codes, 0);
+        final String[] values = new String[n];
+        for (int i = 0; i < n; ++i) {
+          values[i] = words[(int) codes[i]];
+        }
+        return values;
+      }
+      default:
+        throw new IllegalArgumentException("Unknown column encoding " + tag);
+    }
+  }
+
+  /**
+   * @param column a BOOLEAN column.
+   * @param encodings the encodings that may be used.
+   * @return the run-length encoded column, or null if it is not smaller than the plain bitmap.
+   */
+  private static ByteString compressBooleans(final Column<?> column, final int encodings) {
+    if ((encodings & RUN_LENGTH) == 0) {
+      return null;
+    }
+    final int n = column.size();
+    final int plainBytes = (n + Byte.SIZE - 1) / Byte.SIZE;
+    final long[] runLengths = new long[n];
+    int numRuns = 1;
+    runLengths[0] = 1;
+    for (int i = 1; i < n; ++i) {
+      if (column.getBoolean(i) != column.getBoolean(i - 1)) {
+        ++numRuns;
+      }
+      ++runLengths[numRuns - 1];
+    }
+    final long maxRun = max(runLengths);
+    final long rleBytes =
+        2 + Integer.SIZE / Byte.SIZE + Long.SIZE / Byte.SIZE + 1 + packedBytes(numRuns, width(maxRun - 1));
+    if (rleBytes >= plainBytes) {
+      return null;
+    }
+    final Output out = new Output(plainBytes);
+    out.buffer.put(TAG_RUN_LENGTH);
+    out.buffer.put((byte) (column.getBoolean(0) ? 1 : 0));
+    out.buffer.putInt(numRuns);
+    packFrameOfReference(runLengths, numRuns, 1, maxRun, out);
+    return finish(out, encodings, plainBytes);
+  }
+
+  /**
+   * @param in the payload of a compressed BOOLEAN column, after {@link #open}.
+   * @param n the number of values.
+   * @return the values.
+   */
+  private static BitSet decompressBooleans(final ByteBuffer in, final int n) {
+    final byte tag = in.get();
+    Preconditions.checkArgument(tag == TAG_RUN_LENGTH, "Unknown column encoding %s", tag);
+    boolean value = in.get() != 0;
+    final int numRuns = in.getInt();
+    final long[] runLengths = new long[numRuns];
+    unpackFrameOfReference(in, numRuns, runLengths, 0);
+    final BitSet values = new BitSet(n);
+    int i = 0;
+    for (int run = 0; run < numRuns; ++run) {
+      if (value) {
+        values.set(i, i + (int) runLengths[run]);
+      }
+      i += runLengths[run];
+      value = !value;
+    }
+    Preconditions.checkArgument(i == n, "Run-length encoded column has %s values instead of %s", i, n);
+    return values;
+  }
+
+  /**
+   * Write strings as their bit-packed UTF-8 lengths followed by their UTF-8 bytes.
+   *
+   * @param strings the strings.
+   * @param n the number of strings.
+   * @param out the output.
+   */
+  private static void packStrings(final String[] strings, final int n, final Output out) {
+    final byte[][] bytes = new byte[n][];
+    final long[] lengths = new long[n];
+    long maxLength = 0;
+    for (int i = 0; i < n; ++i) {
+      bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+      lengths[i] = bytes[i].length;
+      maxLength = Math.max(maxLength, lengths[i]);
+    }
+    packFrameOfReference(lengths, n, 0, maxLength, out);
+    for (byte[] b : bytes) {
+      out.ensure(b.length);
+      out.buffer.put(b);
+    }
+  }
+
+  /**
+   * @param in the input, positioned at strings written by {@link #packStrings}.
+   * @param n the number of strings.
+   * @return the strings.
+   */
+  private static String[] unpackStrings(final ByteBuffer in, final int n) {
+    final long[] lengths = new long[n];
+    unpackFrameOfReference(in, n, lengths, 0);
+    final String[] strings = new String[n];
+    for (int i = 0; i < n; ++i) {
+      final int length = (int) lengths[i];
+      if (in.hasArray()) {
+        strings[i] = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+      } else {
+        final byte[] b = new byte[length];
+        in.get(b);
+        strings[i] = new String(b, StandardCharsets.UTF_8);
+      }
+    }
+    return strings;
+  }
+
+  /**
+   * Write values as their minimum followed by the bit-packed differences from the minimum.
+   *
+   * @param values the values.
+   * @param n the number of values.
+   * @param min the minimum of the values.
+   * @param max the maximum of the values.
+   * @param out the output.
+   */
+  private static void packFrameOfReference(final long[] values, final int n, final long min, final long max,
+      final Output out) {
+    final int width = width(max - min);
+    out.ensure(Long.SIZE / Byte.SIZE + 1 + (int) packedBytes(n, width));
+    out.buffer.putLong(min);
+    out.buffer.put((byte) width);
+    if (width == 0) {
+      return;
+    }
+    final ByteBuffer buffer = out.buffer;
+    if (width == Long.SIZE) {
+      for (int i = 0; i < n; ++i) {
+        buffer.putLong(values[i] - min);
+      }
+      return;
+    }
+    long acc = 0;
+    int bits = 0;
+    for (int i = 0; i < n; ++i) {
+      final long x = values[i] - min;
+      acc |= x << bits;
+      if (bits + width < Long.SIZE) {
+        bits += width;
+      } else {
+        buffer.putLong(acc);
+        final int used = Long.SIZE - bits;
+        acc = x >>> used;
+        bits = width - used;
+      }
+    }
+    for (int b = 0; b < bits; b += Byte.SIZE) {
+      buffer.put((byte) (acc >>> b));
+    }
+  }
+
+  /**
+   * Read values written by {@link #packFrameOfReference}.
+   *
+   * @param in the input.
+   * @param n the number of values.
+   * @param values the array to read the values into.
+   * @param offset the index in values of the first value.
+   */
+  private static void unpackFrameOfReference(final ByteBuffer in, final int n, final long[] values, final int offset) {
+    final long min = in.getLong();
+    final int width = in.get();
+    if (width == 0) {
+      Arrays.fill(values, offset, offset + n, min);
+      return;
+    }
+    if (width == Long.SIZE) {
+      for (int i = 0; i < n; ++i) {
+        values[offset + i] = in.getLong() + min;
+      }
+      return;
+    }
+    final long mask = (1L << width) - 1;
+    long remaining = packedBytes(n, width);
+    long acc = 0;
+    int bits = 0;
+    for (int i = 0; i < n; ++i) {
+      long x;
+      if (bits >= width) {
+        x = acc & mask;
+        acc >>>= width;
+        bits -= width;
+      } else {
+        long next;
+        if (remaining >= Long.SIZE / Byte.SIZE) {
+          next = in.getLong();
+          remaining -= Long.SIZE / Byte.SIZE;
+        } else {
+          next = 0;
+          for (int b = 0; remaining > 0; b += Byte.SIZE, --remaining) {
+            next |= (in.get() & 0xFFL) << b;
+          }
+        }
+        x = (acc | (next << bits)) & mask;
+        final int used = width - bits;
+        acc = next >>> used;
+        bits = Long.SIZE - used;
+      }
+      values[offset + i] = x + min;
+    }
+  }
+
+  /**
+   * @param range the difference between the largest and the smallest value, as an unsigned long.
+   * @return the number of bits needed to store any value of the range.
+   */
+  private static int width(final long range) {
+    return Long.SIZE - Long.numberOfLeadingZeros(range);
+  }
+
+  /**
+   * @param n a number of values.
+   * @param width the number of bits of each value.
+   * @return the number of bytes that the bit-packed values take.
+   */
+  private static long packedBytes(final int n, final int width) {
+    return ((long) n * width + Byte.SIZE - 1) / Byte.SIZE;
+  }
+
+  /**
+   * @param values some non-negative values.
+   * @return the largest value.
+   */
+  private static long max(final long[] values) {
+    long max = 0;
+    for (long v : values) {
+      max = Math.max(max, v);
+    }
+    return max;
+  }
+
+  /**
+   * Deflate the encoded column if that is allowed and makes it smaller.
+   *
+   * @param out the encoded column, starting with its tag.
+   * @param encodings the encodings that may be used.
+   * @param plainBytes the size of the plain encoding of the column.
+   * @return the payload, or null if it is not smaller than plainBytes.
+   */
+  private static ByteString finish(final Output out, final int encodings, final int plainBytes) {
+    final ByteBuffer buffer = out.buffer;
+    buffer.flip();
+    if ((encodings & DEFLATE) != 0) {
+      final int length = buffer.remaining() - 1;
+      final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      deflater.setInput(buffer.array(), buffer.arrayOffset() + 1, length);
+      deflater.finish();
+      final byte[] deflated = new byte[length + Integer.SIZE / Byte.SIZE + 1];
+      deflated[0] = (byte) (buffer.get(0) | DEFLATED);
+      ByteBuffer.wrap(deflated, 1, Integer.SIZE / Byte.SIZE).order(ByteOrder.LITTLE_ENDIAN).putInt(length);
+      final int header = Integer.SIZE / Byte.SIZE + 1;
+      final int deflatedLength = deflater.deflate(deflated, header, deflated.length - header);
+      final boolean smaller = deflater.finished();
+      deflater.end();
+      if (smaller && header + deflatedLength < plainBytes) {
+        return ByteString.copyFrom(deflated, 0, header + deflatedLength);
+      }
+      if (buffer.get(0) == TAG_PLAIN && plainBytes != Integer.MAX_VALUE) {
+        /* Only Deflate could have made a plain fixed-width column smaller. */
+        return null;
+      }
+    }
+    if (buffer.remaining() >= plainBytes) {
+      return null;
+    }
+    return ByteString.copyFrom(buffer);
+  }
+
+  /**
+   * @param data the payload of a compressed column.
+   * @return a little-endian buffer over the payload, inflated if it was deflated. Positioned at the tag.
+   */
+  private static ByteBuffer open(final ByteString data) {
+    final ByteBuffer in = data.asReadOnlyByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    final byte tag = in.get(0);
+    if ((tag & DEFLATED) == 0) {
+      return in;
+    }
+    in.position(1);
+    final int length = in.getInt();
+    final byte[] compressed = new byte[in.remaining()];
+    in.get(compressed);
+    final byte[] inflated = new byte[length + 1];
+    inflated[0] = (byte) (tag & ~DEFLATED);
+    final Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      final int n = inflater.inflate(inflated, 1, length);
+      Preconditions.checkArgument(n == length, "Deflated column has %s bytes instead of %s", n, length);
+    } catch (DataFormatException e) {
+      throw new IllegalArgumentException("Corrupt deflated column", e);
+    } finally {
+      inflater.end();
+    }
+    return ByteBuffer.wrap(inflated).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * A little-endian output buffer that grows as needed.
+   */
+  private static final class Output {
+    /** The buffer. */
+    private ByteBuffer buffer;
+
+    /**
+     * @param capacity the initial capacity.
+     */
+    Output(final int capacity) {
+      buffer = ByteBuffer.allocate(Math.max(capacity, Long.SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Make room for more bytes.
+     *
+     * @param bytes the number of bytes that will be written.
+     */
+    void ensure(final int bytes) {
+      if (buffer.remaining() >= bytes) {
+        return;
+      }
+      final ByteBuffer grown =
+          ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes)).order(
+              ByteOrder.LITTLE_ENDIAN);
+      buffer.flip();
+      grown.put(buffer);
+      buffer = grown;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package edu.washington.escience.myria.column;
+
+import java.nio.DoubleBuffer;
+
+import edu.washington.escience.myria.Type;
+
+/**
+ * A column of Double values that simply wraps a read-only view of a buffer, such as a memory-mapped file.
+ *
+ *
+ */
+public final class DoubleBufferColumn extends Column<Double> {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The view of the data. Its limit is the number of rows. */
+  private final DoubleBuffer doubleBuffer;
+
+  /**
+   * Construct a new DoubleBufferColumn wrapping a view of a buffer.
+   *
+   * @param doubleBuffer the data. Must not be modified while the column is in use.
+   */
+  public DoubleBufferColumn(final DoubleBuffer doubleBuffer) {
+    this.doubleBuffer = doubleBuffer;
+  }
+
+  @Override
+  public Double getObject(final int row) {
+    return Double.valueOf(doubleBuffer.get(row));
+  }
+
+  @Override
+  public double getDouble(final int row) {
+    return doubleBuffer.get(row);
+  }
+
+  @Override
+  public Type getType() {
+    return Type.DOUBLE_TYPE;
+  }
+
+  @Override
+  public int size() {
+    return doubleBuffer.limit();
+  }
+
+}
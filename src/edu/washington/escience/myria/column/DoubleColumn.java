@@ -58,6 +58,13 @@ public final class DoubleColumn extends Column<Double> {
     return position;
   }
 
+  /**
+   * @return the array backing this column, for {@link ColumnArrayPool}.
+   */
+  double[] getArray() {
+    return data;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder();
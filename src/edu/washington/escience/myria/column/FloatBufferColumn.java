@@ -0,0 +1,48 @@
+package edu.washington.escience.myria.column;
+
+import java.nio.FloatBuffer;
+
+import edu.washington.escience.myria.Type;
+
+/**
+ * A column of Float values that simply wraps a read-only view of a buffer, such as a memory-mapped file.
+ *
+ *
+ */
+public final class FloatBufferColumn extends Column<Float> {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The view of the data. Its limit is the number of rows. */
+  private final FloatBuffer floatBuffer;
+
+  /**
+   * Construct a new FloatBufferColumn wrapping a view of a buffer.
+   *
+   * @param floatBuffer the data. Must not be modified while the column is in use.
+   */
+  public FloatBufferColumn(final FloatBuffer floatBuffer) {
+    this.floatBuffer = floatBuffer;
+  }
+
+  @Override
+  public Float getObject(final int row) {
+    return Float.valueOf(floatBuffer.get(row));
+  }
+
+  @Override
+  public float getFloat(final int row) {
+    return floatBuffer.get(row);
+  }
+
+  @Override
+  public Type getType() {
+    return Type.FLOAT_TYPE;
+  }
+
+  @Override
+  public int size() {
+    return floatBuffer.limit();
+  }
+
+}
@@ -56,6 +56,13 @@ public final class FloatColumn extends Column<Float> {
     return position;
   }
 
+  /**
+   * @return the array backing this column, for {@link ColumnArrayPool}.
+   */
+  float[] getArray() {
+    return data;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder();
@@ -43,4 +43,11 @@ public final class IntArrayColumn extends IntColumn {
   public int size() {
     return position;
   }
+
+  /**
+   * @return the array backing this column, for {@link ColumnArrayPool}.
+   */
+  int[] getArray() {
+    return data;
+  }
 }
@@ -0,0 +1,41 @@
+package edu.washington.escience.myria.column;
+
+import java.nio.IntBuffer;
+
+/**
+ * An IntColumn that simply wraps a read-only view of a buffer, such as the bytes of a received message.
+ *
+ *
+ */
+public final class IntBufferColumn extends IntColumn {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The view of the data. Its limit is the number of rows. */
+  private final IntBuffer intBuffer;
+
+  /**
+   * Construct a new IntBufferColumn wrapping a view of a buffer.
+   *
+   * @param intBuffer the data. Must not be modified while the column is in use.
+   */
+  public IntBufferColumn(final IntBuffer intBuffer) {
+    this.intBuffer = intBuffer;
+  }
+
+  @Override
+  public Integer getObject(final int row) {
+    return Integer.valueOf(intBuffer.get(row));
+  }
+
+  @Override
+  public int getInt(final int row) {
+    return intBuffer.get(row);
+  }
+
+  @Override
+  public int size() {
+    return intBuffer.limit();
+  }
+
+}
@@ -0,0 +1,48 @@
+package edu.washington.escience.myria.column;
+
+import java.nio.LongBuffer;
+
+import edu.washington.escience.myria.Type;
+
+/**
+ * A column of Long values that simply wraps a read-only view of a buffer, such as a memory-mapped file.
+ *
+ *
+ */
+public final class LongBufferColumn extends Column<Long> {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The view of the data. Its limit is the number of rows. */
+  private final LongBuffer longBuffer;
+
+  /**
+   * Construct a new LongBufferColumn wrapping a view of a buffer.
+   *
+   * @param longBuffer the data. Must not be modified while the column is in use.
+   */
+  public LongBufferColumn(final LongBuffer longBuffer) {
+    this.longBuffer = longBuffer;
+  }
+
+  @Override
+  public Long getObject(final int row) {
+    return Long.valueOf(longBuffer.get(row));
+  }
+
+  @Override
+  public long getLong(final int row) {
+    return longBuffer.get(row);
+  }
+
+  @Override
+  public Type getType() {
+    return Type.LONG_TYPE;
+  }
+
+  @Override
+  public int size() {
+    return longBuffer.limit();
+  }
+
+}
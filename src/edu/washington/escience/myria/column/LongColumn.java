@@ -49,6 +49,13 @@ public final class LongColumn extends Column<Long> {
     return position;
   }
 
+  /**
+   * @return the array backing this column, for {@link ColumnArrayPool}.
+   */
+  long[] getArray() {
+    return data;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder();
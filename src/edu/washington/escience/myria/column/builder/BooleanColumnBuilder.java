@@ -37,9 +37,18 @@ public final class BooleanColumnBuilder extends ColumnBuilder<Boolean> {
 
   /** Constructs an empty column that can hold up to TupleBatch.BATCH_SIZE elements. */
   public BooleanColumnBuilder() {
+    this(TupleBatch.BATCH_SIZE);
+  }
+
+  /**
+   * Constructs an empty column that can hold up to the specified number of elements.
+   * 
+   * @param capacity the maximum number of elements.
+   */
+  public BooleanColumnBuilder(final int capacity) {
     data = new BitSet();
     numBits = 0;
-    capacity = TupleBatch.BATCH_SIZE;
+    capacity = capacity;
   }
 
   /**
@@ -6,7 +6,9 @@ import java.util.List;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.ColumnCompression;
 import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
+import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
  * A column of a batch of tuples.
@@ -22,21 +24,32 @@ public final class ColumnFactory {
    * @return a ColumnBuilder for the specified Myria type.
    */
   public static ColumnBuilder<?> allocateColumn(final Type type) {
+    return allocateColumn(type, TupleBatch.BATCH_SIZE);
+  }
+
+  /**
+   * Allocate a ColumnBuilder for the specified Myria type, which holds up to the specified number of values.
+   * 
+   * @param type the Myria type of the returned Builder.
+   * @param capacity the maximum number of values.
+   * @return a ColumnBuilder for the specified Myria type.
+   */
+  public static ColumnBuilder<?> allocateColumn(final Type type, final int capacity) {
     switch (type) {
       case BOOLEAN_TYPE:
-        return new BooleanColumnBuilder();
+        return new BooleanColumnBuilder(capacity);
       case DOUBLE_TYPE:
-        return new DoubleColumnBuilder();
+        return new DoubleColumnBuilder(capacity);
       case FLOAT_TYPE:
-        return new FloatColumnBuilder();
+        return new FloatColumnBuilder(capacity);
       case INT_TYPE:
-        return new IntColumnBuilder();
+        return new IntColumnBuilder(capacity);
       case LONG_TYPE:
-        return new LongColumnBuilder();
+        return new LongColumnBuilder(capacity);
       case STRING_TYPE:
-        return new StringColumnBuilder();
+        return new StringColumnBuilder(capacity);
       case DATETIME_TYPE:
-        return new DateTimeColumnBuilder();
+        return new DateTimeColumnBuilder(capacity);
     }
     throw new IllegalArgumentException("Cannot allocate a ColumnBuilder for unknown type " + type);
   }
@@ -51,6 +64,22 @@ public final class ColumnFactory {
     return allocateColumns(schema.getColumnTypes());
   }
 
+  /**
+   * Allocates an array of Columns to match the given Schema, which hold up to the specified number of tuples, e.g. the
+   * size of a batch chosen by a {@link edu.washington.escience.myria.storage.BatchSizeController}.
+   * 
+   * @param schema the Schema
+   * @param capacity the maximum number of tuples.
+   * @return the list of Columns
+   */
+  public static List<ColumnBuilder<?>> allocateColumns(final Schema schema, final int capacity) {
+    final ArrayList<ColumnBuilder<?>> columns = new ArrayList<ColumnBuilder<?>>(schema.numColumns());
+    for (Type type : schema.getColumnTypes()) {
+      columns.add(allocateColumn(type, capacity));
+    }
+    return columns;
+  }
+
   /**
    * Allocates an array of Columns to match the given Type array.
    * 
@@ -66,13 +95,17 @@ public final class ColumnFactory {
   }
 
   /**
-   * Deserializes a ColumnMessage into the appropriate Column.
+   * Deserializes a ColumnMessage, plain or compressed by {@link ColumnCompression}, into the appropriate Column.
    * 
    * @param message the ColumnMessage to be deserialized.
    * @param numTuples num tuples in the column message
    * @return a Column of the appropriate type and contents.
    */
   public static Column<?> columnFromColumnMessage(final ColumnMessage message, final int numTuples) {
+    final Column<?> compressed = ColumnCompression.decompress(message, numTuples);
+    if (compressed != null) {
+      return compressed;
+    }
     switch (message.getType()) {
       case BOOLEAN:
         return BooleanColumnBuilder.buildFromProtobuf(message, numTuples);
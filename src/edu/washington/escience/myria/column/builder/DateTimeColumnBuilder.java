@@ -41,8 +41,17 @@ public final class DateTimeColumnBuilder extends ColumnBuilder<DateTime> {
 
   /** Constructs an empty column that can hold up to TupleBatch.BATCH_SIZE elements. */
   public DateTimeColumnBuilder() {
+    this(TupleBatch.BATCH_SIZE);
+  }
+
+  /**
+   * Constructs an empty column that can hold up to the specified number of elements.
+   * 
+   * @param capacity the maximum number of elements.
+   */
+  public DateTimeColumnBuilder(final int capacity) {
     numDates = 0;
-    data = new DateTime[TupleBatch.BATCH_SIZE];
+    data = new DateTime[capacity];
   }
 
   /**
@@ -5,12 +5,14 @@ import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteStatement;
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.ColumnArrayPool;
 import edu.washington.escience.myria.column.DoubleColumn;
 import edu.washington.escience.myria.column.mutable.DoubleMutableColumn;
 import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
@@ -30,9 +32,19 @@ public final class DoubleColumnBuilder extends ColumnBuilder<Double> {
    * */
   private boolean built = false;
 
-  /** Constructs an empty column that can hold up to TupleBatch.BATCH_SIZE elements. */
+  /** Constructs an empty column that can hold up to {@link TupleBatch#BATCH_SIZE} elements, using a pooled array. */
   public DoubleColumnBuilder() {
-    data = DoubleBuffer.allocate(TupleBatch.BATCH_SIZE);
+    this(TupleBatch.BATCH_SIZE);
+  }
+
+  /**
+   * Constructs an empty column that can hold up to the specified number of elements. Only arrays of
+   * {@link TupleBatch#BATCH_SIZE} elements come from the pool.
+   * 
+   * @param capacity the maximum number of elements.
+   */
+  public DoubleColumnBuilder(final int capacity) {
+    data = DoubleBuffer.wrap(ColumnArrayPool.allocateDoubles(capacity));
   }
 
   /**
@@ -107,6 +119,7 @@ public final class DoubleColumnBuilder extends ColumnBuilder<Double> {
   @Override
   public DoubleColumnBuilder expandAll() {
     Preconditions.checkArgument(!built, "No further changes are allowed after the builder has built the column.");
+    Arrays.fill(data.array(), data.position(), data.capacity(), 0);
     data.position(data.capacity());
     return this;
   }
@@ -115,7 +128,10 @@ public final class DoubleColumnBuilder extends ColumnBuilder<Double> {
   public DoubleColumnBuilder expand(final int size) throws BufferOverflowException {
     Preconditions.checkArgument(!built, "No further changes are allowed after the builder has built the column.");
     Preconditions.checkArgument(size >= 0);
-    data.position(data.position() + size);
+    int oldPosition = data.position();
+    data.position(oldPosition + size);
+    /* The array may come from the pool and still hold the values of an old batch. */
+    Arrays.fill(data.array(), oldPosition, data.position(), 0);
     return this;
   }
 
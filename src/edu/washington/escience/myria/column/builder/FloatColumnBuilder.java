@@ -5,12 +5,14 @@ import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteStatement;
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.ColumnArrayPool;
 import edu.washington.escience.myria.column.FloatColumn;
 import edu.washington.escience.myria.column.mutable.FloatMutableColumn;
 import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
@@ -30,9 +32,19 @@ public final class FloatColumnBuilder extends ColumnBuilder<Float> {
    * */
   private boolean built = false;
 
-  /** Constructs an empty column that can hold up to TupleBatch.BATCH_SIZE elements. */
+  /** Constructs an empty column that can hold up to {@link TupleBatch#BATCH_SIZE} elements, using a pooled array. */
   public FloatColumnBuilder() {
-    data = FloatBuffer.allocate(TupleBatch.BATCH_SIZE);
+    this(TupleBatch.BATCH_SIZE);
+  }
+
+  /**
+   * Constructs an empty column that can hold up to the specified number of elements. Only arrays of
+   * {@link TupleBatch#BATCH_SIZE} elements come from the pool.
+   * 
+   * @param capacity the maximum number of elements.
+   */
+  public FloatColumnBuilder(final int capacity) {
+    data = FloatBuffer.wrap(ColumnArrayPool.allocateFloats(capacity));
   }
 
   /**
@@ -127,13 +139,17 @@ public final class FloatColumnBuilder extends ColumnBuilder<Float> {
   public FloatColumnBuilder expand(final int size) {
     Preconditions.checkArgument(!built, "No further changes are allowed after the builder has built the column.");
     Preconditions.checkArgument(size >= 0);
-    data.position(data.position() + size);
+    int oldPosition = data.position();
+    data.position(oldPosition + size);
+    /* The array may come from the pool and still hold the values of an old batch. */
+    Arrays.fill(data.array(), oldPosition, data.position(), 0);
     return this;
   }
 
   @Override
   public FloatColumnBuilder expandAll() {
     Preconditions.checkArgument(!built, "No further changes are allowed after the builder has built the column.");
+    Arrays.fill(data.array(), data.position(), data.capacity(), 0);
     data.position(data.capacity());
     return this;
   }
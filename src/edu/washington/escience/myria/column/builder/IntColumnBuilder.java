@@ -4,12 +4,14 @@ import java.nio.BufferOverflowException;
 import java.nio.IntBuffer;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteStatement;
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.ColumnArrayPool;
 import edu.washington.escience.myria.column.IntArrayColumn;
 import edu.washington.escience.myria.column.IntColumn;
 import edu.washington.escience.myria.column.IntProtoColumn;
@@ -31,9 +33,19 @@ public final class IntColumnBuilder extends ColumnBuilder<Integer> {
    * */
   private boolean built = false;
 
-  /** Constructs an empty column that can hold up to TupleBatch.BATCH_SIZE elements. */
+  /** Constructs an empty column that can hold up to {@link TupleBatch#BATCH_SIZE} elements, using a pooled array. */
   public IntColumnBuilder() {
-    data = IntBuffer.allocate(TupleBatch.BATCH_SIZE);
+    this(TupleBatch.BATCH_SIZE);
+  }
+
+  /**
+   * Constructs an empty column that can hold up to the specified number of elements. Only arrays of
+   * {@link TupleBatch#BATCH_SIZE} elements come from the pool.
+   * 
+   * @param capacity the maximum number of elements.
+   */
+  public IntColumnBuilder(final int capacity) {
+    data = IntBuffer.wrap(ColumnArrayPool.allocateInts(capacity));
   }
 
   /**
@@ -123,13 +135,17 @@ public final class IntColumnBuilder extends ColumnBuilder<Integer> {
   public IntColumnBuilder expand(final int size) {
     Preconditions.checkArgument(!built, "No further changes are allowed after the builder has built the column.");
     Preconditions.checkArgument(size >= 0);
-    data.position(data.position() + size);
+    int oldPosition = data.position();
+    data.position(oldPosition + size);
+    /* The array may come from the pool and still hold the values of an old batch. */
+    Arrays.fill(data.array(), oldPosition, data.position(), 0);
     return this;
   }
 
   @Override
   public IntColumnBuilder expandAll() {
     Preconditions.checkArgument(!built, "No further changes are allowed after the builder has built the column.");
+    Arrays.fill(data.array(), data.position(), data.capacity(), 0);
     data.position(data.capacity());
     return this;
   }
@@ -39,8 +39,17 @@ public final class StringColumnBuilder extends ColumnBuilder<String> {
 
   /** Constructs an empty column that can hold up to TupleBatch.BATCH_SIZE elements. */
   public StringColumnBuilder() {
+    this(TupleBatch.BATCH_SIZE);
+  }
+
+  /**
+   * Constructs an empty column that can hold up to the specified number of elements.
+   * 
+   * @param capacity the maximum number of elements.
+   */
+  public StringColumnBuilder(final int capacity) {
     numStrings = 0;
-    data = new String[TupleBatch.BATCH_SIZE];
+    data = new String[capacity];
   }
 
   /**
@@ -0,0 +1,83 @@
+package edu.washington.escience.myria.column.mutable;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+import org.joda.time.DateTime;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.DateTimeColumn;
+import edu.washington.escience.myria.storage.ReadableColumn;
+
+/**
+ * A mutable column of DateTime values, kept as milliseconds since the epoch, stored outside the Java heap.
+ * 
+ */
+public final class DateTimeOffHeapMutableColumn extends OffHeapMutableColumn<DateTime> {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The number of bytes per value. */
+  private static final int WIDTH = 8;
+
+  /**
+   * Constructs a new column.
+   * 
+   * @param data the values, 8 bytes per row in native byte order.
+   * @param numData number of tuples.
+   * */
+  public DateTimeOffHeapMutableColumn(final ByteBuffer data, final int numData) {
+    super(data, numData);
+  }
+
+  /**
+   * @param column the column to be copied.
+   * @return an off-heap copy of the specified column.
+   */
+  public static DateTimeOffHeapMutableColumn copyOf(final ReadableColumn column) {
+    ByteBuffer data = allocate(column.size() * WIDTH);
+    for (int i = 0; i < column.size(); ++i) {
+      data.putLong(i * WIDTH, column.getDateTime(i).getMillis());
+    }
+    return new DateTimeOffHeapMutableColumn(data, column.size());
+  }
+
+  @Deprecated
+  @Override
+  public DateTime getObject(final int row) {
+    return getDateTime(row);
+  }
+
+  @Override
+  public Type getType() {
+    return Type.DATETIME_TYPE;
+  }
+
+  @Override
+  public DateTime getDateTime(final int row) {
+    Preconditions.checkElementIndex(row, size());
+    return new DateTime(getData().getLong(row * WIDTH));
+  }
+
+  @Override
+  public void replaceDateTime(@Nonnull final DateTime value, final int row) {
+    Preconditions.checkElementIndex(row, size());
+    getData().putLong(row * WIDTH, value.getMillis());
+  }
+
+  @Override
+  public DateTimeColumn toColumn() {
+    DateTime[] values = new DateTime[size()];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = getDateTime(i);
+    }
+    return new DateTimeColumn(values, values.length);
+  }
+
+  @Override
+  public DateTimeOffHeapMutableColumn clone() {
+    return new DateTimeOffHeapMutableColumn(copy(getData()), size());
+  }
+}
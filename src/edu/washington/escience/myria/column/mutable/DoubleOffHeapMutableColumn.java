@@ -0,0 +1,79 @@
+package edu.washington.escience.myria.column.mutable;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.DoubleColumn;
+import edu.washington.escience.myria.storage.ReadableColumn;
+
+/**
+ * A mutable column of Double values, stored outside the Java heap.
+ * 
+ */
+public final class DoubleOffHeapMutableColumn extends OffHeapMutableColumn<Double> {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The number of bytes per value. */
+  private static final int WIDTH = 8;
+
+  /**
+   * Constructs a new column.
+   * 
+   * @param data the values, 8 bytes per row in native byte order.
+   * @param numData number of tuples.
+   * */
+  public DoubleOffHeapMutableColumn(final ByteBuffer data, final int numData) {
+    super(data, numData);
+  }
+
+  /**
+   * @param column the column to be copied.
+   * @return an off-heap copy of the specified column.
+   */
+  public static DoubleOffHeapMutableColumn copyOf(final ReadableColumn column) {
+    ByteBuffer data = allocate(column.size() * WIDTH);
+    for (int i = 0; i < column.size(); ++i) {
+      data.putDouble(i * WIDTH, column.getDouble(i));
+    }
+    return new DoubleOffHeapMutableColumn(data, column.size());
+  }
+
+  @Deprecated
+  @Override
+  public Double getObject(final int row) {
+    return Double.valueOf(getDouble(row));
+  }
+
+  @Override
+  public Type getType() {
+    return Type.DOUBLE_TYPE;
+  }
+
+  @Override
+  public double getDouble(final int row) {
+    Preconditions.checkElementIndex(row, size());
+    return getData().getDouble(row * WIDTH);
+  }
+
+  @Override
+  public void replaceDouble(final double value, final int row) {
+    Preconditions.checkElementIndex(row, size());
+    getData().putDouble(row * WIDTH, value);
+  }
+
+  @Override
+  public DoubleColumn toColumn() {
+    double[] values = new double[size()];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = getDouble(i);
+    }
+    return new DoubleColumn(values, values.length);
+  }
+
+  @Override
+  public DoubleOffHeapMutableColumn clone() {
+    return new DoubleOffHeapMutableColumn(copy(getData()), size());
+  }
+}
@@ -0,0 +1,79 @@
+package edu.washington.escience.myria.column.mutable;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.FloatColumn;
+import edu.washington.escience.myria.storage.ReadableColumn;
+
+/**
+ * A mutable column of Float values, stored outside the Java heap.
+ * 
+ */
+public final class FloatOffHeapMutableColumn extends OffHeapMutableColumn<Float> {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The number of bytes per value. */
+  private static final int WIDTH = 4;
+
+  /**
+   * Constructs a new column.
+   * 
+   * @param data the values, 4 bytes per row in native byte order.
+   * @param numData number of tuples.
+   * */
+  public FloatOffHeapMutableColumn(final ByteBuffer data, final int numData) {
+    super(data, numData);
+  }
+
+  /**
+   * @param column the column to be copied.
+   * @return an off-heap copy of the specified column.
+   */
+  public static FloatOffHeapMutableColumn copyOf(final ReadableColumn column) {
+    ByteBuffer data = allocate(column.size() * WIDTH);
+    for (int i = 0; i < column.size(); ++i) {
+      data.putFloat(i * WIDTH, column.getFloat(i));
+    }
+    return new FloatOffHeapMutableColumn(data, column.size());
+  }
+
+  @Deprecated
+  @Override
+  public Float getObject(final int row) {
+    return Float.valueOf(getFloat(row));
+  }
+
+  @Override
+  public Type getType() {
+    return Type.FLOAT_TYPE;
+  }
+
+  @Override
+  public float getFloat(final int row) {
+    Preconditions.checkElementIndex(row, size());
+    return getData().getFloat(row * WIDTH);
+  }
+
+  @Override
+  public void replaceFloat(final float value, final int row) {
+    Preconditions.checkElementIndex(row, size());
+    getData().putFloat(row * WIDTH, value);
+  }
+
+  @Override
+  public FloatColumn toColumn() {
+    float[] values = new float[size()];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = getFloat(i);
+    }
+    return new FloatColumn(values, values.length);
+  }
+
+  @Override
+  public FloatOffHeapMutableColumn clone() {
+    return new FloatOffHeapMutableColumn(copy(getData()), size());
+  }
+}
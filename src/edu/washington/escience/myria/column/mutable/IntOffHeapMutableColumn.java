@@ -0,0 +1,79 @@
+package edu.washington.escience.myria.column.mutable;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.IntArrayColumn;
+import edu.washington.escience.myria.storage.ReadableColumn;
+
+/**
+ * A mutable column of Int values, stored outside the Java heap.
+ * 
+ */
+public final class IntOffHeapMutableColumn extends OffHeapMutableColumn<Integer> {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The number of bytes per value. */
+  private static final int WIDTH = 4;
+
+  /**
+   * Constructs a new column.
+   * 
+   * @param data the values, 4 bytes per row in native byte order.
+   * @param numData number of tuples.
+   * */
+  public IntOffHeapMutableColumn(final ByteBuffer data, final int numData) {
+    super(data, numData);
+  }
+
+  /**
+   * @param column the column to be copied.
+   * @return an off-heap copy of the specified column.
+   */
+  public static IntOffHeapMutableColumn copyOf(final ReadableColumn column) {
+    ByteBuffer data = allocate(column.size() * WIDTH);
+    for (int i = 0; i < column.size(); ++i) {
+      data.putInt(i * WIDTH, column.getInt(i));
+    }
+    return new IntOffHeapMutableColumn(data, column.size());
+  }
+
+  @Deprecated
+  @Override
+  public Integer getObject(final int row) {
+    return Integer.valueOf(getInt(row));
+  }
+
+  @Override
+  public Type getType() {
+    return Type.INT_TYPE;
+  }
+
+  @Override
+  public int getInt(final int row) {
+    Preconditions.checkElementIndex(row, size());
+    return getData().getInt(row * WIDTH);
+  }
+
+  @Override
+  public void replaceInt(final int value, final int row) {
+    Preconditions.checkElementIndex(row, size());
+    getData().putInt(row * WIDTH, value);
+  }
+
+  @Override
+  public IntArrayColumn toColumn() {
+    int[] values = new int[size()];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = getInt(i);
+    }
+    return new IntArrayColumn(values, values.length);
+  }
+
+  @Override
+  public IntOffHeapMutableColumn clone() {
+    return new IntOffHeapMutableColumn(copy(getData()), size());
+  }
+}
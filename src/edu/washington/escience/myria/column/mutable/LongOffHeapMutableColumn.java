@@ -0,0 +1,79 @@
+package edu.washington.escience.myria.column.mutable;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.LongColumn;
+import edu.washington.escience.myria.storage.ReadableColumn;
+
+/**
+ * A mutable column of Long values, stored outside the Java heap.
+ * 
+ */
+public final class LongOffHeapMutableColumn extends OffHeapMutableColumn<Long> {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The number of bytes per value. */
+  private static final int WIDTH = 8;
+
+  /**
+   * Constructs a new column.
+   * 
+   * @param data the values, 8 bytes per row in native byte order.
+   * @param numData number of tuples.
+   * */
+  public LongOffHeapMutableColumn(final ByteBuffer data, final int numData) {
+    super(data, numData);
+  }
+
+  /**
+   * @param column the column to be copied.
+   * @return an off-heap copy of the specified column.
+   */
+  public static LongOffHeapMutableColumn copyOf(final ReadableColumn column) {
+    ByteBuffer data = allocate(column.size() * WIDTH);
+    for (int i = 0; i < column.size(); ++i) {
+      data.putLong(i * WIDTH, column.getLong(i));
+    }
+    return new LongOffHeapMutableColumn(data, column.size());
+  }
+
+  @Deprecated
+  @Override
+  public Long getObject(final int row) {
+    return Long.valueOf(getLong(row));
+  }
+
+  @Override
+  public Type getType() {
+    return Type.LONG_TYPE;
+  }
+
+  @Override
+  public long getLong(final int row) {
+    Preconditions.checkElementIndex(row, size());
+    return getData().getLong(row * WIDTH);
+  }
+
+  @Override
+  public void replaceLong(final long value, final int row) {
+    Preconditions.checkElementIndex(row, size());
+    getData().putLong(row * WIDTH, value);
+  }
+
+  @Override
+  public LongColumn toColumn() {
+    long[] values = new long[size()];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = getLong(i);
+    }
+    return new LongColumn(values, values.length);
+  }
+
+  @Override
+  public LongOffHeapMutableColumn clone() {
+    return new LongOffHeapMutableColumn(copy(getData()), size());
+  }
+}
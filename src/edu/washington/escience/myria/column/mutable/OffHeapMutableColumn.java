@@ -0,0 +1,181 @@
+package edu.washington.escience.myria.column.mutable;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.ReadableColumn;
+
+/**
+ * A mutable column whose values live outside the Java heap, in a direct {@link ByteBuffer}. Long-lived operator state
+ * kept in these columns does not add to the heap the garbage collector has to trace, at the cost of a bounds-checked
+ * buffer access per value. The memory is returned when the column itself is garbage collected.
+ *
+ * @param <T> type of the objects in this column.
+ */
+public abstract class OffHeapMutableColumn<T extends Comparable<?>> extends MutableColumn<T> {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The fixed-width values, one slot per row, in native byte order. */
+  private transient ByteBuffer data;
+  /** The number of existing rows in this column. */
+  private final int position;
+
+  /**
+   * Constructs a new column.
+   *
+   * @param data the values, one slot per row.
+   * @param numData number of tuples.
+   */
+  protected OffHeapMutableColumn(final ByteBuffer data, final int numData) {
+    this.data = data;
+    position = numData;
+  }
+
+  /**
+   * @param numBytes the capacity of the buffer.
+   * @return a new direct buffer in native byte order.
+   */
+  protected static ByteBuffer allocate(final int numBytes) {
+    return ByteBuffer.allocateDirect(numBytes).order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * @param buffer a buffer.
+   * @return a new direct buffer holding a copy of the whole of the specified buffer.
+   */
+  protected static ByteBuffer copy(final ByteBuffer buffer) {
+    ByteBuffer ret = allocate(buffer.capacity());
+    ByteBuffer source = buffer.duplicate();
+    source.clear();
+    ret.put(source);
+    ret.clear();
+    return ret;
+  }
+
+  /**
+   * @return the values, one slot per row. Use absolute indices only.
+   */
+  protected final ByteBuffer getData() {
+    return data;
+  }
+
+  @Override
+  public final int size() {
+    return position;
+  }
+
+  /**
+   * @return the number of bytes this column holds outside the Java heap.
+   */
+  public long getOffHeapBytes() {
+    return data.capacity();
+  }
+
+  /**
+   * @param type a column type.
+   * @return whether {@link #copyOf(ReadableColumn)} supports columns of the specified type. Booleans are kept in a
+   *         bitmap that is already small enough to stay on the heap.
+   */
+  public static boolean isSupported(final Type type) {
+    return type != Type.BOOLEAN_TYPE;
+  }
+
+  /**
+   * Copy a column outside the Java heap.
+   *
+   * @param column the column to be copied, of a type that {@link #isSupported(Type)}.
+   * @return an off-heap copy of the specified column.
+   */
+  public static OffHeapMutableColumn<?> copyOf(final ReadableColumn column) {
+    switch (column.getType()) {
+      case DATETIME_TYPE:
+        return DateTimeOffHeapMutableColumn.copyOf(column);
+      case DOUBLE_TYPE:
+        return DoubleOffHeapMutableColumn.copyOf(column);
+      case FLOAT_TYPE:
+        return FloatOffHeapMutableColumn.copyOf(column);
+      case INT_TYPE:
+        return IntOffHeapMutableColumn.copyOf(column);
+      case LONG_TYPE:
+        return LongOffHeapMutableColumn.copyOf(column);
+      case STRING_TYPE:
+        return StringOffHeapMutableColumn.copyOf(column);
+      default:
+        throw new IllegalArgumentException("Type " + column.getType() + " cannot be stored off the heap");
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(size()).append(" elements: [");
+    for (int i = 0; i < size(); ++i) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(getObject(i));
+    }
+    sb.append(']');
+    return sb.toString();
+  }
+
+  /**
+   * Write the contents of a direct buffer to a Java serialization stream.
+   *
+   * @param out the stream.
+   * @param buffer the buffer.
+   * @throws IOException if the stream cannot be written.
+   */
+  static void writeBuffer(final ObjectOutputStream out, final ByteBuffer buffer) throws IOException {
+    byte[] bytes = new byte[buffer.capacity()];
+    ByteBuffer source = buffer.duplicate();
+    source.clear();
+    source.get(bytes);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Read the contents of a direct buffer written by {@link #writeBuffer(ObjectOutputStream, ByteBuffer)}.
+   *
+   * @param in the stream.
+   * @return the buffer.
+   * @throws IOException if the stream cannot be read.
+   */
+  static ByteBuffer readBuffer(final ObjectInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    ByteBuffer buffer = allocate(bytes.length);
+    buffer.put(bytes);
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Serialize the off-heap values along with the other fields.
+   *
+   * @param out the stream.
+   * @throws IOException if the stream cannot be written.
+   */
+  private void writeObject(final ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    writeBuffer(out, data);
+  }
+
+  /**
+   * Restore the off-heap values along with the other fields.
+   *
+   * @param in the stream.
+   * @throws IOException if the stream cannot be read.
+   * @throws ClassNotFoundException if a class of a serialized object cannot be found.
+   */
+  private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    data = readBuffer(in);
+  }
+}
@@ -0,0 +1,180 @@
+package edu.washington.escience.myria.column.mutable;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.StringArrayColumn;
+import edu.washington.escience.myria.column.StringColumn;
+import edu.washington.escience.myria.storage.ReadableColumn;
+
+/**
+ * A mutable column of String values, stored outside the Java heap. The UTF-8 bytes of the strings are appended to an
+ * off-heap arena, and each row holds the offset and length of its string. A replaced string leaves its old bytes behind
+ * in the arena; they are dropped the next time the arena has to grow.
+ *
+ */
+public final class StringOffHeapMutableColumn extends OffHeapMutableColumn<String> {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The number of bytes per row: the offset and the length of the string in the arena. */
+  private static final int WIDTH = 8;
+  /** The smallest arena that is allocated. */
+  private static final int MIN_ARENA_BYTES = 1024;
+  /** The UTF-8 bytes of the strings. */
+  private transient ByteBuffer arena;
+  /** The number of bytes used in the arena, including those of replaced strings. */
+  private int arenaUsed;
+  /** The number of bytes in the arena that belong to replaced strings. */
+  private int garbage;
+
+  /**
+   * Constructs a new column.
+   *
+   * @param data the offset and length of each string in the arena, in native byte order.
+   * @param arena the UTF-8 bytes of the strings.
+   * @param arenaUsed the number of bytes used in the arena.
+   * @param numStrings number of tuples.
+   */
+  private StringOffHeapMutableColumn(final ByteBuffer data, final ByteBuffer arena, final int arenaUsed,
+      final int numStrings) {
+    super(data, numStrings);
+    this.arena = arena;
+    this.arenaUsed = arenaUsed;
+  }
+
+  /**
+   * @param column the column to be copied.
+   * @return an off-heap copy of the specified column.
+   */
+  public static StringOffHeapMutableColumn copyOf(final ReadableColumn column) {
+    int numStrings = column.size();
+    byte[][] values = new byte[numStrings][];
+    int total = 0;
+    for (int i = 0; i < numStrings; ++i) {
+      values[i] = column.getString(i).getBytes(StandardCharsets.UTF_8);
+      total += values[i].length;
+    }
+    ByteBuffer data = allocate(numStrings * WIDTH);
+    ByteBuffer arena = allocate(Math.max(total, MIN_ARENA_BYTES));
+    for (int i = 0; i < numStrings; ++i) {
+      data.putInt(i * WIDTH, arena.position());
+      data.putInt(i * WIDTH + 4, values[i].length);
+      arena.put(values[i]);
+    }
+    return new StringOffHeapMutableColumn(data, arena, total, numStrings);
+  }
+
+  @Deprecated
+  @Override
+  public String getObject(final int row) {
+    return getString(row);
+  }
+
+  @Override
+  public String getString(final int row) {
+    Preconditions.checkElementIndex(row, size());
+    ByteBuffer data = getData();
+    byte[] bytes = new byte[data.getInt(row * WIDTH + 4)];
+    ByteBuffer source = arena.duplicate();
+    source.position(data.getInt(row * WIDTH));
+    source.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public Type getType() {
+    return Type.STRING_TYPE;
+  }
+
+  @Override
+  public void replaceString(@Nonnull final String value, final int row) {
+    Preconditions.checkElementIndex(row, size());
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    if (arena.capacity() - arenaUsed < bytes.length) {
+      compact(bytes.length);
+    }
+    ByteBuffer data = getData();
+    garbage += data.getInt(row * WIDTH + 4);
+    ByteBuffer target = arena.duplicate();
+    target.position(arenaUsed);
+    target.put(bytes);
+    data.putInt(row * WIDTH, arenaUsed);
+    data.putInt(row * WIDTH + 4, bytes.length);
+    arenaUsed += bytes.length;
+  }
+
+  /**
+   * Move the live strings to a new arena with room for at least the specified number of bytes more, dropping the bytes
+   * of replaced strings.
+   *
+   * @param needed the number of bytes about to be appended.
+   */
+  private void compact(final int needed) {
+    int live = arenaUsed - garbage;
+    ByteBuffer newArena = allocate(Math.max(2 * (live + needed), MIN_ARENA_BYTES));
+    ByteBuffer data = getData();
+    for (int i = 0; i < size(); ++i) {
+      int offset = data.getInt(i * WIDTH);
+      int length = data.getInt(i * WIDTH + 4);
+      data.putInt(i * WIDTH, newArena.position());
+      ByteBuffer source = arena.duplicate();
+      source.position(offset).limit(offset + length);
+      newArena.put(source);
+    }
+    arena = newArena;
+    arenaUsed = newArena.position();
+    garbage = 0;
+  }
+
+  @Override
+  public long getOffHeapBytes() {
+    return super.getOffHeapBytes() + arena.capacity();
+  }
+
+  @Override
+  public StringColumn toColumn() {
+    String[] values = new String[size()];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = getString(i);
+    }
+    return new StringArrayColumn(values, values.length);
+  }
+
+  @Override
+  public StringOffHeapMutableColumn clone() {
+    StringOffHeapMutableColumn ret = new StringOffHeapMutableColumn(copy(getData()), copy(arena), arenaUsed, size());
+    ret.garbage = garbage;
+    return ret;
+  }
+
+  /**
+   * Serialize the arena along with the other fields.
+   *
+   * @param out the stream.
+   * @throws IOException if the stream cannot be written.
+   */
+  private void writeObject(final ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    writeBuffer(out, arena);
+  }
+
+  /**
+   * Restore the arena along with the other fields.
+   *
+   * @param in the stream.
+   * @throws IOException if the stream cannot be read.
+   * @throws ClassNotFoundException if a class of a serialized object cannot be found.
+   */
+  private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    arena = readBuffer(in);
+  }
+}
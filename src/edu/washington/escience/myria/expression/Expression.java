@@ -52,6 +52,10 @@ public class Expression implements Serializable {
    * Variable name of state.
    */
   public static final String STATE = "state";
+  /**
+   * Variable name of the number of rows when evaluating a whole batch.
+   */
+  public static final String COUNT = "count";
 
   /**
    * This is not really unused, it's used automagically by Jackson deserialization.
@@ -1,5 +1,17 @@
 package edu.washington.escience.myria.expression;
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.api.MyriaJsonMapperProvider;
 import edu.washington.escience.myria.operator.Operator;
 
 /**
@@ -21,4 +33,70 @@ public final class Expressions {
     ExpressionOperator op = new VariableExpression(column);
     return new Expression(child.getSchema().getColumnName(column), op);
   }
+
+  /**
+   * Replace every reference to an input column in an expression by the expression that computes the column. This
+   * composes an expression with the expressions of the operator below it, e.g., <code>$0 + 1</code> over the output of
+   * an Apply that emits <code>$3 * 2</code> becomes <code>$3 * 2 + 1</code> over the input of the Apply.
+   * 
+   * @param op the expression over the output of the operator below.
+   * @param columns the expressions that compute each output column of the operator below.
+   * @return a new expression over the input of the operator below.
+   */
+  public static ExpressionOperator substituteColumns(final ExpressionOperator op,
+      final List<ExpressionOperator> columns) {
+    final ObjectMapper mapper = MyriaJsonMapperProvider.getMapper();
+    final JsonNode substituted = substituteColumns(mapper.valueToTree(op), columns, mapper);
+    try {
+      return mapper.treeToValue(substituted, ExpressionOperator.class);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Unable to rebuild expression " + substituted, e);
+    }
+  }
+
+  /**
+   * @param node the JSON encoding of an expression, or of a part of it.
+   * @param columns the expressions that compute each column.
+   * @param mapper the mapper that encodes the expressions.
+   * @return the JSON encoding with every {@link VariableExpression} replaced by the encoding of its column.
+   */
+  private static JsonNode substituteColumns(final JsonNode node, final List<ExpressionOperator> columns,
+      final ObjectMapper mapper) {
+    if (node.isArray()) {
+      final ArrayNode array = (ArrayNode) node;
+      for (int i = 0; i < array.size(); ++i) {
+        array.set(i, substituteColumns(array.get(i), columns, mapper));
+      }
+      return array;
+    }
+    if (!node.isObject()) {
+      return node;
+    }
+    if ("VARIABLE".equals(node.path("type").asText())) {
+      final int column = node.get("columnIdx").asInt();
+      Preconditions.checkElementIndex(column, columns.size(), "column");
+      return mapper.valueToTree(columns.get(column));
+    }
+    final ObjectNode object = (ObjectNode) node;
+    for (Iterator<Map.Entry<String, JsonNode>> it = object.fields(); it.hasNext();) {
+      final Map.Entry<String, JsonNode> field = it.next();
+      field.setValue(substituteColumns(field.getValue(), columns, mapper));
+    }
+    return object;
+  }
+
+  /**
+   * Count the references to each input column in an expression.
+   * 
+   * @param op the expression.
+   * @param counts incremented once per reference to each column.
+   */
+  public static void countColumnReferences(final ExpressionOperator op, final int[] counts) {
+    if (op instanceof VariableExpression) {
+      ++counts[((VariableExpression) op).getColumnIdx()];
+    }
+    for (ExpressionOperator child : op.getChildren()) {
+      countColumnReferences(child, counts);
+    }
+  }
 }
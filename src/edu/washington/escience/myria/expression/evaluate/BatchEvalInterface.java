@@ -0,0 +1,20 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * Interface for evaluating janino expressions over a whole batch of tuples at once.
+ */
+public interface BatchEvalInterface {
+  /**
+   * The interface for applying expressions to every row of a table. The compiled code loops over the rows itself and
+   * writes the results into <code>result</code>, which is a primitive array of the output type (e.g., an
+   * <code>int[]</code> for ints), a <code>String[]</code>, a <code>DateTime[]</code>, or a {@link java.util.BitSet}
+   * for booleans.
+   *
+   * @param tb a tuple batch
+   * @param count the number of rows in the tb that should be evaluated.
+   * @param result the array that the values should be written to
+   */
+  void evaluate(final ReadableTable tb, final int count, final Object result);
+}
@@ -0,0 +1,20 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import java.util.BitSet;
+
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * Interface for evaluating janino expressions that return bools over a whole batch of tuples at once.
+ */
+public interface BooleanBatchEvalInterface {
+  /**
+   * The interface for applying boolean expressions to every row of a table. The compiled code loops over the rows
+   * itself and sets the bit of every row for which the expression is true.
+   *
+   * @param tb a tuple batch
+   * @param count the number of rows in the tb that should be evaluated.
+   * @param result the bits that will be set for rows that evaluate to true
+   */
+  void evaluate(final ReadableTable tb, final int count, final BitSet result);
+}
@@ -1,9 +1,11 @@
 package edu.washington.escience.myria.expression.evaluate;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.BitSet;
+import java.util.concurrent.Callable;
 
 import org.codehaus.commons.compiler.CompilerFactoryFactory;
-import org.codehaus.commons.compiler.IExpressionEvaluator;
+import org.codehaus.commons.compiler.IScriptEvaluator;
 
 import com.google.common.base.Preconditions;
 
@@ -11,16 +13,18 @@ import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.expression.Expression;
-import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
- * An Expression evaluator for stateless boolean expressions.
+ * An Expression evaluator for stateless boolean expressions. The expression is compiled into a loop over a whole batch
+ * that sets one bit per row that satisfies the expression.
  */
 public class BooleanEvaluator extends Evaluator {
   /**
    * Expression evaluator.
    */
-  private BooleanEvalInterface evaluator;
+  private BooleanBatchEvalInterface evaluator;
 
   /**
    * Default constructor.
@@ -34,36 +38,63 @@ public class BooleanEvaluator extends Evaluator {
   }
 
   /**
-   * Compiles the {@link #javaExpression}.
+   * Compiles the {@link #javaExpression}, or reuses a class compiled for the same code by an earlier query, see
+   * {@link EvaluatorCache}.
    *
    * @throws DbException compilation failed
    */
   @Override
   public void compile() throws DbException {
-    try {
-      IExpressionEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newExpressionEvaluator();
+    final String script = getJavaBatchScript();
+    evaluator =
+        EvaluatorCache.get(BooleanBatchEvalInterface.class, script, getParameters(),
+            new Callable<BooleanBatchEvalInterface>() {
+              @Override
+              public BooleanBatchEvalInterface call() throws DbException {
+                try {
+                  IScriptEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newScriptEvaluator();
 
-      se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+                  se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
 
-      evaluator =
-          (BooleanEvalInterface) se.createFastEvaluator(getJavaExpression(), BooleanEvalInterface.class, new String[] {
-              Expression.TB, Expression.ROW });
-    } catch (Exception e) {
-      throw new DbException("Error when compiling expression " + this, e);
-    }
+                  return (BooleanBatchEvalInterface) se.createFastEvaluator(script, BooleanBatchEvalInterface.class,
+                      new String[] { Expression.TB, Expression.COUNT, Expression.RESULT });
+                } catch (Exception e) {
+                  throw new DbException("Error when compiling expression " + BooleanEvaluator.this, e);
+                }
+              }
+            }, getCompileStats());
+  }
+
+  /**
+   * @return Java code that sets the bit in {@link Expression#RESULT} of every row for which the expression is true.
+   */
+  public String getJavaBatchScript() {
+    return loopOverRows("if (" + getJavaExpression() + ") {\n" + Expression.RESULT + ".set(" + Expression.ROW
+        + ");\n}");
   }
 
   /**
-   * Evaluates the {@link #getJavaExpression()} using the {@link #evaluator}.
+   * Evaluates the {@link #getJavaExpression()} over all rows of <code>tb</code> using the {@link #evaluator}. Boolean
+   * columns that are referenced directly are read without evaluating an expression.
    *
    * @param tb a tuple batch
-   * @param rowId the row that should be used for input data
-   * @return the result from the evaluation
+   * @return a bit set with one bit set for every row for which the expression evaluates to true
    * @throws InvocationTargetException exception thrown from janino
    */
-  public boolean eval(final TupleBatch tb, final int rowId) throws InvocationTargetException {
-    Preconditions.checkArgument(evaluator != null,
-        "Call compile first or copy the data if it is the same in the input.");
-    return evaluator.evaluate(tb, rowId);
+  public BitSet evaluateMask(final ReadableTable tb) throws InvocationTargetException {
+    final int numTuples = tb.numTuples();
+    final BitSet result = new BitSet(numTuples);
+    if (isCopyFromInput()) {
+      final int columnIdx = ((VariableExpression) getExpression().getRootExpressionOperator()).getColumnIdx();
+      for (int row = 0; row < numTuples; ++row) {
+        if (tb.getBoolean(columnIdx, row)) {
+          result.set(row);
+        }
+      }
+      return result;
+    }
+    Preconditions.checkArgument(evaluator != null, "Call compile first.");
+    evaluator.evaluate(tb, numTuples, result);
+    return result;
   }
 }
@@ -29,6 +29,11 @@ public abstract class Evaluator {
    */
   private final boolean needsState;
 
+  /**
+   * The outcome of the lookups of the compiled code of this evaluator in the {@link EvaluatorCache}.
+   */
+  private final EvaluatorCache.Stats compileStats = new EvaluatorCache.Stats();
+
   /**
    * @param expression the expression to be evaluated
    * @param parameters parameters that are passed to the expression
@@ -66,6 +71,13 @@ public abstract class Evaluator {
     return parameters;
   }
 
+  /**
+   * @return the outcome of the lookups of the compiled code of this evaluator in the {@link EvaluatorCache}
+   */
+  public EvaluatorCache.Stats getCompileStats() {
+    return compileStats;
+  }
+
   /**
    * @return the type of the output
    */
@@ -95,6 +107,19 @@ public abstract class Evaluator {
     return getExpression().getJavaExpression(parameters);
   }
 
+  /**
+   * Wraps a statement in a loop over the first {@link Expression#COUNT} rows of {@link Expression#TB}, so that a
+   * compiled expression can be evaluated over a whole batch with a single call.
+   * 
+   * @param statement the statement that is executed for every {@link Expression#ROW}
+   * @return the Java code of the loop
+   */
+  protected static String loopOverRows(final String statement) {
+    return new StringBuilder("for (int ").append(Expression.ROW).append(" = 0; ").append(Expression.ROW).append(" < ")
+        .append(Expression.COUNT).append("; ++").append(Expression.ROW).append(") {\n").append(statement).append(
+            "\n}\n").toString();
+  }
+
   /**
    * @return the output name
    */
@@ -0,0 +1,207 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+
+/**
+ * A cache, shared by all the queries of a worker, of the classes that Janino compiles for expressions. Plans that are
+ * submitted again and again compile the same Java code for the same schemas, so later queries instantiate the class
+ * compiled by the first one instead of compiling it again. The least recently used classes are evicted when the cache
+ * holds more than {@link MyriaConstants#EVALUATOR_CACHE_SIZE} classes.
+ */
+public final class EvaluatorCache {
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(EvaluatorCache.class);
+
+  /** The compiled classes. */
+  private static final Cache<Key, Class<?>> CACHE = CacheBuilder.newBuilder().maximumSize(
+      MyriaConstants.EVALUATOR_CACHE_SIZE).build();
+  /** The number of evaluators whose class was found in the cache. */
+  private static final AtomicLong HITS = new AtomicLong();
+  /** The number of evaluators that were compiled. */
+  private static final AtomicLong MISSES = new AtomicLong();
+  /** The time spent compiling evaluators, in nanoseconds. */
+  private static final AtomicLong COMPILE_NANOS = new AtomicLong();
+
+  /** Utility class cannot be constructed. */
+  private EvaluatorCache() {
+  }
+
+  /**
+   * Return an evaluator of the given Java source, compiling it only if no evaluator of the same source and schemas is
+   * cached.
+   * 
+   * @param <T> the interface implemented by the evaluator.
+   * @param type the interface implemented by the evaluator.
+   * @param source the Java source of the evaluator.
+   * @param parameters the parameters the source was generated with, whose schemas are part of the key.
+   * @param compiler compiles the source into an evaluator, if it is not cached.
+   * @param stats the statistics of the caller, updated with the outcome of the lookup.
+   * @return a new instance of the evaluator.
+   * @throws DbException if the source cannot be compiled.
+   */
+  public static <T> T get(final Class<T> type, final String source, final ExpressionOperatorParameter parameters,
+      final Callable<? extends T> compiler, final Stats stats) throws DbException {
+    final Key key = new Key(type, source, parameters.getSchema(), parameters.getStateSchema());
+    final AtomicLong compileNanos = new AtomicLong(-1);
+    final Class<?> clazz;
+    try {
+      clazz = CACHE.get(key, new Callable<Class<?>>() {
+        @Override
+        public Class<?> call() throws Exception {
+          final long start = System.nanoTime();
+          final T evaluator = compiler.call();
+          compileNanos.set(System.nanoTime() - start);
+          return evaluator.getClass();
+        }
+      });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof DbException) {
+        throw (DbException) cause;
+      }
+      throw new DbException(cause);
+    }
+
+    if (compileNanos.get() < 0) {
+      HITS.incrementAndGet();
+    } else {
+      MISSES.incrementAndGet();
+      COMPILE_NANOS.addAndGet(compileNanos.get());
+      LOGGER.debug("Compiled {} in {} ms", type.getSimpleName(), compileNanos.get() / 1000000);
+    }
+    stats.add(compileNanos.get());
+
+    try {
+      return type.cast(clazz.newInstance());
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new DbException("Could not instantiate compiled " + type.getSimpleName(), e);
+    }
+  }
+
+  /**
+   * @return the number of evaluators of this worker whose class was found in the cache.
+   */
+  public static long getHits() {
+    return HITS.get();
+  }
+
+  /**
+   * @return the number of evaluators of this worker that were compiled.
+   */
+  public static long getMisses() {
+    return MISSES.get();
+  }
+
+  /**
+   * @return the time this worker spent compiling evaluators, in nanoseconds.
+   */
+  public static long getCompileNanos() {
+    return COMPILE_NANOS.get();
+  }
+
+  /**
+   * Remove all the compiled classes from the cache.
+   */
+  public static void invalidateAll() {
+    CACHE.invalidateAll();
+  }
+
+  /**
+   * Counts the cache hits, misses, and compile time of the evaluators of one operator, to be logged with its profiling
+   * data.
+   */
+  public static final class Stats {
+    /** The number of evaluators whose class was found in the cache. */
+    private int hits;
+    /** The number of evaluators that were compiled. */
+    private int misses;
+    /** The time spent compiling evaluators, in nanoseconds. */
+    private long compileNanos;
+
+    /**
+     * @param nanos the time spent compiling an evaluator, in nanoseconds, or a negative number if it was cached.
+     */
+    private synchronized void add(final long nanos) {
+      if (nanos < 0) {
+        ++hits;
+      } else {
+        ++misses;
+        compileNanos += nanos;
+      }
+    }
+
+    /**
+     * @return the number of evaluators whose class was found in the cache.
+     */
+    public synchronized int getHits() {
+      return hits;
+    }
+
+    /**
+     * @return the number of evaluators that were compiled.
+     */
+    public synchronized int getMisses() {
+      return misses;
+    }
+
+    /**
+     * @return the time spent compiling evaluators, in nanoseconds.
+     */
+    public synchronized long getCompileNanos() {
+      return compileNanos;
+    }
+  }
+
+  /**
+   * The key of a compiled class: the interface it implements, its Java source, and the schemas it reads.
+   */
+  private static final class Key {
+    /** The interface implemented by the evaluator. */
+    private final Class<?> type;
+    /** The Java source of the evaluator. */
+    private final String source;
+    /** The schema of the input tuples, may be null. */
+    private final Schema inputSchema;
+    /** The schema of the state, may be null. */
+    private final Schema stateSchema;
+
+    /**
+     * @param type the interface implemented by the evaluator.
+     * @param source the Java source of the evaluator.
+     * @param inputSchema the schema of the input tuples, may be null.
+     * @param stateSchema the schema of the state, may be null.
+     */
+    private Key(final Class<?> type, final String source, final Schema inputSchema, final Schema stateSchema) {
+      this.type = Objects.requireNonNull(type, "type");
+      this.source = Objects.requireNonNull(source, "source");
+      this.inputSchema = inputSchema;
+      this.stateSchema = stateSchema;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return type.equals(other.type) && source.equals(other.source) && Objects.equals(inputSchema, other.inputSchema)
+          && Objects.equals(stateSchema, other.stateSchema);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(type, source, inputSchema, stateSchema);
+    }
+  }
+}
@@ -1,17 +1,28 @@
 package edu.washington.escience.myria.expression.evaluate;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.BitSet;
+import java.util.concurrent.Callable;
 
 import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.commons.compiler.CompilerFactoryFactory;
 import org.codehaus.commons.compiler.IExpressionEvaluator;
+import org.codehaus.commons.compiler.IScriptEvaluator;
+import org.joda.time.DateTime;
 
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.BooleanColumn;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DateTimeColumn;
+import edu.washington.escience.myria.column.DoubleColumn;
+import edu.washington.escience.myria.column.FloatColumn;
+import edu.washington.escience.myria.column.IntArrayColumn;
+import edu.washington.escience.myria.column.LongColumn;
+import edu.washington.escience.myria.column.StringArrayColumn;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
 import edu.washington.escience.myria.column.builder.ColumnFactory;
 import edu.washington.escience.myria.column.builder.WritableColumn;
@@ -38,6 +49,16 @@ public class GenericEvaluator extends Evaluator {
    */
   private EvalInterface evaluator;
 
+  /**
+   * Expression evaluator that evaluates a whole batch at once.
+   */
+  private BatchEvalInterface batchEvaluator;
+
+  /**
+   * Name of the local variable that holds the typed output array in {@link #getJavaBatchScript()}.
+   */
+  private static final String BATCH_OUTPUT = "output";
+
   /**
    * Default constructor.
    *
@@ -49,7 +70,10 @@ public class GenericEvaluator extends Evaluator {
   }
 
   /**
-   * Compiles the {@link #javaExpression}.
+   * Compiles the {@link #javaExpression}, or reuses a class compiled for the same code by an earlier query, see
+   * {@link EvaluatorCache}. Expressions that are evaluated with state are compiled into an evaluator that
+   * works on one row at a time. Expressions that do not need state are additionally compiled into an evaluator that
+   * loops over a whole batch and writes directly into a primitive array, see {@link #evaluateColumn(TupleBatch)}.
    *
    * @throws DbException compilation failed
    */
@@ -58,26 +82,96 @@ public class GenericEvaluator extends Evaluator {
     Preconditions.checkArgument(needsCompiling() || (getStateSchema() != null),
         "This expression does not need to be compiled.");
 
-    String javaExpression = getJavaExpression();
-    IExpressionEvaluator se;
-    try {
-      se = CompilerFactoryFactory.getDefaultCompilerFactory().newExpressionEvaluator();
-    } catch (Exception e) {
-      LOGGER.error("Could not create expression evaluator", e);
-      throw new DbException("Could not create expression evaluator", e);
+    if (getStateSchema() != null) {
+      compileRowEvaluator();
+    }
+    if (!needsState()) {
+      compileBatchEvaluator();
     }
+  }
 
-    se.setExpressionType(Void.TYPE);
-    se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+  /**
+   * Compiles the {@link #javaExpression} into {@link #evaluator}.
+   *
+   * @throws DbException compilation failed
+   */
+  private void compileRowEvaluator() throws DbException {
+    final String javaExpression = getJavaExpression();
+    evaluator = EvaluatorCache.get(EvalInterface.class, javaExpression, getParameters(), new Callable<EvalInterface>() {
+      @Override
+      public EvalInterface call() throws DbException {
+        IExpressionEvaluator se;
+        try {
+          se = CompilerFactoryFactory.getDefaultCompilerFactory().newExpressionEvaluator();
+        } catch (Exception e) {
+          LOGGER.error("Could not create expression evaluator", e);
+          throw new DbException("Could not create expression evaluator", e);
+        }
 
-    try {
-      evaluator =
-          (EvalInterface) se.createFastEvaluator(javaExpression, EvalInterface.class, new String[] {
+        se.setExpressionType(Void.TYPE);
+        se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+
+        try {
+          return (EvalInterface) se.createFastEvaluator(javaExpression, EvalInterface.class, new String[] {
               Expression.TB, Expression.ROW, Expression.RESULT, Expression.STATE });
-    } catch (CompileException e) {
-      LOGGER.error("Error when compiling expression {}: {}", javaExpression, e);
-      throw new DbException("Error when compiling expression: " + javaExpression, e);
+        } catch (CompileException e) {
+          LOGGER.error("Error when compiling expression {}: {}", javaExpression, e);
+          throw new DbException("Error when compiling expression: " + javaExpression, e);
+        }
+      }
+    }, getCompileStats());
+  }
+
+  /**
+   * Compiles {@link #getJavaBatchScript()} into {@link #batchEvaluator}.
+   *
+   * @throws DbException compilation failed
+   */
+  private void compileBatchEvaluator() throws DbException {
+    final String script = getJavaBatchScript();
+    batchEvaluator =
+        EvaluatorCache.get(BatchEvalInterface.class, script, getParameters(), new Callable<BatchEvalInterface>() {
+          @Override
+          public BatchEvalInterface call() throws DbException {
+            IScriptEvaluator se;
+            try {
+              se = CompilerFactoryFactory.getDefaultCompilerFactory().newScriptEvaluator();
+            } catch (Exception e) {
+              LOGGER.error("Could not create script evaluator", e);
+              throw new DbException("Could not create script evaluator", e);
+            }
+
+            se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+
+            try {
+              return (BatchEvalInterface) se.createFastEvaluator(script, BatchEvalInterface.class, new String[] {
+                  Expression.TB, Expression.COUNT, Expression.RESULT });
+            } catch (CompileException e) {
+              LOGGER.error("Error when compiling expression {}: {}", script, e);
+              throw new DbException("Error when compiling expression: " + script, e);
+            }
+          }
+        }, getCompileStats());
+  }
+
+  /**
+   * @return Java code that evaluates the expression for every row of a batch and stores the values in the array that
+   *         is passed as {@link Expression#RESULT}.
+   */
+  public String getJavaBatchScript() {
+    final Type type = getOutputType();
+    final String javaExpression = getExpression().getJavaExpression(getParameters());
+    final String arrayType;
+    final String statement;
+    if (type == Type.BOOLEAN_TYPE) {
+      arrayType = BitSet.class.getCanonicalName();
+      statement = "if (" + javaExpression + ") {\n" + BATCH_OUTPUT + ".set(" + Expression.ROW + ");\n}";
+    } else {
+      arrayType = type.toJavaType().getCanonicalName() + "[]";
+      statement = BATCH_OUTPUT + "[" + Expression.ROW + "] = " + javaExpression + ";";
     }
+    return new StringBuilder("final ").append(arrayType).append(' ').append(BATCH_OUTPUT).append(" = (").append(
+        arrayType).append(") ").append(Expression.RESULT).append(";\n").append(loopOverRows(statement)).toString();
   }
 
   /**
@@ -127,11 +221,63 @@ public class GenericEvaluator extends Evaluator {
 
     Type type = getOutputType();
 
-    ColumnBuilder<?> ret = ColumnFactory.allocateColumn(type);
-    for (int row = 0; row < tb.numTuples(); ++row) {
-      /** We already have an object, so we're not using the wrong version of put. Remove the warning. */
-      eval(tb, row, ret, null);
+    if (batchEvaluator == null) {
+      ColumnBuilder<?> ret = ColumnFactory.allocateColumn(type);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        /** We already have an object, so we're not using the wrong version of put. Remove the warning. */
+        eval(tb, row, ret, null);
+      }
+      return ret.build();
+    }
+
+    final int numTuples = tb.numTuples();
+    switch (type) {
+      case BOOLEAN_TYPE:
+        BitSet bits = new BitSet(numTuples);
+        evalBatch(tb, bits);
+        return new BooleanColumn(bits, numTuples);
+      case DATETIME_TYPE:
+        DateTime[] dateTimes = new DateTime[numTuples];
+        evalBatch(tb, dateTimes);
+        return new DateTimeColumn(dateTimes, numTuples);
+      case DOUBLE_TYPE:
+        double[] doubles = new double[numTuples];
+        evalBatch(tb, doubles);
+        return new DoubleColumn(doubles, numTuples);
+      case FLOAT_TYPE:
+        float[] floats = new float[numTuples];
+        evalBatch(tb, floats);
+        return new FloatColumn(floats, numTuples);
+      case INT_TYPE:
+        int[] ints = new int[numTuples];
+        evalBatch(tb, ints);
+        return new IntArrayColumn(ints, numTuples);
+      case LONG_TYPE:
+        long[] longs = new long[numTuples];
+        evalBatch(tb, longs);
+        return new LongColumn(longs, numTuples);
+      case STRING_TYPE:
+        String[] strings = new String[numTuples];
+        evalBatch(tb, strings);
+        return new StringArrayColumn(strings, numTuples);
+    }
+    throw new UnsupportedOperationException("Unsupported output type " + type);
+  }
+
+  /**
+   * Evaluates the {@link #getJavaBatchScript()} over all rows of <code>tb</code> using the {@link #batchEvaluator}.
+   *
+   * @param tb a tuple batch
+   * @param result an array of the output type with at least <code>tb.numTuples()</code> elements, or a {@link BitSet}
+   *          if the output type is boolean
+   * @throws InvocationTargetException exception thrown from janino
+   */
+  private void evalBatch(final ReadableTable tb, final Object result) throws InvocationTargetException {
+    try {
+      batchEvaluator.evaluate(tb, tb.numTuples(), result);
+    } catch (Exception e) {
+      LOGGER.error(getJavaBatchScript(), e);
+      throw e;
     }
-    return ret.build();
   }
 }
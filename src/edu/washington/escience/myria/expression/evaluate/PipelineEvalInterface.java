@@ -0,0 +1,22 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * Interface for evaluating a fused pipeline of filters and projections over a whole batch of tuples at once.
+ */
+public interface PipelineEvalInterface {
+  /**
+   * The interface for running a pipeline over every row of a table. The compiled code loops over the rows itself,
+   * skips the rows that fail a predicate, and writes the values of the output columns of the other rows, one after the
+   * other, into the arrays in <code>result</code>. Each array is a primitive array of the output type (e.g., an
+   * <code>int[]</code> for ints), a <code>String[]</code>, a <code>DateTime[]</code>, or a {@link java.util.BitSet}
+   * for booleans.
+   *
+   * @param tb a tuple batch
+   * @param count the number of rows in the tb that should be evaluated.
+   * @param result one array per output column that the values should be written to
+   * @return the number of rows that passed all the predicates
+   */
+  int evaluate(final ReadableTable tb, final int count, final Object[] result);
+}
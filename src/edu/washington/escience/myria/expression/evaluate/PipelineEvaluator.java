@@ -0,0 +1,279 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.codehaus.commons.compiler.CompilerFactoryFactory;
+import org.codehaus.commons.compiler.IScriptEvaluator;
+import org.joda.time.DateTime;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.BooleanColumn;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DateTimeColumn;
+import edu.washington.escience.myria.column.DoubleColumn;
+import edu.washington.escience.myria.column.FloatColumn;
+import edu.washington.escience.myria.column.IntArrayColumn;
+import edu.washington.escience.myria.column.LongColumn;
+import edu.washington.escience.myria.column.StringArrayColumn;
+import edu.washington.escience.myria.expression.AndExpression;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.ExpressionOperator;
+import edu.washington.escience.myria.expression.StateExpression;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Compiles a pipeline of predicates and output expressions over the same input into a single loop over the rows of a
+ * batch. The loop skips the rows that fail a predicate and writes the output columns of the other rows directly into
+ * primitive arrays, so that no intermediate batch or selection mask is materialized between the operators of the
+ * pipeline. The expression of this evaluator is the conjunction of the predicates.
+ */
+public class PipelineEvaluator extends Evaluator {
+  /**
+   * The expressions that compute the output columns, or null if the pipeline only filters its input.
+   */
+  private final ImmutableList<Expression> emitExpressions;
+
+  /**
+   * True if at least one predicate was given.
+   */
+  private final boolean hasPredicates;
+
+  /**
+   * The compiled pipeline.
+   */
+  private PipelineEvalInterface evaluator;
+
+  /**
+   * Name of the local variables that hold the typed output arrays in {@link #getJavaPipelineScript()}.
+   */
+  private static final String PIPELINE_OUTPUT = "output";
+
+  /**
+   * Name of the local variable that counts the rows that passed the predicates in {@link #getJavaPipelineScript()}.
+   */
+  private static final String PIPELINE_NUM_OUTPUT = "numOutput";
+
+  /**
+   * @param predicates the predicates that a row must satisfy to be output
+   * @param emitExpressions the expressions that compute the output columns, or null to output the input columns
+   * @param parameters parameters that are passed to the expressions
+   */
+  public PipelineEvaluator(final List<Expression> predicates, final List<Expression> emitExpressions,
+      final ExpressionOperatorParameter parameters) {
+    super(conjunction(predicates), parameters);
+    Preconditions.checkArgument(getOutputType() == Type.BOOLEAN_TYPE, "predicates must be boolean");
+    Preconditions.checkArgument(!needsState(), "pipelines cannot access state");
+    hasPredicates = !predicates.isEmpty();
+    if (emitExpressions == null) {
+      this.emitExpressions = null;
+    } else {
+      this.emitExpressions = ImmutableList.copyOf(emitExpressions);
+      for (Expression expression : emitExpressions) {
+        Preconditions.checkArgument(!expression.hasOperator(StateExpression.class), "pipelines cannot access state");
+      }
+    }
+  }
+
+  /**
+   * @param predicates some boolean expressions
+   * @return an expression that is true if all the expressions are true
+   */
+  private static Expression conjunction(final List<Expression> predicates) {
+    Preconditions.checkNotNull(predicates, "predicates");
+    if (predicates.isEmpty()) {
+      return new Expression(new ConstantExpression(true));
+    }
+    ExpressionOperator root = predicates.get(0).getRootExpressionOperator();
+    for (Expression predicate : predicates.subList(1, predicates.size())) {
+      root = new AndExpression(root, predicate.getRootExpressionOperator());
+    }
+    return new Expression(root);
+  }
+
+  /**
+   * @return the schema of the output of the pipeline
+   */
+  public Schema getOutputSchema() {
+    if (emitExpressions == null) {
+      return getInputSchema();
+    }
+    ImmutableList.Builder<Type> typesBuilder = ImmutableList.builder();
+    ImmutableList.Builder<String> namesBuilder = ImmutableList.builder();
+    for (Expression expression : emitExpressions) {
+      typesBuilder.add(expression.getOutputType(getParameters()));
+      namesBuilder.add(expression.getOutputName());
+    }
+    return new Schema(typesBuilder.build(), namesBuilder.build());
+  }
+
+  /**
+   * Compiles {@link #getJavaPipelineScript()}, or reuses a class compiled for the same code by an earlier query, see
+   * {@link EvaluatorCache}.
+   *
+   * @throws DbException compilation failed
+   */
+  @Override
+  public void compile() throws DbException {
+    final String script = getJavaPipelineScript();
+    evaluator =
+        EvaluatorCache.get(PipelineEvalInterface.class, script, getParameters(), new Callable<PipelineEvalInterface>() {
+          @Override
+          public PipelineEvalInterface call() throws DbException {
+            try {
+              IScriptEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newScriptEvaluator();
+
+              se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+
+              return (PipelineEvalInterface) se.createFastEvaluator(script, PipelineEvalInterface.class,
+                  new String[] { Expression.TB, Expression.COUNT, Expression.RESULT });
+            } catch (Exception e) {
+              throw new DbException("Error when compiling pipeline " + script, e);
+            }
+          }
+        }, getCompileStats());
+  }
+
+  /**
+   * @return Java code that loops over the rows of a batch, skips the rows that fail the predicates, writes the output
+   *         columns of the other rows into the arrays that are passed as {@link Expression#RESULT}, and returns the
+   *         number of rows written.
+   */
+  public String getJavaPipelineScript() {
+    final StringBuilder declarations = new StringBuilder();
+    final StringBuilder statement = new StringBuilder();
+    if (hasPredicates) {
+      statement.append("if (!(").append(getJavaExpression()).append(")) {\ncontinue;\n}\n");
+    }
+    if (emitExpressions == null) {
+      declarations.append(declareOutput(0, Type.BOOLEAN_TYPE));
+      statement.append(PIPELINE_OUTPUT).append("0.set(").append(Expression.ROW).append(");\n");
+    } else {
+      for (int i = 0; i < emitExpressions.size(); ++i) {
+        final Expression expression = emitExpressions.get(i);
+        final Type type = expression.getOutputType(getParameters());
+        final String javaExpression = expression.getJavaExpression(getParameters());
+        declarations.append(declareOutput(i, type));
+        if (type == Type.BOOLEAN_TYPE) {
+          statement.append("if (").append(javaExpression).append(") {\n").append(PIPELINE_OUTPUT).append(i).append(
+              ".set(").append(PIPELINE_NUM_OUTPUT).append(");\n}\n");
+        } else {
+          statement.append(PIPELINE_OUTPUT).append(i).append('[').append(PIPELINE_NUM_OUTPUT).append("] = ").append(
+              javaExpression).append(";\n");
+        }
+      }
+    }
+    statement.append("++").append(PIPELINE_NUM_OUTPUT).append(';');
+    return declarations.append("int ").append(PIPELINE_NUM_OUTPUT).append(" = 0;\n").append(
+        loopOverRows(statement.toString())).append("return ").append(PIPELINE_NUM_OUTPUT).append(";\n").toString();
+  }
+
+  /**
+   * @param column the index of an output column
+   * @param type the type of the column
+   * @return Java code that declares the typed output array of the column
+   */
+  private static String declareOutput(final int column, final Type type) {
+    final String arrayType;
+    if (type == Type.BOOLEAN_TYPE) {
+      arrayType = BitSet.class.getCanonicalName();
+    } else {
+      arrayType = type.toJavaType().getCanonicalName() + "[]";
+    }
+    return new StringBuilder("final ").append(arrayType).append(' ').append(PIPELINE_OUTPUT).append(column).append(
+        " = (").append(arrayType).append(") ").append(Expression.RESULT).append('[').append(column).append("];\n")
+        .toString();
+  }
+
+  /**
+   * Runs the pipeline over all rows of <code>tb</code> using the {@link #evaluator}.
+   *
+   * @param tb a tuple batch
+   * @return the output of the pipeline, which may be empty
+   * @throws InvocationTargetException exception thrown from janino
+   */
+  public TupleBatch evaluate(final TupleBatch tb) throws InvocationTargetException {
+    Preconditions.checkArgument(evaluator != null, "Call compile first.");
+    final int numTuples = tb.numTuples();
+    if (emitExpressions == null) {
+      final BitSet bits = new BitSet(numTuples);
+      evaluator.evaluate(tb, numTuples, new Object[] { bits });
+      return tb.filter(bits);
+    }
+
+    final List<Type> types = new ArrayList<Type>(emitExpressions.size());
+    final Object[] result = new Object[emitExpressions.size()];
+    for (int i = 0; i < result.length; ++i) {
+      final Type type = emitExpressions.get(i).getOutputType(getParameters());
+      types.add(type);
+      result[i] = allocate(type, numTuples);
+    }
+    final int numOutput = evaluator.evaluate(tb, numTuples, result);
+    final List<Column<?>> columns = new ArrayList<Column<?>>(result.length);
+    for (int i = 0; i < result.length; ++i) {
+      columns.add(toColumn(types.get(i), result[i], numOutput));
+    }
+    return new TupleBatch(getOutputSchema(), columns, numOutput);
+  }
+
+  /**
+   * @param type the type of an output column
+   * @param size the number of rows of the input
+   * @return the array that the compiled pipeline writes the values of the column to
+   */
+  private static Object allocate(final Type type, final int size) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return new BitSet(size);
+      case DATETIME_TYPE:
+        return new DateTime[size];
+      case DOUBLE_TYPE:
+        return new double[size];
+      case FLOAT_TYPE:
+        return new float[size];
+      case INT_TYPE:
+        return new int[size];
+      case LONG_TYPE:
+        return new long[size];
+      case STRING_TYPE:
+        return new String[size];
+    }
+    throw new UnsupportedOperationException("Unsupported output type " + type);
+  }
+
+  /**
+   * @param type the type of an output column
+   * @param values the array that the compiled pipeline wrote the values of the column to
+   * @param size the number of values written
+   * @return a column of the values
+   */
+  private static Column<?> toColumn(final Type type, final Object values, final int size) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return new BooleanColumn((BitSet) values, size);
+      case DATETIME_TYPE:
+        return new DateTimeColumn((DateTime[]) values, size);
+      case DOUBLE_TYPE:
+        return new DoubleColumn((double[]) values, size);
+      case FLOAT_TYPE:
+        return new FloatColumn((float[]) values, size);
+      case INT_TYPE:
+        return new IntArrayColumn((int[]) values, size);
+      case LONG_TYPE:
+        return new LongColumn((long[]) values, size);
+      case STRING_TYPE:
+        return new StringArrayColumn((String[]) values, size);
+    }
+    throw new UnsupportedOperationException("Unsupported output type " + type);
+  }
+}
@@ -1,6 +1,8 @@
 package edu.washington.escience.myria.io;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
@@ -12,7 +14,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 /**
  * A data source that pulls data from local file.
  */
-public class FileSource implements DataSource, Serializable {
+public class FileSource implements SplittableDataSource, Serializable {
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
   /** The filename. */
@@ -34,6 +36,27 @@ public class FileSource implements DataSource, Serializable {
     return new FileInputStream(filename);
   }
 
+  @Override
+  public long getLength() throws IOException {
+    File file = new File(filename);
+    if (!file.isFile()) {
+      throw new FileNotFoundException(filename);
+    }
+    return file.length();
+  }
+
+  @Override
+  public InputStream getInputStream(final long start) throws IOException {
+    FileInputStream stream = new FileInputStream(filename);
+    try {
+      stream.getChannel().position(start);
+    } catch (IOException e) {
+      stream.close();
+      throw e;
+    }
+    return stream;
+  }
+
   /**
    * @return the local file that this FileSource references.
    */
@@ -0,0 +1,28 @@
+package edu.washington.escience.myria.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link DataSource} of known length that can be read starting from any byte. Operators can cut such a source into
+ * byte ranges and read the ranges in parallel.
+ */
+public interface SplittableDataSource extends DataSource {
+  /**
+   * Returns the number of bytes in the data source.
+   * 
+   * @return the number of bytes in the data source.
+   * @throws IOException if there is an error reading the length of the source.
+   */
+  long getLength() throws IOException;
+
+  /**
+   * Returns an {@link InputStream} providing read access to the bits in the data source, starting at the specified
+   * byte. The stream continues to the end of the source.
+   * 
+   * @param start the offset of the first byte to read.
+   * @return an {@link InputStream} providing read access to the bits in the data source from the specified byte.
+   * @throws IOException if there is an error producing the input stream.
+   */
+  InputStream getInputStream(long start) throws IOException;
+}
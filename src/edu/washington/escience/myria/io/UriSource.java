@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.Objects;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -23,8 +24,9 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  * web link; an AWS link; and perhaps more.
  * 
  * If the URI points to a directory, all files in that directory will be concatenated into a single {@link InputStream}.
+ * The concatenation can also be read from any byte, so that it can be split into ranges read in parallel.
  */
-public class UriSource implements DataSource, Serializable {
+public class UriSource implements SplittableDataSource, Serializable {
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
@@ -51,22 +53,64 @@ public class UriSource implements DataSource, Serializable {
 
   @Override
   public InputStream getInputStream() throws IOException {
+    return getInputStream(0);
+  }
+
+  /**
+   * @return the file system holding the data.
+   * @throws IOException if there is an error reaching the file system.
+   */
+  private FileSystem getFileSystem() throws IOException {
     // Use Hadoop's URI parsing machinery to extract an input stream for the underlying URI
     Configuration conf = new Configuration();
-    FileSystem fs = FileSystem.get(URI.create(uri), conf);
+    return FileSystem.get(URI.create(uri), conf);
+  }
+
+  /**
+   * @param fs the file system holding the data.
+   * @return the files matched by the URI, in the order they are concatenated.
+   * @throws IOException if no file matches the URI.
+   */
+  private FileStatus[] getFiles(final FileSystem fs) throws IOException {
     Path rootPath = new Path(uri);
     FileStatus[] statii = fs.globStatus(rootPath);
 
     if (statii == null || statii.length == 0) {
       throw new FileNotFoundException(uri);
     }
+    return statii;
+  }
+
+  @Override
+  public long getLength() throws IOException {
+    long length = 0;
+    for (FileStatus status : getFiles(getFileSystem())) {
+      length += status.getLen();
+    }
+    return length;
+  }
+
+  @Override
+  public InputStream getInputStream(final long start) throws IOException {
+    FileSystem fs = getFileSystem();
+    FileStatus[] statii = getFiles(fs);
 
     List<InputStream> streams = new ArrayList<InputStream>();
+    long skip = start;
     for (FileStatus status : statii) {
+      /* Skip the files that end before the first byte. */
+      if (streams.isEmpty() && skip >= status.getLen()) {
+        skip -= status.getLen();
+        continue;
+      }
       Path path = status.getPath();
 
       LOGGER.debug("Incorporating input file: " + path);
-      streams.add(fs.open(path));
+      FSDataInputStream stream = fs.open(path);
+      if (streams.isEmpty() && skip > 0) {
+        stream.seek(skip);
+      }
+      streams.add(stream);
     }
 
     return new SequenceInputStream(java.util.Collections.enumeration(streams));
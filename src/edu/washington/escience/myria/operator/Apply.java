@@ -11,6 +11,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
@@ -111,6 +112,9 @@ public class Apply extends UnaryOperator {
       Preconditions.checkArgument(!evaluator.needsState());
       emitEvaluators.add(evaluator);
     }
+    if (getProfilingMode().contains(ProfilingMode.RESOURCE)) {
+      getProfilingLogger().recordCompilation(this, emitEvaluators);
+    }
   }
 
   /**
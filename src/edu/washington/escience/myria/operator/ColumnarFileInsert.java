@@ -0,0 +1,101 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.ColumnarTupleWriter;
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Materializes the tuples of its child in a local file in the columnar format, to be read back by a
+ * {@link ColumnarFileScan}. The file is written under a temporary name and renamed when the child is done, so that a
+ * scan never sees a partial file.
+ */
+public final class ColumnarFileInsert extends RootOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(ColumnarFileInsert.class);
+  /** The path of the file, absolute or relative to the columnar directory of the worker. */
+  private final String filename;
+  /** The file the tuples end up in. */
+  private transient File file;
+  /** The file the tuples are written to until the child is done. */
+  private transient File tempFile;
+  /** The writer of the temporary file. */
+  private transient ColumnarTupleWriter writer;
+  /** Whether the file has been written. */
+  private transient boolean done;
+
+  /**
+   * @param child the source of the tuples.
+   * @param filename the path of the file, absolute or relative to the columnar directory of the worker.
+   */
+  public ColumnarFileInsert(final Operator child, final String filename) {
+    super(child);
+    this.filename = Objects.requireNonNull(filename, "filename");
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    file = ColumnarFileScan.resolve(filename, execEnvVars).getAbsoluteFile();
+    final File directory = file.getParentFile();
+    try {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Unable to create directory " + directory);
+      }
+      tempFile = File.createTempFile(file.getName() + "-", ".tmp", directory);
+      writer = new ColumnarTupleWriter(new FileOutputStream(tempFile), getChild().getSchema());
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+    done = false;
+  }
+
+  @Override
+  protected void consumeTuples(final TupleBatch tuples) throws DbException {
+    try {
+      writer.writeTuples(tuples);
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  @Override
+  protected void childEOI() throws DbException {
+    /* Do nothing. */
+  }
+
+  @Override
+  protected void childEOS() throws DbException {
+    try {
+      writer.done();
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+    done = true;
+  }
+
+  @Override
+  protected void cleanup() throws IOException {
+    if (done || tempFile == null) {
+      return;
+    }
+    if (writer != null) {
+      writer.error();
+    }
+    if (!tempFile.delete()) {
+      LOGGER.warn("Unable to delete temporary file {}", tempFile);
+    }
+  }
+}
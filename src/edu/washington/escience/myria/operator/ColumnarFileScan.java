@@ -0,0 +1,165 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.ColumnarFile;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Reads tuples from a file in the columnar format written by {@link edu.washington.escience.myria.ColumnarTupleWriter}
+ * or {@link ColumnarFileInsert}. Each segment of the file is mapped into memory and returned as one batch, whose
+ * numeric columns are read straight from the mapping.
+ *
+ * Optionally, the scan is given a range of values of one column, and skips the segments whose zone maps show that
+ * they hold no value in that range. The tuples of the segments that are read are not filtered: a filter is still
+ * needed above the scan to drop the tuples outside the range.
+ */
+public final class ColumnarFileScan extends LeafOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(ColumnarFileScan.class);
+  /** The schema of the relation stored in the file. */
+  private final Schema schema;
+  /** The path of the file, absolute or relative to the columnar directory of the worker. */
+  private final String filename;
+  /** The column whose zone maps are used to skip segments, or -1 to read all segments. */
+  private final int rangeColumn;
+  /** The lower bound of the values looked for, inclusive. */
+  private final double rangeMin;
+  /** The upper bound of the values looked for, inclusive. */
+  private final double rangeMax;
+  /** The file being read. */
+  private transient ColumnarFile file;
+  /** The next segment to read. */
+  private transient int nextSegment;
+  /** The number of segments skipped using the zone maps. */
+  private transient int numSkipped;
+
+  /**
+   * Read all the tuples of a columnar file.
+   *
+   * @param schema the schema of the relation stored in the file.
+   * @param filename the path of the file, absolute or relative to the columnar directory of the worker.
+   */
+  public ColumnarFileScan(final Schema schema, final String filename) {
+    this(schema, filename, -1, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Read the segments of a columnar file that may hold values of a column in a range.
+   *
+   * @param schema the schema of the relation stored in the file.
+   * @param filename the path of the file, absolute or relative to the columnar directory of the worker.
+   * @param rangeColumn the column whose zone maps are used to skip segments, or -1 to read all segments.
+   * @param rangeMin the lower bound of the values looked for, inclusive.
+   * @param rangeMax the upper bound of the values looked for, inclusive.
+   */
+  public ColumnarFileScan(final Schema schema, final String filename, final int rangeColumn, final double rangeMin,
+      final double rangeMax) {
+    this.schema = Objects.requireNonNull(schema, "schema");
+    this.filename = Objects.requireNonNull(filename, "filename");
+    Preconditions.checkArgument(rangeColumn >= -1 && rangeColumn < schema.numColumns(),
+        "rangeColumn %s is not a column of %s", rangeColumn, schema);
+    Preconditions.checkArgument(rangeMin <= rangeMax, "rangeMin %s is greater than rangeMax %s", rangeMin, rangeMax);
+    this.rangeColumn = rangeColumn;
+    this.rangeMin = rangeMin;
+    this.rangeMax = rangeMax;
+  }
+
+  /**
+   * Resolve the path of a columnar file on a worker.
+   *
+   * @param filename the path of the file, absolute or relative to the columnar directory of the worker.
+   * @param execEnvVars the execution environment variables of the worker, or null.
+   * @return the file.
+   */
+  static File resolve(final String filename, final ImmutableMap<String, Object> execEnvVars) {
+    final File file = new File(filename);
+    if (file.isAbsolute() || execEnvVars == null) {
+      return file;
+    }
+    final String directory = (String) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_COLUMNAR_DIRECTORY);
+    if (directory == null) {
+      return file;
+    }
+    return new File(directory, filename);
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    try {
+      while (nextSegment < file.numSegments()) {
+        final int segment = nextSegment++;
+        if (rangeColumn >= 0 && !file.mayContain(segment, rangeColumn, rangeMin, rangeMax)) {
+          ++numSkipped;
+          continue;
+        }
+        return file.readSegment(segment).rename(schema.getColumnNames());
+      }
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+    return null;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    final File path = resolve(filename, execEnvVars);
+    try {
+      file = new ColumnarFile(path);
+    } catch (IOException e) {
+      throw new DbException("Unable to open columnar file " + path, e);
+    }
+    if (!file.getSchema().getColumnTypes().equals(schema.getColumnTypes())) {
+      final Schema actual = file.getSchema();
+      try {
+        file.close();
+      } catch (IOException e) {
+        LOGGER.warn("Unable to close columnar file {}", path, e);
+      }
+      file = null;
+      throw new DbException("Columnar file " + path + " has schema " + actual + ", expected " + schema);
+    }
+    nextSegment = 0;
+    numSkipped = 0;
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    if (file == null) {
+      return;
+    }
+    if (rangeColumn >= 0) {
+      LOGGER.debug("Skipped {} of {} segments of {}", numSkipped, file.numSegments(), filename);
+    }
+    try {
+      file.close();
+    } catch (IOException e) {
+      throw new DbException(e);
+    } finally {
+      file = null;
+    }
+  }
+
+  /**
+   * @return the number of segments skipped so far using the zone maps.
+   */
+  public int getNumSkippedSegments() {
+    return numSkipped;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    return schema;
+  }
+}
@@ -0,0 +1,443 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang.BooleanUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Floats;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.io.SplittableDataSource;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.DateTimeUtils;
+
+/**
+ * Parses the CSV records in a byte range of a {@link SplittableDataSource}, for the parallel mode of {@link FileScan}.
+ * The records are read straight from the bytes of the source into the column builders of a {@link TupleBatchBuffer}:
+ * int, long, float and double fields are parsed without building a String.
+ *
+ * A range owns the records that start in it. The parser of a range that does not start at the beginning of the source
+ * skips the partial record at its start, which the parser of the previous range finishes. This assumes that records
+ * are separated by newlines that never occur inside a quoted field. Blank lines are skipped.
+ */
+final class CsvChunkParser {
+  /**
+   * Receives the batches built by the parser.
+   */
+  interface BatchSink {
+    /**
+     * @param batch a batch of parsed tuples.
+     * @throws InterruptedException if interrupted while waiting to accept the batch.
+     */
+    void accept(TupleBatch batch) throws InterruptedException;
+  }
+
+  /** The number of bytes read from the source at a time. */
+  private static final int READ_BUFFER_BYTES = 64 * 1024;
+  /** The largest mantissa that a double represents exactly. */
+  private static final long MAX_EXACT_DOUBLE_MANTISSA = 1L << 53;
+  /** The largest mantissa that a float represents exactly. */
+  private static final long MAX_EXACT_FLOAT_MANTISSA = 1L << 24;
+  /** The number of low bits of the result of {@link #parseDecimal} that hold the number of fraction digits. */
+  private static final int FRACTION_DIGITS_BITS = 5;
+  /** The mask of the low bits of the result of {@link #parseDecimal} that hold the number of fraction digits. */
+  private static final long FRACTION_DIGITS_MASK = (1 << FRACTION_DIGITS_BITS) - 1;
+  /** The powers of ten that a double represents exactly. */
+  private static final double[] DOUBLE_POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+      1e20, 1e21, 1e22 };
+  /** The powers of ten that a float represents exactly. */
+  private static final float[] FLOAT_POWERS_OF_TEN = {
+      1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+  /** The schema of the records. */
+  private final Schema schema;
+  /** The byte that separates fields. */
+  private final byte delimiter;
+  /** The byte that encloses quoted fields. */
+  private final byte quote;
+  /** The byte that escapes the next byte, or -1 if there is none. */
+  private final int escape;
+  /** Holds the parsed tuples until a batch is full. */
+  private final TupleBatchBuffer buffer;
+
+  /** The source being read. */
+  private InputStream input;
+  /** The bytes read from the source. */
+  private final byte[] readBuffer = new byte[READ_BUFFER_BYTES];
+  /** The number of valid bytes in {@link #readBuffer}. */
+  private int readLength;
+  /** The index of the next byte in {@link #readBuffer}. */
+  private int readPosition;
+  /** The offset in the source of the next byte. */
+  private long position;
+  /** The bytes of the current field, without quotes and escapes. */
+  private byte[] field = new byte[256];
+  /** The number of bytes in {@link #field}. */
+  private int fieldLength;
+  /** The offset in the source of the current record. */
+  private long recordStart;
+
+  /**
+   * @param schema the schema of the records.
+   * @param delimiter the character that separates fields. Must be ASCII.
+   * @param quote the character that encloses quoted fields. Must be ASCII.
+   * @param escape the character that escapes the next character, or null. Must be ASCII.
+   * @param batchTargetBytes the number of bytes each batch aims at.
+   */
+  CsvChunkParser(final Schema schema, final char delimiter, final char quote, final Character escape,
+      final int batchTargetBytes) {
+    Preconditions.checkArgument(isAscii(delimiter) && isAscii(quote) && (escape == null || isAscii(escape)),
+        "the delimiter, quote and escape characters must be ASCII");
+    this.schema = Preconditions.checkNotNull(schema, "schema");
+    this.delimiter = (byte) delimiter;
+    this.quote = (byte) quote;
+    this.escape = escape == null ? -1 : escape;
+    buffer = new TupleBatchBuffer(schema, batchTargetBytes);
+  }
+
+  /**
+   * @param c a character.
+   * @return whether the character is encoded as a single byte in UTF-8.
+   */
+  static boolean isAscii(final char c) {
+    return c < 0x80;
+  }
+
+  /**
+   * Parse the records that start in a byte range of a source.
+   *
+   * @param source the source.
+   * @param start the offset of the first byte of the range.
+   * @param end the offset of the byte after the range.
+   * @param skipLines the number of lines to skip at the start of the range, e.g., a header.
+   * @param sink receives the batches of parsed tuples.
+   * @throws DbException if a record cannot be parsed.
+   * @throws IOException if the source cannot be read.
+   * @throws InterruptedException if interrupted while waiting for the sink.
+   */
+  void parse(final SplittableDataSource source, final long start, final long end, final int skipLines,
+      final BatchSink sink) throws DbException, IOException, InterruptedException {
+    Preconditions.checkArgument(0 <= start && start <= end, "invalid range [%s, %s)", start, end);
+    if (start == end) {
+      return;
+    }
+    readLength = 0;
+    readPosition = 0;
+    /* Start one byte early, to see whether the previous range ends with a complete record. */
+    position = Math.max(0, start - 1);
+    input = source.getInputStream(position);
+    try {
+      if (start > 0) {
+        /* Skip the record that started in the previous range, or just the newline that ended it. */
+        skipLine();
+      }
+      for (int i = 0; i < skipLines; ++i) {
+        skipLine();
+      }
+      while (position < end && peek() != -1) {
+        parseRecord();
+        TupleBatch tb;
+        while ((tb = buffer.popFilled()) != null) {
+          sink.accept(tb);
+        }
+      }
+      TupleBatch tb;
+      while ((tb = buffer.popAny()) != null) {
+        sink.accept(tb);
+      }
+    } finally {
+      input.close();
+      input = null;
+    }
+  }
+
+  /**
+   * @return the next byte, without consuming it, or -1 at the end of the source.
+   * @throws IOException if the source cannot be read.
+   */
+  private int peek() throws IOException {
+    if (readPosition == readLength) {
+      readLength = input.read(readBuffer);
+      readPosition = 0;
+      if (readLength <= 0) {
+        readLength = 0;
+        return -1;
+      }
+    }
+    return readBuffer[readPosition] & 0xff;
+  }
+
+  /**
+   * @return the next byte, or -1 at the end of the source.
+   * @throws IOException if the source cannot be read.
+   */
+  private int next() throws IOException {
+    final int b = peek();
+    if (b != -1) {
+      ++readPosition;
+      ++position;
+    }
+    return b;
+  }
+
+  /**
+   * Consume the bytes up to and including the next newline.
+   *
+   * @throws IOException if the source cannot be read.
+   */
+  private void skipLine() throws IOException {
+    int b;
+    do {
+      b = next();
+    } while (b != -1 && b != '\n');
+  }
+
+  /**
+   * @param b a byte to append to the current field.
+   */
+  private void append(final int b) {
+    if (fieldLength == field.length) {
+      final byte[] larger = new byte[2 * field.length];
+      System.arraycopy(field, 0, larger, 0, fieldLength);
+      field = larger;
+    }
+    field[fieldLength++] = (byte) b;
+  }
+
+  /**
+   * Parse one record and add it to the buffer.
+   *
+   * @throws DbException if the record cannot be parsed.
+   * @throws IOException if the source cannot be read.
+   */
+  private void parseRecord() throws DbException, IOException {
+    recordStart = position;
+    int column = 0;
+    fieldLength = 0;
+    boolean quoted = false;
+    boolean inQuotes = false;
+    while (true) {
+      final int b = next();
+      if (inQuotes) {
+        if (b == -1) {
+          throw new DbException("Error parsing the row at byte " + recordStart + ": unterminated quoted field");
+        } else if (b == escape && b != quote) {
+          append(next());
+        } else if (b == quote) {
+          if (peek() == quote) {
+            append(next());
+          } else {
+            inQuotes = false;
+          }
+        } else {
+          append(b);
+        }
+        continue;
+      }
+      if (b == '\r' && peek() == '\n') {
+        continue;
+      }
+      if (b == -1 || b == '\n') {
+        if (column == 0 && fieldLength == 0 && !quoted) {
+          /* A blank line. */
+          return;
+        }
+        if (column + 1 != schema.numColumns()) {
+          throw new DbException("Error parsing the row at byte " + recordStart + ": Found " + (column + 1)
+              + " column(s) but expected " + schema.numColumns() + " column(s).");
+        }
+        putField(column);
+        return;
+      }
+      if (b == delimiter) {
+        if (column + 1 >= schema.numColumns()) {
+          throw new DbException("Error parsing the row at byte " + recordStart + ": Found more than "
+              + schema.numColumns() + " column(s).");
+        }
+        putField(column);
+        ++column;
+        fieldLength = 0;
+        quoted = false;
+      } else if (b == escape) {
+        append(next());
+      } else if (b == quote && fieldLength == 0 && !quoted) {
+        quoted = true;
+        inQuotes = true;
+      } else {
+        append(b);
+      }
+    }
+  }
+
+  /**
+   * Convert the current field to the type of its column and add it to the buffer.
+   *
+   * @param column the column of the field.
+   * @throws DbException if the field cannot be converted.
+   */
+  private void putField(final int column) throws DbException {
+    try {
+      switch (schema.getColumnType(column)) {
+        case BOOLEAN_TYPE:
+          final String cell = fieldString();
+          final Float number = Floats.tryParse(cell);
+          if (number != null) {
+            buffer.putBoolean(column, number != 0);
+          } else {
+            buffer.putBoolean(column, BooleanUtils.toBoolean(cell));
+          }
+          break;
+        case DOUBLE_TYPE:
+          buffer.putDouble(column, parseDouble(field, fieldLength));
+          break;
+        case FLOAT_TYPE:
+          buffer.putFloat(column, parseFloat(field, fieldLength));
+          break;
+        case INT_TYPE:
+          buffer.putInt(column, (int) parseLong(field, fieldLength, Integer.MIN_VALUE, Integer.MAX_VALUE));
+          break;
+        case LONG_TYPE:
+          buffer.putLong(column, parseLong(field, fieldLength, Long.MIN_VALUE, Long.MAX_VALUE));
+          break;
+        case STRING_TYPE:
+          buffer.putString(column, fieldString());
+          break;
+        case DATETIME_TYPE:
+          buffer.putDateTime(column, DateTimeUtils.parse(fieldString()));
+          break;
+      }
+    } catch (final IllegalArgumentException e) {
+      throw new DbException("Error parsing column " + column + " of the row at byte " + recordStart
+          + ", expected type: " + schema.getColumnType(column) + ", scanned value: " + fieldString(), e);
+    }
+  }
+
+  /**
+   * @return the current field, decoded as UTF-8.
+   */
+  private String fieldString() {
+    return new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Parse a decimal integer from ASCII bytes, like {@link Long#parseLong(String)}.
+   *
+   * @param bytes the bytes.
+   * @param length the number of bytes.
+   * @param min the smallest valid value.
+   * @param max the largest valid value.
+   * @return the integer.
+   * @throws NumberFormatException if the bytes are not an integer between min and max.
+   */
+  static long parseLong(final byte[] bytes, final int length, final long min, final long max) {
+    int i = 0;
+    boolean negative = false;
+    if (length > 0 && (bytes[0] == '-' || bytes[0] == '+')) {
+      negative = bytes[0] == '-';
+      i = 1;
+    }
+    if (i == length) {
+      throw new NumberFormatException("not an integer: " + new String(bytes, 0, length, StandardCharsets.UTF_8));
+    }
+    /* Accumulate negatively, so that Long.MIN_VALUE does not overflow. */
+    final long limit = negative ? min : -max;
+    long result = 0;
+    for (; i < length; ++i) {
+      final int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9 || result < (limit + digit) / 10) {
+        throw new NumberFormatException("not an integer in range: "
+            + new String(bytes, 0, length, StandardCharsets.UTF_8));
+      }
+      result = result * 10 - digit;
+    }
+    return negative ? result : -result;
+  }
+
+  /**
+   * Parse a decimal number from ASCII bytes, like {@link Double#parseDouble(String)}. Plain decimals with up to 15
+   * significant digits are converted directly, and correctly rounded; other forms go through
+   * {@link Double#parseDouble(String)}.
+   *
+   * @param bytes the bytes.
+   * @param length the number of bytes.
+   * @return the number.
+   * @throws NumberFormatException if the bytes are not a number.
+   */
+  static double parseDouble(final byte[] bytes, final int length) {
+    final long decimal = parseDecimal(bytes, length, MAX_EXACT_DOUBLE_MANTISSA, DOUBLE_POWERS_OF_TEN.length - 1);
+    if (decimal == -1) {
+      return Double.parseDouble(new String(bytes, 0, length, StandardCharsets.UTF_8));
+    }
+    final long mantissa = decimal >>> FRACTION_DIGITS_BITS;
+    final double value = mantissa / DOUBLE_POWERS_OF_TEN[(int) (decimal & FRACTION_DIGITS_MASK)];
+    return bytes[0] == '-' ? -value : value;
+  }
+
+  /**
+   * Parse a decimal number from ASCII bytes, like {@link Float#parseFloat(String)}.
+   *
+   * @param bytes the bytes.
+   * @param length the number of bytes.
+   * @return the number.
+   * @throws NumberFormatException if the bytes are not a number.
+   * @see #parseDouble(byte[], int)
+   */
+  static float parseFloat(final byte[] bytes, final int length) {
+    final long decimal = parseDecimal(bytes, length, MAX_EXACT_FLOAT_MANTISSA, FLOAT_POWERS_OF_TEN.length - 1);
+    if (decimal == -1) {
+      return Float.parseFloat(new String(bytes, 0, length, StandardCharsets.UTF_8));
+    }
+    final long mantissa = decimal >>> FRACTION_DIGITS_BITS;
+    final float value = mantissa / FLOAT_POWERS_OF_TEN[(int) (decimal & FRACTION_DIGITS_MASK)];
+    return bytes[0] == '-' ? -value : value;
+  }
+
+  /**
+   * Split a plain decimal, such as -12.5, into its digits as an integer and its number of fraction digits.
+   *
+   * @param bytes the bytes.
+   * @param length the number of bytes.
+   * @param maxMantissa the bound on the digits as an integer.
+   * @param maxFractionDigits the bound on the number of fraction digits.
+   * @return the digits shifted left by {@link #FRACTION_DIGITS_BITS}, ORed with the number of fraction digits; or -1 if
+   *         the bytes are not a plain decimal within the bounds.
+   */
+  private static long parseDecimal(final byte[] bytes, final int length, final long maxMantissa,
+      final int maxFractionDigits) {
+    int i = 0;
+    if (length > 0 && (bytes[0] == '-' || bytes[0] == '+')) {
+      i = 1;
+    }
+    long mantissa = 0;
+    int fractionDigits = 0;
+    boolean seenDigit = false;
+    boolean seenPoint = false;
+    for (; i < length; ++i) {
+      final int b = bytes[i];
+      if (b >= '0' && b <= '9') {
+        mantissa = mantissa * 10 + (b - '0');
+        if (mantissa > maxMantissa) {
+          return -1;
+        }
+        seenDigit = true;
+        if (seenPoint) {
+          ++fractionDigits;
+        }
+      } else if (b == '.' && !seenPoint) {
+        seenPoint = true;
+      } else {
+        return -1;
+      }
+    }
+    if (!seenDigit || fractionDigits > maxFractionDigits) {
+      return -1;
+    }
+    return mantissa << FRACTION_DIGITS_BITS | fractionDigits;
+  }
+}
@@ -1,10 +1,26 @@
 package edu.washington.escience.myria.operator;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
@@ -12,9 +28,14 @@ import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.accessmethod.AccessMethod;
 import edu.washington.escience.myria.accessmethod.ConnectionInfo;
+import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleUtils;
+import edu.washington.escience.myria.util.concurrent.RenamingThreadFactory;
 
 /**
  * Push a select query down into a JDBC based database and scan over the query result.
@@ -55,12 +76,87 @@ public class DbQueryScan extends LeafOperator implements DbReader {
    */
   private final boolean[] ascending;
 
+  /**
+   * The number of connections that scan ranges of the relation in parallel.
+   */
+  private int numPartitions = 1;
+
+  /**
+   * The integral column whose values split the relation into ranges, or null to split a PostgreSQL relation by the
+   * physical location (ctid) of its tuples.
+   */
+  private Integer partitionColumn;
+
+  /**
+   * The queries that scan the ranges of the relation, or null to scan it with one query.
+   */
+  private transient List<String> partitionQueries;
+
+  /**
+   * The threads that scan the ranges of the relation.
+   */
+  private transient ExecutorService partitionExecutor;
+
+  /**
+   * The results of the threads that scan the ranges of the relation.
+   */
+  private transient List<Future<Void>> partitionScans;
+
+  /**
+   * The batches of each range, each followed by {@link #END_OF_PARTITION}. There is one queue per range when the
+   * output is sorted, and one queue shared by all ranges otherwise.
+   */
+  private transient List<BlockingQueue<TupleBatch>> partitionBatches;
+
+  /**
+   * The number of ranges whose batches have all been returned, when the output is not sorted.
+   */
+  private transient int numPartitionsDone;
+
+  /**
+   * True for each range whose batches have all been merged, when the output is sorted.
+   */
+  private transient boolean[] partitionDone;
+
+  /**
+   * The batch of each range being merged, or null if it needs one, when the output is sorted.
+   */
+  private transient TupleBatch[] mergeBatches;
+
+  /**
+   * The next row of each batch in {@link #mergeBatches}.
+   */
+  private transient int[] mergeRows;
+
+  /**
+   * The ranges whose next row is in {@link #mergeBatches}, smallest row first.
+   */
+  private transient PriorityQueue<Integer> mergeHeap;
+
+  /**
+   * The merged tuples, when the output is sorted.
+   */
+  private transient TupleBatchBuffer mergeBuffer;
+
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
 
   /** The logger for debug, trace, etc. messages in this class. */
   private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(DbQueryScan.class);
 
+  /** How long to wait for the batch of a range before checking whether its scan failed, in milliseconds. */
+  private static final long PARTITION_POLL_MILLIS = 100;
+
+  /** The first version of PostgreSQL, as in server_version_num, that scans a range of ctids without a full scan. */
+  private static final long MIN_TID_RANGE_SCAN_VERSION = 140000;
+
+  /** The number of batches of each range that are decoded ahead of the consumer. */
+  private static final int PARTITION_QUEUE_SIZE = 2;
+
+  /** Marks the end of the batches of a range. */
+  private static final TupleBatch END_OF_PARTITION = new TupleBatch(Schema.EMPTY_SCHEMA, ImmutableList
+      .<Column<?>> of(), 0);
+
   /**
    * Constructor.
    * 
@@ -164,18 +260,57 @@ public class DbQueryScan extends LeafOperator implements DbReader {
     this.connectionInfo = connectionInfo;
   }
 
+  /**
+   * Scan the relation over several connections, each reading a range of it, and decode the ranges in parallel. The
+   * ranges are split by the values of an integral column, or by physical location in PostgreSQL 14 or later. If the
+   * output is sorted, the sorted ranges are merged; otherwise their batches are returned in no particular order. A scan
+   * of a SQL query, rather than of a relation, or of a relation sorted on a string column always uses one connection.
+   * 
+   * @param numPartitions the number of connections, 1 to scan over a single connection.
+   * @param partitionColumn the integral column whose values split the relation, or null to split a PostgreSQL relation
+   *          by the physical location of its tuples.
+   */
+  public void setPartitions(final int numPartitions, @Nullable final Integer partitionColumn) {
+    Preconditions.checkArgument(numPartitions > 0, "numPartitions must be positive");
+    if (partitionColumn != null) {
+      Type type = outputSchema.getColumnType(partitionColumn);
+      Preconditions.checkArgument(type == Type.INT_TYPE || type == Type.LONG_TYPE,
+          "the partition column must be integral, not %s", type);
+    }
+    this.numPartitions = numPartitions;
+    this.partitionColumn = partitionColumn;
+  }
+
   @Override
   public final void cleanup() {
     tuples = null;
+    if (partitionExecutor != null) {
+      partitionExecutor.shutdownNow();
+      partitionExecutor = null;
+    }
+    partitionScans = null;
+    partitionBatches = null;
+    mergeBatches = null;
+    mergeHeap = null;
+    mergeBuffer = null;
   }
 
   @Override
-  protected final TupleBatch fetchNextReady() throws DbException {
+  protected final TupleBatch fetchNextReady() throws DbException, InterruptedException {
     Objects.requireNonNull(connectionInfo);
+    if (partitionQueries != null) {
+      if (partitionScans == null) {
+        startPartitionScans();
+      }
+      if (mergeBuffer != null) {
+        return fetchNextMergedBatch();
+      }
+      return fetchNextPartitionBatch();
+    }
     if (tuples == null) {
       tuples =
           AccessMethod.of(connectionInfo.getDbms(), connectionInfo, true).tupleBatchIteratorFromQuery(baseSQL,
-              outputSchema);
+              outputSchema, getBatchTargetBytes());
     }
     if (tuples.hasNext()) {
       final TupleBatch tb = tuples.next();
@@ -210,17 +345,19 @@ public class DbQueryScan extends LeafOperator implements DbReader {
       }
     }
 
+    partitionQueries = null;
     if (relationKey != null) {
-      baseSQL = "SELECT * FROM " + relationKey.toString(connectionInfo.getDbms());
+      final String fromClause = "SELECT * FROM " + relationKey.toString(connectionInfo.getDbms());
+      String orderBy = "";
 
       String prefix = "";
       if (sortedColumns != null && sortedColumns.length > 0) {
         Preconditions.checkArgument(sortedColumns.length == ascending.length);
         StringBuilder orderByClause = new StringBuilder(" ORDER BY");
 
-        for (int columnIdx : sortedColumns) {
-          orderByClause.append(prefix + " " + getSchema().getColumnName(columnIdx));
-          if (ascending[columnIdx]) {
+        for (int i = 0; i < sortedColumns.length; ++i) {
+          orderByClause.append(prefix + " " + getSchema().getColumnName(sortedColumns[i]));
+          if (ascending[i]) {
             orderByClause.append(" ASC");
           } else {
             orderByClause.append(" DESC");
@@ -229,7 +366,282 @@ public class DbQueryScan extends LeafOperator implements DbReader {
           prefix = ",";
         }
 
-        baseSQL = baseSQL.concat(orderByClause.toString());
+        orderBy = orderByClause.toString();
+      }
+      baseSQL = fromClause.concat(orderBy);
+
+      if (numPartitions > 1 && isSortedOnString()) {
+        /* The database sorts strings by its collation, which the merge of the sorted ranges cannot reproduce. */
+        LOGGER.warn("Scanning {} over one connection: it is sorted on a string column", relationKey);
+      } else if (numPartitions > 1) {
+        List<String> conditions = getPartitionConditions();
+        if (conditions != null) {
+          partitionQueries = new ArrayList<String>(conditions.size());
+          for (String condition : conditions) {
+            partitionQueries.add(fromClause + " WHERE " + condition + orderBy);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return true if the output is sorted on a string column.
+   */
+  private boolean isSortedOnString() {
+    if (sortedColumns == null) {
+      return false;
+    }
+    for (int column : sortedColumns) {
+      if (getSchema().getColumnType(column) == Type.STRING_TYPE) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the conditions that select the ranges of the relation, which cover all of it, or null if the relation
+   *         cannot be split.
+   * @throws DbException if the bounds of the ranges cannot be read.
+   */
+  private List<String> getPartitionConditions() throws DbException {
+    final String relation = relationKey.toString(connectionInfo.getDbms());
+    final String column;
+    final long[] bounds;
+    if (partitionColumn != null) {
+      column = getSchema().getColumnName(partitionColumn);
+      bounds = queryLongs("SELECT MIN(" + column + "), MAX(" + column + ") FROM " + relation, 2);
+      if (bounds == null) {
+        return null;
+      }
+      /* MAX is inclusive. */
+      bounds[1] = Math.max(bounds[0], bounds[1]);
+    } else if (MyriaConstants.STORAGE_SYSTEM_POSTGRESQL.equals(connectionInfo.getDbms())) {
+      /* Before PostgreSQL 14, a range of ctids is read by a sequential scan of the whole relation. */
+      long[] version = queryLongs("SELECT current_setting('server_version_num')::integer", 1);
+      if (version == null || version[0] < MIN_TID_RANGE_SCAN_VERSION) {
+        LOGGER.warn("Scanning {} over one connection: it has no partition column and PostgreSQL cannot scan ranges "
+            + "of ctids", relationKey);
+        return null;
+      }
+      column = "ctid";
+      /* The number of pages in the statistics of the relation, which may be stale but only balances the ranges. */
+      long[] pages =
+          queryLongs("SELECT relpages FROM pg_class WHERE oid = '" + relation.replace("'", "''") + "'::regclass", 1);
+      if (pages == null) {
+        return null;
+      }
+      bounds = new long[] { 0, Math.max(pages[0], 0) };
+    } else {
+      LOGGER.warn("Scanning {} over one connection: it has no partition column", relationKey);
+      return null;
+    }
+
+    /* The first and last ranges are open, so that the ranges cover the relation even if the bounds are stale. */
+    List<String> conditions = new ArrayList<String>(numPartitions);
+    BigInteger low = BigInteger.valueOf(bounds[0]);
+    BigInteger width = BigInteger.valueOf(bounds[1]).subtract(low).add(BigInteger.ONE);
+    String previous = null;
+    for (int i = 1; i <= numPartitions; ++i) {
+      String next = null;
+      if (i < numPartitions) {
+        long bound =
+            low.add(width.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(numPartitions))).longValue();
+        if (partitionColumn == null) {
+          next = "'(" + bound + ",0)'::tid";
+        } else {
+          next = String.valueOf(bound);
+        }
+      }
+      if (previous == null && partitionColumn != null) {
+        conditions.add("(" + column + " < " + next + " OR " + column + " IS NULL)");
+      } else if (previous == null) {
+        conditions.add(column + " < " + next);
+      } else if (next == null) {
+        conditions.add(column + " >= " + previous);
+      } else {
+        conditions.add(column + " >= " + previous + " AND " + column + " < " + next);
+      }
+      previous = next;
+    }
+    return conditions;
+  }
+
+  /**
+   * @param sql a query that returns one row of integers.
+   * @param numColumns the number of integers in the row.
+   * @return the integers, or null if the query returned no row.
+   * @throws DbException if the query failed.
+   */
+  private long[] queryLongs(final String sql, final int numColumns) throws DbException {
+    final List<Type> types = new ArrayList<Type>(numColumns);
+    for (int i = 0; i < numColumns; ++i) {
+      types.add(Type.LONG_TYPE);
+    }
+    AccessMethod accessMethod = AccessMethod.of(connectionInfo.getDbms(), connectionInfo, true);
+    try {
+      Iterator<TupleBatch> result =
+          accessMethod.tupleBatchIteratorFromQuery(sql, new Schema(types), getBatchTargetBytes());
+      long[] values = null;
+      while (result.hasNext()) {
+        TupleBatch tb = result.next();
+        if (values == null && tb.numTuples() > 0) {
+          values = new long[numColumns];
+          for (int i = 0; i < numColumns; ++i) {
+            values[i] = tb.getLong(i, 0);
+          }
+        }
+      }
+      return values;
+    } finally {
+      accessMethod.close();
+    }
+  }
+
+  /**
+   * Start scanning the ranges of the relation, each over its own connection and on its own thread.
+   */
+  private void startPartitionScans() {
+    final int n = partitionQueries.size();
+    final boolean sorted = sortedColumns != null && sortedColumns.length > 0;
+    partitionExecutor = Executors.newFixedThreadPool(n, new RenamingThreadFactory("DbQueryScan " + relationKey));
+    partitionScans = new ArrayList<Future<Void>>(n);
+    partitionBatches = new ArrayList<BlockingQueue<TupleBatch>>(n);
+    numPartitionsDone = 0;
+    partitionDone = new boolean[n];
+    for (final String query : partitionQueries) {
+      /* Bounded queues, so that the scans do not run too far ahead of the consumers of the tuples. */
+      if (sorted || partitionBatches.isEmpty()) {
+        partitionBatches.add(new ArrayBlockingQueue<TupleBatch>(sorted ? PARTITION_QUEUE_SIZE : PARTITION_QUEUE_SIZE
+            * n));
+      }
+      final BlockingQueue<TupleBatch> batches = partitionBatches.get(partitionBatches.size() - 1);
+      partitionScans.add(partitionExecutor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          AccessMethod accessMethod = AccessMethod.of(connectionInfo.getDbms(), connectionInfo, true);
+          try {
+            Iterator<TupleBatch> it = accessMethod.tupleBatchIteratorFromQuery(query, outputSchema,
+                getBatchTargetBytes());
+            while (it.hasNext()) {
+              batches.put(it.next());
+            }
+          } finally {
+            accessMethod.close();
+          }
+          batches.put(END_OF_PARTITION);
+          return null;
+        }
+      }));
+    }
+    partitionExecutor.shutdown();
+
+    if (sorted) {
+      mergeBatches = new TupleBatch[n];
+      mergeRows = new int[n];
+      mergeBuffer = new TupleBatchBuffer(outputSchema);
+      mergeHeap = new PriorityQueue<Integer>(n, new Comparator<Integer>() {
+        @Override
+        public int compare(final Integer left, final Integer right) {
+          for (int i = 0; i < sortedColumns.length; ++i) {
+            int compared =
+                TupleUtils.cellCompare(mergeBatches[left], sortedColumns[i], mergeRows[left], mergeBatches[right],
+                    sortedColumns[i], mergeRows[right]);
+            if (compared != 0) {
+              return ascending[i] ? compared : -compared;
+            }
+          }
+          return 0;
+        }
+      });
+    }
+    LOGGER.debug("Scanning {} over {} connections", relationKey, n);
+  }
+
+  /**
+   * @param partition the index of a queue in {@link #partitionBatches}.
+   * @param timeout how long to wait, in milliseconds.
+   * @return the next batch of the queue, {@link #END_OF_PARTITION}, or null if none came within the timeout.
+   * @throws DbException if the scan of a range failed.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  private TupleBatch pollPartition(final int partition, final long timeout) throws DbException, InterruptedException {
+    TupleBatch tb = partitionBatches.get(partition).poll(timeout, TimeUnit.MILLISECONDS);
+    if (tb != null) {
+      return tb;
+    }
+    for (Future<Void> scan : partitionScans) {
+      if (!scan.isDone()) {
+        continue;
+      }
+      try {
+        scan.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof DbException) {
+          throw (DbException) cause;
+        }
+        throw new DbException(cause);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Return the next batch of any range, waiting for one if needed.
+   * 
+   * @return the next batch, or null once all ranges have been scanned.
+   * @throws DbException if the scan of a range failed.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  private TupleBatch fetchNextPartitionBatch() throws DbException, InterruptedException {
+    while (numPartitionsDone < partitionScans.size()) {
+      TupleBatch tb = pollPartition(0, PARTITION_POLL_MILLIS);
+      if (tb == END_OF_PARTITION) {
+        ++numPartitionsDone;
+      } else if (tb != null) {
+        return tb;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Merge the sorted ranges, waiting for their batches if needed.
+   * 
+   * @return the next batch of merged tuples, or null once all ranges have been merged.
+   * @throws DbException if the scan of a range failed.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  private TupleBatch fetchNextMergedBatch() throws DbException, InterruptedException {
+    while (true) {
+      /* The smallest tuple is only known once every range that is not done has a batch. */
+      for (int partition = 0; partition < mergeBatches.length; ++partition) {
+        while (!partitionDone[partition] && mergeBatches[partition] == null) {
+          TupleBatch tb = pollPartition(partition, PARTITION_POLL_MILLIS);
+          if (tb == END_OF_PARTITION) {
+            partitionDone[partition] = true;
+          } else if (tb != null && tb.numTuples() > 0) {
+            mergeBatches[partition] = tb;
+            mergeRows[partition] = 0;
+            mergeHeap.add(partition);
+          }
+        }
+      }
+      Integer smallest = mergeHeap.poll();
+      if (smallest == null) {
+        return mergeBuffer.popAny();
+      }
+      mergeBuffer.put(mergeBatches[smallest], mergeRows[smallest]);
+      if (++mergeRows[smallest] == mergeBatches[smallest].numTuples()) {
+        mergeBatches[smallest] = null;
+      } else {
+        mergeHeap.add(smallest);
+      }
+      TupleBatch tb = mergeBuffer.popFilled();
+      if (tb != null) {
+        return tb;
       }
     }
   }
@@ -63,9 +63,10 @@ public final class DupElim extends StreamingState {
     checkUniqueness.inputTB = tb;
     List<? extends Column<?>> columns = tb.getDataColumns();
     final BitSet toRemove = new BitSet(numTuples);
+    final int[] hashCodes = HashUtils.hashRows(tb);
     for (int i = 0; i < numTuples; ++i) {
       final int nextIndex = uniqueTuples.numTuples();
-      final int cntHashCode = HashUtils.hashRow(tb, i);
+      final int cntHashCode = hashCodes[i];
       IntArrayList tupleIndexList = uniqueTupleIndices.get(cntHashCode);
       checkUniqueness.row = i;
       checkUniqueness.unique = true;
@@ -96,7 +97,7 @@ public final class DupElim extends StreamingState {
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) {
     uniqueTupleIndices = new IntObjectHashMap<>();
-    uniqueTuples = new MutableTupleBuffer(getSchema());
+    uniqueTuples = new MutableTupleBuffer(getSchema(), isOffHeapState(execEnvVars));
     checkUniqueness = new CheckUniquenessProcedure();
   }
 
@@ -122,6 +123,22 @@ public final class DupElim extends StreamingState {
     return uniqueTuples.numTuples();
   }
 
+  @Override
+  public long getHeapBytes() {
+    if (uniqueTuples == null) {
+      return 0;
+    }
+    return uniqueTuples.getHeapBytes();
+  }
+
+  @Override
+  public long getOffHeapBytes() {
+    if (uniqueTuples == null) {
+      return 0;
+    }
+    return uniqueTuples.getOffHeapBytes();
+  }
+
   /**
    * Traverse through the list of tuples.
    * */
@@ -0,0 +1,475 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.ReadableColumn;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.SpillFile;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleUtils;
+
+/**
+ * Orders tuples with an external merge sort.
+ *
+ * Tuples are buffered in memory until the child is EOS or the buffered run grows beyond the memory budget. A run that
+ * outgrows the budget is sorted and written to a local {@link SpillFile}. Once the child is EOS, the last run is sorted
+ * in memory and merged with the spilled runs, which are read back one batch at a time. If nothing was spilled, the
+ * merge simply reads the in-memory run in order.
+ *
+ * Runs are sorted by {@link RowSorter}, so the order is the same as the one of {@link InMemoryOrderBy}, and tuples that
+ * compare equal are output in the order they arrived.
+ */
+public final class ExternalOrderBy extends UnaryOperator {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(ExternalOrderBy.class);
+
+  /** Which columns to sort the tuples by. */
+  private final int[] sortColumns;
+  /** True for each column that should be sorted ascending. */
+  private final boolean[] ascending;
+  /** The maximum estimated size in bytes of the in-memory run, or 0 if there is no limit. */
+  private long memoryBudget;
+
+  /** Orders the tuples. */
+  private transient RowSorter sorter;
+  /** The tuples of the current run. */
+  private transient MutableTupleBuffer run;
+  /** The estimated number of bytes used by the tuples of the current run. */
+  private transient long runBytes;
+  /** The estimated number of bytes that each tuple uses, not counting the characters of its strings. */
+  private transient int bytesPerTuple;
+  /** The string columns of the input. */
+  private transient int[] stringColumns;
+  /** The sorted runs that have been written to disk. */
+  private transient List<SpillFile> spilledRuns;
+  /** The directory that runs are spilled to, or null for the default temporary-file directory. */
+  private transient String spillDirectory;
+  /** The cursors over the runs being merged, or null until the child is EOS. */
+  private transient RunCursor[] cursors;
+  /** A binary min-heap of the indices of the cursors that have tuples left. */
+  private transient int[] heap;
+  /** The number of cursors in {@link #heap}. */
+  private transient int heapSize;
+  /** Buffers the merged tuples until they are returned. */
+  private transient TupleBatchBuffer ans;
+
+  /**
+   * @param child the source of the tuples.
+   * @param sortColumns the columns that should be ordered by.
+   * @param ascending true for each column that should be sorted ascending.
+   */
+  public ExternalOrderBy(final Operator child, final int[] sortColumns, final boolean[] ascending) {
+    super(child);
+    this.sortColumns = sortColumns;
+    this.ascending = ascending;
+  }
+
+  /**
+   * Limit the memory used by the buffered tuples. Once they grow beyond the limit, they are sorted and written to local
+   * disk as a run.
+   *
+   * @param memoryBudget the maximum estimated size in bytes of the buffered tuples, or 0 if there is no limit.
+   */
+  public void setMemoryBudget(final long memoryBudget) {
+    Preconditions.checkArgument(memoryBudget >= 0, "memoryBudget must be non-negative");
+    this.memoryBudget = memoryBudget;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    final Schema schema = getSchema();
+    sorter = new RowSorter(schema, sortColumns, ascending);
+    run = new MutableTupleBuffer(schema);
+    runBytes = 0;
+    spilledRuns = new ArrayList<SpillFile>();
+    ans = new TupleBatchBuffer(schema);
+    cursors = null;
+
+    /* Each tuple also has a normalized key and a row index while its run is sorted. */
+    int bytes = (Long.SIZE + 2 * Integer.SIZE) / Byte.SIZE;
+    final int[] strings = new int[schema.numColumns()];
+    int numStrings = 0;
+    for (int column = 0; column < schema.numColumns(); ++column) {
+      final Type type = schema.getColumnType(column);
+      bytes += TupleUtils.estimatedBytes(type);
+      if (type == Type.STRING_TYPE) {
+        strings[numStrings++] = column;
+      }
+    }
+    bytesPerTuple = bytes;
+    stringColumns = new int[numStrings];
+    System.arraycopy(strings, 0, stringColumns, 0, numStrings);
+
+    if (execEnvVars != null) {
+      spillDirectory = (String) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_SPILL_DIRECTORY);
+    }
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator child = getChild();
+    if (cursors == null) {
+      while (!child.eos()) {
+        final TupleBatch tb = child.nextReady();
+        if (tb == null) {
+          if (child.eos()) {
+            break;
+          }
+          return null;
+        }
+        addToRun(tb);
+      }
+      startMerge();
+    }
+
+    while (heapSize > 0 && !ans.hasFilledTB()) {
+      final RunCursor top = cursors[heap[0]];
+      top.copyTo(ans);
+      if (top.advance()) {
+        siftDown(0);
+      } else {
+        --heapSize;
+        if (heapSize > 0) {
+          heap[0] = heap[heapSize];
+          siftDown(0);
+        }
+      }
+    }
+
+    final TupleBatch nexttb = ans.popFilled();
+    if (nexttb != null) {
+      return nexttb;
+    }
+    if (ans.numTuples() > 0) {
+      return ans.popAny();
+    }
+    finishMerge();
+    return null;
+  }
+
+  /**
+   * Append a batch to the current run, and spill the run if it has outgrown the memory budget.
+   *
+   * @param tb the batch.
+   * @throws DbException if the run cannot be spilled.
+   */
+  private void addToRun(final TupleBatch tb) throws DbException {
+    final List<? extends Column<?>> columns = tb.getDataColumns();
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      for (int column = 0; column < columns.size(); ++column) {
+        run.put(column, columns.get(column), row);
+      }
+    }
+    runBytes += (long) tb.numTuples() * bytesPerTuple;
+    for (int column : stringColumns) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        runBytes += 2L * tb.getString(column, row).length();
+      }
+    }
+    if (memoryBudget > 0 && runBytes > memoryBudget) {
+      spillRun();
+    }
+  }
+
+  /**
+   * Sort the current run, write it to disk, and start a new one.
+   *
+   * @throws DbException if the run cannot be written.
+   */
+  private void spillRun() throws DbException {
+    if (spilledRuns.isEmpty()) {
+      LOGGER.info("{}: the buffered tuples take {} bytes, more than the budget of {}; spilling sorted runs to disk",
+          getOpName(), runBytes, memoryBudget);
+    }
+    final MemoryRunCursor cursor = new MemoryRunCursor(run, sorter);
+    final SpillFile spill = new SpillFile(spillDirectory, getSchema());
+    spilledRuns.add(spill);
+    final TupleBatchBuffer out = new TupleBatchBuffer(getSchema());
+    while (cursor.advance()) {
+      cursor.copyTo(out);
+      final TupleBatch tb = out.popFilled();
+      if (tb != null) {
+        spill.write(tb);
+      }
+    }
+    final TupleBatch tb = out.popAny();
+    if (tb != null) {
+      spill.write(tb);
+    }
+    run = new MutableTupleBuffer(getSchema());
+    runBytes = 0;
+  }
+
+  /**
+   * The child is EOS. Sort the last run and start merging it with the spilled runs.
+   *
+   * @throws DbException if a spilled run cannot be read.
+   */
+  private void startMerge() throws DbException {
+    cursors = new RunCursor[spilledRuns.size() + 1];
+    for (int i = 0; i < spilledRuns.size(); ++i) {
+      cursors[i] = new SpilledRunCursor(spilledRuns.get(i), sorter);
+    }
+    /* The last run holds the tuples that arrived last, so it goes last to keep the sort stable. */
+    cursors[spilledRuns.size()] = new MemoryRunCursor(run, sorter);
+    run = null;
+
+    heap = new int[cursors.length];
+    heapSize = 0;
+    for (int i = 0; i < cursors.length; ++i) {
+      if (cursors[i].advance()) {
+        heap[heapSize++] = i;
+      }
+    }
+    for (int i = heapSize / 2 - 1; i >= 0; --i) {
+      siftDown(i);
+    }
+  }
+
+  /**
+   * All runs have been merged. Report how much was spilled.
+   *
+   * @throws DbException if the profiling data cannot be written.
+   */
+  private void finishMerge() throws DbException {
+    if (spilledRuns.isEmpty()) {
+      return;
+    }
+    long numBytes = 0;
+    for (SpillFile spill : spilledRuns) {
+      numBytes += spill.getNumBytes();
+      spill.delete();
+    }
+    LOGGER.info("{}: merged {} spilled runs, {} bytes in total", getOpName(), spilledRuns.size(), numBytes);
+    if (getProfilingMode().contains(ProfilingMode.RESOURCE)) {
+      getProfilingLogger().recordSpill(this, spilledRuns.size(), numBytes);
+    }
+    spilledRuns.clear();
+  }
+
+  /**
+   * @param i an index into the heap.
+   * @param j another index into the heap.
+   * @return true if the tuple of the cursor at heap index i sorts before the tuple of the cursor at heap index j.
+   */
+  private boolean less(final int i, final int j) {
+    final RunCursor a = cursors[heap[i]];
+    final RunCursor b = cursors[heap[j]];
+    final int compared = sorter.compare(a.table(), a.key(), a.row(), b.table(), b.key(), b.row());
+    if (compared != 0) {
+      return compared < 0;
+    }
+    /* Earlier runs hold earlier tuples. */
+    return heap[i] < heap[j];
+  }
+
+  /**
+   * Restore the heap property below a heap index.
+   *
+   * @param index the heap index.
+   */
+  private void siftDown(final int index) {
+    int i = index;
+    while (true) {
+      final int left = 2 * i + 1;
+      if (left >= heapSize) {
+        return;
+      }
+      int smallest = left;
+      if (left + 1 < heapSize && less(left + 1, left)) {
+        smallest = left + 1;
+      }
+      if (!less(smallest, i)) {
+        return;
+      }
+      final int tmp = heap[i];
+      heap[i] = heap[smallest];
+      heap[smallest] = tmp;
+      i = smallest;
+    }
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    if (spilledRuns != null) {
+      for (SpillFile spill : spilledRuns) {
+        spill.delete();
+      }
+      spilledRuns = null;
+    }
+    run = null;
+    cursors = null;
+    heap = null;
+    ans = null;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    Operator child = getChild();
+    if (child == null) {
+      return null;
+    }
+    return child.getSchema();
+  }
+
+  /**
+   * Reads a sorted run one tuple at a time.
+   */
+  private abstract static class RunCursor {
+    /**
+     * Move to the next tuple. Must be called once before the first tuple is read.
+     *
+     * @return false if the run has no tuples left.
+     * @throws DbException if the run cannot be read.
+     */
+    abstract boolean advance() throws DbException;
+
+    /** @return the table that holds the current tuple. */
+    abstract ReadableTable table();
+
+    /** @return the row of the current tuple in {@link #table()}. */
+    abstract int row();
+
+    /** @return the normalized key of the current tuple. */
+    abstract long key();
+
+    /**
+     * @param out the buffer to append the current tuple to.
+     */
+    abstract void copyTo(TupleBatchBuffer out);
+  }
+
+  /**
+   * Reads a run that is held in memory, in sorted order.
+   */
+  private static final class MemoryRunCursor extends RunCursor {
+    /** The tuples of the run. */
+    private final MutableTupleBuffer tuples;
+    /** The normalized keys of the tuples. */
+    private final long[] keys;
+    /** The rows of the tuples, in sorted order. */
+    private final int[] order;
+    /** The position in {@link #order} of the current tuple. */
+    private int position = -1;
+
+    /**
+     * Sort a run.
+     *
+     * @param tuples the tuples of the run.
+     * @param sorter orders the tuples.
+     */
+    MemoryRunCursor(final MutableTupleBuffer tuples, final RowSorter sorter) {
+      this.tuples = tuples;
+      keys = sorter.normalizedKeys(tuples);
+      order = sorter.sort(tuples, keys);
+    }
+
+    @Override
+    boolean advance() {
+      ++position;
+      return position < order.length;
+    }
+
+    @Override
+    ReadableTable table() {
+      return tuples;
+    }
+
+    @Override
+    int row() {
+      return order[position];
+    }
+
+    @Override
+    long key() {
+      return keys[order[position]];
+    }
+
+    @Override
+    void copyTo(final TupleBatchBuffer out) {
+      final int row = order[position];
+      final ReadableColumn[] columns = tuples.getColumns(row);
+      final int index = tuples.getTupleIndexInContainingTB(row);
+      for (int column = 0; column < columns.length; ++column) {
+        out.put(column, columns[column], index);
+      }
+    }
+  }
+
+  /**
+   * Reads a run that has been spilled to disk, one batch at a time.
+   */
+  private static final class SpilledRunCursor extends RunCursor {
+    /** The file that holds the run. */
+    private final SpillFile spill;
+    /** Orders the tuples. */
+    private final RowSorter sorter;
+    /** The current batch. */
+    private TupleBatch batch;
+    /** The normalized keys of the tuples of the current batch. */
+    private long[] keys;
+    /** The row of the current tuple in the current batch. */
+    private int row;
+
+    /**
+     * @param spill the file that holds the run.
+     * @param sorter orders the tuples.
+     */
+    SpilledRunCursor(final SpillFile spill, final RowSorter sorter) {
+      this.spill = spill;
+      this.sorter = sorter;
+    }
+
+    @Override
+    boolean advance() throws DbException {
+      ++row;
+      while (batch == null || row >= batch.numTuples()) {
+        batch = spill.read();
+        if (batch == null) {
+          keys = null;
+          return false;
+        }
+        keys = sorter.normalizedKeys(batch);
+        row = 0;
+      }
+      return true;
+    }
+
+    @Override
+    ReadableTable table() {
+      return batch;
+    }
+
+    @Override
+    int row() {
+      return row;
+    }
+
+    @Override
+    long key() {
+      return keys[row];
+    }
+
+    @Override
+    void copyTo(final TupleBatchBuffer out) {
+      final List<? extends Column<?>> columns = batch.getDataColumns();
+      for (int column = 0; column < columns.size(); ++column) {
+        out.put(column, columns.get(column), row);
+      }
+    }
+  }
+}
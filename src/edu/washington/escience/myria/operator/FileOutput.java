@@ -0,0 +1,132 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.ColumnarStreamTupleWriter;
+import edu.washington.escience.myria.CsvTupleWriter;
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.JsonTupleWriter;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.ParallelTupleWriter;
+import edu.washington.escience.myria.TupleWriter;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Serializes the tuples of its child to a file, in CSV, TSV, JSON, or columnar format. Unlike {@link DataOutput}, whose
+ * {@link TupleWriter} is built where the plan is built, the writer is opened where the operator runs, so each worker
+ * can export its own partition of a relation to a shared file system. Text formats are encoded on several threads. The
+ * file is written under a temporary name and renamed when the child is done, so that readers never see a partial file.
+ */
+public final class FileOutput extends RootOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(FileOutput.class);
+  /** The path of the file. */
+  private final String filename;
+  /** The format of the file: "csv", "tsv", "json", or "columnar". */
+  private final String format;
+  /** The file the tuples are written to until the child is done. */
+  private transient File tempFile;
+  /** The writer of the temporary file. */
+  private transient TupleWriter writer;
+  /** Whether the file has been written. */
+  private transient boolean done;
+
+  /**
+   * @param child the source of the tuples.
+   * @param filename the path of the file.
+   * @param format the format of the file: "csv", "tsv", "json", or "columnar".
+   */
+  public FileOutput(final Operator child, final String filename, final String format) {
+    super(child);
+    this.filename = Objects.requireNonNull(filename, "filename");
+    this.format = Objects.requireNonNull(format, "format");
+    Preconditions.checkArgument(format.equals("csv") || format.equals("tsv") || format.equals("json")
+        || format.equals("columnar"), "format must be 'csv', 'tsv', 'json', or 'columnar', not %s", format);
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    final File file = new File(filename).getAbsoluteFile();
+    final File directory = file.getParentFile();
+    done = false;
+    try {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Unable to create directory " + directory);
+      }
+      tempFile = File.createTempFile(file.getName() + "-", ".tmp", directory);
+      final OutputStream out = new FileOutputStream(tempFile);
+      final int numThreads = Math.min(MyriaConstants.MAX_ENCODING_THREADS, Runtime.getRuntime().availableProcessors());
+      switch (format) {
+        case "csv":
+          writer = new ParallelTupleWriter(new CsvTupleWriter(out), numThreads);
+          break;
+        case "tsv":
+          writer = new ParallelTupleWriter(new CsvTupleWriter('\t', out), numThreads);
+          break;
+        case "json":
+          writer = new ParallelTupleWriter(new JsonTupleWriter(out), numThreads);
+          break;
+        default:
+          writer = new ColumnarStreamTupleWriter(out, getChild().getSchema());
+          break;
+      }
+      writer.writeColumnHeaders(getChild().getSchema().getColumnNames());
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  @Override
+  protected void consumeTuples(final TupleBatch tuples) throws DbException {
+    try {
+      writer.writeTuples(tuples);
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  @Override
+  protected void childEOI() throws DbException {
+    /* Do nothing. */
+  }
+
+  @Override
+  protected void childEOS() throws DbException {
+    try {
+      writer.done();
+      Files.move(tempFile.toPath(), new File(filename).getAbsoluteFile().toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+    done = true;
+  }
+
+  @Override
+  protected void cleanup() throws IOException {
+    if (done || tempFile == null) {
+      return;
+    }
+    try {
+      if (writer != null) {
+        writer.error();
+      }
+    } finally {
+      if (!tempFile.delete()) {
+        LOGGER.warn("Unable to delete temporary file {}", tempFile);
+      }
+    }
+  }
+}
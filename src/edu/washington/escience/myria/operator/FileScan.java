@@ -3,7 +3,18 @@ package edu.washington.escience.myria.operator;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 
@@ -21,9 +32,11 @@ import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.io.DataSource;
 import edu.washington.escience.myria.io.FileSource;
+import edu.washington.escience.myria.io.SplittableDataSource;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.util.DateTimeUtils;
+import edu.washington.escience.myria.util.concurrent.RenamingThreadFactory;
 
 /**
  * Reads data from a file. For CSV files, the default parser follows the RFC 4180 (http://tools.ietf.org/html/rfc4180).
@@ -34,6 +47,10 @@ import edu.washington.escience.myria.util.DateTimeUtils;
  * cell of the input can be enclosed by the default quotation mark '"'. Other quotation mark like '\'' can be specified
  * by user as well. Note that the enclosure by quotation is not required in the input file.
  * 
+ * If a number of splits is given and the source is a {@link SplittableDataSource}, the file is cut into that many byte
+ * ranges that are parsed in parallel by a pool of threads, see {@link CsvChunkParser}. In this mode, the tuples are
+ * not returned in the order of the file, and newlines must not occur inside quoted fields. The same mode lets several
+ * scans, e.g., on different workers, each read one part of a file.
  */
 public final class FileScan extends LeafOperator {
   /** The Schema of the relation stored in this file. */
@@ -56,6 +73,18 @@ public final class FileScan extends LeafOperator {
   private transient TupleBatchBuffer buffer;
   /** Which line of the file the scanner is currently on. */
   private long lineNumber = 0;
+  /** The number of byte ranges the file is cut into to be parsed in parallel, or null to parse it sequentially. */
+  private final Integer numSplits;
+  /** The threads that parse the byte ranges, in parallel mode. */
+  private transient ExecutorService splitExecutor;
+  /** The parsing of each byte range, in parallel mode. */
+  private transient List<Future<Void>> splits;
+  /** The batches parsed from the byte ranges and not yet returned, in parallel mode. */
+  private transient BlockingQueue<TupleBatch> splitBatches;
+  /** Which of the {@link #numParts} equal parts of the file this scan reads. */
+  private final int part;
+  /** The number of equal parts the file is cut into, each read by a different scan. */
+  private final int numParts;
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
@@ -65,6 +94,9 @@ public final class FileScan extends LeafOperator {
    */
   private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(FileScan.class);
 
+  /** How long to wait for a parsed batch before checking whether the parsing of a byte range failed. */
+  private static final long SPLIT_POLL_MILLIS = 100;
+
   /**
    * Construct a new FileScan object to read from the specified file. This file is assumed to be comma-separated and
    * have one record per line. '"' will be used as default quotation mark. `\` will be used as escape character.
@@ -146,6 +178,56 @@ public final class FileScan extends LeafOperator {
    */
   public FileScan(final DataSource source, final Schema schema, @Nullable final Character delimiter,
       @Nullable final Character quote, @Nullable final Character escape, @Nullable final Integer numberOfSkippedLines) {
+    this(source, schema, delimiter, quote, escape, numberOfSkippedLines, null);
+  }
+
+  /**
+   * Construct a new FileScan object to read from the specified file. This file is assumed to be comma-separated and
+   * have one record per line. If delimiter is non-null, the system uses its value as a delimiter. If quote is null, '"'
+   * will be used as default quotation mark. If escape is null, `\` will be used as escape character. If
+   * numberOfSkippedLines is null, no line will be skipped. If numSplits is non-null and the source is a
+   * {@link SplittableDataSource}, the file is cut into that many byte ranges that are parsed in parallel.
+   * 
+   * @param source the data source containing the relation.
+   * @param schema the Schema of the relation contained in the file.
+   * @param delimiter An optional override file delimiter.
+   * @param quote An optional quote character
+   * @param escape An optional escape character.
+   * @param numberOfSkippedLines number of lines to be skipped (number of lines in header).
+   * @param numSplits An optional number of byte ranges to parse in parallel.
+   */
+  public FileScan(final DataSource source, final Schema schema, @Nullable final Character delimiter,
+      @Nullable final Character quote, @Nullable final Character escape, @Nullable final Integer numberOfSkippedLines,
+      @Nullable final Integer numSplits) {
+    this(source, schema, delimiter, quote, escape, numberOfSkippedLines, numSplits, 0, 1);
+  }
+
+  /**
+   * Construct a new FileScan object to read one part of the specified file, e.g., on one of the workers that ingest
+   * the file. The file must be a {@link SplittableDataSource}; it is cut into numParts byte ranges of equal size, and
+   * this scan reads the records that start in the range of the given part. The other arguments are as in
+   * {@link #FileScan(DataSource, Schema, Character, Character, Character, Integer, Integer)}.
+   * 
+   * @param source the data source containing the relation.
+   * @param schema the Schema of the relation contained in the file.
+   * @param delimiter An optional override file delimiter.
+   * @param quote An optional quote character
+   * @param escape An optional escape character.
+   * @param numberOfSkippedLines number of lines to be skipped at the start of the file (number of lines in header).
+   * @param numSplits An optional number of byte ranges of the part to parse in parallel.
+   * @param part which part of the file to read, from 0 to numParts - 1.
+   * @param numParts the number of parts the file is cut into.
+   */
+  public FileScan(final DataSource source, final Schema schema, @Nullable final Character delimiter,
+      @Nullable final Character quote, @Nullable final Character escape, @Nullable final Integer numberOfSkippedLines,
+      @Nullable final Integer numSplits, final int part, final int numParts) {
+    Preconditions.checkArgument(numSplits == null || numSplits > 0, "numSplits must be positive, not %s", numSplits);
+    Preconditions.checkArgument(0 <= part && part < numParts, "part %s is not in [0, %s)", part, numParts);
+    Preconditions.checkArgument(numParts == 1 || source instanceof SplittableDataSource,
+        "only a SplittableDataSource can be read in parts");
+    this.numSplits = numSplits;
+    this.part = part;
+    this.numParts = numParts;
     this.source = Preconditions.checkNotNull(source, "source");
     this.schema = Preconditions.checkNotNull(schema, "schema");
 
@@ -158,17 +240,27 @@ public final class FileScan extends LeafOperator {
   @Override
   public void cleanup() {
     parser = null;
+    if (splitExecutor != null) {
+      splitExecutor.shutdownNow();
+      splitExecutor = null;
+    }
+    splits = null;
+    splitBatches = null;
     while (buffer.numTuples() > 0) {
       buffer.popAny();
     }
   }
 
   @Override
-  protected TupleBatch fetchNextReady() throws DbException, IOException {
+  protected TupleBatch fetchNextReady() throws DbException, IOException, InterruptedException {
+    if (splits != null) {
+      return fetchNextSplitBatch();
+    }
+
     /* Let's assume that the scanner always starts at the beginning of a line. */
     long lineNumberBegin = lineNumber;
 
-    while ((buffer.numTuples() < TupleBatch.BATCH_SIZE)) {
+    while ((buffer.numTuples() < buffer.getBatchSize())) {
       lineNumber++;
       if (parser.isClosed()) {
         break;
@@ -229,6 +321,113 @@ public final class FileScan extends LeafOperator {
     return buffer.popAny();
   }
 
+  /**
+   * Return the next batch parsed from any byte range, waiting for one if needed.
+   * 
+   * @return the next batch, or null once all byte ranges have been parsed.
+   * @throws DbException if the parsing of a byte range failed.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  private TupleBatch fetchNextSplitBatch() throws DbException, InterruptedException {
+    while (true) {
+      TupleBatch tb = splitBatches.poll(SPLIT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+      if (tb != null) {
+        return tb;
+      }
+      boolean allDone = true;
+      for (Future<Void> split : splits) {
+        if (!split.isDone()) {
+          allDone = false;
+          continue;
+        }
+        try {
+          split.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof DbException) {
+            throw (DbException) cause;
+          }
+          throw new DbException(cause);
+        }
+      }
+      if (allDone) {
+        /* Every batch was queued before its range was done. */
+        return splitBatches.poll();
+      }
+    }
+  }
+
+  /**
+   * Start parsing the byte ranges of the file in parallel.
+   * 
+   * @param splittable the source.
+   * @throws IOException if the length of the source cannot be read.
+   */
+  private void startSplits(final SplittableDataSource splittable) throws IOException {
+    final int splitCount = MoreObjects.firstNonNull(numSplits, 1);
+    final long fileLength = splittable.getLength();
+    final long partStart = fileLength * part / numParts;
+    final long length = fileLength * (part + 1) / numParts - partStart;
+    final int numThreads = Math.min(splitCount, Runtime.getRuntime().availableProcessors());
+    final AtomicLong bytesParsed = new AtomicLong();
+    splitExecutor = Executors.newFixedThreadPool(numThreads, new RenamingThreadFactory("FileScan split parser"));
+    /* A bounded queue, so that the parsers do not run too far ahead of the consumers of the tuples. */
+    final BlockingQueue<TupleBatch> batches = new ArrayBlockingQueue<>(2 * numThreads);
+    final CsvChunkParser.BatchSink sink = new CsvChunkParser.BatchSink() {
+      @Override
+      public void accept(final TupleBatch batch) throws InterruptedException {
+        batches.put(batch);
+      }
+    };
+    splitBatches = batches;
+    splits = new ArrayList<>(splitCount);
+    for (int i = 0; i < splitCount; ++i) {
+      final long start = partStart + length * i / splitCount;
+      final long end = partStart + length * (i + 1) / splitCount;
+      final int skip = start == 0 ? numberOfSkippedLines : 0;
+      final CsvChunkParser chunkParser = new CsvChunkParser(schema, delimiter, quote, escape, getBatchTargetBytes());
+      splits.add(splitExecutor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          chunkParser.parse(splittable, start, end, skip, sink);
+          long parsed = bytesParsed.addAndGet(end - start);
+          LOGGER.info("Parsed {} of {} bytes of part {} of {} of {}", parsed, length, part, numParts, source);
+          return null;
+        }
+      }));
+    }
+    splitExecutor.shutdown();
+    LOGGER.debug("Parsing {} bytes in {} splits using {} threads", length, splitCount, numThreads);
+  }
+
+  /**
+   * @return whether the file can be parsed in parallel.
+   * @throws DbException if this scan reads a part of the file, but the file cannot be split.
+   */
+  private boolean canSplit() throws DbException {
+    if (numParts > 1) {
+      if (!CsvChunkParser.isAscii(delimiter) || !CsvChunkParser.isAscii(quote)
+          || (escape != null && !CsvChunkParser.isAscii(escape))) {
+        throw new DbException("Cannot read part of " + source
+            + ": the delimiter, quote and escape characters are not all ASCII");
+      }
+      return true;
+    }
+    if (numSplits == null) {
+      return false;
+    }
+    if (!(source instanceof SplittableDataSource)) {
+      LOGGER.warn("Parsing {} sequentially: it cannot be split", source);
+      return false;
+    }
+    if (!CsvChunkParser.isAscii(delimiter) || !CsvChunkParser.isAscii(quote)
+        || (escape != null && !CsvChunkParser.isAscii(escape))) {
+      LOGGER.warn("Parsing {} sequentially: the delimiter, quote and escape characters are not all ASCII", source);
+      return false;
+    }
+    return true;
+  }
+
   @Override
   public Schema generateSchema() {
     return schema;
@@ -236,7 +435,15 @@ public final class FileScan extends LeafOperator {
 
   @Override
   protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
-    buffer = new TupleBatchBuffer(getSchema());
+    buffer = new TupleBatchBuffer(getSchema(), getBatchTargetBytes());
+    if (canSplit()) {
+      try {
+        startSplits((SplittableDataSource) source);
+      } catch (IOException e) {
+        throw new DbException(e);
+      }
+      return;
+    }
     try {
       parser =
           new CSVParser(new BufferedReader(new InputStreamReader(source.getInputStream())), CSVFormat.newFormat(
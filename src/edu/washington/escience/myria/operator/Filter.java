@@ -4,9 +4,11 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.BitSet;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.expression.evaluate.BooleanEvaluator;
@@ -45,17 +47,11 @@ public final class Filter extends UnaryOperator {
   protected TupleBatch fetchNextReady() throws DbException {
     Operator child = getChild();
     for (TupleBatch tb = child.nextReady(); tb != null; tb = child.nextReady()) {
-      BitSet bits = new BitSet(tb.numTuples());
-      for (int rowIdx = 0; rowIdx < tb.numTuples(); rowIdx++) {
-        Boolean valid;
-        try {
-          valid = evaluator.eval(tb, rowIdx);
-        } catch (InvocationTargetException e) {
-          throw new DbException(e);
-        }
-        if (valid) {
-          bits.set(rowIdx);
-        }
+      BitSet bits;
+      try {
+        bits = evaluator.evaluateMask(tb);
+      } catch (InvocationTargetException e) {
+        throw new DbException(e);
       }
 
       if (bits.cardinality() == 0) {
@@ -76,9 +72,12 @@ public final class Filter extends UnaryOperator {
     final ExpressionOperatorParameter parameters = new ExpressionOperatorParameter(inputSchema, getNodeID());
 
     evaluator = new BooleanEvaluator(predicate, parameters);
-    if (evaluator.needsCompiling()) {
+    if (!evaluator.isCopyFromInput()) {
       evaluator.compile();
     }
+    if (getProfilingMode().contains(ProfilingMode.RESOURCE)) {
+      getProfilingLogger().recordCompilation(this, ImmutableList.of(evaluator));
+    }
   }
 
   @Override
@@ -0,0 +1,115 @@
+package edu.washington.escience.myria.operator;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
+import edu.washington.escience.myria.expression.evaluate.PipelineEvaluator;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * A chain of {@link Filter} and {@link Apply} operators fused into one operator. The predicates and the output
+ * expressions are all over the input of the chain, and are compiled together into a single loop over each input batch,
+ * so that the rows that fail a predicate are skipped without building a selection mask or an intermediate batch. See
+ * {@link PipelineEvaluator}.
+ */
+public final class FusedPipeline extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The predicates that a tuple must satisfy to be output. */
+  private final ImmutableList<Expression> predicates;
+
+  /** The expressions that compute the output columns, or null if the input columns are output. */
+  private final ImmutableList<Expression> emitExpressions;
+
+  /** The compiled pipeline. */
+  private transient PipelineEvaluator evaluator;
+
+  /**
+   * @param child the child operator.
+   * @param predicates the predicates that a tuple must satisfy to be output, over the schema of the child.
+   * @param emitExpressions the expressions that compute the output columns from the schema of the child, or null to
+   *          output the columns of the child.
+   */
+  public FusedPipeline(final Operator child, final List<Expression> predicates,
+      final List<Expression> emitExpressions) {
+    super(child);
+    this.predicates = ImmutableList.copyOf(Preconditions.checkNotNull(predicates, "predicates"));
+    if (emitExpressions == null) {
+      this.emitExpressions = null;
+    } else {
+      this.emitExpressions = ImmutableList.copyOf(emitExpressions);
+    }
+  }
+
+  /**
+   * @return the predicates that a tuple must satisfy to be output.
+   */
+  public List<Expression> getPredicates() {
+    return predicates;
+  }
+
+  /**
+   * @return the expressions that compute the output columns, or null if the input columns are output.
+   */
+  public List<Expression> getEmitExpressions() {
+    return emitExpressions;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    Operator child = getChild();
+    for (TupleBatch tb = child.nextReady(); tb != null; tb = child.nextReady()) {
+      TupleBatch result;
+      try {
+        result = evaluator.evaluate(tb);
+      } catch (InvocationTargetException e) {
+        throw new DbException(e);
+      }
+
+      if (result.numTuples() == 0) {
+        continue;
+      }
+
+      return result;
+    }
+    return null;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    Schema inputSchema = getChild().getSchema();
+
+    final ExpressionOperatorParameter parameters = new ExpressionOperatorParameter(inputSchema, getNodeID());
+
+    evaluator = new PipelineEvaluator(predicates, emitExpressions, parameters);
+    evaluator.compile();
+    if (getProfilingMode().contains(ProfilingMode.RESOURCE)) {
+      getProfilingLogger().recordCompilation(this, ImmutableList.of(evaluator));
+    }
+  }
+
+  @Override
+  public Schema generateSchema() {
+    Operator child = getChild();
+    if (child == null) {
+      return null;
+    }
+    Schema inputSchema = child.getSchema();
+    if (inputSchema == null) {
+      return null;
+    }
+    return new PipelineEvaluator(predicates, emitExpressions, new ExpressionOperatorParameter(inputSchema))
+        .getOutputSchema();
+  }
+}
@@ -102,9 +102,10 @@ public final class KeepMinValue extends StreamingState {
     doReplace.inputTB = tb;
     final List<? extends Column<?>> columns = tb.getDataColumns();
     final BitSet toRemove = new BitSet(numTuples);
+    final int[] hashCodes = HashUtils.hashSubRows(tb, keyColIndices);
     for (int i = 0; i < numTuples; ++i) {
       final int nextIndex = uniqueTuples.numTuples();
-      final int cntHashCode = HashUtils.hashSubRow(tb, keyColIndices, i);
+      final int cntHashCode = hashCodes[i];
       IntArrayList tupleIndexList = uniqueTupleIndices.get(cntHashCode);
       doReplace.unique = true;
       if (tupleIndexList == null) {
@@ -137,7 +138,7 @@ public final class KeepMinValue extends StreamingState {
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) {
     uniqueTupleIndices = new IntObjectHashMap<>();
-    uniqueTuples = new MutableTupleBuffer(getSchema());
+    uniqueTuples = new MutableTupleBuffer(getSchema(), isOffHeapState(execEnvVars));
     doReplace = new ReplaceProcedure();
   }
 
@@ -201,6 +202,22 @@ public final class KeepMinValue extends StreamingState {
     return uniqueTuples.numTuples();
   }
 
+  @Override
+  public long getHeapBytes() {
+    if (uniqueTuples == null) {
+      return 0;
+    }
+    return uniqueTuples.getHeapBytes();
+  }
+
+  @Override
+  public long getOffHeapBytes() {
+    if (uniqueTuples == null) {
+      return 0;
+    }
+    return uniqueTuples.getOffHeapBytes();
+  }
+
   @Override
   public StreamingState newInstanceFromMyself() {
     return new KeepMinValue(keyColIndices, valueColIndex);
@@ -181,6 +181,26 @@ public abstract class Operator implements Serializable {
     return profilingMode;
   }
 
+  /**
+   * @return the number of bytes the tuple batches of the subquery aim at, see
+   *         {@link edu.washington.escience.myria.storage.BatchSizeController}.
+   */
+  protected final int getBatchTargetBytes() {
+    if (execEnvVars == null) {
+      return MyriaConstants.DEFAULT_BATCH_TARGET_BYTES;
+    }
+    LocalFragmentResourceManager lfrm =
+        (LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
+    if (lfrm == null) {
+      return MyriaConstants.DEFAULT_BATCH_TARGET_BYTES;
+    }
+    LocalFragment fragment = lfrm.getFragment();
+    if (fragment == null) {
+      return MyriaConstants.DEFAULT_BATCH_TARGET_BYTES;
+    }
+    return fragment.getLocalSubQuery().getBatchTargetBytes();
+  }
+
   /**
    * Closes this iterator.
    * 
@@ -396,6 +416,12 @@ public abstract class Operator implements Serializable {
     eoi = false;
     numOutputTBs = 0;
     numOutputTuples = 0;
+    /* The profiling logger is set before init, so that operators can log how they initialized. */
+    if (getProfilingMode().size() > 0) {
+      if (getLocalSubQuery() instanceof WorkerSubQuery) {
+        profilingLogger = ((WorkerSubQuery) getLocalSubQuery()).getWorker().getProfilingLogger();
+      }
+    }
     // do my initialization
     try {
       init(this.execEnvVars);
@@ -405,12 +431,6 @@ public abstract class Operator implements Serializable {
       throw new DbException(e);
     }
     open = true;
-
-    if (getProfilingMode().size() > 0) {
-      if (getLocalSubQuery() instanceof WorkerSubQuery) {
-        profilingLogger = ((WorkerSubQuery) getLocalSubQuery()).getWorker().getProfilingLogger();
-      }
-    }
   }
 
   /**
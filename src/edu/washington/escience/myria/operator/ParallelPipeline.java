@@ -0,0 +1,387 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.concurrent.RenamingThreadFactory;
+
+/**
+ * Runs a pipeline of unary operators on several threads of a worker. The batches of the child are morsels that are
+ * dispatched, through a shared queue, to identical copies of the pipeline, one per thread, so that an idle thread
+ * always takes the next morsel. The outputs of the copies are returned in no particular order.
+ *
+ * Each copy of the pipeline keeps its own state, e.g., the groups of a partial aggregate. When the child reaches the
+ * end of an iteration or of its stream, every copy is told so, and the operator returns what the copies output then
+ * before it reaches the end itself. The partial states of the copies are merged by the operator above, e.g., an
+ * aggregate in the {@link edu.washington.escience.myria.operator.agg.AggregationPhase#FINAL} phase.
+ */
+public final class ParallelPipeline extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(ParallelPipeline.class);
+  /** How long to wait for the copies of the pipeline before checking whether they failed, in milliseconds. */
+  private static final long POLL_MILLIS = 100;
+  /** The morsel that tells a copy of the pipeline that the child reached the end of an iteration. */
+  private static final TupleBatch END_OF_ITERATION = new TupleBatch(Schema.EMPTY_SCHEMA, ImmutableList
+      .<Column<?>> of(), 0);
+  /** The morsel that tells a copy of the pipeline that the child reached the end of its stream. */
+  private static final TupleBatch END_OF_STREAM = new TupleBatch(Schema.EMPTY_SCHEMA, ImmutableList
+      .<Column<?>> of(), 0);
+
+  /** The operators of the pipeline, from the bottom up, whose children are not set. */
+  private final ImmutableList<Operator> stages;
+  /** The number of threads, or 0 to use one per processor. */
+  private final int numThreads;
+
+  /** The threads that run the copies of the pipeline. */
+  private transient ExecutorService executor;
+  /** The copies of the pipeline. */
+  private transient List<Operator> copies;
+  /** The results of the threads. */
+  private transient List<Future<Void>> threads;
+  /** The morsels waiting for a thread. */
+  private transient BlockingQueue<TupleBatch> morsels;
+  /** The output of the copies. */
+  private transient BlockingQueue<TupleBatch> outputs;
+  /** The number of data morsels that were queued but whose output is not queued yet. */
+  private transient AtomicInteger inFlight;
+  /** The number of copies that are done with the current end-of-iteration or end-of-stream morsel. */
+  private transient AtomicInteger numAtEnd;
+  /** Makes every thread take exactly one end-of-iteration morsel. */
+  private transient CyclicBarrier iterationBarrier;
+  /** A batch of the child that did not fit in {@link #morsels} yet. */
+  private transient TupleBatch pending;
+  /** The end morsel being sent to the copies, or null while the input is read. */
+  private transient TupleBatch end;
+  /** The number of end morsels that still have to be queued. */
+  private transient int endsToQueue;
+
+  /**
+   * @param child the child, whose batches are the morsels.
+   * @param stages the operators of the pipeline, from the bottom up, whose children are not set. They are copied for
+   *          each thread, and must be {@link java.io.Serializable} like any operator.
+   * @param numThreads the number of threads, or 0 to use one per processor.
+   */
+  public ParallelPipeline(final Operator child, final List<? extends Operator> stages, final int numThreads) {
+    super(child);
+    Preconditions.checkArgument(!stages.isEmpty(), "a pipeline needs at least one operator");
+    Preconditions.checkArgument(numThreads >= 0, "numThreads must be non-negative, not %s", numThreads);
+    for (Operator stage : stages) {
+      Preconditions.checkArgument(stage instanceof UnaryOperator && stage.getChildren() == null,
+          "the operators of a pipeline must be unary operators without a child");
+    }
+    this.stages = ImmutableList.copyOf(stages);
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * @return the operators of the pipeline, from the bottom up.
+   */
+  public List<Operator> getStages() {
+    return stages;
+  }
+
+  /**
+   * Connect a new copy of the pipeline to a source of morsels.
+   *
+   * @param source the source of morsels.
+   * @return the top of the copy.
+   */
+  private Operator copyPipeline(final Operator source) {
+    List<Operator> copy;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+        out.writeObject(new ArrayList<Operator>(stages));
+      }
+      try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+        @SuppressWarnings("unchecked")
+        List<Operator> read = (List<Operator>) in.readObject();
+        copy = read;
+      }
+    } catch (IOException | ClassNotFoundException e) {
+      throw new IllegalStateException("Unable to copy the pipeline", e);
+    }
+    Operator below = source;
+    for (Operator stage : copy) {
+      stage.setChildren(new Operator[] { below });
+      below = stage;
+    }
+    return below;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    Operator child = getChild();
+    if (child == null || child.getSchema() == null) {
+      return null;
+    }
+    return copyPipeline(new MorselSource(child.getSchema())).getSchema();
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    final int n = numThreads > 0 ? numThreads : Runtime.getRuntime().availableProcessors();
+    final Schema inputSchema = getChild().getSchema();
+    morsels = new ArrayBlockingQueue<TupleBatch>(2 * n);
+    outputs = new ArrayBlockingQueue<TupleBatch>(2 * n);
+    inFlight = new AtomicInteger();
+    numAtEnd = new AtomicInteger();
+    iterationBarrier = new CyclicBarrier(n);
+    pending = null;
+    end = null;
+    endsToQueue = 0;
+
+    copies = new ArrayList<Operator>(n);
+    threads = new ArrayList<Future<Void>>(n);
+    executor = Executors.newFixedThreadPool(n, new RenamingThreadFactory("ParallelPipeline " + getOpName()));
+    for (int i = 0; i < n; ++i) {
+      final MorselSource source = new MorselSource(inputSchema);
+      final Operator top = copyPipeline(source);
+      if (!getProfilingMode().isEmpty()) {
+        setFragmentIds(top, getFragmentId());
+      }
+      top.open(execEnvVars);
+      copies.add(top);
+      threads.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          runCopy(source, top);
+          return null;
+        }
+      }));
+    }
+    executor.shutdown();
+    LOGGER.debug("Running {} copies of the pipeline of {}", n, getOpName());
+  }
+
+  /**
+   * @param op the top of a copy of the pipeline.
+   * @param fragmentId the fragment of this operator.
+   */
+  private static void setFragmentIds(final Operator op, final int fragmentId) {
+    if (op instanceof MorselSource) {
+      return;
+    }
+    op.setFragmentId(fragmentId);
+    for (Operator child : op.getChildren()) {
+      setFragmentIds(child, fragmentId);
+    }
+  }
+
+  /**
+   * Feed the morsels to a copy of the pipeline until the end of the stream, on a thread of the {@link #executor}.
+   *
+   * @param source the source of morsels of the copy.
+   * @param top the top of the copy.
+   * @throws Exception if the copy fails.
+   */
+  private void runCopy(final MorselSource source, final Operator top) throws Exception {
+    while (true) {
+      TupleBatch morsel = morsels.take();
+      if (morsel == END_OF_STREAM) {
+        source.setEOS();
+        drain(top);
+        numAtEnd.incrementAndGet();
+        return;
+      }
+      if (morsel == END_OF_ITERATION) {
+        /* Wait until every thread took one, so that no thread takes two. */
+        iterationBarrier.await();
+        source.setEOI(true);
+        drain(top);
+        top.setEOI(false);
+        numAtEnd.incrementAndGet();
+        continue;
+      }
+      source.setMorsel(morsel);
+      drain(top);
+      inFlight.decrementAndGet();
+    }
+  }
+
+  /**
+   * Queue all the output of a copy of the pipeline that its input allows.
+   *
+   * @param top the top of the copy.
+   * @throws Exception if the copy fails.
+   */
+  private void drain(final Operator top) throws Exception {
+    for (TupleBatch tb = top.nextReady(); tb != null; tb = top.nextReady()) {
+      outputs.put(tb);
+    }
+  }
+
+  /**
+   * @throws DbException if a copy of the pipeline failed.
+   */
+  private void checkThreads() throws DbException {
+    for (Future<Void> thread : threads) {
+      if (!thread.isDone()) {
+        continue;
+      }
+      try {
+        thread.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof DbException) {
+          throw (DbException) cause;
+        }
+        throw new DbException(cause);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new DbException(e);
+      }
+    }
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException, InterruptedException {
+    final Operator child = getChild();
+    while (true) {
+      TupleBatch tb = outputs.poll();
+      if (tb != null) {
+        return tb;
+      }
+      checkThreads();
+
+      if (end == null) {
+        if (pending == null) {
+          pending = child.nextReady();
+        }
+        if (pending != null) {
+          if (morsels.offer(pending, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            inFlight.incrementAndGet();
+            pending = null;
+          }
+          continue;
+        }
+        if (child.eos()) {
+          end = END_OF_STREAM;
+        } else if (child.eoi()) {
+          end = END_OF_ITERATION;
+        } else if (inFlight.get() == 0) {
+          /* No input now, and every morsel is done: the output is all queued. */
+          return outputs.poll();
+        }
+        if (end != null) {
+          endsToQueue = copies.size();
+          numAtEnd.set(0);
+        }
+      }
+
+      if (endsToQueue > 0) {
+        if (morsels.offer(end, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+          --endsToQueue;
+        }
+        continue;
+      }
+      if (end != null && numAtEnd.get() == copies.size()) {
+        tb = outputs.poll();
+        if (tb == null && end == END_OF_ITERATION) {
+          /* The child is still at the end of the iteration, so this operator will be too. */
+          end = null;
+        }
+        return tb;
+      }
+
+      tb = outputs.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+      if (tb != null) {
+        return tb;
+      }
+    }
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    if (executor != null) {
+      executor.shutdownNow();
+      try {
+        if (!executor.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+          LOGGER.warn("The threads of {} did not stop", getOpName());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      executor = null;
+    }
+    if (copies != null) {
+      for (Operator top : copies) {
+        top.close();
+      }
+      copies = null;
+    }
+    threads = null;
+    morsels = null;
+    outputs = null;
+    pending = null;
+  }
+
+  /**
+   * The leaf of a copy of the pipeline, which returns the morsels given to it.
+   */
+  private static final class MorselSource extends LeafOperator {
+    /** Required for Java serialization. */
+    private static final long serialVersionUID = 1L;
+    /** The schema of the morsels. */
+    private final Schema schema;
+    /** The morsel to return next, if any. */
+    private transient TupleBatch morsel;
+
+    /**
+     * @param schema the schema of the morsels.
+     */
+    private MorselSource(final Schema schema) {
+      this.schema = schema;
+    }
+
+    /**
+     * @param morsel the morsel to return next.
+     */
+    private void setMorsel(final TupleBatch morsel) {
+      this.morsel = morsel;
+    }
+
+    @Override
+    protected TupleBatch fetchNextReady() {
+      TupleBatch tb = morsel;
+      morsel = null;
+      return tb;
+    }
+
+    @Override
+    protected void checkEOSAndEOI() {
+      /* The end of the stream and of iterations is set by the ParallelPipeline. */
+    }
+
+    @Override
+    protected Schema generateSchema() {
+      return schema;
+    }
+  }
+}
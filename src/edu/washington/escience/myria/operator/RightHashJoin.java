@@ -1,25 +1,29 @@
 package edu.washington.escience.myria.operator;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.List;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.gs.collections.api.block.procedure.primitive.IntProcedure;
-import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.JoinHashTable;
 import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.ReadableColumn;
+import edu.washington.escience.myria.storage.SpillFile;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
-import edu.washington.escience.myria.storage.TupleUtils;
 import edu.washington.escience.myria.util.HashUtils;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
 
@@ -27,10 +31,49 @@ import edu.washington.escience.myria.util.MyriaArrayUtils;
  * This is an implementation of unbalanced hash join. This operator only builds hash tables for its right child, thus
  * will begin to output tuples after right child EOS.
  * 
+ * If a memory budget is set and the hash table of the right child grows beyond it, the join turns into a grace hash
+ * join: both children are split into {@link #NUM_SPILL_PARTITIONS} partitions on the join key and written to local
+ * {@link SpillFile}s, and once the left child is EOS the partitions are joined one at a time. A partition whose right
+ * side still does not fit, e.g., because of a frequent key, is split again with another hash function, until it has
+ * been split {@link #MAX_SPILL_DEPTH} times. Spilled partitions are only joined at EOS, so a join that spills cannot
+ * be used inside an iteration.
  */
 public final class RightHashJoin extends BinaryOperator {
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(RightHashJoin.class);
+
+  /** The number of partitions the children are split into when the right child does not fit in the memory budget. */
+  private static final int NUM_SPILL_PARTITIONS = 16;
+  /**
+   * The hash function that assigns tuples to spill partitions. It must differ from the one used by the hash table, or
+   * all the keys of a partition would land in the same slots.
+   */
+  private static final int SPILL_SEED_INDEX = 1;
+  /** How many times a spilled partition may be split again, each time with the next hash function. */
+  private static final int MAX_SPILL_DEPTH = 3;
+
+  /** A spilled partition of both children that is still to be joined. */
+  private static final class SpilledPartition {
+    /** The tuples of the right child. */
+    private final SpillFile right;
+    /** The tuples of the left child. */
+    private final SpillFile left;
+    /** How many times the tuples of this partition have been split, starting from 1. */
+    private final int depth;
+
+    /**
+     * @param right the tuples of the right child.
+     * @param left the tuples of the left child.
+     * @param depth how many times the tuples of this partition have been split, starting from 1.
+     */
+    private SpilledPartition(final SpillFile right, final SpillFile left, final int depth) {
+      this.right = right;
+      this.left = left;
+      this.depth = depth;
+    }
+  }
 
   /**
    * The names of the output columns.
@@ -47,14 +90,9 @@ public final class RightHashJoin extends BinaryOperator {
   private final int[] rightCompareIndx;
 
   /**
-   * A hash table for tuples from child 2. {Hashcode -> List of tuple indices with the same hash code}
-   */
-  private transient IntObjectHashMap<IntArrayList> rightHashTableIndices;
-
-  /**
-   * The buffer holding the valid tuples from right.
+   * A hash table for tuples from child 2.
    */
-  private transient MutableTupleBuffer rightHashTable;
+  private transient JoinHashTable rightHashTable;
   /**
    * The buffer holding the results.
    */
@@ -64,50 +102,20 @@ public final class RightHashJoin extends BinaryOperator {
   /** Which columns in the right child are to be output. */
   private final int[] rightAnswerColumns;
 
-  /**
-   * Traverse through the list of tuples with the same hash code.
-   * */
-  private final class JoinProcedure implements IntProcedure {
-
-    /** serial version id. */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Hash table.
-     * */
-    private MutableTupleBuffer joinAgainstHashTable;
-
-    /**
-     * 
-     * */
-    private int[] inputCmpColumns;
-
-    /**
-     * the columns to compare against.
-     * */
-    private int[] joinAgainstCmpColumns;
-    /**
-     * row index of the tuple.
-     * */
-    private int row;
-
-    /**
-     * input TupleBatch.
-     * */
-    private TupleBatch inputTB;
-
-    @Override
-    public void value(final int index) {
-      if (TupleUtils.tupleEquals(inputTB, inputCmpColumns, row, joinAgainstHashTable, joinAgainstCmpColumns, index)) {
-        addToAns(inputTB, row, joinAgainstHashTable, index);
-      }
-    }
-  };
-
-  /**
-   * Traverse through the list of tuples.
-   * */
-  private transient JoinProcedure doJoin;
+  /** The maximum estimated size in bytes of the hash table of the right child, or 0 if there is no limit. */
+  private long memoryBudget = 0;
+  /** The directory to spill to, or null for the default temporary-file directory. */
+  private transient String spillDirectory;
+  /** The spilled partitions of the right child, or null if nothing has been spilled. */
+  private transient SpillFile[] rightSpills;
+  /** The spilled partitions of the left child, or null if nothing has been spilled. */
+  private transient SpillFile[] leftSpills;
+  /** The spilled partitions still to be joined, or null before the left child is EOS. */
+  private transient Deque<SpilledPartition> spilledPartitions;
+  /** Every spill file created, to be deleted when the operator is closed. */
+  private transient List<SpillFile> spillFiles;
+  /** The spilled partition of the left child that is being joined, or null. */
+  private transient SpillFile currentLeftSpill;
 
   /**
    * Construct an EquiJoin operator. It returns all columns from both children when the corresponding columns in
@@ -208,6 +216,17 @@ public final class RightHashJoin extends BinaryOperator {
     return ret;
   }
 
+  /**
+   * Limit the memory used by the hash table of the right child. If it grows beyond the limit, both children are spilled
+   * to local disk and joined one partition at a time.
+   * 
+   * @param memoryBudget the maximum estimated size in bytes of the hash table, or 0 if there is no limit.
+   */
+  public void setMemoryBudget(final long memoryBudget) {
+    Preconditions.checkArgument(memoryBudget >= 0, "memoryBudget must be non-negative");
+    this.memoryBudget = memoryBudget;
+  }
+
   @Override
   protected Schema generateSchema() {
     final Schema leftSchema = getLeft().getSchema();
@@ -267,8 +286,17 @@ public final class RightHashJoin extends BinaryOperator {
   @Override
   protected void cleanup() throws DbException {
     rightHashTable = null;
-    rightHashTableIndices = null;
     ans = null;
+    if (spillFiles != null) {
+      for (SpillFile file : spillFiles) {
+        file.delete();
+      }
+      spillFiles = null;
+    }
+    rightSpills = null;
+    leftSpills = null;
+    spilledPartitions = null;
+    currentLeftSpill = null;
   }
 
   @Override
@@ -276,13 +304,14 @@ public final class RightHashJoin extends BinaryOperator {
     final Operator left = getLeft();
     final Operator right = getRight();
 
-    if (left.eos() && right.eos() && ans.numTuples() == 0) {
+    if (left.eos() && right.eos() && ans.numTuples() == 0 && rightSpills == null) {
       setEOS();
       return;
     }
 
     // EOS could be used as an EOI
-    if ((childrenEOI[0] || left.eos()) && (childrenEOI[1] || right.eos()) && ans.numTuples() == 0) {
+    if ((childrenEOI[0] || left.eos()) && (childrenEOI[1] || right.eos()) && ans.numTuples() == 0
+        && rightSpills == null) {
       setEOI(true);
       Arrays.fill(childrenEOI, false);
     }
@@ -318,6 +347,9 @@ public final class RightHashJoin extends BinaryOperator {
     }
 
     final Operator right = getRight();
+    if (rightSpills != null && (right.eoi() || getLeft().eoi())) {
+      throw new DbException(getOpName() + " spilled to disk, which is not supported inside an iteration");
+    }
 
     /* Drain the right child. */
     while (!right.eos()) {
@@ -344,6 +376,12 @@ public final class RightHashJoin extends BinaryOperator {
         break;
       }
 
+      /* The right child did not fit in memory, so the left child is only partitioned until it is EOS. */
+      if (rightSpills != null) {
+        spill(leftTB, leftCompareIndx, SPILL_SEED_INDEX, leftSpills);
+        continue;
+      }
+
       /* Process the data and add new results to ans. */
       processLeftChildTB(leftTB);
 
@@ -357,6 +395,13 @@ public final class RightHashJoin extends BinaryOperator {
        */
     }
 
+    if (left.eos() && rightSpills != null) {
+      nexttb = joinSpilledPartitions();
+      if (nexttb != null) {
+        return nexttb;
+      }
+    }
+
     if (isEOIReady()) {
       nexttb = ans.popAny();
     }
@@ -364,15 +409,189 @@ public final class RightHashJoin extends BinaryOperator {
     return nexttb;
   }
 
+  /**
+   * Join the spilled partitions of the children one at a time, until a full batch of results is ready.
+   * 
+   * @return a full batch of results, or null if all partitions have been joined.
+   * @throws DbException if a spill file cannot be read or written, or a partition cannot be split to fit in the memory
+   *           budget.
+   */
+  private TupleBatch joinSpilledPartitions() throws DbException {
+    if (spilledPartitions == null) {
+      spilledPartitions = new ArrayDeque<>();
+      for (int i = 0; i < rightSpills.length; ++i) {
+        spilledPartitions.add(new SpilledPartition(rightSpills[i], leftSpills[i], 1));
+      }
+    }
+    while (true) {
+      if (currentLeftSpill == null) {
+        final SpilledPartition partition = spilledPartitions.pollFirst();
+        if (partition == null) {
+          finishSpilling();
+          return null;
+        }
+        if (!loadSpilledPartition(partition)) {
+          continue;
+        }
+        currentLeftSpill = partition.left;
+      }
+
+      final TupleBatch leftTB = currentLeftSpill.read();
+      if (leftTB == null) {
+        currentLeftSpill.delete();
+        currentLeftSpill = null;
+        rightHashTable = null;
+        continue;
+      }
+      processLeftChildTB(leftTB);
+      final TupleBatch nexttb = ans.popFilled();
+      if (nexttb != null) {
+        return nexttb;
+      }
+    }
+  }
+
+  /**
+   * Build the hash table of the right child from a spilled partition. If the partition does not fit in the memory
+   * budget, split it and its tuples of the left child again with the next hash function instead, and queue the new
+   * partitions to be joined first.
+   * 
+   * @param partition the spilled partition.
+   * @return whether the hash table was built, false if the partition was split.
+   * @throws DbException if a spill file cannot be read or written, or the partition has been split too often.
+   */
+  private boolean loadSpilledPartition(final SpilledPartition partition) throws DbException {
+    rightHashTable = new JoinHashTable(getRight().getSchema(), rightCompareIndx, true);
+    for (TupleBatch tb = partition.right.read(); tb != null; tb = partition.right.read()) {
+      addToHashTable(tb);
+      if (rightHashTable.getEstimatedBytes() <= memoryBudget) {
+        continue;
+      }
+      if (partition.depth == MAX_SPILL_DEPTH) {
+        throw new DbException(getOpName() + ": a spilled partition of the right child still takes more than the "
+            + "memory budget of " + memoryBudget + " bytes after being split " + MAX_SPILL_DEPTH
+            + " times; a single join key may have too many tuples");
+      }
+      LOGGER.info("{}: a spilled partition of the right child takes more than the budget of {} bytes; splitting it",
+          getOpName(), memoryBudget);
+      final int seedIndex = SPILL_SEED_INDEX + partition.depth;
+      final SpillFile[] rights = newSpillFiles(getRight().getSchema());
+      final SpillFile[] lefts = newSpillFiles(getLeft().getSchema());
+      for (TupleBatch inMemory : rightHashTable.getTuples().getAll()) {
+        spill(inMemory, rightCompareIndx, seedIndex, rights);
+      }
+      rightHashTable = null;
+      for (TupleBatch rest = partition.right.read(); rest != null; rest = partition.right.read()) {
+        spill(rest, rightCompareIndx, seedIndex, rights);
+      }
+      partition.right.delete();
+      for (TupleBatch leftTB = partition.left.read(); leftTB != null; leftTB = partition.left.read()) {
+        spill(leftTB, leftCompareIndx, seedIndex, lefts);
+      }
+      partition.left.delete();
+      for (int i = NUM_SPILL_PARTITIONS - 1; i >= 0; --i) {
+        spilledPartitions.addFirst(new SpilledPartition(rights[i], lefts[i], partition.depth + 1));
+      }
+      return false;
+    }
+    partition.right.delete();
+    return true;
+  }
+
+  /**
+   * @param schema the schema of the spilled tuples.
+   * @return {@link #NUM_SPILL_PARTITIONS} new spill files.
+   * @throws DbException if a spill file cannot be created.
+   */
+  private SpillFile[] newSpillFiles(final Schema schema) throws DbException {
+    final SpillFile[] files = new SpillFile[NUM_SPILL_PARTITIONS];
+    for (int i = 0; i < NUM_SPILL_PARTITIONS; ++i) {
+      files[i] = new SpillFile(spillDirectory, schema);
+      spillFiles.add(files[i]);
+    }
+    return files;
+  }
+
+  /**
+   * The hash table of the right child has outgrown the memory budget: partition its tuples to disk, and spill all the
+   * tuples that arrive from now on.
+   * 
+   * @throws DbException if a spill file cannot be written.
+   */
+  private void startSpilling() throws DbException {
+    LOGGER.info("{}: the hash table of the right child takes {} bytes, more than the budget of {}; spilling to disk",
+        getOpName(), rightHashTable.getEstimatedBytes(), memoryBudget);
+    spillFiles = new ArrayList<>();
+    rightSpills = newSpillFiles(getRight().getSchema());
+    leftSpills = newSpillFiles(getLeft().getSchema());
+    for (TupleBatch tb : rightHashTable.getTuples().getAll()) {
+      spill(tb, rightCompareIndx, SPILL_SEED_INDEX, rightSpills);
+    }
+    rightHashTable = null;
+  }
+
+  /**
+   * All spilled partitions have been joined. Report how much was spilled.
+   * 
+   * @throws DbException if the profiling data cannot be written.
+   */
+  private void finishSpilling() throws DbException {
+    long numBytes = 0;
+    for (SpillFile file : spillFiles) {
+      numBytes += file.getNumBytes();
+    }
+    final int numPartitions = spillFiles.size() / 2;
+    LOGGER.info("{}: joined {} spilled partitions, {} bytes in total", getOpName(), numPartitions, numBytes);
+    if (getProfilingMode().contains(ProfilingMode.RESOURCE)) {
+      getProfilingLogger().recordSpill(this, numPartitions, numBytes);
+    }
+    rightSpills = null;
+    leftSpills = null;
+    spilledPartitions = null;
+    spillFiles = null;
+  }
+
+  /**
+   * Split a batch into spill partitions on its join key, and append each part to its spill file.
+   * 
+   * @param tb the batch.
+   * @param keyColumns the join key of the batch.
+   * @param seedIndex the hash function that assigns tuples to partitions.
+   * @param partitions the spill files, one per partition.
+   * @throws DbException if a spill file cannot be written.
+   */
+  private void spill(final TupleBatch tb, final int[] keyColumns, final int seedIndex, final SpillFile[] partitions)
+      throws DbException {
+    final int[] hashCodes = new int[tb.numTuples()];
+    HashUtils.hashSubRows(tb, keyColumns, seedIndex, hashCodes);
+    final BitSet[] rows = new BitSet[partitions.length];
+    for (int p = 0; p < partitions.length; ++p) {
+      rows[p] = new BitSet(tb.numTuples());
+    }
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      int p = hashCodes[row] % partitions.length;
+      if (p < 0) {
+        p += partitions.length;
+      }
+      rows[p].set(row);
+    }
+    for (int p = 0; p < partitions.length; ++p) {
+      if (!rows[p].isEmpty()) {
+        partitions[p].write(tb.filter(rows[p]));
+      }
+    }
+  }
+
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     final Operator right = getRight();
 
-    rightHashTableIndices = new IntObjectHashMap<>();
-    rightHashTable = new MutableTupleBuffer(right.getSchema());
+    rightHashTable = new JoinHashTable(right.getSchema(), rightCompareIndx, true);
 
     ans = new TupleBatchBuffer(getSchema());
-    doJoin = new JoinProcedure();
+    if (execEnvVars != null) {
+      spillDirectory = (String) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_SPILL_DIRECTORY);
+    }
   }
 
   /**
@@ -381,17 +600,12 @@ public final class RightHashJoin extends BinaryOperator {
    * @param tb TupleBatch to be processed.
    */
   protected void processLeftChildTB(final TupleBatch tb) {
-    doJoin.joinAgainstHashTable = rightHashTable;
-    doJoin.inputCmpColumns = leftCompareIndx;
-    doJoin.joinAgainstCmpColumns = rightCompareIndx;
-    doJoin.inputTB = tb;
-
+    final MutableTupleBuffer rightTuples = rightHashTable.getTuples();
+    final int[] hashCodes = HashUtils.hashSubRows(tb, leftCompareIndx);
     for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, doJoin.inputCmpColumns, row);
-      IntArrayList tuplesWithHashCode = rightHashTableIndices.get(cntHashCode);
-      if (tuplesWithHashCode != null) {
-        doJoin.row = row;
-        tuplesWithHashCode.forEach(doJoin);
+      for (int index = rightHashTable.find(tb, leftCompareIndx, row, hashCodes[row]); index != -1; index =
+          rightHashTable.next(index)) {
+        addToAns(tb, row, rightTuples, index);
       }
     }
   }
@@ -400,36 +614,26 @@ public final class RightHashJoin extends BinaryOperator {
    * Process the tuples from right child.
    * 
    * @param tb TupleBatch to be processed.
+   * @throws DbException if the tuples have to be spilled and cannot be written.
    */
-  protected void processRightChildTB(final TupleBatch tb) {
-
-    for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, rightCompareIndx, row);
-      // only build hash table on two sides if none of the children is EOS
-      addToHashTable(tb, row, rightHashTable, rightHashTableIndices, cntHashCode);
+  protected void processRightChildTB(final TupleBatch tb) throws DbException {
+    if (rightSpills != null) {
+      spill(tb, rightCompareIndx, SPILL_SEED_INDEX, rightSpills);
+      return;
+    }
+    addToHashTable(tb);
+    if (memoryBudget > 0 && rightHashTable.getEstimatedBytes() > memoryBudget) {
+      startSpilling();
     }
-
   }
 
   /**
-   * @param tb the source TupleBatch
-   * @param row the row number to get added to hash table
-   * @param hashTable the target hash table
-   * @param hashTable1IndicesLocal hash table 1 indices local
-   * @param hashCode the hashCode of the tb.
-   * */
-  private void addToHashTable(final TupleBatch tb, final int row, final MutableTupleBuffer hashTable,
-      final IntObjectHashMap<IntArrayList> hashTable1IndicesLocal, final int hashCode) {
-    final int nextIndex = hashTable.numTuples();
-    IntArrayList tupleIndicesList = hashTable1IndicesLocal.get(hashCode);
-    if (tupleIndicesList == null) {
-      tupleIndicesList = new IntArrayList(1);
-      hashTable1IndicesLocal.put(hashCode, tupleIndicesList);
-    }
-    tupleIndicesList.add(nextIndex);
-    List<? extends Column<?>> inputColumns = tb.getDataColumns();
-    for (int column = 0; column < tb.numColumns(); column++) {
-      hashTable.put(column, inputColumns.get(column), row);
+   * @param tb the tuples from the right child to be added to the hash table.
+   */
+  private void addToHashTable(final TupleBatch tb) {
+    final int[] hashCodes = HashUtils.hashSubRows(tb, rightCompareIndx);
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      rightHashTable.add(tb, row, hashCodes[row]);
     }
   }
 }
@@ -0,0 +1,431 @@
+package edu.washington.escience.myria.operator;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleUtils;
+
+/**
+ * Orders the rows of tables on a list of sort columns, with the same semantics as {@link Type#compareRaw}.
+ *
+ * The value of the first sort column of a row is reduced to a 64-bit normalized key whose signed order is the sort
+ * order of the column, so most comparisons are a single comparison of two longs. For every type but strings the key is
+ * exact, and a tie on it is broken by the next sort column. For strings the key holds the first four characters, and a
+ * tie is broken by comparing the strings themselves.
+ *
+ * A table is sorted as an <code>int[]</code> of row indices with a stable merge sort. Before sorting, each sort column
+ * is copied out of the table into a primitive array, so that the comparisons of the sort are specialized for the type
+ * of each column and never call into the table.
+ */
+final class RowSorter {
+  /** Ranges shorter than this are sorted by insertion sort. */
+  private static final int INSERTION_SORT_THRESHOLD = 7;
+  /** The number of characters of a string that its normalized key holds. */
+  private static final int STRING_KEY_CHARS = Long.SIZE / Character.SIZE;
+
+  /** The columns to sort on. */
+  private final int[] sortColumns;
+  /** True for each sort column that is sorted ascending. */
+  private final boolean[] ascending;
+  /** The types of the sort columns. */
+  private final Type[] types;
+  /** The first sort column to compare when two normalized keys are equal. */
+  private final int firstTieColumn;
+
+  /**
+   * @param schema the schema of the sorted tables.
+   * @param sortColumns the columns to sort on.
+   * @param ascending true for each sort column that should be sorted ascending.
+   */
+  RowSorter(final Schema schema, final int[] sortColumns, final boolean[] ascending) {
+    Preconditions.checkArgument(sortColumns.length == ascending.length,
+        "sort columns number should be equal to ascending orders number");
+    Preconditions.checkArgument(sortColumns.length > 0, "at least one sort column is required");
+    this.sortColumns = sortColumns;
+    this.ascending = ascending;
+    types = new Type[sortColumns.length];
+    for (int i = 0; i < sortColumns.length; ++i) {
+      types[i] = schema.getColumnType(sortColumns[i]);
+    }
+    if (types[0] == Type.STRING_TYPE) {
+      firstTieColumn = 0;
+    } else {
+      firstTieColumn = 1;
+    }
+  }
+
+  /**
+   * @param table a table.
+   * @param row a row of the table.
+   * @return the normalized key of the first sort column of the row.
+   */
+  long normalizedKey(final ReadableTable table, final int row) {
+    final int column = sortColumns[0];
+    long key;
+    switch (types[0]) {
+      case BOOLEAN_TYPE:
+        key = table.getBoolean(column, row) ? 1 : 0;
+        break;
+      case INT_TYPE:
+        key = table.getInt(column, row);
+        break;
+      case LONG_TYPE:
+        key = table.getLong(column, row);
+        break;
+      case FLOAT_TYPE:
+        key = normalize(table.getFloat(column, row));
+        break;
+      case DOUBLE_TYPE:
+        key = normalize(table.getDouble(column, row));
+        break;
+      case DATETIME_TYPE:
+        key = table.getDateTime(column, row).getMillis();
+        break;
+      case STRING_TYPE:
+        key = normalize(table.getString(column, row));
+        break;
+      default:
+        throw new IllegalStateException("Invalid type " + types[0]);
+    }
+    if (ascending[0]) {
+      return key;
+    }
+    return ~key;
+  }
+
+  /**
+   * @param table a table.
+   * @return the normalized key of the first sort column of every row of the table.
+   */
+  long[] normalizedKeys(final ReadableTable table) {
+    final long[] keys = new long[table.numTuples()];
+    for (int row = 0; row < keys.length; ++row) {
+      keys[row] = normalizedKey(table, row);
+    }
+    return keys;
+  }
+
+  /**
+   * Compare two rows, which may be in different tables.
+   *
+   * @param table1 the table of the first row.
+   * @param key1 the normalized key of the first row.
+   * @param row1 the first row.
+   * @param table2 the table of the second row.
+   * @param key2 the normalized key of the second row.
+   * @param row2 the second row.
+   * @return a negative integer, zero, or a positive integer as the first row sorts before, with, or after the second.
+   */
+  int compare(final ReadableTable table1, final long key1, final int row1, final ReadableTable table2,
+      final long key2, final int row2) {
+    if (key1 != key2) {
+      return Long.compare(key1, key2);
+    }
+    for (int i = firstTieColumn; i < sortColumns.length; ++i) {
+      final int compared = TupleUtils.cellCompare(table1, sortColumns[i], row1, table2, sortColumns[i], row2);
+      if (compared != 0) {
+        if (ascending[i]) {
+          return compared;
+        }
+        return -compared;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Sort the rows of a table. Rows that compare equal keep their order.
+   *
+   * @param table the table.
+   * @param keys the normalized keys of the rows of the table, as returned by {@link #normalizedKeys(ReadableTable)}.
+   * @return the rows of the table, in sorted order.
+   */
+  int[] sort(final ReadableTable table, final long[] keys) {
+    final int numTuples = table.numTuples();
+    final ColumnKeys[] tieKeys = new ColumnKeys[sortColumns.length - firstTieColumn];
+    for (int i = 0; i < tieKeys.length; ++i) {
+      tieKeys[i] = ColumnKeys.of(table, sortColumns[firstTieColumn + i], types[firstTieColumn + i],
+          ascending[firstTieColumn + i]);
+    }
+    final int[] rows = new int[numTuples];
+    for (int row = 0; row < numTuples; ++row) {
+      rows[row] = row;
+    }
+    new IndexSort(keys, tieKeys).mergeSort(rows.clone(), rows, 0, numTuples);
+    return rows;
+  }
+
+  /**
+   * @param value a float.
+   * @return a long whose signed order is the order of {@link Float#compare}.
+   */
+  private static long normalize(final float value) {
+    final int bits = Float.floatToIntBits(value);
+    return bits ^ ((bits >> (Integer.SIZE - 1)) & Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param value a double.
+   * @return a long whose signed order is the order of {@link Double#compare}.
+   */
+  private static long normalize(final double value) {
+    final long bits = Double.doubleToLongBits(value);
+    return bits ^ ((bits >> (Long.SIZE - 1)) & Long.MAX_VALUE);
+  }
+
+  /**
+   * @param value a string.
+   * @return a long holding the first characters of the string, whose signed order is consistent with
+   *         {@link String#compareTo}.
+   */
+  private static long normalize(final String value) {
+    long key = 0;
+    for (int i = 0; i < STRING_KEY_CHARS; ++i) {
+      key <<= Character.SIZE;
+      if (i < value.length()) {
+        key |= value.charAt(i);
+      }
+    }
+    return key ^ Long.MIN_VALUE;
+  }
+
+  /**
+   * A merge sort of row indices on their normalized keys, and then on the values of the remaining sort columns.
+   */
+  private static final class IndexSort {
+    /** The normalized keys, indexed by row. */
+    private final long[] keys;
+    /** The values of the sort columns that break ties of the normalized keys. */
+    private final ColumnKeys[] tieKeys;
+
+    /**
+     * @param keys the normalized keys, indexed by row.
+     * @param tieKeys the values of the sort columns that break ties of the normalized keys.
+     */
+    IndexSort(final long[] keys, final ColumnKeys[] tieKeys) {
+      this.keys = keys;
+      this.tieKeys = tieKeys;
+    }
+
+    /**
+     * @param row1 a row.
+     * @param row2 another row.
+     * @return a negative integer, zero, or a positive integer as the first row sorts before, with, or after the second.
+     */
+    private int compare(final int row1, final int row2) {
+      final long key1 = keys[row1];
+      final long key2 = keys[row2];
+      if (key1 != key2) {
+        return key1 < key2 ? -1 : 1;
+      }
+      for (ColumnKeys column : tieKeys) {
+        final int compared = column.compare(row1, row2);
+        if (compared != 0) {
+          return compared;
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * Sort <code>dest[low, high)</code>, using <code>src[low, high)</code>, which holds the same rows, as scratch space.
+     *
+     * @param src a copy of the rows to sort.
+     * @param dest the rows to sort.
+     * @param low the first index to sort.
+     * @param high one past the last index to sort.
+     */
+    private void mergeSort(final int[] src, final int[] dest, final int low, final int high) {
+      final int length = high - low;
+      if (length < INSERTION_SORT_THRESHOLD) {
+        for (int i = low + 1; i < high; ++i) {
+          final int row = dest[i];
+          int j = i;
+          for (; j > low && compare(dest[j - 1], row) > 0; --j) {
+            dest[j] = dest[j - 1];
+          }
+          dest[j] = row;
+        }
+        return;
+      }
+
+      final int mid = (low + high) >>> 1;
+      mergeSort(dest, src, low, mid);
+      mergeSort(dest, src, mid, high);
+
+      /* The two halves are already in order. */
+      if (compare(src[mid - 1], src[mid]) <= 0) {
+        System.arraycopy(src, low, dest, low, length);
+        return;
+      }
+
+      for (int i = low, p = low, q = mid; i < high; ++i) {
+        if (q >= high || p < mid && compare(src[p], src[q]) <= 0) {
+          dest[i] = src[p++];
+        } else {
+          dest[i] = src[q++];
+        }
+      }
+    }
+  }
+
+  /**
+   * The values of one sort column, copied out of a table into a primitive array.
+   */
+  private abstract static class ColumnKeys {
+    /** 1 if the column is sorted ascending, else -1. */
+    private final int direction;
+
+    /**
+     * @param ascending true if the column is sorted ascending.
+     */
+    ColumnKeys(final boolean ascending) {
+      if (ascending) {
+        direction = 1;
+      } else {
+        direction = -1;
+      }
+    }
+
+    /**
+     * @param row1 a row.
+     * @param row2 another row.
+     * @return a negative integer, zero, or a positive integer as the first row sorts before, with, or after the second.
+     */
+    final int compare(final int row1, final int row2) {
+      return direction * compareValues(row1, row2);
+    }
+
+    /**
+     * @param row1 a row.
+     * @param row2 another row.
+     * @return the ascending comparison of the values of the two rows.
+     */
+    abstract int compareValues(int row1, int row2);
+
+    /**
+     * @param table the table.
+     * @param column the column.
+     * @param type the type of the column.
+     * @param ascending true if the column is sorted ascending.
+     * @return the values of the column.
+     */
+    static ColumnKeys of(final ReadableTable table, final int column, final Type type, final boolean ascending) {
+      final int numTuples = table.numTuples();
+      switch (type) {
+        case BOOLEAN_TYPE:
+        case INT_TYPE:
+        case LONG_TYPE:
+        case DATETIME_TYPE: {
+          final long[] values = new long[numTuples];
+          for (int row = 0; row < numTuples; ++row) {
+            switch (type) {
+              case BOOLEAN_TYPE:
+                values[row] = table.getBoolean(column, row) ? 1 : 0;
+                break;
+              case INT_TYPE:
+                values[row] = table.getInt(column, row);
+                break;
+              case LONG_TYPE:
+                values[row] = table.getLong(column, row);
+                break;
+              default:
+                values[row] = table.getDateTime(column, row).getMillis();
+                break;
+            }
+          }
+          return new LongKeys(values, ascending);
+        }
+        case FLOAT_TYPE:
+        case DOUBLE_TYPE: {
+          /* Widening a float to a double preserves the order of Float.compare. */
+          final double[] values = new double[numTuples];
+          for (int row = 0; row < numTuples; ++row) {
+            if (type == Type.FLOAT_TYPE) {
+              values[row] = table.getFloat(column, row);
+            } else {
+              values[row] = table.getDouble(column, row);
+            }
+          }
+          return new DoubleKeys(values, ascending);
+        }
+        case STRING_TYPE: {
+          final String[] values = new String[numTuples];
+          for (int row = 0; row < numTuples; ++row) {
+            values[row] = table.getString(column, row);
+          }
+          return new StringKeys(values, ascending);
+        }
+      }
+      throw new IllegalStateException("Invalid type " + type);
+    }
+  }
+
+  /**
+   * The values of a BOOLEAN, INT, LONG or DATETIME sort column.
+   */
+  private static final class LongKeys extends ColumnKeys {
+    /** The values, indexed by row. */
+    private final long[] values;
+
+    /**
+     * @param values the values, indexed by row.
+     * @param ascending true if the column is sorted ascending.
+     */
+    LongKeys(final long[] values, final boolean ascending) {
+      super(ascending);
+      this.values = values;
+    }
+
+    @Override
+    int compareValues(final int row1, final int row2) {
+      return Long.compare(values[row1], values[row2]);
+    }
+  }
+
+  /**
+   * The values of a FLOAT or DOUBLE sort column.
+   */
+  private static final class DoubleKeys extends ColumnKeys {
+    /** The values, indexed by row. */
+    private final double[] values;
+
+    /**
+     * @param values the values, indexed by row.
+     * @param ascending true if the column is sorted ascending.
+     */
+    DoubleKeys(final double[] values, final boolean ascending) {
+      super(ascending);
+      this.values = values;
+    }
+
+    @Override
+    int compareValues(final int row1, final int row2) {
+      return Double.compare(values[row1], values[row2]);
+    }
+  }
+
+  /**
+   * The values of a STRING sort column.
+   */
+  private static final class StringKeys extends ColumnKeys {
+    /** The values, indexed by row. */
+    private final String[] values;
+
+    /**
+     * @param values the values, indexed by row.
+     * @param ascending true if the column is sorted ascending.
+     */
+    StringKeys(final String[] values, final boolean ascending) {
+      super(ascending);
+      this.values = values;
+    }
+
+    @Override
+    int compareValues(final int row1, final int row2) {
+      return values[row1].compareTo(values[row2]);
+    }
+  }
+}
@@ -82,7 +82,7 @@ public class SeaFlowFileScan extends LeafOperator {
 
   @Override
   protected final TupleBatch fetchNextReady() throws DbException {
-    while ((lineNumber < numRows) && (buffer.numTuples() < TupleBatch.BATCH_SIZE)) {
+    while ((lineNumber < numRows) && (buffer.numTuples() < buffer.getBatchSize())) {
       try {
         /*
          * Every line but the last, including the header, is terminated with a 32-bit unsigned int with the value 10. We
@@ -115,7 +115,7 @@ public class SeaFlowFileScan extends LeafOperator {
 
   @Override
   protected final void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
-    buffer = new TupleBatchBuffer(getSchema());
+    buffer = new TupleBatchBuffer(getSchema(), getBatchTargetBytes());
 
     try {
       input = new LittleEndianDataInputStream(new BufferedInputStream(source.getInputStream()));
@@ -9,6 +9,8 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.ImmutableMap;
 
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
@@ -30,9 +32,15 @@ public final class SimpleAppender extends StreamingState {
    * */
   private transient List<TupleBatch> tuples;
 
+  /**
+   * copies of the tuples, kept off the heap, if the subquery asked for it. In that case {@link #tuples} is not used.
+   * */
+  private transient MutableTupleBuffer offHeapTuples;
+
   @Override
   public void cleanup() {
     tuples = null;
+    offHeapTuples = null;
   }
 
   @Override
@@ -42,24 +50,43 @@ public final class SimpleAppender extends StreamingState {
 
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) {
-    tuples = new ArrayList<TupleBatch>();
+    if (isOffHeapState(execEnvVars)) {
+      offHeapTuples = new MutableTupleBuffer(getSchema(), true);
+    } else {
+      tuples = new ArrayList<TupleBatch>();
+    }
   }
 
   @Override
   public TupleBatch update(final TupleBatch tb) {
     if (!tb.isEOI()) {
-      tuples.add(tb);
+      if (offHeapTuples != null) {
+        List<? extends Column<?>> columns = tb.getDataColumns();
+        for (int row = 0; row < tb.numTuples(); ++row) {
+          for (int column = 0; column < columns.size(); ++column) {
+            offHeapTuples.put(column, columns.get(column), row);
+          }
+        }
+      } else {
+        tuples.add(tb);
+      }
     }
     return tb;
   }
 
   @Override
   public List<TupleBatch> exportState() {
+    if (offHeapTuples != null) {
+      return offHeapTuples.getAll();
+    }
     return tuples;
   }
 
   @Override
   public int numTuples() {
+    if (offHeapTuples != null) {
+      return offHeapTuples.numTuples();
+    }
     if (tuples == null) {
       return 0;
     }
@@ -70,6 +97,31 @@ public final class SimpleAppender extends StreamingState {
     return sum;
   }
 
+  @Override
+  public long getHeapBytes() {
+    if (offHeapTuples != null) {
+      return offHeapTuples.getHeapBytes();
+    }
+    if (tuples == null) {
+      return 0;
+    }
+    long sum = 0;
+    for (TupleBatch tb : tuples) {
+      for (Column<?> column : tb.getDataColumns()) {
+        sum += MutableTupleBuffer.estimateHeapBytes(column.getType(), column.size());
+      }
+    }
+    return sum;
+  }
+
+  @Override
+  public long getOffHeapBytes() {
+    if (offHeapTuples != null) {
+      return offHeapTuples.getOffHeapBytes();
+    }
+    return 0;
+  }
+
   @Override
   public StreamingState newInstanceFromMyself() {
     return new SimpleAppender();
@@ -5,7 +5,10 @@ import java.util.List;
 
 import com.google.common.collect.ImmutableMap;
 
+import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.parallel.LocalFragment;
+import edu.washington.escience.myria.parallel.LocalFragmentResourceManager;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
@@ -73,4 +76,38 @@ public abstract class StreamingState implements Serializable {
    * @return a new instance of StreamingState with all the constructor arguments copied.
    * */
   public abstract StreamingState newInstanceFromMyself();
+
+  /**
+   * @return an estimate of the number of bytes the state takes on the Java heap.
+   */
+  public long getHeapBytes() {
+    return 0;
+  }
+
+  /**
+   * @return the number of bytes the state takes outside the Java heap.
+   */
+  public long getOffHeapBytes() {
+    return 0;
+  }
+
+  /**
+   * @param execEnvVars environment variables, as passed to {@link #init(ImmutableMap)}.
+   * @return whether the subquery asked for long-lived state to be stored off the heap.
+   */
+  protected static boolean isOffHeapState(final ImmutableMap<String, Object> execEnvVars) {
+    if (execEnvVars == null) {
+      return false;
+    }
+    LocalFragmentResourceManager lfrm =
+        (LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
+    if (lfrm == null) {
+      return false;
+    }
+    LocalFragment fragment = lfrm.getFragment();
+    if (fragment == null) {
+      return false;
+    }
+    return fragment.getLocalSubQuery().isOffHeapState();
+  }
 }
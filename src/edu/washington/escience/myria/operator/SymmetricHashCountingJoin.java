@@ -1,24 +1,19 @@
 package edu.washington.escience.myria.operator;
 
 import java.util.Arrays;
-import java.util.List;
 import java.util.Objects;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.gs.collections.api.block.procedure.primitive.IntProcedure;
 import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
-import edu.washington.escience.myria.column.Column;
-import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.JoinHashTable;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
-import edu.washington.escience.myria.storage.TupleUtils;
 import edu.washington.escience.myria.util.HashUtils;
 
 /**
@@ -33,14 +28,10 @@ public final class SymmetricHashCountingJoin extends BinaryOperator {
   private final int[] leftCompareIndx;
   /** The column indices for comparing of right child. */
   private final int[] rightCompareIndx;
-  /** A hash table for tuples from left child. {Hashcode -> List of tuple indices with the same hash code} */
-  private transient IntObjectHashMap<IntArrayList> leftHashTableIndices;
-  /** A hash table for tuples from right child. {Hashcode -> List of tuple indices with the same hash code} */
-  private transient IntObjectHashMap<IntArrayList> rightHashTableIndices;
-  /** The buffer holding the valid tuples from left. */
-  private transient MutableTupleBuffer leftHashTable;
-  /** The buffer holding the valid tuples from right. */
-  private transient MutableTupleBuffer rightHashTable;
+  /** A hash table for the keys of the tuples from left child. */
+  private transient JoinHashTable leftHashTable;
+  /** A hash table for the keys of the tuples from right child. */
+  private transient JoinHashTable rightHashTable;
   /** How many times each key occurred from left. */
   private transient IntArrayList occuredTimesOnLeft;
   /** How many times each key occurred from right. */
@@ -51,61 +42,11 @@ public final class SymmetricHashCountingJoin extends BinaryOperator {
   private transient TupleBatchBuffer ansTBB;
   /** The name of the single column output from this operator. */
   private final String columnName;
-  /**
-   * Traverse through the list of tuples.
-   */
-  private transient CountingJoinProcedure doCountingJoin;
-
   /**
    * Whether this operator has returned answer or not.
    */
   private boolean hasReturnedAnswer = false;
 
-  /**
-   * Traverse through the list of tuples with the same hash code.
-   */
-  private final class CountingJoinProcedure implements IntProcedure {
-
-    /** serial version id. */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Hash table.
-     */
-    private MutableTupleBuffer joinAgainstHashTable;
-
-    /**
-     * times of occure of a key.
-     */
-    private IntArrayList occuredTimesOnJoinAgainstChild;
-    /**
-     * Join columns in the input.
-     */
-    private int[] inputCmpColumns;
-
-    /**
-     * Join columns in the other table.
-     */
-    private int[] otherCmpColumns;
-
-    /**
-     * row index of the tuple.
-     */
-    private int row;
-
-    /**
-     * input TupleBatch.
-     */
-    private TupleBatch inputTB;
-
-    @Override
-    public void value(final int index) {
-      if (TupleUtils.tupleEquals(inputTB, inputCmpColumns, row, joinAgainstHashTable, otherCmpColumns, index)) {
-        ans += occuredTimesOnJoinAgainstChild.get(index);
-      }
-    }
-  };
-
   /**
    * Construct a {@link SymmetricHashCountingJoin}.
    * 
@@ -176,8 +117,6 @@ public final class SymmetricHashCountingJoin extends BinaryOperator {
     rightHashTable = null;
     occuredTimesOnLeft = null;
     occuredTimesOnRight = null;
-    leftHashTableIndices = null;
-    rightHashTableIndices = null;
     ansTBB = null;
     ans = 0;
   }
@@ -286,15 +225,12 @@ public final class SymmetricHashCountingJoin extends BinaryOperator {
 
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
-    leftHashTableIndices = new IntObjectHashMap<>();
-    rightHashTableIndices = new IntObjectHashMap<>();
     occuredTimesOnLeft = new IntArrayList();
     occuredTimesOnRight = new IntArrayList();
-    leftHashTable = new MutableTupleBuffer(getLeft().getSchema().getSubSchema(leftCompareIndx));
-    rightHashTable = new MutableTupleBuffer(getRight().getSchema().getSubSchema(rightCompareIndx));
+    leftHashTable = new JoinHashTable(getLeft().getSchema(), leftCompareIndx, false);
+    rightHashTable = new JoinHashTable(getRight().getSchema(), rightCompareIndx, false);
     ans = 0;
     ansTBB = new TupleBatchBuffer(getSchema());
-    doCountingJoin = new CountingJoinProcedure();
   }
 
   /**
@@ -306,63 +242,54 @@ public final class SymmetricHashCountingJoin extends BinaryOperator {
     final Operator left = getLeft();
     final Operator right = getRight();
 
-    MutableTupleBuffer hashTable1Local = null;
-    IntObjectHashMap<IntArrayList> hashTable1IndicesLocal = null;
-    IntObjectHashMap<IntArrayList> hashTable2IndicesLocal = null;
+    JoinHashTable hashTable1Local = null;
+    JoinHashTable hashTable2Local = null;
     IntArrayList ownOccuredTimes = null;
+    IntArrayList otherOccuredTimes = null;
+    int[] inputCmpColumns = null;
     if (fromLeft) {
       hashTable1Local = leftHashTable;
-      doCountingJoin.joinAgainstHashTable = rightHashTable;
-      hashTable1IndicesLocal = leftHashTableIndices;
-      hashTable2IndicesLocal = rightHashTableIndices;
-      doCountingJoin.inputCmpColumns = leftCompareIndx;
-      doCountingJoin.otherCmpColumns = rightCompareIndx;
-      doCountingJoin.occuredTimesOnJoinAgainstChild = occuredTimesOnRight;
+      hashTable2Local = rightHashTable;
+      inputCmpColumns = leftCompareIndx;
       ownOccuredTimes = occuredTimesOnLeft;
+      otherOccuredTimes = occuredTimesOnRight;
     } else {
       hashTable1Local = rightHashTable;
-      doCountingJoin.joinAgainstHashTable = leftHashTable;
-      hashTable1IndicesLocal = rightHashTableIndices;
-      hashTable2IndicesLocal = leftHashTableIndices;
-      doCountingJoin.inputCmpColumns = rightCompareIndx;
-      doCountingJoin.otherCmpColumns = leftCompareIndx;
-      doCountingJoin.occuredTimesOnJoinAgainstChild = occuredTimesOnLeft;
+      hashTable2Local = leftHashTable;
+      inputCmpColumns = rightCompareIndx;
       ownOccuredTimes = occuredTimesOnRight;
+      otherOccuredTimes = occuredTimesOnLeft;
     }
-    doCountingJoin.inputTB = tb;
 
     if (left.eos() && !right.eos()) {
       /*
        * delete right child's hash table if the left child is EOS, since there will be no incoming tuples from right as
        * it will never be probed again.
        */
-      rightHashTableIndices = null;
       rightHashTable = null;
     } else if (right.eos() && !left.eos()) {
       /*
        * delete left child's hash table if the right child is EOS, since there will be no incoming tuples from left as
        * it will never be probed again.
        */
-      leftHashTableIndices = null;
       leftHashTable = null;
     }
 
+    final int[] hashCodes = HashUtils.hashSubRows(tb, inputCmpColumns);
     for (int row = 0; row < tb.numTuples(); ++row) {
 
       /*
        * update number of count of probing the other child's hash table.
        */
-      final int cntHashCode = HashUtils.hashSubRow(tb, doCountingJoin.inputCmpColumns, row);
-      IntArrayList tuplesWithHashCode = hashTable2IndicesLocal.get(cntHashCode);
-      if (tuplesWithHashCode != null) {
-        doCountingJoin.row = row;
-        tuplesWithHashCode.forEach(doCountingJoin);
+      final int cntHashCode = hashCodes[row];
+      final int index = hashTable2Local.find(tb, inputCmpColumns, row, cntHashCode);
+      if (index != -1) {
+        ans += otherOccuredTimes.get(index);
       }
 
       if (hashTable1Local != null) {
         // only build hash table on two sides if none of the children is EOS
-        updateHashTableAndOccureTimes(tb, row, cntHashCode, hashTable1Local, hashTable1IndicesLocal,
-            doCountingJoin.inputCmpColumns, ownOccuredTimes);
+        updateHashTableAndOccureTimes(tb, row, cntHashCode, hashTable1Local, inputCmpColumns, ownOccuredTimes);
       }
 
     }
@@ -392,46 +319,19 @@ public final class SymmetricHashCountingJoin extends BinaryOperator {
    * @param row the row number of the to be processed tuple in the source TupleBatch
    * @param hashCode the hashCode of the to be processed tuple
    * @param hashTable the hash table to be updated
-   * @param hashTableIndices the hash indices to be updated
    * @param compareColumns compareColumns of input tuple
    * @param occuredTimes occuredTimes array to be updated
    */
   private void updateHashTableAndOccureTimes(final TupleBatch tb, final int row, final int hashCode,
-      final MutableTupleBuffer hashTable, final IntObjectHashMap<IntArrayList> hashTableIndices,
-      final int[] compareColumns, final IntArrayList occuredTimes) {
-
-    /* get the index of the tuple's hash code corresponding to */
-    final int nextIndex = hashTable.numTuples();
-    IntArrayList tupleIndicesList = hashTableIndices.get(hashCode);
-
-    /* create one is there is no such a index yet (there is no tuple with the same hash code has been processed ) */
-    if (tupleIndicesList == null) {
-      tupleIndicesList = new IntArrayList(1);
-      hashTableIndices.put(hashCode, tupleIndicesList);
-    }
-
-    Preconditions.checkArgument(hashTable.numColumns() == compareColumns.length);
-    List<? extends Column<?>> inputColumns = tb.getDataColumns();
-
+      final JoinHashTable hashTable, final int[] compareColumns, final IntArrayList occuredTimes) {
     /* find whether this tuple's comparing key has occured before. If it is, only update occurred times */
-    boolean found = false;
-    for (int i = 0; i < tupleIndicesList.size(); ++i) {
-      int index = tupleIndicesList.get(i);
-      if (TupleUtils.tupleEquals(tb, compareColumns, row, hashTable, index)) {
-        occuredTimes.set(index, occuredTimes.get(index) + 1);
-        found = true;
-        break;
-      }
-    }
-
-    if (!found) {
-      tupleIndicesList.add(nextIndex);
-      for (int column = 0; column < hashTable.numColumns(); ++column) {
-        hashTable.put(column, inputColumns.get(compareColumns[column]), row);
-      }
+    final int index = hashTable.find(tb, compareColumns, row, hashCode);
+    if (index != -1) {
+      occuredTimes.set(index, occuredTimes.get(index) + 1);
+    } else {
+      hashTable.add(tb, row, hashCode);
       occuredTimes.add(1);
     }
-
   }
 
 }
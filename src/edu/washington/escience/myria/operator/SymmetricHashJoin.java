@@ -7,9 +7,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.gs.collections.api.block.procedure.primitive.IntProcedure;
-import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
@@ -17,11 +14,11 @@ import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.parallel.QueryExecutionMode;
+import edu.washington.escience.myria.storage.JoinHashTable;
 import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
-import edu.washington.escience.myria.storage.TupleUtils;
 import edu.washington.escience.myria.util.HashUtils;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
 
@@ -47,22 +44,13 @@ public final class SymmetricHashJoin extends BinaryOperator {
    */
   private final int[] rightCompareIndx;
   /**
-   * A hash table for tuples from child 1. {Hashcode -> List of tuple indices with the same hash code}
+   * A hash table for tuples from child 1.
    */
-  private transient IntObjectHashMap<IntArrayList> leftHashTableIndices;
+  private transient JoinHashTable hashTable1;
   /**
-   * A hash table for tuples from child 2. {Hashcode -> List of tuple indices with the same hash code}
+   * A hash table for tuples from child 2.
    */
-  private transient IntObjectHashMap<IntArrayList> rightHashTableIndices;
-
-  /**
-   * The buffer holding the valid tuples from left.
-   */
-  private transient MutableTupleBuffer hashTable1;
-  /**
-   * The buffer holding the valid tuples from right.
-   */
-  private transient MutableTupleBuffer hashTable2;
+  private transient JoinHashTable hashTable2;
   /**
    * The buffer holding the results.
    */
@@ -72,103 +60,6 @@ public final class SymmetricHashJoin extends BinaryOperator {
   /** Which columns in the right child are to be output. */
   private final int[] rightAnswerColumns;
 
-  /**
-   * Traverse through the list of tuples with the same hash code.
-   * */
-  private final class JoinProcedure implements IntProcedure {
-
-    /** serialization id. */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Hash table.
-     * */
-    private MutableTupleBuffer joinAgainstHashTable;
-
-    /**
-     * 
-     * */
-    private int[] inputCmpColumns;
-
-    /**
-     * the columns to compare against.
-     * */
-    private int[] joinAgainstCmpColumns;
-    /**
-     * row index of the tuple.
-     * */
-    private int row;
-
-    /**
-     * input TupleBatch.
-     * */
-    private TupleBatch inputTB;
-    /**
-     * if the tuple which is comparing against the list of tuples with the same hash code is from left child.
-     * */
-    private boolean fromLeft;
-
-    @Override
-    public void value(final int index) {
-      if (TupleUtils.tupleEquals(inputTB, inputCmpColumns, row, joinAgainstHashTable, joinAgainstCmpColumns, index)) {
-
-        addToAns(inputTB, row, joinAgainstHashTable, index, fromLeft);
-      }
-    }
-  };
-
-  /**
-   * Traverse through the list of tuples with the same hash code.
-   * */
-  private final class ReplaceProcedure implements IntProcedure {
-
-    /** serialization id. */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Hash table.
-     * */
-    private MutableTupleBuffer hashTable;
-
-    /**
-     * the columns to compare against.
-     * */
-    private int[] keyColumns;
-    /**
-     * row index of the tuple.
-     * */
-    private int row;
-
-    /**
-     * input TupleBatch.
-     * */
-    private TupleBatch inputTB;
-
-    /** if found a replacement. */
-    private boolean replaced;
-
-    @Override
-    public void value(final int index) {
-      if (TupleUtils.tupleEquals(inputTB, keyColumns, row, hashTable, keyColumns, index)) {
-        replaced = true;
-        List<? extends Column<?>> columns = inputTB.getDataColumns();
-        for (int j = 0; j < inputTB.numColumns(); ++j) {
-          hashTable.replace(j, index, columns.get(j), row);
-        }
-      }
-    }
-  };
-
-  /**
-   * Traverse through the list of tuples.
-   * */
-  private transient JoinProcedure doJoin;
-
-  /**
-   * Traverse through the list of tuples and replace old values.
-   * */
-  private transient ReplaceProcedure doReplace;
-
   /** Whether the last child polled was the left child. */
   private boolean pollLeft = false;
 
@@ -591,18 +482,13 @@ public final class SymmetricHashJoin extends BinaryOperator {
   public void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     final Operator left = getLeft();
     final Operator right = getRight();
-    leftHashTableIndices = new IntObjectHashMap<IntArrayList>();
-    rightHashTableIndices = new IntObjectHashMap<IntArrayList>();
-
-    hashTable1 = new MutableTupleBuffer(left.getSchema());
-    hashTable2 = new MutableTupleBuffer(right.getSchema());
+    hashTable1 = new JoinHashTable(left.getSchema(), leftCompareIndx, true);
+    hashTable2 = new JoinHashTable(right.getSchema(), rightCompareIndx, true);
 
     ans = new TupleBatchBuffer(getSchema());
 
     nonBlocking =
         (QueryExecutionMode) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_EXECUTION_MODE) == QueryExecutionMode.NON_BLOCKING;
-    doJoin = new JoinProcedure();
-    doReplace = new ReplaceProcedure();
   }
 
   /**
@@ -618,67 +504,49 @@ public final class SymmetricHashJoin extends BinaryOperator {
     final Operator left = getLeft();
     final Operator right = getRight();
 
-    if (left.eos() && rightHashTableIndices != null) {
+    if (left.eos() && hashTable2 != null) {
       /*
        * delete right child's hash table if the left child is EOS, since there will be no incoming tuples from right as
        * it will never be probed again.
        */
-      rightHashTableIndices = null;
       hashTable2 = null;
     }
-    if (right.eos() && leftHashTableIndices != null) {
+    if (right.eos() && hashTable1 != null) {
       /*
        * delete left child's hash table if the right child is EOS, since there will be no incoming tuples from left as
        * it will never be probed again.
        */
-      leftHashTableIndices = null;
       hashTable1 = null;
     }
 
     final boolean useSetSemantics = fromLeft && setSemanticsLeft || !fromLeft && setSemanticsRight;
-    MutableTupleBuffer hashTable1Local = null;
-    IntObjectHashMap<IntArrayList> hashTable1IndicesLocal = null;
-    IntObjectHashMap<IntArrayList> hashTable2IndicesLocal = null;
+    JoinHashTable hashTable1Local = null;
+    JoinHashTable hashTable2Local = null;
+    int[] inputCmpColumns = null;
     if (fromLeft) {
       hashTable1Local = hashTable1;
-      doJoin.joinAgainstHashTable = hashTable2;
-      hashTable1IndicesLocal = leftHashTableIndices;
-      hashTable2IndicesLocal = rightHashTableIndices;
-      doJoin.inputCmpColumns = leftCompareIndx;
-      doJoin.joinAgainstCmpColumns = rightCompareIndx;
-      if (useSetSemantics) {
-        doReplace.hashTable = hashTable1;
-        doReplace.keyColumns = leftCompareIndx;
-      }
+      hashTable2Local = hashTable2;
+      inputCmpColumns = leftCompareIndx;
     } else {
       hashTable1Local = hashTable2;
-      doJoin.joinAgainstHashTable = hashTable1;
-      hashTable1IndicesLocal = rightHashTableIndices;
-      hashTable2IndicesLocal = leftHashTableIndices;
-      doJoin.inputCmpColumns = rightCompareIndx;
-      doJoin.joinAgainstCmpColumns = leftCompareIndx;
-      if (useSetSemantics) {
-        doReplace.hashTable = hashTable2;
-        doReplace.keyColumns = rightCompareIndx;
-      }
-    }
-    doJoin.fromLeft = fromLeft;
-    doJoin.inputTB = tb;
-    if (useSetSemantics) {
-      doReplace.inputTB = tb;
+      hashTable2Local = hashTable1;
+      inputCmpColumns = rightCompareIndx;
     }
 
+    final int[] hashCodes = HashUtils.hashSubRows(tb, inputCmpColumns);
     for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, doJoin.inputCmpColumns, row);
-      IntArrayList tuplesWithHashCode = hashTable2IndicesLocal.get(cntHashCode);
-      if (tuplesWithHashCode != null) {
-        doJoin.row = row;
-        tuplesWithHashCode.forEach(doJoin);
+      final int cntHashCode = hashCodes[row];
+      if (hashTable2Local != null) {
+        final MutableTupleBuffer joinAgainstTuples = hashTable2Local.getTuples();
+        for (int index = hashTable2Local.find(tb, inputCmpColumns, row, cntHashCode); index != -1; index =
+            hashTable2Local.next(index)) {
+          addToAns(tb, row, joinAgainstTuples, index, fromLeft);
+        }
       }
 
       if (hashTable1Local != null) {
         // only build hash table on two sides if none of the children is EOS
-        addToHashTable(tb, row, hashTable1Local, hashTable1IndicesLocal, cntHashCode, useSetSemantics);
+        addToHashTable(tb, row, hashTable1Local, inputCmpColumns, cntHashCode, useSetSemantics);
       }
     }
   }
@@ -687,33 +555,21 @@ public final class SymmetricHashJoin extends BinaryOperator {
    * @param tb the source TupleBatch
    * @param row the row number to get added to hash table
    * @param hashTable the target hash table
-   * @param hashTable1IndicesLocal hash table 1 indices local
+   * @param keyColumns the key columns of the tb.
    * @param hashCode the hashCode of the tb.
    * @param useSetSemantics if need to update the hash table using set semantics.
    * */
-  private void addToHashTable(final TupleBatch tb, final int row, final MutableTupleBuffer hashTable,
-      final IntObjectHashMap<IntArrayList> hashTable1IndicesLocal, final int hashCode, final boolean useSetSemantics) {
-
-    final int nextIndex = hashTable.numTuples();
-    IntArrayList tupleIndicesList = hashTable1IndicesLocal.get(hashCode);
-    if (tupleIndicesList == null) {
-      tupleIndicesList = new IntArrayList(1);
-      hashTable1IndicesLocal.put(hashCode, tupleIndicesList);
-    }
-
-    doReplace.replaced = false;
+  private void addToHashTable(final TupleBatch tb, final int row, final JoinHashTable hashTable,
+      final int[] keyColumns, final int hashCode, final boolean useSetSemantics) {
     if (useSetSemantics) {
-      doReplace.row = row;
-      tupleIndicesList.forEach(doReplace);
-    }
-    if (!doReplace.replaced) {
-      /* not using set semantics || using set semantics but found nothing to replace (i.e. new) */
-      tupleIndicesList.add(nextIndex);
-      List<? extends Column<?>> inputColumns = tb.getDataColumns();
-      for (int column = 0; column < tb.numColumns(); column++) {
-        hashTable.put(column, inputColumns.get(column), row);
+      final int index = hashTable.find(tb, keyColumns, row, hashCode);
+      if (index != -1) {
+        /* using set semantics and found an old tuple with the same key, replace it */
+        hashTable.replace(index, tb, row);
+        return;
       }
     }
+    hashTable.add(tb, row, hashCode);
   }
 
   /**
@@ -120,7 +120,7 @@ public class TipsyFileScan extends LeafOperator {
 
   @Override
   protected final void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
-    buffer = new TupleBatchBuffer(getSchema());
+    buffer = new TupleBatchBuffer(getSchema(), getBatchTargetBytes());
 
     try {
       iOrderInputStream = new FileInputStream(iOrderFileName);
@@ -189,7 +189,7 @@ public class TipsyFileScan extends LeafOperator {
    * @throws DbException if error reading from file.
    */
   private void processGasRecords() throws DbException {
-    while (ngas > 0 && (buffer.numTuples() < TupleBatch.BATCH_SIZE)) {
+    while (ngas > 0 && (buffer.numTuples() < buffer.getBatchSize())) {
       lineNumber++;
       try {
         int count = 0;
@@ -237,7 +237,7 @@ public class TipsyFileScan extends LeafOperator {
    * @throws DbException if error reading from file.
    */
   private void processDarkRecords() throws DbException {
-    while (ndark > 0 && (buffer.numTuples() < TupleBatch.BATCH_SIZE)) {
+    while (ndark > 0 && (buffer.numTuples() < buffer.getBatchSize())) {
       lineNumber++;
       try {
         int count = 0;
@@ -285,7 +285,7 @@ public class TipsyFileScan extends LeafOperator {
    * @throws DbException if error reading from file.
    */
   private void processStarRecords() throws DbException {
-    while (nstar > 0 && (buffer.numTuples() < TupleBatch.BATCH_SIZE)) {
+    while (nstar > 0 && (buffer.numTuples() < buffer.getBatchSize())) {
       lineNumber++;
       try {
         int count = 0;
@@ -0,0 +1,271 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.ReadableColumn;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleUtils;
+
+/**
+ * Keeps the first K tuples of its child in sort order, the same tuples as an {@link InMemoryOrderBy} followed by a
+ * {@link Limit} would return, without sorting the whole input.
+ *
+ * The candidates are stored in a {@link MutableTupleBuffer}, and a bounded max-heap of their row indices keeps the
+ * worst candidate on top. An incoming tuple is compared with the top and, if it sorts before it, replaces it. Replaced
+ * tuples are left in the buffer until it holds twice as many rows as the heap, at which point the buffer is compacted.
+ * Once the child is EOS, the candidates are sorted and returned.
+ *
+ * Tuples that compare equal keep their input order, so a tuple never displaces an earlier tuple that it ties with.
+ */
+public final class TopK extends UnaryOperator {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The buffer is never compacted while it holds fewer rows than this. */
+  private static final int MIN_COMPACT_TUPLES = TupleBatch.BATCH_SIZE;
+
+  /** Which columns to sort the tuples by. */
+  private final int[] sortColumns;
+  /** True for each column that should be sorted ascending. */
+  private final boolean[] ascending;
+  /** The number of tuples to keep. */
+  private final int k;
+
+  /** Orders the tuples. */
+  private transient RowSorter sorter;
+  /** The candidates, and the tuples they have replaced since the last compaction. */
+  private transient MutableTupleBuffer tuples;
+  /** The normalized keys of the rows of {@link #tuples}. */
+  private transient long[] keys;
+  /** A binary max-heap of the rows of {@link #tuples} that are candidates, with the worst candidate on top. */
+  private transient int[] heap;
+  /** The number of candidates in {@link #heap}. */
+  private transient int heapSize;
+  /** Buffers the result until it is returned. */
+  private transient TupleBatchBuffer ans;
+
+  /**
+   * @param child the source of the tuples.
+   * @param sortColumns the columns that should be ordered by.
+   * @param ascending true for each column that should be sorted ascending.
+   * @param k the number of tuples to keep.
+   */
+  public TopK(final Operator child, final int[] sortColumns, final boolean[] ascending, final int k) {
+    super(child);
+    Preconditions.checkArgument(k >= 0, "k must be non-negative");
+    this.sortColumns = sortColumns;
+    this.ascending = ascending;
+    this.k = k;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    sorter = new RowSorter(getSchema(), sortColumns, ascending);
+    tuples = new MutableTupleBuffer(getSchema());
+    keys = new long[Math.min(k, MIN_COMPACT_TUPLES) + 1];
+    /* Grown as needed, since K may be much larger than the input. */
+    heap = new int[Math.min(k, MIN_COMPACT_TUPLES)];
+    heapSize = 0;
+    ans = null;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator child = getChild();
+    if (ans == null) {
+      while (!child.eos()) {
+        final TupleBatch tb = child.nextReady();
+        if (tb == null) {
+          if (child.eos()) {
+            break;
+          }
+          return null;
+        }
+        if (k > 0) {
+          addTuples(tb);
+        }
+      }
+      sortCandidates();
+    }
+
+    final TupleBatch nexttb = ans.popFilled();
+    if (nexttb != null) {
+      return nexttb;
+    }
+    return ans.popAny();
+  }
+
+  /**
+   * Offer every tuple of a batch to the heap.
+   *
+   * @param tb the batch.
+   */
+  private void addTuples(final TupleBatch tb) {
+    final List<? extends Column<?>> columns = tb.getDataColumns();
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      final long key = sorter.normalizedKey(tb, row);
+      if (heapSize < k) {
+        if (heapSize == heap.length) {
+          heap = Arrays.copyOf(heap, (int) Math.min(2L * heap.length, k));
+        }
+        heap[heapSize++] = append(columns, row, key);
+        siftUp(heapSize - 1);
+        continue;
+      }
+      final int worst = heap[0];
+      if (sorter.compare(tb, key, row, tuples, keys[worst], worst) >= 0) {
+        continue;
+      }
+      heap[0] = append(columns, row, key);
+      siftDown(0);
+      if (tuples.numTuples() >= Math.max(2L * k, MIN_COMPACT_TUPLES)) {
+        compact();
+      }
+    }
+  }
+
+  /**
+   * @param columns the columns of a batch.
+   * @param row a row of the batch.
+   * @param key the normalized key of the row.
+   * @return the row of {@link #tuples} that the tuple was appended at.
+   */
+  private int append(final List<? extends Column<?>> columns, final int row, final long key) {
+    final int index = tuples.numTuples();
+    for (int column = 0; column < columns.size(); ++column) {
+      tuples.put(column, columns.get(column), row);
+    }
+    if (index == keys.length) {
+      keys = Arrays.copyOf(keys, keys.length * 2);
+    }
+    keys[index] = key;
+    return index;
+  }
+
+  /**
+   * Drop the tuples that are no longer candidates from the buffer. The candidates keep their relative order, so the
+   * heap stays valid once its row indices are renumbered.
+   */
+  private void compact() {
+    final int[] live = Arrays.copyOf(heap, heapSize);
+    Arrays.sort(live);
+    final MutableTupleBuffer compacted = new MutableTupleBuffer(getSchema());
+    final long[] compactedKeys = new long[keys.length];
+    for (int i = 0; i < live.length; ++i) {
+      final int row = live[i];
+      for (int column = 0; column < tuples.numColumns(); ++column) {
+        TupleUtils.copyValue(tuples, column, row, compacted, column);
+      }
+      compactedKeys[i] = keys[row];
+    }
+    for (int i = 0; i < heapSize; ++i) {
+      heap[i] = Arrays.binarySearch(live, heap[i]);
+    }
+    tuples = compacted;
+    keys = compactedKeys;
+  }
+
+  /**
+   * The child is EOS. Sort the candidates into {@link #ans}.
+   */
+  private void sortCandidates() {
+    compact();
+    final long[] liveKeys = Arrays.copyOf(keys, heapSize);
+    final int[] order = sorter.sort(tuples, liveKeys);
+    ans = new TupleBatchBuffer(getSchema());
+    for (int row : order) {
+      final ReadableColumn[] columns = tuples.getColumns(row);
+      final int index = tuples.getTupleIndexInContainingTB(row);
+      for (int column = 0; column < columns.length; ++column) {
+        ans.put(column, columns[column], index);
+      }
+    }
+    tuples = null;
+    keys = null;
+    heap = null;
+  }
+
+  /**
+   * @param row1 a row of {@link #tuples}.
+   * @param row2 another row of {@link #tuples}.
+   * @return true if the first row sorts after the second.
+   */
+  private boolean worse(final int row1, final int row2) {
+    final int compared = sorter.compare(tuples, keys[row1], row1, tuples, keys[row2], row2);
+    if (compared != 0) {
+      return compared > 0;
+    }
+    /* Later tuples sort after earlier ones that they tie with. */
+    return row1 > row2;
+  }
+
+  /**
+   * Restore the heap property above a heap index.
+   *
+   * @param index the heap index.
+   */
+  private void siftUp(final int index) {
+    int i = index;
+    final int row = heap[i];
+    while (i > 0) {
+      final int parent = (i - 1) / 2;
+      if (!worse(row, heap[parent])) {
+        break;
+      }
+      heap[i] = heap[parent];
+      i = parent;
+    }
+    heap[i] = row;
+  }
+
+  /**
+   * Restore the heap property below a heap index.
+   *
+   * @param index the heap index.
+   */
+  private void siftDown(final int index) {
+    int i = index;
+    final int row = heap[i];
+    while (true) {
+      final int left = 2 * i + 1;
+      if (left >= heapSize) {
+        break;
+      }
+      int child = left;
+      if (left + 1 < heapSize && worse(heap[left + 1], heap[left])) {
+        child = left + 1;
+      }
+      if (!worse(heap[child], row)) {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = row;
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    tuples = null;
+    keys = null;
+    heap = null;
+    ans = null;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    Operator child = getChild();
+    if (child == null) {
+      return null;
+    }
+    return child.getSchema();
+  }
+}
@@ -4,10 +4,12 @@ import java.util.Set;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
+import edu.washington.escience.myria.storage.ReadableColumn;
 
 /**
  * Utility functions for aggregation.
@@ -92,6 +94,142 @@ public final class AggUtils {
     return aggregators;
   }
 
+  /**
+   * The number of groups for which a {@link GroupedAggregator} allocates state at first.
+   */
+  private static final int MIN_GROUP_CAPACITY = 64;
+
+  /**
+   * @param capacity the number of groups the state arrays of a {@link GroupedAggregator} hold now.
+   * @param numGroups the number of groups the state arrays must hold.
+   * @return the number of groups the state arrays should be grown to hold, at least <code>numGroups</code>.
+   */
+  static int growCapacity(final int capacity, final int numGroups) {
+    return Math.max(numGroups, Math.max(2 * capacity, MIN_GROUP_CAPACITY));
+  }
+
+  /**
+   * Count the rows of each group.
+   * 
+   * @param groupIds the group of each row.
+   * @param numTuples the number of rows.
+   * @param count the number of rows of each group, which will be mutated.
+   */
+  static void countGroups(final int[] groupIds, final int numTuples, final long[] count) {
+    for (int i = 0; i < numTuples; ++i) {
+      count[groupIds[i]]++;
+    }
+  }
+
+  /**
+   * Allocate the aggregators of an operator that computes the specified phase of an aggregation. In the
+   * {@link AggregationPhase#PARTIAL} and {@link AggregationPhase#FINAL} phases, all aggregators are
+   * {@link GroupedAggregator}s.
+   * 
+   * @param factories The factories that will produce the aggregators.
+   * @param inputSchema The schema of the input tuples.
+   * @param phase which phase of the aggregation the operator computes.
+   * @param firstPartialColumn in the {@link AggregationPhase#FINAL} phase, the column of the input that holds the first
+   *          partial state of the first aggregator.
+   * @return the aggregators for this operator.
+   * @throws DbException if there is an error.
+   */
+  public static Aggregator[] allocateAggs(final AggregatorFactory[] factories, final Schema inputSchema,
+      final AggregationPhase phase, final int firstPartialColumn) throws DbException {
+    switch (phase) {
+      case PARTIAL:
+        return allocatePartialAggs(factories, inputSchema);
+      case FINAL:
+        return allocateFinalAggs(factories, inputSchema, firstPartialColumn);
+      default:
+        return allocateAggs(factories, inputSchema);
+    }
+  }
+
+  /**
+   * @param aggregator an aggregator allocated for the specified phase.
+   * @param phase which phase of the aggregation the operator computes.
+   * @return the schema of what the aggregator outputs: its partial states in the {@link AggregationPhase#PARTIAL}
+   *         phase, its results otherwise.
+   */
+  public static Schema getOutputSchema(final Aggregator aggregator, final AggregationPhase phase) {
+    if (phase == AggregationPhase.PARTIAL) {
+      return ((GroupedAggregator) aggregator).getPartialSchema();
+    }
+    return aggregator.getResultSchema();
+  }
+
+  /**
+   * Add partial counts or sums to those of their groups.
+   * 
+   * @param groupIds the group of each row.
+   * @param numTuples the number of rows.
+   * @param partial the partial count or sum of each row.
+   * @param total the count or sum of each group, which will be mutated.
+   */
+  static void mergeLongs(final int[] groupIds, final int numTuples, final ReadableColumn partial, final long[] total) {
+    for (int i = 0; i < numTuples; ++i) {
+      total[groupIds[i]] = LongMath.checkedAdd(total[groupIds[i]], partial.getLong(i));
+    }
+  }
+
+  /**
+   * Add partial sums to those of their groups.
+   * 
+   * @param groupIds the group of each row.
+   * @param numTuples the number of rows.
+   * @param partial the partial sum of each row.
+   * @param total the sum of each group, which will be mutated.
+   */
+  static void mergeDoubles(final int[] groupIds, final int numTuples, final ReadableColumn partial,
+      final double[] total) {
+    for (int i = 0; i < numTuples; ++i) {
+      total[groupIds[i]] += partial.getDouble(i);
+    }
+  }
+
+  /**
+   * Allocate the aggregators of the {@link AggregationPhase#PARTIAL} phase of an aggregation.
+   * 
+   * @param factories The factories that will produce the aggregators.
+   * @param inputSchema The schema of the input tuples.
+   * @return the aggregators for this operator.
+   * @throws DbException if an aggregator cannot output partial states.
+   */
+  private static GroupedAggregator[] allocatePartialAggs(final AggregatorFactory[] factories, final Schema inputSchema)
+      throws DbException {
+    GroupedAggregator[] aggregators = new GroupedAggregator[factories.length];
+    for (int j = 0; j < factories.length; ++j) {
+      Aggregator agg = factories[j].get(inputSchema);
+      if (!(agg instanceof GroupedAggregator)) {
+        throw new DbException("aggregator " + j + " cannot be computed in two phases");
+      }
+      aggregators[j] = (GroupedAggregator) agg;
+    }
+    return aggregators;
+  }
+
+  /**
+   * Allocate the aggregators of the {@link AggregationPhase#FINAL} phase of an aggregation. The partial states of the
+   * aggregators are laid out one after the other, in the order of the factories.
+   * 
+   * @param factories The factories that will produce the aggregators.
+   * @param inputSchema The schema of the input tuples, which hold partial states.
+   * @param firstColumn the column that holds the first partial state of the first aggregator.
+   * @return the aggregators for this operator.
+   * @throws DbException if there is an error.
+   */
+  private static GroupedAggregator[] allocateFinalAggs(final AggregatorFactory[] factories, final Schema inputSchema,
+      final int firstColumn) throws DbException {
+    GroupedAggregator[] aggregators = new GroupedAggregator[factories.length];
+    int column = firstColumn;
+    for (int j = 0; j < factories.length; ++j) {
+      aggregators[j] = factories[j].getFinal(inputSchema, column);
+      column += aggregators[j].getPartialSchema().numColumns();
+    }
+    return aggregators;
+  }
+
   /**
    * Utility class to allocate the initial aggregation states from a set of {@link Aggregator}s.
    * 
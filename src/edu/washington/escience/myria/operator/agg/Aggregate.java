@@ -18,6 +18,9 @@ import edu.washington.escience.myria.storage.TupleBatchBuffer;
  * The Aggregation operator that computes an aggregate.
  * 
  * This class does not do group by.
+ * 
+ * It can also compute either phase of a two-phase aggregation, see {@link AggregationPhase}. The
+ * {@link AggregationPhase#PARTIAL} phase outputs nothing if its input is empty.
  */
 public final class Aggregate extends UnaryOperator {
 
@@ -34,6 +37,12 @@ public final class Aggregate extends UnaryOperator {
    * buffer for holding results.
    */
   private transient TupleBatchBuffer aggBuffer;
+  /** Which phase of the aggregation this operator computes. */
+  private final AggregationPhase phase;
+  /** The group of each row, always 0, when computing one phase of a two-phase aggregation. */
+  private transient int[] groupIds;
+  /** Whether any tuple has been aggregated, when computing one phase of a two-phase aggregation. */
+  private transient boolean sawTuples;
 
   /**
    * Computes the value of one or more aggregates over the entire input relation.
@@ -42,7 +51,22 @@ public final class Aggregate extends UnaryOperator {
    * @param aggregators The {@link AggregatorFactory}s that creators the {@link Aggregator}s.
    */
   public Aggregate(@Nullable final Operator child, final AggregatorFactory... aggregators) {
+    this(child, AggregationPhase.COMPLETE, aggregators);
+  }
+
+  /**
+   * Computes the specified phase of one or more aggregates over the entire input relation. In the
+   * {@link AggregationPhase#FINAL} phase, the partial states of the aggregates are read from the input columns in
+   * order.
+   * 
+   * @param child The Operator that is feeding us tuples.
+   * @param phase Which phase of the aggregation to compute.
+   * @param aggregators The {@link AggregatorFactory}s that creators the {@link Aggregator}s.
+   */
+  public Aggregate(@Nullable final Operator child, final AggregationPhase phase,
+      final AggregatorFactory... aggregators) {
     super(child);
+    this.phase = Preconditions.checkNotNull(phase, "phase");
     Preconditions.checkNotNull(aggregators, "aggregators");
     int i = 0;
     for (AggregatorFactory agg : aggregators) {
@@ -62,27 +86,90 @@ public final class Aggregate extends UnaryOperator {
     }
 
     while ((tb = child.nextReady()) != null) {
-      for (int agg = 0; agg < aggregators.length; ++agg) {
-        aggregators[agg].add(tb, aggregatorStates[agg]);
+      if (phase == AggregationPhase.COMPLETE) {
+        for (int agg = 0; agg < aggregators.length; ++agg) {
+          aggregators[agg].add(tb, aggregatorStates[agg]);
+        }
+      } else {
+        addToGroup(tb);
       }
     }
 
     if (child.eos()) {
+      if (phase == AggregationPhase.PARTIAL && !sawTuples) {
+        return null;
+      }
       int fromIndex = 0;
       for (int agg = 0; agg < aggregators.length; ++agg) {
-        aggregators[agg].getResult(aggBuffer, fromIndex, aggregatorStates[agg]);
-        fromIndex += aggregators[agg].getResultSchema().numColumns();
+        getResult(agg, fromIndex);
+        fromIndex += AggUtils.getOutputSchema(aggregators[agg], phase).numColumns();
       }
       return aggBuffer.popAny();
     }
     return null;
   }
 
+  /**
+   * Add the specified batch to the single group of the {@link AggregationPhase#PARTIAL} or
+   * {@link AggregationPhase#FINAL} phase.
+   * 
+   * @param tb the batch.
+   * @throws DbException if there is an error.
+   */
+  private void addToGroup(final TupleBatch tb) throws DbException {
+    if (tb.numTuples() == 0) {
+      return;
+    }
+    if (groupIds.length < tb.numTuples()) {
+      groupIds = new int[tb.numTuples()];
+    }
+    for (int agg = 0; agg < aggregators.length; ++agg) {
+      GroupedAggregator aggregator = (GroupedAggregator) aggregators[agg];
+      if (phase == AggregationPhase.PARTIAL) {
+        aggregator.addBatch(tb, groupIds, 1, aggregatorStates[agg]);
+      } else {
+        aggregator.addPartialBatch(tb, groupIds, 1, aggregatorStates[agg]);
+      }
+    }
+    sawTuples = true;
+  }
+
+  /**
+   * Append the result of one aggregator to {@link #aggBuffer}, or its partial state in the
+   * {@link AggregationPhase#PARTIAL} phase.
+   * 
+   * @param agg the index of the aggregator.
+   * @param destColumn the starting index into which aggregates will be output.
+   * @throws DbException if there is an error.
+   */
+  private void getResult(final int agg, final int destColumn) throws DbException {
+    Aggregator aggregator = aggregators[agg];
+    if (phase == AggregationPhase.COMPLETE) {
+      aggregator.getResult(aggBuffer, destColumn, aggregatorStates[agg]);
+    } else if (phase == AggregationPhase.PARTIAL) {
+      ((GroupedAggregator) aggregator).getGroupPartialResult(aggBuffer, destColumn, 0, aggregatorStates[agg]);
+    } else if (sawTuples) {
+      ((GroupedAggregator) aggregator).getGroupResult(aggBuffer, destColumn, 0, aggregatorStates[agg]);
+    } else {
+      /* No partial states at all: the result of an empty input. */
+      aggregator.getResult(aggBuffer, destColumn, aggregator.getInitialState());
+    }
+  }
+
   @Override
   protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     Preconditions.checkState(getSchema() != null, "unable to determine schema in init");
-    aggregators = AggUtils.allocateAggs(factories, getChild().getSchema());
-    aggregatorStates = AggUtils.allocateAggStates(aggregators);
+    aggregators = AggUtils.allocateAggs(factories, getChild().getSchema(), phase, 0);
+    if (phase == AggregationPhase.COMPLETE) {
+      aggregatorStates = AggUtils.allocateAggStates(aggregators);
+    } else {
+      aggregatorStates = new Object[aggregators.length];
+      for (int agg = 0; agg < aggregators.length; ++agg) {
+        aggregatorStates[agg] = ((GroupedAggregator) aggregators[agg]).getInitialGroupedState();
+      }
+      groupIds = new int[TupleBatch.BATCH_SIZE];
+      sawTuples = false;
+    }
     aggBuffer = new TupleBatchBuffer(getSchema());
   }
 
@@ -100,8 +187,8 @@ public final class Aggregate extends UnaryOperator {
     final ImmutableList.Builder<String> gNames = ImmutableList.builder();
 
     try {
-      for (Aggregator agg : AggUtils.allocateAggs(factories, inputSchema)) {
-        Schema s = agg.getResultSchema();
+      for (Aggregator agg : AggUtils.allocateAggs(factories, inputSchema, phase, 0)) {
+        Schema s = AggUtils.getOutputSchema(agg, phase);
         gTypes.addAll(s.getColumnTypes());
         gNames.addAll(s.getColumnNames());
       }
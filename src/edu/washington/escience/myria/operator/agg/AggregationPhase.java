@@ -0,0 +1,19 @@
+package edu.washington.escience.myria.operator.agg;
+
+/**
+ * Which part of an aggregation an aggregate operator computes. A distributed aggregation can run in two phases: each
+ * worker pre-aggregates its local tuples in the {@link #PARTIAL} phase before shuffling, so that only one partial
+ * state per group and worker crosses the network, and the {@link #FINAL} phase merges the partial states of each
+ * group.
+ */
+public enum AggregationPhase {
+  /** Aggregate raw tuples and produce the aggregate results. */
+  COMPLETE,
+  /**
+   * Aggregate raw tuples and produce the partial states of the aggregates, as described by
+   * {@link GroupedAggregator#getPartialSchema()}. A group may be output more than once.
+   */
+  PARTIAL,
+  /** Merge the partial states produced by the {@link #PARTIAL} phase and produce the aggregate results. */
+  FINAL
+}
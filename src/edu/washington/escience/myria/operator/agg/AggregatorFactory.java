@@ -29,4 +29,17 @@ public interface AggregatorFactory extends Serializable {
    */
   @Nonnull
   Aggregator get(Schema inputSchema) throws DbException;
+
+  /**
+   * Create a new aggregator for the {@link AggregationPhase#FINAL} phase of an aggregation. It merges the partial
+   * states output in the {@link AggregationPhase#PARTIAL} phase by the aggregator that {@link #get(Schema)} creates,
+   * and produces the same results.
+   * 
+   * @param inputSchema the schema that incoming tuples, which hold partial states, will take.
+   * @param column the column that holds the first partial state of the aggregator.
+   * @return a new aggregator that merges partial states.
+   * @throws DbException if the aggregator cannot be computed in two phases.
+   */
+  @Nonnull
+  GroupedAggregator getFinal(Schema inputSchema, int column) throws DbException;
 }
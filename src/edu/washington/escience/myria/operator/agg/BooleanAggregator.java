@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
 
@@ -77,6 +78,58 @@ public final class BooleanAggregator extends PrimitiveAggregator {
     }
   }
 
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groupIds, final int numGroups, final Object state) {
+    Objects.requireNonNull(from, "from");
+    BooleanGroupedState g = (BooleanGroupedState) state;
+    g.ensureCapacity(numGroups);
+    if (needsCount) {
+      AggUtils.countGroups(groupIds, from.numTuples(), g.count);
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final int groupId, final Object state) {
+    BooleanGroupedState g = (BooleanGroupedState) state;
+    Objects.requireNonNull(dest, "dest");
+    int idx = destColumn;
+    for (AggregationOp op : aggOps) {
+      switch (op) {
+        case COUNT:
+          dest.putLong(idx, g.count[groupId]);
+          break;
+        case AVG:
+        case MAX:
+        case MIN:
+        case STDEV:
+        case SUM:
+          throw new UnsupportedOperationException("Aggregate " + op + " on type Boolean");
+      }
+      idx++;
+    }
+  }
+
+  @Override
+  public void getGroupPartialResult(final AppendableTable dest, final int destColumn, final int groupId,
+      final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    BooleanGroupedState g = (BooleanGroupedState) state;
+    if (needsCount) {
+      dest.putLong(destColumn, g.count[groupId]);
+    }
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int[] groupIds, final int numGroups,
+      final Object state) {
+    Objects.requireNonNull(from, "from");
+    BooleanGroupedState g = (BooleanGroupedState) state;
+    g.ensureCapacity(numGroups);
+    if (needsCount) {
+      AggUtils.mergeLongs(groupIds, from.numTuples(), from.asColumn(fromColumn), g.count);
+    }
+  }
+
   @Override
   public Type getType() {
     return Type.BOOLEAN_TYPE;
@@ -107,4 +160,26 @@ public final class BooleanAggregator extends PrimitiveAggregator {
     /** The number of tuples seen so far. */
     private long count = 0;
   }
+
+  @Override
+  public Object getInitialGroupedState() {
+    return new BooleanGroupedState();
+  }
+
+  /** Private internal class that holds the state of many groups in arrays indexed by group id. */
+  private final class BooleanGroupedState {
+    /** The number of tuples seen so far. */
+    private long[] count = new long[0];
+
+    /**
+     * Grow the arrays so that they hold at least the specified number of groups.
+     * 
+     * @param numGroups the number of groups.
+     */
+    private void ensureCapacity(final int numGroups) {
+      if (numGroups > count.length) {
+        count = Arrays.copyOf(count, AggUtils.growCapacity(count.length, numGroups));
+      }
+    }
+  }
 }
@@ -1,5 +1,7 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
+
 import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.DbException;
@@ -11,12 +13,26 @@ import edu.washington.escience.myria.storage.ReadableTable;
 /**
  * An aggregator that counts the number of rows in its input.
  */
-public final class CountAllAggregator implements Aggregator {
+public final class CountAllAggregator implements GroupedAggregator {
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
   /** The schema of the aggregate results. */
   public static final Schema SCHEMA = Schema.ofFields(Type.LONG_TYPE, "count_all");
+  /** Which column of the input holds the partial counts, in the {@link AggregationPhase#FINAL} phase. */
+  private final int fromColumn;
+
+  /** Instantiate an aggregator that counts raw tuples. */
+  public CountAllAggregator() {
+    this(-1);
+  }
+
+  /**
+   * @param column which column of the input holds the partial counts, in the {@link AggregationPhase#FINAL} phase.
+   */
+  public CountAllAggregator(final int column) {
+    fromColumn = column;
+  }
 
   @Override
   public void add(final ReadableTable from, final Object state) throws DbException {
@@ -36,6 +52,44 @@ public final class CountAllAggregator implements Aggregator {
     dest.putLong(destColumn, c.count);
   }
 
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groupIds, final int numGroups, final Object state)
+      throws DbException {
+    CountAllGroupedState g = (CountAllGroupedState) state;
+    if (numGroups > g.count.length) {
+      g.count = Arrays.copyOf(g.count, AggUtils.growCapacity(g.count.length, numGroups));
+    }
+    AggUtils.countGroups(groupIds, from.numTuples(), g.count);
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final int groupId, final Object state)
+      throws DbException {
+    CountAllGroupedState g = (CountAllGroupedState) state;
+    dest.putLong(destColumn, g.count[groupId]);
+  }
+
+  @Override
+  public void getGroupPartialResult(final AppendableTable dest, final int destColumn, final int groupId,
+      final Object state) throws DbException {
+    getGroupResult(dest, destColumn, groupId, state);
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int[] groupIds, final int numGroups, final Object state)
+      throws DbException {
+    CountAllGroupedState g = (CountAllGroupedState) state;
+    if (numGroups > g.count.length) {
+      g.count = Arrays.copyOf(g.count, AggUtils.growCapacity(g.count.length, numGroups));
+    }
+    AggUtils.mergeLongs(groupIds, from.numTuples(), from.asColumn(fromColumn), g.count);
+  }
+
+  @Override
+  public Schema getPartialSchema() {
+    return SCHEMA;
+  }
+
   @Override
   public Schema getResultSchema() {
     return SCHEMA;
@@ -51,4 +105,15 @@ public final class CountAllAggregator implements Aggregator {
     /** The number of tuples seen so far. */
     private long count = 0;
   }
+
+  @Override
+  public Object getInitialGroupedState() {
+    return new CountAllGroupedState();
+  }
+
+  /** Private internal class that holds the state of many groups in arrays indexed by group id. */
+  private final class CountAllGroupedState {
+    /** The number of tuples seen so far. */
+    private long[] count = new long[0];
+  }
 }
@@ -21,4 +21,9 @@ public final class CountAllAggregatorFactory implements AggregatorFactory {
     return new CountAllAggregator();
   }
 
+  @Override
+  public GroupedAggregator getFinal(final Schema inputSchema, final int column) throws DbException {
+    return new CountAllAggregator(column);
+  }
+
 }
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
 
@@ -10,6 +11,7 @@ import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
@@ -123,6 +125,114 @@ public final class DateTimeAggregator extends PrimitiveAggregator {
     }
   }
 
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groupIds, final int numGroups, final Object state) {
+    Objects.requireNonNull(from, "from");
+    DateTimeGroupedState g = (DateTimeGroupedState) state;
+    g.ensureCapacity(numGroups);
+    final int numTuples = from.numTuples();
+    if (needsCount) {
+      AggUtils.countGroups(groupIds, numTuples, g.count);
+    }
+    if (!needsStats) {
+      return;
+    }
+    final ReadableColumn column = from.asColumn(fromColumn);
+    if (needsMin) {
+      final DateTime[] min = g.min;
+      for (int i = 0; i < numTuples; ++i) {
+        DateTime value = Objects.requireNonNull(column.getDateTime(i), "value");
+        if (min[groupIds[i]] == null || min[groupIds[i]].compareTo(value) > 0) {
+          min[groupIds[i]] = value;
+        }
+      }
+    }
+    if (needsMax) {
+      final DateTime[] max = g.max;
+      for (int i = 0; i < numTuples; ++i) {
+        DateTime value = Objects.requireNonNull(column.getDateTime(i), "value");
+        if (max[groupIds[i]] == null || max[groupIds[i]].compareTo(value) < 0) {
+          max[groupIds[i]] = value;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final int groupId, final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    DateTimeGroupedState g = (DateTimeGroupedState) state;
+    int idx = destColumn;
+    for (AggregationOp op : aggOps) {
+      switch (op) {
+        case COUNT:
+          dest.putLong(idx, g.count[groupId]);
+          break;
+        case MAX:
+          dest.putDateTime(idx, g.max[groupId]);
+          break;
+        case MIN:
+          dest.putDateTime(idx, g.min[groupId]);
+          break;
+        case AVG:
+        case STDEV:
+        case SUM:
+          throw new UnsupportedOperationException("Aggregate " + op + " on type DateTime");
+      }
+      idx++;
+    }
+  }
+
+  @Override
+  public void getGroupPartialResult(final AppendableTable dest, final int destColumn, final int groupId,
+      final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    DateTimeGroupedState g = (DateTimeGroupedState) state;
+    int idx = destColumn;
+    if (needsCount) {
+      dest.putLong(idx++, g.count[groupId]);
+    }
+    if (needsMin) {
+      dest.putDateTime(idx++, g.min[groupId]);
+    }
+    if (needsMax) {
+      dest.putDateTime(idx, g.max[groupId]);
+    }
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int[] groupIds, final int numGroups,
+      final Object state) {
+    Objects.requireNonNull(from, "from");
+    DateTimeGroupedState g = (DateTimeGroupedState) state;
+    g.ensureCapacity(numGroups);
+    final int numTuples = from.numTuples();
+    int column = fromColumn;
+    if (needsCount) {
+      AggUtils.mergeLongs(groupIds, numTuples, from.asColumn(column++), g.count);
+    }
+    if (needsMin) {
+      final ReadableColumn partial = from.asColumn(column++);
+      final DateTime[] min = g.min;
+      for (int i = 0; i < numTuples; ++i) {
+        DateTime value = partial.getDateTime(i);
+        if (min[groupIds[i]] == null || min[groupIds[i]].compareTo(value) > 0) {
+          min[groupIds[i]] = value;
+        }
+      }
+    }
+    if (needsMax) {
+      final ReadableColumn partial = from.asColumn(column);
+      final DateTime[] max = g.max;
+      for (int i = 0; i < numTuples; ++i) {
+        DateTime value = partial.getDateTime(i);
+        if (max[groupIds[i]] == null || max[groupIds[i]].compareTo(value) < 0) {
+          max[groupIds[i]] = value;
+        }
+      }
+    }
+  }
+
   @Override
   protected Type getSumType() {
     throw new UnsupportedOperationException("SUM of DateTime values");
@@ -152,4 +262,38 @@ public final class DateTimeAggregator extends PrimitiveAggregator {
     /** The maximum value in the aggregated column. */
     private DateTime max = null;
   }
+
+  @Override
+  public Object getInitialGroupedState() {
+    return new DateTimeGroupedState();
+  }
+
+  /** Private internal class that holds the state of many groups in arrays indexed by group id. */
+  private final class DateTimeGroupedState {
+    /** The number of tuples seen so far. Always allocated, since it also tracks the capacity. */
+    private long[] count = new long[0];
+    /** The minimum value in the aggregated column. */
+    private DateTime[] min = new DateTime[0];
+    /** The maximum value in the aggregated column. */
+    private DateTime[] max = new DateTime[0];
+
+    /**
+     * Grow the arrays so that they hold at least the specified number of groups.
+     * 
+     * @param numGroups the number of groups.
+     */
+    private void ensureCapacity(final int numGroups) {
+      if (numGroups <= count.length) {
+        return;
+      }
+      int capacity = AggUtils.growCapacity(count.length, numGroups);
+      count = Arrays.copyOf(count, capacity);
+      if (needsMin) {
+        min = Arrays.copyOf(min, capacity);
+      }
+      if (needsMax) {
+        max = Arrays.copyOf(max, capacity);
+      }
+    }
+  }
 }
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
 
@@ -8,6 +9,7 @@ import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
@@ -121,6 +123,135 @@ public final class DoubleAggregator extends PrimitiveAggregator {
     }
   }
 
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groupIds, final int numGroups, final Object state) {
+    Objects.requireNonNull(from, "from");
+    DoubleGroupedState g = (DoubleGroupedState) state;
+    g.ensureCapacity(numGroups);
+    final int numTuples = from.numTuples();
+    if (needsCount) {
+      AggUtils.countGroups(groupIds, numTuples, g.count);
+    }
+    if (!needsStats) {
+      return;
+    }
+    final ReadableColumn column = from.asColumn(fromColumn);
+    if (needsSum) {
+      final double[] sum = g.sum;
+      for (int i = 0; i < numTuples; ++i) {
+        sum[groupIds[i]] += column.getDouble(i);
+      }
+    }
+    if (needsSumSq) {
+      final double[] sumSquared = g.sumSquared;
+      for (int i = 0; i < numTuples; ++i) {
+        double value = column.getDouble(i);
+        sumSquared[groupIds[i]] += value * value;
+      }
+    }
+    if (needsMin) {
+      final double[] min = g.min;
+      for (int i = 0; i < numTuples; ++i) {
+        min[groupIds[i]] = Math.min(min[groupIds[i]], column.getDouble(i));
+      }
+    }
+    if (needsMax) {
+      final double[] max = g.max;
+      for (int i = 0; i < numTuples; ++i) {
+        max[groupIds[i]] = Math.max(max[groupIds[i]], column.getDouble(i));
+      }
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final int groupId, final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    DoubleGroupedState g = (DoubleGroupedState) state;
+    int idx = destColumn;
+    for (AggregationOp op : aggOps) {
+      switch (op) {
+        case AVG:
+          dest.putDouble(idx, g.sum[groupId] * 1.0 / g.count[groupId]);
+          break;
+        case COUNT:
+          dest.putLong(idx, g.count[groupId]);
+          break;
+        case MAX:
+          dest.putDouble(idx, g.max[groupId]);
+          break;
+        case MIN:
+          dest.putDouble(idx, g.min[groupId]);
+          break;
+        case STDEV:
+          double first = g.sumSquared[groupId] / g.count[groupId];
+          double second = g.sum[groupId] / g.count[groupId];
+          double stdev = Math.sqrt(first - second * second);
+          dest.putDouble(idx, stdev);
+          break;
+        case SUM:
+          dest.putDouble(idx, g.sum[groupId]);
+          break;
+      }
+      idx++;
+    }
+  }
+
+  @Override
+  public void getGroupPartialResult(final AppendableTable dest, final int destColumn, final int groupId,
+      final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    DoubleGroupedState g = (DoubleGroupedState) state;
+    int idx = destColumn;
+    if (needsCount) {
+      dest.putLong(idx++, g.count[groupId]);
+    }
+    if (needsSum) {
+      dest.putDouble(idx++, g.sum[groupId]);
+    }
+    if (needsSumSq) {
+      dest.putDouble(idx++, g.sumSquared[groupId]);
+    }
+    if (needsMin) {
+      dest.putDouble(idx++, g.min[groupId]);
+    }
+    if (needsMax) {
+      dest.putDouble(idx, g.max[groupId]);
+    }
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int[] groupIds, final int numGroups,
+      final Object state) {
+    Objects.requireNonNull(from, "from");
+    DoubleGroupedState g = (DoubleGroupedState) state;
+    g.ensureCapacity(numGroups);
+    final int numTuples = from.numTuples();
+    int column = fromColumn;
+    if (needsCount) {
+      AggUtils.mergeLongs(groupIds, numTuples, from.asColumn(column++), g.count);
+    }
+    if (needsSum) {
+      AggUtils.mergeDoubles(groupIds, numTuples, from.asColumn(column++), g.sum);
+    }
+    if (needsSumSq) {
+      AggUtils.mergeDoubles(groupIds, numTuples, from.asColumn(column++), g.sumSquared);
+    }
+    if (needsMin) {
+      final ReadableColumn partial = from.asColumn(column++);
+      final double[] min = g.min;
+      for (int i = 0; i < numTuples; ++i) {
+        min[groupIds[i]] = Math.min(min[groupIds[i]], partial.getDouble(i));
+      }
+    }
+    if (needsMax) {
+      final ReadableColumn partial = from.asColumn(column);
+      final double[] max = g.max;
+      for (int i = 0; i < numTuples; ++i) {
+        max[groupIds[i]] = Math.max(max[groupIds[i]], partial.getDouble(i));
+      }
+    }
+  }
+
   @Override
   public Type getType() {
     return Type.DOUBLE_TYPE;
@@ -146,12 +277,59 @@ public final class DoubleAggregator extends PrimitiveAggregator {
     /** The number of tuples seen so far. */
     private long count = 0;
     /** The minimum value in the aggregated column. */
-    private double min = Double.MAX_VALUE;
+    private double min = Double.POSITIVE_INFINITY;
     /** The maximum value in the aggregated column. */
-    private double max = Double.MIN_VALUE;
+    private double max = Double.NEGATIVE_INFINITY;
     /** The sum of values in the aggregated column. */
     private double sum = 0;
     /** private temp variables for computing stdev. */
     private double sumSquared = 0;
   }
+
+  @Override
+  public Object getInitialGroupedState() {
+    return new DoubleGroupedState();
+  }
+
+  /** Private internal class that holds the state of many groups in arrays indexed by group id. */
+  private final class DoubleGroupedState {
+    /** The number of tuples seen so far. Always allocated, since it also tracks the capacity. */
+    private long[] count = new long[0];
+    /** The minimum value in the aggregated column. */
+    private double[] min = new double[0];
+    /** The maximum value in the aggregated column. */
+    private double[] max = new double[0];
+    /** The sum of values in the aggregated column. */
+    private double[] sum = new double[0];
+    /** private temp variables for computing stdev. */
+    private double[] sumSquared = new double[0];
+
+    /**
+     * Grow the arrays so that they hold at least the specified number of groups.
+     * 
+     * @param numGroups the number of groups.
+     */
+    private void ensureCapacity(final int numGroups) {
+      if (numGroups <= count.length) {
+        return;
+      }
+      int oldCapacity = count.length;
+      int capacity = AggUtils.growCapacity(oldCapacity, numGroups);
+      count = Arrays.copyOf(count, capacity);
+      if (needsSum) {
+        sum = Arrays.copyOf(sum, capacity);
+      }
+      if (needsSumSq) {
+        sumSquared = Arrays.copyOf(sumSquared, capacity);
+      }
+      if (needsMin) {
+        min = Arrays.copyOf(min, capacity);
+        Arrays.fill(min, oldCapacity, capacity, Double.POSITIVE_INFINITY);
+      }
+      if (needsMax) {
+        max = Arrays.copyOf(max, capacity);
+        Arrays.fill(max, oldCapacity, capacity, Double.NEGATIVE_INFINITY);
+      }
+    }
+  }
 }
@@ -0,0 +1,79 @@
+package edu.washington.escience.myria.operator.agg;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * An {@link Aggregator} that can compute its aggregates for many groups at once. The state of all the groups is kept in
+ * one object, typically primitive arrays indexed by group id, and a whole batch of rows is added in one call once the
+ * group id of every row is known.
+ * 
+ * The state of a group can also be output as a partial state, which another instance of the same aggregator merges
+ * into its own groups. This lets an aggregation run in two phases, see {@link AggregationPhase}.
+ */
+public interface GroupedAggregator extends Aggregator {
+
+  /**
+   * Compute and return the initial state of this {@link GroupedAggregator}, which holds no groups.
+   *
+   * @return the initial state of this {@link GroupedAggregator}.
+   */
+  Object getInitialGroupedState();
+
+  /**
+   * Update the groups of this aggregate using all rows of the specified table.
+   *
+   * @param from the source {@link ReadableTable}.
+   * @param groupIds the group of each row of <code>from</code>. Groups are numbered from 0 and may be new.
+   * @param numGroups the number of groups; all group ids are smaller.
+   * @param state the state of the groups, which will be mutated.
+   * @throws DbException if there is an error.
+   */
+  void addBatch(ReadableTable from, int[] groupIds, int numGroups, Object state) throws DbException;
+
+  /**
+   * Append the aggregate result(s) of the specified group to the given table starting from the given column.
+   *
+   * @param dest where to store the aggregate result.
+   * @param destColumn the starting index into which aggregates will be output.
+   * @param groupId the group.
+   * @param state the state of the groups.
+   * @throws DbException if there is an error.
+   */
+  void getGroupResult(AppendableTable dest, int destColumn, int groupId, Object state) throws DbException;
+
+  /**
+   * The schema of the partial state of a group, as output by {@link #getGroupPartialResult}. The partial state holds,
+   * in this order and only as far as needed by the aggregates, the count, sum, sum of squares, minimum and maximum of
+   * the group. Each column is named after the aggregated field, prefixed by <code>count_</code>, <code>sum_</code>,
+   * <code>sumsq_</code>, <code>min_</code> or <code>max_</code>.
+   *
+   * @return the schema of the partial state of a group.
+   */
+  Schema getPartialSchema();
+
+  /**
+   * Append the partial state of the specified group to the given table starting from the given column.
+   *
+   * @param dest where to store the partial state.
+   * @param destColumn the starting index into which the partial state will be output.
+   * @param groupId the group.
+   * @param state the state of the groups.
+   * @throws DbException if there is an error.
+   */
+  void getGroupPartialResult(AppendableTable dest, int destColumn, int groupId, Object state) throws DbException;
+
+  /**
+   * Merge the partial states held by the rows of the specified table into the groups of this aggregate. The partial
+   * states are read from the columns starting at the column this aggregator was created for.
+   *
+   * @param from the source {@link ReadableTable}, whose rows hold partial states.
+   * @param groupIds the group of each row of <code>from</code>. Groups are numbered from 0 and may be new.
+   * @param numGroups the number of groups; all group ids are smaller.
+   * @param state the state of the groups, which will be mutated.
+   * @throws DbException if there is an error.
+   */
+  void addPartialBatch(ReadableTable from, int[] groupIds, int numGroups, Object state) throws DbException;
+}
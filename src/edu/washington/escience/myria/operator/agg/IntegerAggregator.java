@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
 
@@ -8,6 +9,7 @@ import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
@@ -124,6 +126,135 @@ public final class IntegerAggregator extends PrimitiveAggregator {
     }
   }
 
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groupIds, final int numGroups, final Object state) {
+    Objects.requireNonNull(from, "from");
+    IntGroupedState g = (IntGroupedState) state;
+    g.ensureCapacity(numGroups);
+    final int numTuples = from.numTuples();
+    if (needsCount) {
+      AggUtils.countGroups(groupIds, numTuples, g.count);
+    }
+    if (!needsStats) {
+      return;
+    }
+    final ReadableColumn column = from.asColumn(fromColumn);
+    if (needsSum) {
+      final long[] sum = g.sum;
+      for (int i = 0; i < numTuples; ++i) {
+        sum[groupIds[i]] = LongMath.checkedAdd(sum[groupIds[i]], column.getInt(i));
+      }
+    }
+    if (needsSumSq) {
+      final long[] sumSquared = g.sumSquared;
+      for (int i = 0; i < numTuples; ++i) {
+        long value = column.getInt(i);
+        sumSquared[groupIds[i]] = LongMath.checkedAdd(sumSquared[groupIds[i]], value * value);
+      }
+    }
+    if (needsMin) {
+      final int[] min = g.min;
+      for (int i = 0; i < numTuples; ++i) {
+        min[groupIds[i]] = Math.min(min[groupIds[i]], column.getInt(i));
+      }
+    }
+    if (needsMax) {
+      final int[] max = g.max;
+      for (int i = 0; i < numTuples; ++i) {
+        max[groupIds[i]] = Math.max(max[groupIds[i]], column.getInt(i));
+      }
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final int groupId, final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    IntGroupedState g = (IntGroupedState) state;
+    int idx = destColumn;
+    for (AggregationOp op : aggOps) {
+      switch (op) {
+        case AVG:
+          dest.putDouble(idx, g.sum[groupId] * 1.0 / g.count[groupId]);
+          break;
+        case COUNT:
+          dest.putLong(idx, g.count[groupId]);
+          break;
+        case MAX:
+          dest.putInt(idx, g.max[groupId]);
+          break;
+        case MIN:
+          dest.putInt(idx, g.min[groupId]);
+          break;
+        case STDEV:
+          double first = ((double) g.sumSquared[groupId]) / g.count[groupId];
+          double second = ((double) g.sum[groupId]) / g.count[groupId];
+          double stdev = Math.sqrt(first - second * second);
+          dest.putDouble(idx, stdev);
+          break;
+        case SUM:
+          dest.putLong(idx, g.sum[groupId]);
+          break;
+      }
+      idx++;
+    }
+  }
+
+  @Override
+  public void getGroupPartialResult(final AppendableTable dest, final int destColumn, final int groupId,
+      final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    IntGroupedState g = (IntGroupedState) state;
+    int idx = destColumn;
+    if (needsCount) {
+      dest.putLong(idx++, g.count[groupId]);
+    }
+    if (needsSum) {
+      dest.putLong(idx++, g.sum[groupId]);
+    }
+    if (needsSumSq) {
+      dest.putLong(idx++, g.sumSquared[groupId]);
+    }
+    if (needsMin) {
+      dest.putInt(idx++, g.min[groupId]);
+    }
+    if (needsMax) {
+      dest.putInt(idx, g.max[groupId]);
+    }
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int[] groupIds, final int numGroups,
+      final Object state) {
+    Objects.requireNonNull(from, "from");
+    IntGroupedState g = (IntGroupedState) state;
+    g.ensureCapacity(numGroups);
+    final int numTuples = from.numTuples();
+    int column = fromColumn;
+    if (needsCount) {
+      AggUtils.mergeLongs(groupIds, numTuples, from.asColumn(column++), g.count);
+    }
+    if (needsSum) {
+      AggUtils.mergeLongs(groupIds, numTuples, from.asColumn(column++), g.sum);
+    }
+    if (needsSumSq) {
+      AggUtils.mergeLongs(groupIds, numTuples, from.asColumn(column++), g.sumSquared);
+    }
+    if (needsMin) {
+      final ReadableColumn partial = from.asColumn(column++);
+      final int[] min = g.min;
+      for (int i = 0; i < numTuples; ++i) {
+        min[groupIds[i]] = Math.min(min[groupIds[i]], partial.getInt(i));
+      }
+    }
+    if (needsMax) {
+      final ReadableColumn partial = from.asColumn(column);
+      final int[] max = g.max;
+      for (int i = 0; i < numTuples; ++i) {
+        max[groupIds[i]] = Math.max(max[groupIds[i]], partial.getInt(i));
+      }
+    }
+  }
+
   @Override
   public Type getType() {
     return Type.INT_TYPE;
@@ -157,4 +288,51 @@ public final class IntegerAggregator extends PrimitiveAggregator {
     /** private temp variables for computing stdev. */
     private long sumSquared = 0;
   }
+
+  @Override
+  public Object getInitialGroupedState() {
+    return new IntGroupedState();
+  }
+
+  /** Private internal class that holds the state of many groups in arrays indexed by group id. */
+  private final class IntGroupedState {
+    /** The number of tuples seen so far. Always allocated, since it also tracks the capacity. */
+    private long[] count = new long[0];
+    /** The minimum value in the aggregated column. */
+    private int[] min = new int[0];
+    /** The maximum value in the aggregated column. */
+    private int[] max = new int[0];
+    /** The sum of values in the aggregated column. */
+    private long[] sum = new long[0];
+    /** private temp variables for computing stdev. */
+    private long[] sumSquared = new long[0];
+
+    /**
+     * Grow the arrays so that they hold at least the specified number of groups.
+     * 
+     * @param numGroups the number of groups.
+     */
+    private void ensureCapacity(final int numGroups) {
+      if (numGroups <= count.length) {
+        return;
+      }
+      int oldCapacity = count.length;
+      int capacity = AggUtils.growCapacity(oldCapacity, numGroups);
+      count = Arrays.copyOf(count, capacity);
+      if (needsSum) {
+        sum = Arrays.copyOf(sum, capacity);
+      }
+      if (needsSumSq) {
+        sumSquared = Arrays.copyOf(sumSquared, capacity);
+      }
+      if (needsMin) {
+        min = Arrays.copyOf(min, capacity);
+        Arrays.fill(min, oldCapacity, capacity, Integer.MAX_VALUE);
+      }
+      if (needsMax) {
+        max = Arrays.copyOf(max, capacity);
+        Arrays.fill(max, oldCapacity, capacity, Integer.MIN_VALUE);
+      }
+    }
+  }
 }
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
 
@@ -8,6 +9,7 @@ import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
@@ -123,6 +125,135 @@ public final class LongAggregator extends PrimitiveAggregator {
     }
   }
 
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groupIds, final int numGroups, final Object state) {
+    Objects.requireNonNull(from, "from");
+    LongGroupedState g = (LongGroupedState) state;
+    g.ensureCapacity(numGroups);
+    final int numTuples = from.numTuples();
+    if (needsCount) {
+      AggUtils.countGroups(groupIds, numTuples, g.count);
+    }
+    if (!needsStats) {
+      return;
+    }
+    final ReadableColumn column = from.asColumn(fromColumn);
+    if (needsSum) {
+      final long[] sum = g.sum;
+      for (int i = 0; i < numTuples; ++i) {
+        sum[groupIds[i]] = LongMath.checkedAdd(sum[groupIds[i]], column.getLong(i));
+      }
+    }
+    if (needsSumSq) {
+      final long[] sumSquared = g.sumSquared;
+      for (int i = 0; i < numTuples; ++i) {
+        long value = column.getLong(i);
+        sumSquared[groupIds[i]] = LongMath.checkedAdd(sumSquared[groupIds[i]], LongMath.checkedMultiply(value, value));
+      }
+    }
+    if (needsMin) {
+      final long[] min = g.min;
+      for (int i = 0; i < numTuples; ++i) {
+        min[groupIds[i]] = Math.min(min[groupIds[i]], column.getLong(i));
+      }
+    }
+    if (needsMax) {
+      final long[] max = g.max;
+      for (int i = 0; i < numTuples; ++i) {
+        max[groupIds[i]] = Math.max(max[groupIds[i]], column.getLong(i));
+      }
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final int groupId, final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    LongGroupedState g = (LongGroupedState) state;
+    int idx = destColumn;
+    for (AggregationOp op : aggOps) {
+      switch (op) {
+        case AVG:
+          dest.putDouble(idx, g.sum[groupId] * 1.0 / g.count[groupId]);
+          break;
+        case COUNT:
+          dest.putLong(idx, g.count[groupId]);
+          break;
+        case MAX:
+          dest.putLong(idx, g.max[groupId]);
+          break;
+        case MIN:
+          dest.putLong(idx, g.min[groupId]);
+          break;
+        case STDEV:
+          double first = ((double) g.sumSquared[groupId]) / g.count[groupId];
+          double second = ((double) g.sum[groupId]) / g.count[groupId];
+          double stdev = Math.sqrt(first - second * second);
+          dest.putDouble(idx, stdev);
+          break;
+        case SUM:
+          dest.putLong(idx, g.sum[groupId]);
+          break;
+      }
+      idx++;
+    }
+  }
+
+  @Override
+  public void getGroupPartialResult(final AppendableTable dest, final int destColumn, final int groupId,
+      final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    LongGroupedState g = (LongGroupedState) state;
+    int idx = destColumn;
+    if (needsCount) {
+      dest.putLong(idx++, g.count[groupId]);
+    }
+    if (needsSum) {
+      dest.putLong(idx++, g.sum[groupId]);
+    }
+    if (needsSumSq) {
+      dest.putLong(idx++, g.sumSquared[groupId]);
+    }
+    if (needsMin) {
+      dest.putLong(idx++, g.min[groupId]);
+    }
+    if (needsMax) {
+      dest.putLong(idx, g.max[groupId]);
+    }
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int[] groupIds, final int numGroups,
+      final Object state) {
+    Objects.requireNonNull(from, "from");
+    LongGroupedState g = (LongGroupedState) state;
+    g.ensureCapacity(numGroups);
+    final int numTuples = from.numTuples();
+    int column = fromColumn;
+    if (needsCount) {
+      AggUtils.mergeLongs(groupIds, numTuples, from.asColumn(column++), g.count);
+    }
+    if (needsSum) {
+      AggUtils.mergeLongs(groupIds, numTuples, from.asColumn(column++), g.sum);
+    }
+    if (needsSumSq) {
+      AggUtils.mergeLongs(groupIds, numTuples, from.asColumn(column++), g.sumSquared);
+    }
+    if (needsMin) {
+      final ReadableColumn partial = from.asColumn(column++);
+      final long[] min = g.min;
+      for (int i = 0; i < numTuples; ++i) {
+        min[groupIds[i]] = Math.min(min[groupIds[i]], partial.getLong(i));
+      }
+    }
+    if (needsMax) {
+      final ReadableColumn partial = from.asColumn(column);
+      final long[] max = g.max;
+      for (int i = 0; i < numTuples; ++i) {
+        max[groupIds[i]] = Math.max(max[groupIds[i]], partial.getLong(i));
+      }
+    }
+  }
+
   @Override
   public Type getType() {
     return Type.LONG_TYPE;
@@ -156,4 +287,51 @@ public final class LongAggregator extends PrimitiveAggregator {
     /** private temp variables for computing stdev. */
     private long sumSquared = 0;
   }
+
+  @Override
+  public Object getInitialGroupedState() {
+    return new LongGroupedState();
+  }
+
+  /** Private internal class that holds the state of many groups in arrays indexed by group id. */
+  private final class LongGroupedState {
+    /** The number of tuples seen so far. Always allocated, since it also tracks the capacity. */
+    private long[] count = new long[0];
+    /** The minimum value in the aggregated column. */
+    private long[] min = new long[0];
+    /** The maximum value in the aggregated column. */
+    private long[] max = new long[0];
+    /** The sum of values in the aggregated column. */
+    private long[] sum = new long[0];
+    /** private temp variables for computing stdev. */
+    private long[] sumSquared = new long[0];
+
+    /**
+     * Grow the arrays so that they hold at least the specified number of groups.
+     * 
+     * @param numGroups the number of groups.
+     */
+    private void ensureCapacity(final int numGroups) {
+      if (numGroups <= count.length) {
+        return;
+      }
+      int oldCapacity = count.length;
+      int capacity = AggUtils.growCapacity(oldCapacity, numGroups);
+      count = Arrays.copyOf(count, capacity);
+      if (needsSum) {
+        sum = Arrays.copyOf(sum, capacity);
+      }
+      if (needsSumSq) {
+        sumSquared = Arrays.copyOf(sumSquared, capacity);
+      }
+      if (needsMin) {
+        min = Arrays.copyOf(min, capacity);
+        Arrays.fill(min, oldCapacity, capacity, Long.MAX_VALUE);
+      }
+      if (needsMax) {
+        max = Arrays.copyOf(max, capacity);
+        Arrays.fill(max, oldCapacity, capacity, Long.MIN_VALUE);
+      }
+    }
+  }
 }
@@ -1,6 +1,7 @@
 package edu.washington.escience.myria.operator.agg;
 
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 
@@ -29,6 +30,12 @@ import edu.washington.escience.myria.util.HashUtils;
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max, min). This variant supports aggregates over
  * multiple columns, group by multiple columns.
  * 
+ * It can also compute either phase of a two-phase aggregation, see {@link AggregationPhase}. In the
+ * {@link AggregationPhase#PARTIAL} phase its memory is bounded: once an input batch brings the number of groups to
+ * {@link #MAX_PARTIAL_GROUPS}, it outputs their partial states and starts over. In the
+ * {@link AggregationPhase#FINAL} phase, the partial states of the aggregates are read from the input columns that
+ * follow the grouping columns.
+ * 
  * @see Aggregate
  * @see SingleGroupByAggregate
  */
@@ -36,13 +43,24 @@ public final class MultiGroupByAggregate extends UnaryOperator {
 
   /** Java requires this. **/
   private static final long serialVersionUID = 1L;
+  /** The number of groups after which the {@link AggregationPhase#PARTIAL} phase outputs their partial states. */
+  public static final int MAX_PARTIAL_GROUPS = 1 << 16;
 
   /** Holds the distinct grouping keys. */
   private transient TupleBuffer groupKeys;
   /** Final group keys. */
   private List<TupleBatch> groupKeyList;
-  /** Holds the corresponding aggregation state for each group key in {@link #groupKeys}. */
-  private transient List<Object[]> aggStates;
+  /** Partial states that have been output early to bound memory, but not yet returned. */
+  private transient List<TupleBatch> partialResults;
+  /**
+   * The aggregation state of all groups, one per aggregator: for a {@link GroupedAggregator} its grouped state, indexed
+   * by the position of the group key in {@link #groupKeys}, otherwise a list of the state of each group.
+   */
+  private transient Object[] groupStates;
+  /** The group of each row of the current input batch. */
+  private transient int[] groupIds;
+  /** The group of the first row of the next result batch. */
+  private transient int resultOffset;
   /** Maps the hash of a grouping key to a list of indices in {@link #groupKeys}. */
   private transient IntObjectHashMap<IntArrayList> groupKeyMap;
   /** The schema of the columns indicated by the group keys. */
@@ -58,6 +76,8 @@ public final class MultiGroupByAggregate extends UnaryOperator {
   private final int[] gfields;
   /** An array [0, 1, .., gfields.length-1] used for comparing tuples. */
   private final int[] grpRange;
+  /** Which phase of the aggregation this operator computes. */
+  private final AggregationPhase phase;
 
   /**
    * Groups the input tuples according to the specified grouping fields, then produces the specified aggregates.
@@ -68,24 +88,46 @@ public final class MultiGroupByAggregate extends UnaryOperator {
    */
   public MultiGroupByAggregate(@Nullable final Operator child, final int[] gfields,
       final AggregatorFactory... factories) {
+    this(child, gfields, AggregationPhase.COMPLETE, factories);
+  }
+
+  /**
+   * Groups the input tuples according to the specified grouping fields, then computes the specified phase of the
+   * specified aggregates.
+   * 
+   * @param child The Operator that is feeding us tuples.
+   * @param gfields The columns over which we are grouping the result.
+   * @param phase Which phase of the aggregation to compute.
+   * @param factories The factories that will produce the {@link Aggregator}s for each group..
+   */
+  public MultiGroupByAggregate(@Nullable final Operator child, final int[] gfields, final AggregationPhase phase,
+      final AggregatorFactory... factories) {
     super(child);
     this.gfields = Objects.requireNonNull(gfields, "gfields");
     this.factories = Objects.requireNonNull(factories, "factories");
-    Preconditions.checkArgument(gfields.length > 1, "to use MultiGroupByAggregate, must group over multiple fields");
+    this.phase = Objects.requireNonNull(phase, "phase");
+    if (phase == AggregationPhase.COMPLETE) {
+      Preconditions.checkArgument(gfields.length > 1, "to use MultiGroupByAggregate, must group over multiple fields");
+    } else {
+      Preconditions.checkArgument(gfields.length > 0, "to aggregate in two phases, must group over some fields");
+    }
     Preconditions.checkArgument(factories.length != 0, "to use MultiGroupByAggregate, must specify some aggregates");
     grpRange = new int[gfields.length];
     for (int i = 0; i < gfields.length; ++i) {
       grpRange[i] = i;
     }
     groupKeyList = null;
+    partialResults = null;
   }
 
   @Override
   protected void cleanup() throws DbException {
     groupKeys = null;
-    aggStates = null;
+    groupStates = null;
+    groupIds = null;
     groupKeyMap = null;
     groupKeyList = null;
+    partialResults = null;
   }
 
   /**
@@ -100,34 +142,30 @@ public final class MultiGroupByAggregate extends UnaryOperator {
   protected TupleBatch fetchNextReady() throws DbException {
     final Operator child = getChild();
 
+    if (!partialResults.isEmpty()) {
+      return partialResults.remove(0);
+    }
     if (child.eos()) {
       return getResultBatch();
     }
 
     TupleBatch tb = child.nextReady();
     while (tb != null) {
-      for (int row = 0; row < tb.numTuples(); ++row) {
-        int rowHash = HashUtils.hashSubRow(tb, gfields, row);
-        IntArrayList hashMatches = groupKeyMap.get(rowHash);
-        if (hashMatches == null) {
-          hashMatches = newKey(rowHash);
-          newGroup(tb, row, hashMatches);
-          continue;
-        }
-        boolean found = false;
-        for (int i = 0; i < hashMatches.size(); i++) {
-          int value = hashMatches.get(i);
-          if (TupleUtils.tupleEquals(tb, gfields, row, groupKeys, grpRange, value)) {
-            updateGroup(tb, row, aggStates.get(value));
-            found = true;
-            break;
-          }
-        }
-
-        if (!found) {
-          newGroup(tb, row, hashMatches);
-        }
-        Preconditions.checkState(groupKeys.numTuples() == aggStates.size());
+      final int numTuples = tb.numTuples();
+      if (groupIds.length < numTuples) {
+        groupIds = new int[numTuples];
+      }
+      final int[] hashCodes = HashUtils.hashSubRows(tb, gfields);
+      for (int row = 0; row < numTuples; ++row) {
+        groupIds[row] = findGroup(tb, row, hashCodes[row]);
+      }
+      final int numGroups = groupKeys.numTuples();
+      for (int agg = 0; agg < aggregators.length; ++agg) {
+        updateGroups(agg, tb, numGroups);
+      }
+      if (phase == AggregationPhase.PARTIAL && numGroups >= MAX_PARTIAL_GROUPS) {
+        flushPartialStates();
+        return partialResults.remove(0);
       }
       tb = child.nextReady();
     }
@@ -143,6 +181,29 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     return null;
   }
 
+  /**
+   * Find the group of the specified row, creating a new group if the grouping key has not been seen before.
+   * 
+   * @param tb the source {@link TupleBatch}
+   * @param row the row in <code>tb</code>
+   * @param rowHash the hash of the grouping columns of the row
+   * @return the index of the group in {@link #groupKeys}.
+   */
+  private int findGroup(final TupleBatch tb, final int row, final int rowHash) {
+    IntArrayList hashMatches = groupKeyMap.get(rowHash);
+    if (hashMatches == null) {
+      hashMatches = newKey(rowHash);
+    } else {
+      for (int i = 0; i < hashMatches.size(); i++) {
+        int value = hashMatches.get(i);
+        if (TupleUtils.tupleEquals(tb, gfields, row, groupKeys, grpRange, value)) {
+          return value;
+        }
+      }
+    }
+    return newGroup(tb, row, hashMatches);
+  }
+
   /**
    * Since row <code>row</code> in {@link TupleBatch} <code>tb</code> does not appear in {@link #groupKeys}, create a
    * new group for it.
@@ -150,19 +211,21 @@ public final class MultiGroupByAggregate extends UnaryOperator {
    * @param tb the source {@link TupleBatch}
    * @param row the row in <code>tb</code> that contains the new group
    * @param hashMatches the list of all rows in the output {@link TupleBuffer}s that match this hash.
-   * @throws DbException if there is an error.
+   * @return the index of the new group in {@link #groupKeys}.
    */
-  private void newGroup(final TupleBatch tb, final int row, final IntArrayList hashMatches) throws DbException {
+  @SuppressWarnings("unchecked")
+  private int newGroup(final TupleBatch tb, final int row, final IntArrayList hashMatches) {
     int newIndex = groupKeys.numTuples();
     for (int column = 0; column < gfields.length; ++column) {
       TupleUtils.copyValue(tb, gfields[column], row, groupKeys, column);
     }
     hashMatches.add(newIndex);
-    Object[] curAggStates = AggUtils.allocateAggStates(aggregators);
-    aggStates.add(curAggStates);
-    updateGroup(tb, row, curAggStates);
-    Preconditions.checkState(groupKeys.numTuples() == aggStates.size(), "groupKeys %s != groupAggs %s", groupKeys
-        .numTuples(), aggStates.size());
+    for (int agg = 0; agg < aggregators.length; ++agg) {
+      if (!(aggregators[agg] instanceof GroupedAggregator)) {
+        ((List<Object>) groupStates[agg]).add(aggregators[agg].getInitialState());
+      }
+    }
+    return newIndex;
   }
 
   /**
@@ -179,16 +242,51 @@ public final class MultiGroupByAggregate extends UnaryOperator {
   }
 
   /**
-   * Update the aggregation states with the tuples in the specified row.
+   * Update the state of one aggregator with all the rows of the specified batch, whose groups are in
+   * {@link #groupIds}.
    * 
+   * @param agg the index of the aggregator.
    * @param tb the source {@link TupleBatch}
-   * @param row the row in <code>tb</code> that contains the new values
-   * @param curAggStates the aggregation states to be updated.
+   * @param numGroups the number of groups.
    * @throws DbException if there is an error.
    */
-  private void updateGroup(final TupleBatch tb, final int row, final Object[] curAggStates) throws DbException {
-    for (int agg = 0; agg < aggregators.length; ++agg) {
-      aggregators[agg].addRow(tb, row, curAggStates[agg]);
+  @SuppressWarnings("unchecked")
+  private void updateGroups(final int agg, final TupleBatch tb, final int numGroups) throws DbException {
+    Aggregator aggregator = aggregators[agg];
+    if (phase == AggregationPhase.FINAL) {
+      ((GroupedAggregator) aggregator).addPartialBatch(tb, groupIds, numGroups, groupStates[agg]);
+      return;
+    }
+    if (aggregator instanceof GroupedAggregator) {
+      ((GroupedAggregator) aggregator).addBatch(tb, groupIds, numGroups, groupStates[agg]);
+      return;
+    }
+    List<Object> states = (List<Object>) groupStates[agg];
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      aggregator.addRow(tb, row, states.get(groupIds[row]));
+    }
+  }
+
+  /**
+   * Append the result of one aggregator for the specified group, or its partial state in the
+   * {@link AggregationPhase#PARTIAL} phase.
+   * 
+   * @param agg the index of the aggregator.
+   * @param dest where to store the aggregate result.
+   * @param destColumn the starting index into which aggregates will be output.
+   * @param groupId the index of the group in {@link #groupKeys}.
+   * @throws DbException if there is an error.
+   */
+  @SuppressWarnings("unchecked")
+  private void getGroupResult(final int agg, final TupleBatchBuffer dest, final int destColumn, final int groupId)
+      throws DbException {
+    Aggregator aggregator = aggregators[agg];
+    if (phase == AggregationPhase.PARTIAL) {
+      ((GroupedAggregator) aggregator).getGroupPartialResult(dest, destColumn, groupId, groupStates[agg]);
+    } else if (aggregator instanceof GroupedAggregator) {
+      ((GroupedAggregator) aggregator).getGroupResult(dest, destColumn, groupId, groupStates[agg]);
+    } else {
+      aggregator.getResult(dest, destColumn, ((List<Object>) groupStates[agg]).get(groupId));
     }
   }
 
@@ -208,21 +306,44 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     }
 
     TupleBatch curGroupKeys = groupKeyList.remove(0);
+    TupleBatch ret = getResultBatch(curGroupKeys, resultOffset);
+    resultOffset += curGroupKeys.numTuples();
+    return ret;
+  }
+
+  /**
+   * Output the partial states of all groups seen so far, then forget the groups.
+   * 
+   * @throws DbException if there is an error.
+   */
+  private void flushPartialStates() throws DbException {
+    int firstGroup = 0;
+    for (TupleBatch curGroupKeys : groupKeys.finalResult()) {
+      partialResults.add(getResultBatch(curGroupKeys, firstGroup));
+      firstGroup += curGroupKeys.numTuples();
+    }
+    resetGroups();
+  }
+
+  /**
+   * @param curGroupKeys the keys of consecutive groups.
+   * @param firstGroup the index of the first of these groups in {@link #groupKeys}.
+   * @return the result tuples of these groups.
+   * @throws DbException if there is an error.
+   */
+  private TupleBatch getResultBatch(final TupleBatch curGroupKeys, final int firstGroup) throws DbException {
     TupleBatchBuffer curGroupAggs = new TupleBatchBuffer(aggSchema);
     for (int row = 0; row < curGroupKeys.numTuples(); ++row) {
-      Object[] rowAggs = aggStates.get(row);
       int curCol = 0;
       for (int agg = 0; agg < aggregators.length; ++agg) {
-        aggregators[agg].getResult(curGroupAggs, curCol, rowAggs[agg]);
-        curCol += aggregators[agg].getResultSchema().numColumns();
+        getGroupResult(agg, curGroupAggs, curCol, firstGroup + row);
+        curCol += AggUtils.getOutputSchema(aggregators[agg], phase).numColumns();
       }
     }
     TupleBatch aggResults = curGroupAggs.popAny();
     Preconditions.checkState(curGroupKeys.numTuples() == aggResults.numTuples(),
         "curGroupKeys size %s != aggResults size %s", curGroupKeys.numTuples(), aggResults.numTuples());
 
-    /* Note: as of Java7 sublists of sublists do what we want -- the sublists are at most one deep. */
-    aggStates = aggStates.subList(curGroupKeys.numTuples(), aggStates.size());
     return new TupleBatch(getSchema(), ImmutableList.<Column<?>> builder().addAll(curGroupKeys.getDataColumns())
         .addAll(aggResults.getDataColumns()).build());
   }
@@ -250,8 +371,8 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     final ImmutableList.Builder<String> aggNames = ImmutableList.<String> builder();
 
     try {
-      for (Aggregator agg : AggUtils.allocateAggs(factories, inputSchema)) {
-        Schema curAggSchema = agg.getResultSchema();
+      for (Aggregator agg : AggUtils.allocateAggs(factories, inputSchema, phase, gfields.length)) {
+        Schema curAggSchema = AggUtils.getOutputSchema(agg, phase);
         aggTypes.addAll(curAggSchema.getColumnTypes());
         aggNames.addAll(curAggSchema.getColumnNames());
       }
@@ -265,9 +386,26 @@ public final class MultiGroupByAggregate extends UnaryOperator {
   @Override
   protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     Preconditions.checkState(getSchema() != null, "unable to determine schema in init");
-    aggregators = AggUtils.allocateAggs(factories, getChild().getSchema());
+    aggregators = AggUtils.allocateAggs(factories, getChild().getSchema(), phase, gfields.length);
+    resetGroups();
+    groupIds = new int[TupleBatch.BATCH_SIZE];
+    resultOffset = 0;
+    partialResults = new LinkedList<>();
+  }
+
+  /**
+   * Start over with no groups.
+   */
+  private void resetGroups() {
     groupKeys = new TupleBuffer(groupSchema);
-    aggStates = new ArrayList<>();
+    groupStates = new Object[aggregators.length];
+    for (int agg = 0; agg < aggregators.length; ++agg) {
+      if (aggregators[agg] instanceof GroupedAggregator) {
+        groupStates[agg] = ((GroupedAggregator) aggregators[agg]).getInitialGroupedState();
+      } else {
+        groupStates[agg] = new ArrayList<Object>();
+      }
+    }
     groupKeyMap = new IntObjectHashMap<>();
   }
 };
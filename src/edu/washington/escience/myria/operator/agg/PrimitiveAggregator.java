@@ -16,7 +16,7 @@ import edu.washington.escience.myria.Type;
  * Single column aggregator.
  */
 @SuppressWarnings("checkstyle:visibilitymodifier")
-public abstract class PrimitiveAggregator implements Aggregator, Serializable {
+public abstract class PrimitiveAggregator implements GroupedAggregator, Serializable {
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
@@ -67,6 +67,12 @@ public abstract class PrimitiveAggregator implements Aggregator, Serializable {
    */
   private final Schema resultSchema;
 
+  /**
+   * Partial state schema. It's automatically generated according to the {@link #aggOps}, see
+   * {@link GroupedAggregator#getPartialSchema()}.
+   */
+  private final Schema partialSchema;
+
   /**
    * Instantiate a PrimitiveAggregator that computes the specified aggregates.
    * 
@@ -126,6 +132,30 @@ public abstract class PrimitiveAggregator implements Aggregator, Serializable {
       }
     }
     resultSchema = new Schema(types, names);
+
+    final ImmutableList.Builder<Type> partialTypes = ImmutableList.builder();
+    final ImmutableList.Builder<String> partialNames = ImmutableList.builder();
+    if (needsCount) {
+      partialTypes.add(Type.LONG_TYPE);
+      partialNames.add("count_" + fieldName);
+    }
+    if (needsSum) {
+      partialTypes.add(getSumType());
+      partialNames.add("sum_" + fieldName);
+    }
+    if (needsSumSq) {
+      partialTypes.add(getSumType());
+      partialNames.add("sumsq_" + fieldName);
+    }
+    if (needsMin) {
+      partialTypes.add(getType());
+      partialNames.add("min_" + fieldName);
+    }
+    if (needsMax) {
+      partialTypes.add(getType());
+      partialNames.add("max_" + fieldName);
+    }
+    partialSchema = new Schema(partialTypes, partialNames);
   }
 
   /**
@@ -151,4 +181,9 @@ public abstract class PrimitiveAggregator implements Aggregator, Serializable {
   public final Schema getResultSchema() {
     return resultSchema;
   }
+
+  @Override
+  public final Schema getPartialSchema() {
+    return partialSchema;
+  }
 }
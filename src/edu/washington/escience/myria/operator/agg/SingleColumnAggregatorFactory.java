@@ -1,10 +1,12 @@
 package edu.washington.escience.myria.operator.agg;
 
 import java.util.Objects;
+import java.util.Set;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
 
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
@@ -45,23 +47,61 @@ public class SingleColumnAggregatorFactory implements AggregatorFactory {
   public Aggregator get(final Schema inputSchema) {
     Objects.requireNonNull(inputSchema, "inputSchema");
     Objects.requireNonNull(aggOps, "aggOps");
-    String inputName = inputSchema.getColumnName(column);
-    Type type = inputSchema.getColumnType(column);
+    return newAggregator(inputSchema.getColumnType(column), inputSchema.getColumnName(column), column);
+  }
+
+  @Override
+  public GroupedAggregator getFinal(final Schema inputSchema, final int partialColumn) {
+    Objects.requireNonNull(inputSchema, "inputSchema");
+    Objects.requireNonNull(aggOps, "aggOps");
+    /*
+     * The partial states do not record the type of the aggregated column, but they hold everything the results depend
+     * on: the minimum and maximum are of that type, and the sums are of its SUM type, which a LONG or DOUBLE aggregator
+     * reproduces. A count alone does not depend on the type at all.
+     */
+    Set<AggregationOp> ops = ImmutableSet.copyOf(aggOps);
+    int offset = 0;
+    if (AggUtils.needsCount(ops)) {
+      offset++;
+    }
+    Type type = Type.LONG_TYPE;
+    if (AggUtils.needsSum(ops)) {
+      type = inputSchema.getColumnType(partialColumn + offset);
+      offset++;
+    }
+    if (AggUtils.needsSumSq(ops)) {
+      offset++;
+    }
+    if (AggUtils.needsMin(ops) || AggUtils.needsMax(ops)) {
+      type = inputSchema.getColumnType(partialColumn + offset);
+    }
+    String partialName = inputSchema.getColumnName(partialColumn);
+    String inputName = partialName.substring(partialName.indexOf('_') + 1);
+    return newAggregator(type, inputName, partialColumn);
+  }
+
+  /**
+   * @param type the type of the aggregated column.
+   * @param inputName the name of the aggregated column.
+   * @param fromColumn which column of the input the aggregator reads.
+   * @return a new aggregator of the requested aggregates for the specified type.
+   */
+  private PrimitiveAggregator newAggregator(final Type type, final String inputName, final int fromColumn) {
     switch (type) {
       case BOOLEAN_TYPE:
-        return new BooleanAggregator(inputName, aggOps, column);
+        return new BooleanAggregator(inputName, aggOps, fromColumn);
       case DATETIME_TYPE:
-        return new DateTimeAggregator(inputName, aggOps, column);
+        return new DateTimeAggregator(inputName, aggOps, fromColumn);
       case DOUBLE_TYPE:
-        return new DoubleAggregator(inputName, aggOps, column);
+        return new DoubleAggregator(inputName, aggOps, fromColumn);
       case FLOAT_TYPE:
-        return new FloatAggregator(inputName, aggOps, column);
+        return new FloatAggregator(inputName, aggOps, fromColumn);
       case INT_TYPE:
-        return new IntegerAggregator(inputName, aggOps, column);
+        return new IntegerAggregator(inputName, aggOps, fromColumn);
       case LONG_TYPE:
-        return new LongAggregator(inputName, aggOps, column);
+        return new LongAggregator(inputName, aggOps, fromColumn);
       case STRING_TYPE:
-        return new StringAggregator(inputName, aggOps, column);
+        return new StringAggregator(inputName, aggOps, fromColumn);
     }
     throw new IllegalArgumentException("Unknown column type: " + type);
   }
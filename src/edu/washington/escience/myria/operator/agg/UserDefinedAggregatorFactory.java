@@ -151,4 +151,9 @@ public class UserDefinedAggregatorFactory implements AggregatorFactory {
     }
     return new Schema(typesBuilder.build(), namesBuilder.build());
   }
+
+  @Override
+  public GroupedAggregator getFinal(final Schema inputSchema, final int column) throws DbException {
+    throw new DbException("user-defined aggregates cannot be computed in two phases");
+  }
 }
@@ -1,14 +1,22 @@
 package edu.washington.escience.myria.operator.network;
 
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction;
 import edu.washington.escience.myria.parallel.ExchangePairID;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.HashUtils;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
+import edu.washington.escience.myria.util.SpaceSavingSketch;
 
 /**
  * GenericShuffleProducer, which support json encoding of 1. Broadcast Shuffle 2. One to one Shuffle (Shuffle) 3. Hyper
@@ -18,6 +26,8 @@ public class GenericShuffleProducer extends Producer {
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
+  /** The logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(GenericShuffleProducer.class);
 
   /**
    * the partition function.
@@ -29,6 +39,11 @@ public class GenericShuffleProducer extends Producer {
    */
   private final int[][] partitionToChannel;
 
+  /** Counts the partitioning keys of the first tuples, if the partition function asks to report heavy hitters. */
+  private transient SpaceSavingSketch sketch;
+  /** Whether the heavy hitters have been reported, or need not be. */
+  private transient boolean heavyHittersReported;
+
   /**
    * Shuffle to the same operator ID on multiple workers. (The old "ShuffleProducer")
    * 
@@ -91,6 +106,9 @@ public class GenericShuffleProducer extends Producer {
 
   @Override
   protected final void consumeTuples(final TupleBatch tup) throws DbException {
+    if (!heavyHittersReported) {
+      sketchKeys(tup);
+    }
     final TupleBatch[] partitions = getTupleBatchPartitions(tup);
 
     if (getProfilingMode().contains(ProfilingMode.QUERY)) {
@@ -107,6 +125,49 @@ public class GenericShuffleProducer extends Producer {
     writePartitionsIntoChannels(true, partitionToChannel, partitions);
   }
 
+  /**
+   * Count the partitioning keys of the specified tuples until the sample is complete, then report the heavy hitters.
+   * 
+   * @param tup the tuples.
+   * @throws DbException if the heavy hitters cannot be recorded.
+   */
+  private void sketchKeys(final TupleBatch tup) throws DbException {
+    if (!(partitionFunction instanceof SkewAwareHashPartitionFunction)
+        || ((SkewAwareHashPartitionFunction) partitionFunction).getSampleSize() == 0) {
+      heavyHittersReported = true;
+      return;
+    }
+    SkewAwareHashPartitionFunction pf = (SkewAwareHashPartitionFunction) partitionFunction;
+    if (sketch == null) {
+      sketch = SpaceSavingSketch.forFraction(pf.getHeavyHitterFraction());
+    }
+    int[] hashes = HashUtils.hashSubRows(tup, pf.getIndexes());
+    int numSketched = (int) Math.min(hashes.length, pf.getSampleSize() - sketch.getTotal());
+    for (int i = 0; i < numSketched; ++i) {
+      sketch.add(hashes[i]);
+    }
+    if (sketch.getTotal() == pf.getSampleSize()) {
+      reportHeavyHitters();
+    }
+  }
+
+  /**
+   * Report the heavy hitters among the sketched keys, in the profiling logs if the query is profiled. They are only
+   * reported: a key spread by this producer alone would miss its matches on the other side of a join.
+   * 
+   * @throws DbException if the heavy hitters cannot be recorded.
+   */
+  private void reportHeavyHitters() throws DbException {
+    SkewAwareHashPartitionFunction pf = (SkewAwareHashPartitionFunction) partitionFunction;
+    int[] detected = sketch.getHeavyHitters(pf.getHeavyHitterFraction());
+    sketch = null;
+    heavyHittersReported = true;
+    LOGGER.info("Shuffle producer {} found heavy hitters with key hashes {}", getOpId(), Arrays.toString(detected));
+    if (getProfilingMode().contains(ProfilingMode.QUERY)) {
+      getProfilingLogger().recordHeavyHitters(this, detected);
+    }
+  }
+
   /**
    * call partition function to partition this tuple batch as an array of shallow copies of TupleBatch. subclasses can
    * override this method to have smarter partition approach.
@@ -120,6 +181,10 @@ public class GenericShuffleProducer extends Producer {
 
   @Override
   protected void childEOS() throws DbException {
+    if (sketch != null) {
+      /* The input was smaller than the sample. */
+      reportHeavyHitters();
+    }
     writePartitionsIntoChannels(false, partitionToChannel, null);
     for (int p = 0; p < numChannels(); p++) {
       super.channelEnds(p);
@@ -4,7 +4,9 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.local.LocalChannel;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
@@ -197,7 +199,7 @@ public abstract class Producer extends RootOperator {
         (LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
     partitionBuffers = new TupleBatchBuffer[numOfPartition];
     for (int i = 0; i < numOfPartition; i++) {
-      partitionBuffers[i] = new TupleBatchBuffer(getSchema());
+      partitionBuffers[i] = new TupleBatchBuffer(getSchema(), getBatchTargetBytes());
     }
     ioChannels = new StreamOutputChannel[outputIDs.length];
     ioChannelsAvail = new boolean[outputIDs.length];
@@ -325,6 +327,22 @@ public abstract class Producer extends RootOperator {
     }
   }
 
+  /**
+   * Release the reference a channel holds on a TB that has just been written to it, if the TB is gone from this
+   * process. Writes to a remote channel serialize the TB in the writing thread, so afterwards nothing reads its arrays
+   * any more. A local channel hands the TB itself to the consumer, which may keep it, so the reference is never
+   * released and the arrays are left to the garbage collector.
+   * 
+   * @param chIdx the channel the TB was written to.
+   * @param tb the TB.
+   */
+  private void releaseIfSerialized(final int chIdx, final TupleBatch tb) {
+    Channel ioChannel = ioChannels[chIdx].getIOChannel();
+    if (ioChannel != null && !(ioChannel instanceof LocalChannel)) {
+      tb.release();
+    }
+  }
+
   /**
    * Pop tuple batches from each of the buffers and try to write them to corresponding channels, if possible.
    * 
@@ -383,8 +401,11 @@ public abstract class Producer extends RootOperator {
             if (!ioChannelsAvail[j] && mode.equals(FTMode.ABANDON)) {
               continue;
             }
+            tb.retain();
             pendingTuplesToSend.get(j).add(tb);
           }
+          /* Each channel now holds its own reference, so the one popped from the buffer can go. */
+          tb.release();
         }
       }
     }
@@ -403,8 +424,8 @@ public abstract class Producer extends RootOperator {
           tb = triedToSendTuples.get(i).update(tb);
         }
         try {
-          if (tb != null) {
-            writeMessage(i, tb);
+          if (tb != null && writeMessage(i, tb) != null && !totallyLocal && !mode.equals(FTMode.REJOIN)) {
+            releaseIfSerialized(i, tb);
           }
         } catch (IllegalStateException e) {
           if (mode.equals(FTMode.ABANDON)) {
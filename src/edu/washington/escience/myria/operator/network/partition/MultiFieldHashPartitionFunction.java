@@ -67,9 +67,9 @@ public final class MultiFieldHashPartitionFunction extends PartitionFunction {
 
   @Override
   public int[] partition(@Nonnull final TupleBatch tb) {
-    final int[] result = new int[tb.numTuples()];
+    final int[] result = HashUtils.hashSubRows(tb, indexes);
     for (int i = 0; i < result.length; i++) {
-      int p = HashUtils.hashSubRow(tb, indexes, i) % numPartition();
+      int p = result[i] % numPartition();
       if (p < 0) {
         p = p + numPartition();
       }
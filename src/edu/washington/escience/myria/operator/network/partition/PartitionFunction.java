@@ -23,12 +23,16 @@ import edu.washington.escience.myria.storage.TupleBatch;
     @Type(value = RoundRobinPartitionFunction.class, name = "RoundRobin"),
     @Type(value = SingleFieldHashPartitionFunction.class, name = "SingleFieldHash"),
     @Type(value = MultiFieldHashPartitionFunction.class, name = "MultiFieldHash"),
+    @Type(value = SkewAwareHashPartitionFunction.class, name = "SkewAwareHash"),
     @Type(value = WholeTupleHashPartitionFunction.class, name = "WholeTupleHash") })
 public abstract class PartitionFunction implements Serializable {
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
 
+  /** Returned by {@link #partition(TupleBatch)} for a tuple that goes to every partition. */
+  public static final int ALL_PARTITIONS = -1;
+
   /**
    * The number of partitions into which input tuples can be divided.
    */
@@ -61,7 +65,7 @@ public abstract class PartitionFunction implements Serializable {
    * @param data the data to be partitioned.
    * 
    * @return an int[] of length specified by <code>data.{@link TupleBatch#numTuples}</code>, specifying which partition
-   *         every tuple should be sent to.
+   *         every tuple should be sent to, or {@link #ALL_PARTITIONS}.
    * 
    */
   public abstract int[] partition(@Nonnull final TupleBatch data);
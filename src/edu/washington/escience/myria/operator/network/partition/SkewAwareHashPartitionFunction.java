@@ -0,0 +1,206 @@
+package edu.washington.escience.myria.operator.network.partition;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.HashUtils;
+import edu.washington.escience.myria.util.SpaceSavingSketch;
+
+/**
+ * Hash partitions tuples on one or more fields like {@link MultiFieldHashPartitionFunction}, except for the tuples of
+ * heavy hitters, i.e., keys so frequent that the worker they hash to would receive far more tuples than the others.
+ * The tuples of a heavy hitter are instead spread round-robin over all partitions or, on the other side of a join,
+ * sent to all partitions, so that every spread tuple still meets its matches. Spreading is only valid for the input of
+ * a join whose other input broadcasts the same heavy hitters; the plan is rejected otherwise.
+ *
+ * Heavy hitters are listed in the plan, either by key or by the hash of their key as computed by
+ * {@link HashUtils#hashSubRows}, so both sides of a join must hash keys of the same types. A producer cannot tell the
+ * producers of the other side of a join which keys it spreads, so keys are never spread because they were found at
+ * runtime. Instead, the producer can sketch the keys of its first tuples (see {@link SpaceSavingSketch}) and record the
+ * hashes of the frequent ones in the profiling logs, to be listed as heavy hitters of later queries.
+ */
+public final class SkewAwareHashPartitionFunction extends PartitionFunction {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The default smallest share of the sketched tuples a key must have to be reported as a heavy hitter. */
+  public static final double DEFAULT_HEAVY_HITTER_FRACTION = 0.01;
+
+  /** The indices used for partitioning. */
+  @JsonProperty
+  private final int[] indexes;
+  /** The hashes of the keys known to be heavy hitters. */
+  @JsonProperty
+  private final int[] heavyHitters;
+  /** The keys known to be heavy hitters, one value per partitioning field, parsed as the type of the field. */
+  @JsonProperty
+  private final List<List<String>> heavyHitterKeys;
+  /** Whether tuples of heavy hitters are sent to all partitions, instead of spread over them. */
+  @JsonProperty
+  private final boolean broadcastHeavyHitters;
+  /** How many tuples the producer sketches to report heavy hitters, 0 to not look for them. */
+  @JsonProperty
+  private final int sampleSize;
+  /** The smallest share of the sketched tuples a key must have to be reported as a heavy hitter. */
+  @JsonProperty
+  private final double heavyHitterFraction;
+
+  /** The hashes of the heavy hitters. */
+  private transient Set<Integer> heavy;
+  /** The partition that receives the next spread tuple. */
+  private transient int nextSpread;
+
+  /**
+   * @param numPartitions number of partitions.
+   * @param indexes the indices used for partitioning.
+   * @param heavyHitters the hashes of the keys known to be heavy hitters, or null.
+   * @param heavyHitterKeys the keys known to be heavy hitters, one value per partitioning field, or null.
+   * @param broadcastHeavyHitters whether tuples of heavy hitters are sent to all partitions, instead of spread over
+   *          them. Null means false.
+   * @param sampleSize how many tuples the producer sketches to report heavy hitters. Null or 0 means none are searched
+   *          for.
+   * @param heavyHitterFraction the smallest share of the sketched tuples a key must have to be reported as a heavy
+   *          hitter. Null means {@link #DEFAULT_HEAVY_HITTER_FRACTION}.
+   */
+  @JsonCreator
+  public SkewAwareHashPartitionFunction(@Nullable @JsonProperty("numPartitions") final Integer numPartitions,
+      @JsonProperty(value = "indexes", required = true) final int[] indexes,
+      @Nullable @JsonProperty("heavyHitters") final int[] heavyHitters,
+      @Nullable @JsonProperty("heavyHitterKeys") final List<List<String>> heavyHitterKeys,
+      @Nullable @JsonProperty("broadcastHeavyHitters") final Boolean broadcastHeavyHitters,
+      @Nullable @JsonProperty("sampleSize") final Integer sampleSize,
+      @Nullable @JsonProperty("heavyHitterFraction") final Double heavyHitterFraction) {
+    super(numPartitions);
+    this.indexes = Objects.requireNonNull(indexes, "indexes");
+    Preconditions.checkArgument(indexes.length > 0, "SkewAwareHash requires at least 1 field to hash");
+    for (int i = 0; i < indexes.length; ++i) {
+      Preconditions.checkArgument(indexes[i] >= 0, "SkewAwareHash field index %s cannot take negative value %s", i,
+          indexes[i]);
+    }
+    this.heavyHitters = MoreObjects.firstNonNull(heavyHitters, new int[0]);
+    this.heavyHitterKeys = MoreObjects.firstNonNull(heavyHitterKeys, ImmutableList.<List<String>> of());
+    for (List<String> key : this.heavyHitterKeys) {
+      Preconditions.checkArgument(key.size() == indexes.length, "heavy hitter key %s must have %s values", key,
+          indexes.length);
+    }
+    this.broadcastHeavyHitters = MoreObjects.firstNonNull(broadcastHeavyHitters, Boolean.FALSE);
+    this.sampleSize = MoreObjects.firstNonNull(sampleSize, 0);
+    this.heavyHitterFraction = MoreObjects.firstNonNull(heavyHitterFraction, DEFAULT_HEAVY_HITTER_FRACTION);
+    Preconditions.checkArgument(this.sampleSize >= 0, "sampleSize cannot be negative");
+    Preconditions.checkArgument(this.heavyHitterFraction > 0 && this.heavyHitterFraction <= 1,
+        "heavyHitterFraction must be in (0, 1]");
+  }
+
+  /**
+   * @return the field indexes on which tuples will be hash partitioned.
+   */
+  public int[] getIndexes() {
+    return indexes;
+  }
+
+  /**
+   * @return whether any heavy hitters are listed.
+   */
+  public boolean hasHeavyHitters() {
+    return heavyHitters.length > 0 || !heavyHitterKeys.isEmpty();
+  }
+
+  /**
+   * @return whether tuples of heavy hitters are sent to all partitions, instead of spread over them.
+   */
+  public boolean isBroadcastHeavyHitters() {
+    return broadcastHeavyHitters;
+  }
+
+  /**
+   * @return how many tuples the producer sketches to report heavy hitters, 0 to not look for them.
+   */
+  public int getSampleSize() {
+    return sampleSize;
+  }
+
+  /**
+   * @return the smallest share of the sketched tuples a key must have to be reported as a heavy hitter.
+   */
+  public double getHeavyHitterFraction() {
+    return heavyHitterFraction;
+  }
+
+  /**
+   * Compute the hashes that identify the specified keys as heavy hitters, i.e., the hashes
+   * {@link HashUtils#hashSubRows} computes for tuples with these values in the partitioning fields.
+   *
+   * @param schema the schema of the partitioned tuples.
+   * @param indexes the indices used for partitioning.
+   * @param keys the keys, one value per partitioning field, parsed as the type of the field.
+   * @return the hashes of the keys.
+   */
+  public static int[] hashKeys(final Schema schema, final int[] indexes, final List<List<String>> keys) {
+    Schema keySchema = schema.getSubSchema(indexes);
+    TupleBatchBuffer buffer = new TupleBatchBuffer(keySchema);
+    for (List<String> key : keys) {
+      Preconditions.checkArgument(key.size() == indexes.length, "heavy hitter key %s must have %s values", key,
+          indexes.length);
+      for (int i = 0; i < indexes.length; ++i) {
+        Type type = keySchema.getColumnType(i);
+        buffer.putObject(i, type.fromString(key.get(i)));
+      }
+    }
+    int[] keyColumns = new int[indexes.length];
+    for (int i = 0; i < keyColumns.length; ++i) {
+      keyColumns[i] = i;
+    }
+    int[] ret = new int[keys.size()];
+    int numHashed = 0;
+    for (TupleBatch tb : buffer.getAll()) {
+      System.arraycopy(HashUtils.hashSubRows(tb, keyColumns), 0, ret, numHashed, tb.numTuples());
+      numHashed += tb.numTuples();
+    }
+    return ret;
+  }
+
+  @Override
+  public int[] partition(@Nonnull final TupleBatch tb) {
+    if (heavy == null) {
+      heavy =
+          ImmutableSet.<Integer> builder().addAll(Ints.asList(heavyHitters)).addAll(
+              Ints.asList(hashKeys(tb.getSchema(), indexes, heavyHitterKeys))).build();
+    }
+    final int numPartitions = numPartition();
+    final int[] result = HashUtils.hashSubRows(tb, indexes);
+    for (int i = 0; i < result.length; i++) {
+      final int hash = result[i];
+      if (!heavy.isEmpty() && heavy.contains(hash)) {
+        if (broadcastHeavyHitters) {
+          result[i] = ALL_PARTITIONS;
+        } else {
+          result[i] = nextSpread;
+          nextSpread = (nextSpread + 1) % numPartitions;
+        }
+        continue;
+      }
+      int p = hash % numPartitions;
+      if (p < 0) {
+        p = p + numPartitions;
+      }
+      result[i] = p;
+    }
+    return result;
+  }
+}
@@ -3,11 +3,14 @@ package edu.washington.escience.myria.parallel;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Verify;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
+import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.api.encoding.QueryConstruct;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 
@@ -83,4 +86,22 @@ public final class DoWhile extends QueryPlan {
       q.reset();
     }
   }
+
+  @Override
+  public Set<RelationKey> getReadRelations() {
+    ImmutableSet.Builder<RelationKey> ret = ImmutableSet.builder();
+    for (QueryPlan p : body) {
+      ret.addAll(p.getReadRelations());
+    }
+    return ret.build();
+  }
+
+  @Override
+  public Set<RelationKey> getWrittenRelations() {
+    ImmutableSet.Builder<RelationKey> ret = ImmutableSet.builder();
+    for (QueryPlan p : body) {
+      ret.addAll(p.getWrittenRelations());
+    }
+    return ret.build();
+  }
 }
@@ -5,6 +5,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,15 +13,21 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.base.Verify;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.api.MyriaJsonMapperProvider;
+import edu.washington.escience.myria.api.encoding.DbInsertEncoding;
+import edu.washington.escience.myria.api.encoding.OperatorEncoding;
 import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
 import edu.washington.escience.myria.api.encoding.QueryConstruct;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.api.encoding.TableScanEncoding;
 import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.operator.EOSSource;
+import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.SinkRoot;
 
 /**
@@ -92,4 +99,40 @@ public final class JsonSubQuery extends QueryPlan {
   public void reset() {
     /* Do nothing. */
   }
+
+  /**
+   * {@inheritDoc}
+   * 
+   * Temporary relations are left out, since they belong to a single query.
+   */
+  @Override
+  public Set<RelationKey> getReadRelations() {
+    ImmutableSet.Builder<RelationKey> ret = ImmutableSet.builder();
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<? extends Operator> operator : fragment.operators) {
+        if (operator instanceof TableScanEncoding) {
+          ret.add(((TableScanEncoding) operator).relationKey);
+        }
+      }
+    }
+    return ret.build();
+  }
+
+  /**
+   * {@inheritDoc}
+   * 
+   * Temporary relations are left out, since they belong to a single query.
+   */
+  @Override
+  public Set<RelationKey> getWrittenRelations() {
+    ImmutableSet.Builder<RelationKey> ret = ImmutableSet.builder();
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<? extends Operator> operator : fragment.operators) {
+        if (operator instanceof DbInsertEncoding) {
+          ret.add(((DbInsertEncoding) operator).relationKey);
+        }
+      }
+    }
+    return ret.build();
+  }
 }
@@ -22,6 +22,8 @@ import edu.washington.escience.myria.operator.IDBController;
 import edu.washington.escience.myria.operator.LeapFrogJoin;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.RootOperator;
+import edu.washington.escience.myria.operator.StreamingState;
+import edu.washington.escience.myria.operator.StreamingStateful;
 import edu.washington.escience.myria.operator.SymmetricHashJoin;
 import edu.washington.escience.myria.operator.network.Consumer;
 import edu.washington.escience.myria.operator.network.Producer;
@@ -813,6 +815,13 @@ public final class LocalFragment {
       addResourceReport(stats, timestamp, op.getOpId(), "hashTableSize",
           ((LeapFrogJoin) op).getNumTuplesInHashTables(), subQueryId);
     }
+    if (op instanceof StreamingStateful) {
+      StreamingState state = ((StreamingStateful) op).getStreamingState();
+      if (state != null) {
+        addResourceReport(stats, timestamp, op.getOpId(), "stateHeapBytes", state.getHeapBytes(), subQueryId);
+        addResourceReport(stats, timestamp, op.getOpId(), "stateOffHeapBytes", state.getOffHeapBytes(), subQueryId);
+      }
+    }
     for (Operator child : op.getChildren()) {
       collectResourceMeasurements(stats, timestamp, child, subQueryId);
     }
@@ -4,6 +4,7 @@ import java.util.Set;
 
 import javax.annotation.Nonnull;
 
+import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.FTMode;
 import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
 
@@ -24,6 +25,16 @@ public abstract class LocalSubQuery implements Comparable<LocalSubQuery> {
    */
   private final FTMode ftMode;
 
+  /**
+   * Whether long-lived operator state is stored off the heap.
+   */
+  private final boolean offHeapState;
+
+  /**
+   * The number of bytes a tuple batch aims at.
+   */
+  private final int batchTargetBytes;
+
   /**
    * Priority, currently not used.
    */
@@ -51,9 +62,39 @@ public abstract class LocalSubQuery implements Comparable<LocalSubQuery> {
    * @param profilingMode the profiling mode of this subquery.
    */
   public LocalSubQuery(final SubQueryId subQueryId, final FTMode ftMode, @Nonnull final Set<ProfilingMode> profilingMode) {
+    this(subQueryId, ftMode, profilingMode, false, MyriaConstants.DEFAULT_BATCH_TARGET_BYTES);
+  }
+
+  /**
+   * Instantiate a new {@link LocalSubQuery} with the specified fault tolerance, profiling and state storage modes.
+   * 
+   * @param subQueryId the id of this subquery.
+   * @param ftMode the fault-tolerance mode of this subquery.
+   * @param profilingMode the profiling mode of this subquery.
+   * @param offHeapState whether long-lived operator state is stored off the heap.
+   * @param batchTargetBytes the number of bytes a tuple batch aims at.
+   */
+  public LocalSubQuery(final SubQueryId subQueryId, final FTMode ftMode,
+      @Nonnull final Set<ProfilingMode> profilingMode, final boolean offHeapState, final int batchTargetBytes) {
     this.subQueryId = subQueryId;
     this.ftMode = ftMode;
     this.profilingMode = profilingMode;
+    this.offHeapState = offHeapState;
+    this.batchTargetBytes = batchTargetBytes;
+  }
+
+  /**
+   * @return the number of bytes a tuple batch aims at.
+   */
+  public final int getBatchTargetBytes() {
+    return batchTargetBytes;
+  }
+
+  /**
+   * @return whether long-lived operator state is stored off the heap.
+   */
+  public final boolean isOffHeapState() {
+    return offHeapState;
   }
 
   /**
@@ -71,6 +71,14 @@ public final class Query {
   private final Set<ProfilingMode> profiling;
   /** Indicates whether the query should be run with a particular fault tolerance mode. */
   private final FTMode ftMode;
+  /** Whether long-lived operator state is stored off the heap. */
+  private final boolean offHeapState;
+  /** The number of bytes a tuple batch aims at. */
+  private final int batchTargetBytes;
+  /** Whether chains of filters and projections are compiled into single operators. */
+  private final boolean fuseOperators;
+  /** The number of threads that each pipeline runs on in a worker, or 0 for a single thread. */
+  private final int pipelineThreads;
   /** Global variables that are part of this query. */
   private final ConcurrentHashMap<String, Object> globals;
   /** Temporary relations created during the execution of this query. */
@@ -91,6 +99,10 @@ public final class Query {
     this.server = Preconditions.checkNotNull(server, "server");
     profiling = ImmutableSet.copyOf(query.profilingMode);
     ftMode = query.ftMode;
+    offHeapState = query.offHeapState;
+    batchTargetBytes = query.batchTargetBytes;
+    fuseOperators = query.fuseOperators;
+    pipelineThreads = query.pipelineThreads;
     this.queryId = queryId;
     subqueryId = 0;
     synchronized (this) {
@@ -189,7 +201,8 @@ public final class Query {
         }
       }
 
-      QueryConstruct.setQueryExecutionOptions(currentSubQuery.getWorkerPlans(), ftMode, profilingMode);
+      QueryConstruct.setQueryExecutionOptions(currentSubQuery.getWorkerPlans(), ftMode, profilingMode, offHeapState,
+          batchTargetBytes);
       currentSubQuery.getMasterPlan().setFTMode(ftMode);
       currentSubQuery.getMasterPlan().setProfilingMode(ImmutableSet.<ProfilingMode> of());
       ++subqueryId;
@@ -199,7 +212,7 @@ public final class Query {
       }
       return currentSubQuery;
     }
-    planQ.getFirst().instantiate(planQ, subQueryQ, new ConstructArgs(server, queryId));
+    planQ.getFirst().instantiate(planQ, subQueryQ, new ConstructArgs(server, queryId, fuseOperators, pipelineThreads));
     /*
      * The above line may have emptied planQ, mucked with subQueryQ, not sure. So just recurse to make sure we do the
      * right thing.
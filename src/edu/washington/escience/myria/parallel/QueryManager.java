@@ -26,6 +26,7 @@ import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.api.encoding.QueryConstruct;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.QuerySchedulerEncoding;
 import edu.washington.escience.myria.api.encoding.QueryStatusEncoding;
 import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.coordinator.catalog.MasterCatalog;
@@ -52,6 +53,9 @@ public class QueryManager {
   @GuardedBy("queryQueue")
   private final TreeMap<Long, Query> queryQueue;
 
+  /** Decides which queued queries are admitted. Kept in step with {@link #queryQueue} under its lock. */
+  private final QueryScheduler scheduler;
+
   /**
    * Subqueries currently in execution.
    */
@@ -69,11 +73,13 @@ public class QueryManager {
    * 
    * @param catalog the master catalog. Gets updated when queries finish, for example.
    * @param server the server on which the queries are executed.
+   * @param maxConcurrentQueries the maximum number of queries that run at the same time.
    */
-  public QueryManager(final MasterCatalog catalog, final Server server) {
+  public QueryManager(final MasterCatalog catalog, final Server server, final int maxConcurrentQueries) {
     this.catalog = catalog;
     this.server = server;
     queryQueue = Maps.newTreeMap();
+    scheduler = new QueryScheduler(maxConcurrentQueries);
     runningQueries = new ConcurrentHashMap<>();
     executingSubQueries = new ConcurrentHashMap<>();
   }
@@ -94,8 +100,31 @@ public class QueryManager {
    */
   public void updateResourceStats(final int senderId, final ControlMessage m) {
     for (ControlProto.ResourceStats stats : m.getResourceStatsList()) {
-      runningQueries.get(stats.getQueryId()).addResourceStats(senderId, ResourceStats.fromProtobuf(stats));
+      Query query = runningQueries.get(stats.getQueryId());
+      /* Reports may still arrive after the query has finished. */
+      if (query != null) {
+        query.addResourceStats(senderId, ResourceStats.fromProtobuf(stats));
+      }
+    }
+  }
+
+  /**
+   * Update the memory and CPU load of a worker from the measurements attached to its heartbeat, and admit queued
+   * queries if the load now allows it.
+   * 
+   * @param senderId the sender worker id.
+   * @param m the heartbeat message.
+   */
+  public void updateWorkerLoad(final int senderId, final ControlMessage m) {
+    if (m.getResourceStatsCount() == 0) {
+      return;
     }
+    List<ResourceStats> stats = new LinkedList<>();
+    for (ControlProto.ResourceStats s : m.getResourceStatsList()) {
+      stats.add(ResourceStats.fromProtobuf(s));
+    }
+    scheduler.updateWorker(senderId, stats);
+    scheduleQueries();
   }
 
   /**
@@ -103,7 +132,40 @@ public class QueryManager {
    */
   private boolean canSubmitQuery() {
     synchronized (queryQueue) {
-      return ((runningQueries.size() + queryQueue.size()) < MyriaConstants.MAX_ACTIVE_QUERIES);
+      return queryQueue.size() < MyriaConstants.MAX_QUEUED_QUERIES;
+    }
+  }
+
+  /**
+   * Start every queued query the scheduler admits now.
+   */
+  private void scheduleQueries() {
+    List<Query> admitted = new LinkedList<>();
+    synchronized (queryQueue) {
+      for (long queryId : scheduler.admit(server.getAliveWorkers())) {
+        Query q = queryQueue.remove(queryId);
+        runningQueries.put(queryId, q);
+        admitted.add(q);
+      }
+    }
+    for (Query q : admitted) {
+      LOGGER.info("Now advancing to query {}", q.getQueryId());
+      try {
+        advanceQuery(q);
+      } catch (DbException e) {
+        /* The query has already been marked as failed. */
+        LOGGER.error("Error starting query {}", q.getQueryId(), e);
+      }
+    }
+  }
+
+  /**
+   * @return the state of the query scheduler: the running and queued queries, queue-wait and run-time statistics, and
+   *         the load of the workers.
+   */
+  public QuerySchedulerEncoding getSchedulerStatus() {
+    synchronized (queryQueue) {
+      return scheduler.getStatus();
     }
   }
 
@@ -120,26 +182,13 @@ public class QueryManager {
     } catch (CatalogException e) {
       throw new DbException("Error finishing query " + queryState.getQueryId(), e);
     } finally {
-      runningQueries.remove(queryState.getQueryId());
-
-      /* See if we can submit a new query. */
-      if (!runningQueries.isEmpty()) {
-        /* TODO replace with proper scheduler as opposed to single-query-at-a-time. */
-        return;
-      }
-
-      /* Now see if the query queue has anything for us. */
-      Map.Entry<Long, Query> qEntry;
       synchronized (queryQueue) {
-        qEntry = queryQueue.pollFirstEntry();
-      }
-      if (qEntry == null) {
-        return;
+        runningQueries.remove(queryState.getQueryId());
+        scheduler.finished(queryState.getQueryId());
       }
-      Query q = qEntry.getValue();
-      LOGGER.info("Now advancing to query {}", q.getQueryId());
-      runningQueries.put(q.getQueryId(), q);
-      advanceQuery(q);
+
+      /* See if the queue has anything for us. */
+      scheduleQueries();
     }
   }
 
@@ -228,8 +277,7 @@ public class QueryManager {
   }
 
   /**
-   * Submit a query for execution. The workerPlans may be removed in the future if the query compiler and schedulers are
-   * ready. Returns null if there are too many active queries.
+   * Queue a query for execution, and start it right away if the scheduler admits it.
    * 
    * @param queryId the catalog's assigned ID for this query.
    * @param query contains the query options (profiling, fault tolerance)
@@ -241,18 +289,11 @@ public class QueryManager {
   private QueryFuture submitQuery(final long queryId, final QueryEncoding query, final QueryPlan plan)
       throws DbException, CatalogException {
     final Query queryState = new Query(queryId, query, plan, server);
-    boolean canStart = false;
     synchronized (queryQueue) {
-      if (queryQueue.isEmpty() && runningQueries.isEmpty()) {
-        canStart = true;
-      } else {
-        queryQueue.put(queryId, queryState);
-      }
-    }
-    if (canStart) {
-      runningQueries.put(queryId, queryState);
-      advanceQuery(queryState);
+      queryQueue.put(queryId, queryState);
+      scheduler.enqueue(queryId, query.priority, query.user, plan.getReadRelations(), plan.getWrittenRelations());
     }
+    scheduleQueries();
     return queryState.getFuture();
   }
 
@@ -564,6 +605,7 @@ public class QueryManager {
         q.kill();
       }
       queryQueue.clear();
+      scheduler.clearQueue();
     }
     for (MasterSubQuery p : executingSubQueries.values()) {
       p.kill();
@@ -1,8 +1,10 @@
 package edu.washington.escience.myria.parallel;
 
 import java.util.LinkedList;
+import java.util.Set;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.api.encoding.QueryConstruct;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 
@@ -28,4 +30,18 @@ public abstract class QueryPlan {
    * Reset this {@link QueryPlan} so that it can be executed again.
    */
   public abstract void reset();
+
+  /**
+   * Returns the set of relations that are read when executing this {@link QueryPlan}.
+   * 
+   * @return the set of relations that are read when executing this {@link QueryPlan}
+   */
+  public abstract Set<RelationKey> getReadRelations();
+
+  /**
+   * Returns the set of relations that are written when executing this {@link QueryPlan}.
+   * 
+   * @return the set of relations that are written when executing this {@link QueryPlan}
+   */
+  public abstract Set<RelationKey> getWrittenRelations();
 }
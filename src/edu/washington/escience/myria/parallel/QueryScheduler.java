@@ -0,0 +1,345 @@
+package edu.washington.escience.myria.parallel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaConstants.QueryPriority;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.api.encoding.QuerySchedulerEncoding;
+import edu.washington.escience.myria.api.encoding.QuerySchedulerEncoding.PriorityStatistics;
+
+/**
+ * Decides which of the queued queries start running. Up to a configurable number of queries run at the same time. A
+ * queued query is admitted only if no query of a higher {@link QueryPriority} is waiting; within a priority class, the
+ * query of the user with the fewest running queries goes first, and the oldest query breaks ties. While any query is
+ * running, no more queries are admitted as long as a worker reports memory or CPU pressure (see
+ * {@link MyriaConstants#ADMISSION_MAX_HEAP_FRACTION} and {@link MyriaConstants#ADMISSION_MAX_LOAD_PER_PROCESSOR}).
+ *
+ * Queries that write a relation another query reads or writes are serialized: such a query waits until every
+ * conflicting query that is running or was submitted before it has finished, and the queries behind it may overtake it.
+ *
+ * Workers report their load as {@link ResourceStats} entries attached to their heartbeats.
+ */
+final class QueryScheduler {
+  /** Measurement name: the bytes of heap a worker uses after the latest garbage collection. */
+  static final String HEAP_USED_BYTES = "heapUsedBytes";
+  /** Measurement name: the maximum heap size of a worker. */
+  static final String HEAP_MAX_BYTES = "heapMaxBytes";
+  /** Measurement name: the number of processors available to a worker. */
+  static final String AVAILABLE_PROCESSORS = "availableProcessors";
+  /** Measurement name: the system load average of a worker's machine, times 100. */
+  static final String SYSTEM_LOAD_PERCENT = "systemLoadPercent";
+
+  /** A query known to the scheduler. */
+  private static final class Entry {
+    /** The id of the query. */
+    private final long queryId;
+    /** The priority class of the query. */
+    private final QueryPriority priority;
+    /** The user who submitted the query, or the empty string. */
+    private final String user;
+    /** The relations the query reads. */
+    private final Set<RelationKey> reads;
+    /** The relations the query writes. */
+    private final Set<RelationKey> writes;
+    /** When the query was submitted, in ticker nanoseconds. */
+    private final long submitNanos;
+    /** When the query was admitted, in ticker nanoseconds. */
+    private long admitNanos;
+
+    /**
+     * @param queryId the id of the query.
+     * @param priority the priority class of the query.
+     * @param user the user who submitted the query, or the empty string.
+     * @param reads the relations the query reads.
+     * @param writes the relations the query writes.
+     * @param submitNanos when the query was submitted, in ticker nanoseconds.
+     */
+    private Entry(final long queryId, final QueryPriority priority, final String user, final Set<RelationKey> reads,
+        final Set<RelationKey> writes, final long submitNanos) {
+      this.queryId = queryId;
+      this.priority = priority;
+      this.user = user;
+      this.reads = ImmutableSet.copyOf(reads);
+      this.writes = ImmutableSet.copyOf(writes);
+      this.submitNanos = submitNanos;
+    }
+
+    /**
+     * @param other another query.
+     * @return whether one of the two queries writes a relation that the other reads or writes.
+     */
+    private boolean conflictsWith(final Entry other) {
+      return !Collections.disjoint(writes, other.reads) || !Collections.disjoint(writes, other.writes)
+          || !Collections.disjoint(reads, other.writes);
+    }
+  }
+
+  /** The maximum number of queries that run at the same time. */
+  private final int maxConcurrentQueries;
+  /** The source of time for the queue-wait and run-time statistics. */
+  private final Ticker ticker;
+  /** The queued queries, in the order they were submitted. */
+  @GuardedBy("this")
+  private final TreeMap<Long, Entry> queued;
+  /** The running queries, in the order they were admitted. */
+  @GuardedBy("this")
+  private final LinkedHashMap<Long, Entry> running;
+  /** Queue-wait and run-time statistics of each priority class. */
+  @GuardedBy("this")
+  private final EnumMap<QueryPriority, PriorityStatistics> statistics;
+  /** The latest resource measurements of each worker, by measurement name. */
+  private final ConcurrentHashMap<Integer, Map<String, Long>> workerLoad;
+
+  /**
+   * @param maxConcurrentQueries the maximum number of queries that run at the same time.
+   */
+  QueryScheduler(final int maxConcurrentQueries) {
+    this(maxConcurrentQueries, Ticker.systemTicker());
+  }
+
+  /**
+   * @param maxConcurrentQueries the maximum number of queries that run at the same time.
+   * @param ticker the source of time for the queue-wait and run-time statistics.
+   */
+  QueryScheduler(final int maxConcurrentQueries, final Ticker ticker) {
+    Preconditions.checkArgument(maxConcurrentQueries > 0, "maxConcurrentQueries must be positive, not %s",
+        maxConcurrentQueries);
+    this.maxConcurrentQueries = maxConcurrentQueries;
+    this.ticker = Preconditions.checkNotNull(ticker, "ticker");
+    queued = new TreeMap<>();
+    running = new LinkedHashMap<>();
+    statistics = new EnumMap<>(QueryPriority.class);
+    for (QueryPriority priority : QueryPriority.values()) {
+      statistics.put(priority, new PriorityStatistics());
+    }
+    workerLoad = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Add a query to the queue.
+   *
+   * @param queryId the id of the query. Queries are assumed to be submitted in increasing id order.
+   * @param priority the priority class of the query.
+   * @param user the user who submitted the query, or null.
+   * @param reads the relations the query reads.
+   * @param writes the relations the query writes.
+   */
+  synchronized void enqueue(final long queryId, final QueryPriority priority, @Nullable final String user,
+      final Set<RelationKey> reads, final Set<RelationKey> writes) {
+    Preconditions.checkNotNull(priority, "priority");
+    Preconditions.checkState(!queued.containsKey(queryId) && !running.containsKey(queryId),
+        "query %s is already scheduled", queryId);
+    queued.put(queryId, new Entry(queryId, priority, MoreObjects.firstNonNull(user, ""), reads, writes, ticker.read()));
+  }
+
+  /**
+   * Admit as many queued queries as the concurrency cap and the load of the specified workers allow. The admitted
+   * queries count as running until {@link #finished(long)} is called.
+   *
+   * @param workers the workers that are alive.
+   * @return the ids of the admitted queries, in the order they should be started.
+   */
+  synchronized List<Long> admit(final Set<Integer> workers) {
+    List<Long> ret = new ArrayList<>();
+    while (!queued.isEmpty() && running.size() < maxConcurrentQueries) {
+      if (!running.isEmpty() && isAnyOverloaded(workers)) {
+        break;
+      }
+      Entry next = pickNext();
+      if (next == null) {
+        break;
+      }
+      queued.remove(next.queryId);
+      next.admitNanos = ticker.read();
+      running.put(next.queryId, next);
+      long waitMillis = TimeUnit.NANOSECONDS.toMillis(next.admitNanos - next.submitNanos);
+      PriorityStatistics stats = statistics.get(next.priority);
+      stats.admitted++;
+      stats.totalQueueWaitMillis += waitMillis;
+      stats.maxQueueWaitMillis = Math.max(stats.maxQueueWaitMillis, waitMillis);
+      ret.add(next.queryId);
+    }
+    return ret;
+  }
+
+  /**
+   * @return the queued query to admit next: of those that conflict with no running or older queued query, one of the
+   *         highest priority class whose user has the fewest running queries, and the oldest such query. Null if every
+   *         queued query conflicts.
+   */
+  @GuardedBy("this")
+  private Entry pickNext() {
+    Map<String, Integer> runningPerUser = new HashMap<>();
+    for (Entry e : running.values()) {
+      Integer count = runningPerUser.get(e.user);
+      runningPerUser.put(e.user, count == null ? 1 : count + 1);
+    }
+    Entry best = null;
+    int bestRunning = 0;
+    List<Entry> older = new ArrayList<>();
+    for (Entry e : queued.values()) {
+      boolean conflicts = conflictsWithAny(e, running.values()) || conflictsWithAny(e, older);
+      older.add(e);
+      if (conflicts) {
+        continue;
+      }
+      int userRunning = MoreObjects.firstNonNull(runningPerUser.get(e.user), 0);
+      if (best == null || e.priority.compareTo(best.priority) < 0
+          || (e.priority == best.priority && userRunning < bestRunning)) {
+        best = e;
+        bestRunning = userRunning;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @param entry a query.
+   * @param others other queries.
+   * @return whether the query conflicts with any of the others.
+   */
+  private static boolean conflictsWithAny(final Entry entry, final Iterable<Entry> others) {
+    for (Entry other : others) {
+      if (entry.conflictsWith(other)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Record that a query has finished. Does nothing if the query was not admitted by this scheduler.
+   *
+   * @param queryId the id of the query.
+   */
+  synchronized void finished(final long queryId) {
+    Entry entry = running.remove(queryId);
+    if (entry == null) {
+      return;
+    }
+    long runMillis = TimeUnit.NANOSECONDS.toMillis(ticker.read() - entry.admitNanos);
+    PriorityStatistics stats = statistics.get(entry.priority);
+    stats.finished++;
+    stats.totalRunMillis += runMillis;
+    stats.maxRunMillis = Math.max(stats.maxRunMillis, runMillis);
+  }
+
+  /**
+   * Drop all queued queries.
+   */
+  synchronized void clearQueue() {
+    queued.clear();
+  }
+
+  /**
+   * Record the latest resource measurements of a worker. Measurements this scheduler does not know are ignored.
+   *
+   * @param workerId the worker.
+   * @param stats the measurements.
+   */
+  void updateWorker(final int workerId, final List<ResourceStats> stats) {
+    Map<String, Long> load = new HashMap<>();
+    Map<String, Long> previous = workerLoad.get(workerId);
+    if (previous != null) {
+      load.putAll(previous);
+    }
+    for (ResourceStats s : stats) {
+      switch (s.getMeasurement()) {
+        case HEAP_USED_BYTES:
+        case HEAP_MAX_BYTES:
+        case AVAILABLE_PROCESSORS:
+        case SYSTEM_LOAD_PERCENT:
+          load.put(s.getMeasurement(), s.getValue());
+          break;
+        default:
+          break;
+      }
+    }
+    workerLoad.put(workerId, ImmutableMap.copyOf(load));
+  }
+
+  /**
+   * @param workers the workers to check.
+   * @return whether any of the specified workers reported memory or CPU pressure.
+   */
+  private boolean isAnyOverloaded(final Set<Integer> workers) {
+    for (int workerId : workers) {
+      if (isOverloaded(workerId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param workerId the worker.
+   * @return whether the latest measurements of the specified worker show memory or CPU pressure. A worker that has not
+   *         reported its load is not overloaded.
+   */
+  boolean isOverloaded(final int workerId) {
+    Map<String, Long> load = workerLoad.get(workerId);
+    if (load == null) {
+      return false;
+    }
+    Long heapUsed = load.get(HEAP_USED_BYTES);
+    Long heapMax = load.get(HEAP_MAX_BYTES);
+    if (heapUsed != null && heapMax != null && heapMax > 0
+        && heapUsed > MyriaConstants.ADMISSION_MAX_HEAP_FRACTION * heapMax) {
+      return true;
+    }
+    Long loadPercent = load.get(SYSTEM_LOAD_PERCENT);
+    Long processors = load.get(AVAILABLE_PROCESSORS);
+    return loadPercent != null && processors != null && processors > 0
+        && loadPercent / 100.0 / processors > MyriaConstants.ADMISSION_MAX_LOAD_PER_PROCESSOR;
+  }
+
+  /**
+   * @return the maximum number of queries that run at the same time.
+   */
+  int getMaxConcurrentQueries() {
+    return maxConcurrentQueries;
+  }
+
+  /**
+   * @return the state of this scheduler, for the REST API.
+   */
+  synchronized QuerySchedulerEncoding getStatus() {
+    QuerySchedulerEncoding ret = new QuerySchedulerEncoding();
+    ret.maxConcurrentQueries = maxConcurrentQueries;
+    ret.running = new ArrayList<>(running.keySet());
+    ret.queued = new ArrayList<>(queued.keySet());
+    ret.priorities = new EnumMap<>(QueryPriority.class);
+    for (Map.Entry<QueryPriority, PriorityStatistics> e : statistics.entrySet()) {
+      PriorityStatistics copy = new PriorityStatistics();
+      copy.admitted = e.getValue().admitted;
+      copy.finished = e.getValue().finished;
+      copy.totalQueueWaitMillis = e.getValue().totalQueueWaitMillis;
+      copy.maxQueueWaitMillis = e.getValue().maxQueueWaitMillis;
+      copy.totalRunMillis = e.getValue().totalRunMillis;
+      copy.maxRunMillis = e.getValue().maxRunMillis;
+      ret.priorities.put(e.getKey(), copy);
+    }
+    ret.workers = new TreeMap<>(workerLoad);
+    return ret;
+  }
+}
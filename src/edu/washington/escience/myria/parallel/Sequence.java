@@ -3,10 +3,13 @@ package edu.washington.escience.myria.parallel;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import com.google.common.base.Verify;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
+import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 
 /**
@@ -40,4 +43,22 @@ public final class Sequence extends QueryPlan {
       p.reset();
     }
   }
+
+  @Override
+  public Set<RelationKey> getReadRelations() {
+    ImmutableSet.Builder<RelationKey> ret = ImmutableSet.builder();
+    for (QueryPlan p : plans) {
+      ret.addAll(p.getReadRelations());
+    }
+    return ret.build();
+  }
+
+  @Override
+  public Set<RelationKey> getWrittenRelations() {
+    ImmutableSet.Builder<RelationKey> ret = ImmutableSet.builder();
+    for (QueryPlan p : plans) {
+      ret.addAll(p.getWrittenRelations());
+    }
+    return ret.build();
+  }
 }
@@ -1,6 +1,7 @@
 package edu.washington.escience.myria.parallel;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -15,6 +16,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -58,6 +60,7 @@ import edu.washington.escience.myria.accessmethod.AccessMethod.IndexRef;
 import edu.washington.escience.myria.api.MyriaJsonMapperProvider;
 import edu.washington.escience.myria.api.encoding.DatasetStatus;
 import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.column.ColumnCompression;
 import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.coordinator.catalog.CatalogMaker;
 import edu.washington.escience.myria.coordinator.catalog.MasterCatalog;
@@ -72,6 +75,7 @@ import edu.washington.escience.myria.operator.DbQueryScan;
 import edu.washington.escience.myria.operator.DuplicateTBGenerator;
 import edu.washington.escience.myria.operator.EOSSource;
 import edu.washington.escience.myria.operator.EmptyRelation;
+import edu.washington.escience.myria.operator.FileOutput;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.RootOperator;
 import edu.washington.escience.myria.operator.SinkRoot;
@@ -142,6 +146,7 @@ public final class Server {
                 case WORKER_HEARTBEAT:
                   LOGGER.trace("getting heartbeat from worker {}", senderID);
                   updateHeartbeat(senderID);
+                  queryManager.updateWorkerLoad(senderID, controlM);
                   break;
                 case REMOVE_WORKER_ACK:
                   int workerID = controlM.getWorkerId();
@@ -447,18 +452,26 @@ public final class Server {
     removeWorkerAckReceived = new ConcurrentHashMap<>();
     addWorkerAckReceived = new ConcurrentHashMap<>();
 
-    queryManager = new QueryManager(catalog, this);
+    final String maxConcurrentQueries = catalog.getConfigurationValue(MyriaSystemConfigKeys.MAX_CONCURRENT_QUERIES);
+    if (maxConcurrentQueries == null) {
+      /* Catalogs made before the key existed. */
+      queryManager = new QueryManager(catalog, this, MyriaConstants.MAX_CONCURRENT_QUERIES_DEFAULT_VALUE);
+    } else {
+      queryManager = new QueryManager(catalog, this, Integer.valueOf(maxConcurrentQueries));
+    }
 
     messageQueue = new LinkedBlockingQueue<>();
 
     final Map<Integer, SocketInfo> computingUnits = new HashMap<>(workers);
     computingUnits.put(MyriaConstants.MASTER_ID, masterSocketInfo);
 
+    final int columnEncodings =
+        ColumnCompression.parse(catalog.getConfigurationValue(MyriaSystemConfigKeys.IPC_COLUMN_ENCODINGS));
     connectionPool =
         new IPCConnectionPool(MyriaConstants.MASTER_ID, computingUnits, IPCConfigurations
             .createMasterIPCServerBootstrap(this), IPCConfigurations.createMasterIPCClientBootstrap(this),
-            new TransportMessageSerializer(), new QueueBasedShortMessageProcessor<TransportMessage>(messageQueue),
-            inputBufferCapacity, inputBufferRecoverTrigger);
+            new TransportMessageSerializer(columnEncodings), new QueueBasedShortMessageProcessor<TransportMessage>(
+                messageQueue), inputBufferCapacity, inputBufferRecoverTrigger);
 
     scheduledTaskExecutor =
         Executors.newSingleThreadScheduledExecutor(new RenamingThreadFactory("Master global timer"));
@@ -996,6 +1009,45 @@ public final class Server {
     return getDatasetStatus(relationKey);
   }
 
+  /**
+   * Ingest a dataset that the workers read themselves, without sending it through the master. Each worker inserts the
+   * tuples of its own source into its database.
+   * 
+   * @param relationKey the name of the dataset.
+   * @param indexes the indexes created.
+   * @param workerSources the source of tuples to be ingested by each worker.
+   * @return the status of the ingested dataset.
+   * @throws InterruptedException interrupted
+   * @throws DbException if there is an error
+   */
+  public DatasetStatus parallelIngestDataset(final RelationKey relationKey, final List<List<IndexRef>> indexes,
+      final Map<Integer, Operator> workerSources) throws InterruptedException, DbException {
+    Preconditions.checkArgument(workerSources.size() > 0, "Must use > 0 workers");
+
+    /* The master only waits for the workers to finish. */
+    Map<Integer, SubQueryPlan> workerPlans = new HashMap<>();
+    for (Map.Entry<Integer, Operator> entry : workerSources.entrySet()) {
+      workerPlans.put(entry.getKey(), new SubQueryPlan(new DbInsert(entry.getValue(), relationKey, true, indexes)));
+    }
+
+    ListenableFuture<Query> qf;
+    try {
+      qf =
+          queryManager.submitQuery("parallel ingest " + relationKey.toString(), "parallel ingest "
+              + relationKey.toString(), "parallel ingest " + relationKey.toString(getDBMS()), new SubQueryPlan(
+              new SinkRoot(new EOSSource())), workerPlans);
+    } catch (CatalogException e) {
+      throw new DbException("Error submitting query", e);
+    }
+    try {
+      qf.get();
+    } catch (ExecutionException e) {
+      throw new DbException("Error executing query", e.getCause());
+    }
+
+    return getDatasetStatus(relationKey);
+  }
+
   /**
    * @param relationKey the relationalKey of the dataset to import
    * @param schema the schema of the dataset to import
@@ -1231,6 +1283,55 @@ public final class Server {
     }
   }
 
+  /**
+   * Export a relation without sending it through the master: each worker writes its partition of the relation to its
+   * own file, named <code>part-&lt;worker id&gt;.&lt;format&gt;</code>, in a directory of a shared file system.
+   * 
+   * @param relationKey the relation to be exported.
+   * @param directory the directory, shared by the workers, the files are written to.
+   * @param format the format of the files: "csv", "tsv", "json", or "columnar".
+   * @return the file written by each worker.
+   * @throws InterruptedException interrupted
+   * @throws DbException if there is an error in the system.
+   */
+  public Map<Integer, String> exportDataset(final RelationKey relationKey, final String directory,
+      final String format) throws InterruptedException, DbException {
+    final Schema schema;
+    final Set<Integer> scanWorkers;
+    try {
+      schema = catalog.getSchema(relationKey);
+      Preconditions.checkArgument(schema != null, "relation %s was not found", relationKey);
+      scanWorkers = getWorkersForRelation(relationKey, null);
+    } catch (CatalogException e) {
+      throw new DbException(e);
+    }
+
+    /* The master only waits for the workers to finish. */
+    Map<Integer, String> files = new TreeMap<>();
+    Map<Integer, SubQueryPlan> workerPlans = new HashMap<>(scanWorkers.size());
+    for (Integer worker : scanWorkers) {
+      String filename = new File(directory, "part-" + worker + "." + format).getPath();
+      files.put(worker, filename);
+      workerPlans.put(worker, new SubQueryPlan(new FileOutput(new DbQueryScan(relationKey, schema), filename, format)));
+    }
+
+    String planString = "export " + relationKey.toString() + " to " + directory;
+    ListenableFuture<Query> qf;
+    try {
+      qf =
+          queryManager.submitQuery(planString, planString, planString, new SubQueryPlan(new SinkRoot(new EOSSource())),
+              workerPlans);
+    } catch (CatalogException e) {
+      throw new DbException("Error submitting query", e);
+    }
+    try {
+      qf.get();
+    } catch (ExecutionException e) {
+      throw new DbException("Error executing query", e.getCause());
+    }
+    return files;
+  }
+
   /**
    * Start a query that streams tuples from the specified relation to the specified {@link TupleWriter}.
    * 
@@ -119,15 +119,16 @@ public final class SubQuery extends QueryPlan {
     return workerPlans;
   }
 
-  /**
-   * Returns the set of relations that are read when executing this {@link SubQuery}.
-   * 
-   * @return the set of relations that are read when executing this {@link SubQuery}
-   */
+  @Override
   public Set<RelationKey> getReadRelations() {
     return readRelations;
   }
 
+  @Override
+  public Set<RelationKey> getWrittenRelations() {
+    return writeRelations.keySet();
+  }
+
   /**
    * Returns the set of relations that are written when executing this {@link SubQuery}.
    * 
@@ -13,6 +13,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.FTMode;
 import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
 import edu.washington.escience.myria.RelationKey;
@@ -46,6 +47,12 @@ public class SubQueryPlan implements Serializable, DbReader, DbWriter {
   /** profilingMode. */
   private Set<ProfilingMode> profilingMode;
 
+  /** Whether long-lived operator state is stored off the heap, default: false. */
+  private boolean offHeapState = false;
+
+  /** The number of bytes a tuple batch aims at. */
+  private int batchTargetBytes = MyriaConstants.DEFAULT_BATCH_TARGET_BYTES;
+
   /** Constructor. */
   public SubQueryPlan() {
     rootOps = new ArrayList<RootOperator>();
@@ -160,6 +167,38 @@ public class SubQueryPlan implements Serializable, DbReader, DbWriter {
     this.profilingMode = profilingMode;
   }
 
+  /**
+   * @return whether long-lived operator state is stored off the heap.
+   */
+  public boolean isOffHeapState() {
+    return offHeapState;
+  }
+
+  /**
+   * Set whether long-lived operator state is stored off the heap.
+   * 
+   * @param offHeapState whether long-lived operator state is stored off the heap.
+   */
+  public void setOffHeapState(final boolean offHeapState) {
+    this.offHeapState = offHeapState;
+  }
+
+  /**
+   * @return the number of bytes a tuple batch aims at.
+   */
+  public int getBatchTargetBytes() {
+    return batchTargetBytes;
+  }
+
+  /**
+   * Set the number of bytes a tuple batch aims at.
+   * 
+   * @param batchTargetBytes the number of bytes a tuple batch aims at.
+   */
+  public void setBatchTargetBytes(final int batchTargetBytes) {
+    this.batchTargetBytes = batchTargetBytes;
+  }
+
   @Override
   public Map<RelationKey, RelationWriteMetadata> writeSet() {
     return ImmutableMap.copyOf(writeSet);
@@ -13,6 +13,7 @@ import com.google.protobuf.CodedInputStream;
 
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.column.ColumnCompression;
 import edu.washington.escience.myria.parallel.ipc.PayloadSerializer;
 import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
 import edu.washington.escience.myria.storage.TupleBatch;
@@ -28,8 +29,37 @@ public class TransportMessageSerializer implements PayloadSerializer {
   /** The logger for this class. */
   protected static final Logger LOGGER = LoggerFactory.getLogger(TransportMessageSerializer.class);
 
+  /** The column encodings that this serializer may compress tuple batches with. */
+  private final int columnEncodings;
+
+  /**
+   * A serializer that does not compress tuple batches.
+   * */
+  public TransportMessageSerializer() {
+    this(ColumnCompression.NONE);
+  }
+
+  /**
+   * @param columnEncodings the {@link ColumnCompression} encodings that this serializer may compress tuple batches
+   *          with. A tuple batch sent to a remote is only compressed with the encodings that the remote supports.
+   * */
+  public TransportMessageSerializer(final int columnEncodings) {
+    this.columnEncodings = columnEncodings;
+  }
+
+  @Override
+  public final int getFeatures() {
+    /* Compressed columns are always de-serialized, whatever this serializer is configured to send. */
+    return ColumnCompression.ALL;
+  }
+
   @Override
   public final ChannelBuffer serialize(final Object m) {
+    return serialize(m, ColumnCompression.NONE);
+  }
+
+  @Override
+  public final ChannelBuffer serialize(final Object m, final int remoteFeatures) {
     Preconditions.checkNotNull(m);
     // m has only 3 possibilities:
     if (m instanceof TransportMessage) {
@@ -41,7 +71,7 @@ public class TransportMessageSerializer implements PayloadSerializer {
       // case 3: TupleBatch
       TupleBatch tb = (TupleBatch) m;
       if (!tb.isEOI()) {
-        return ChannelBuffers.wrappedBuffer(((TupleBatch) m).toTransportMessage().toByteArray());
+        return TupleBatchWireCodec.write(tb, columnEncodings & remoteFeatures);
       } else {
         return ChannelBuffers.wrappedBuffer(IPCUtils.EOI.toByteArray());
       }
@@ -79,6 +109,13 @@ public class TransportMessageSerializer implements PayloadSerializer {
   public final Object deSerialize(final ChannelBuffer buffer, final Object processor, final Object att)
       throws IOException {
 
+    if (att instanceof Schema) {
+      /* Most messages are tuple batches, which are read without the protobuf classes if possible. */
+      final TupleBatch tb = TupleBatchWireCodec.read(buffer, (Schema) att);
+      if (tb != null) {
+        return tb;
+      }
+    }
     TransportMessage tm = deSerializeTransportMessage(buffer);
 
     switch (tm.getType()) {
@@ -0,0 +1,695 @@
+package edu.washington.escience.myria.parallel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.joda.time.DateTime;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.BooleanColumn;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.ColumnCompression;
+import edu.washington.escience.myria.column.DateTimeColumn;
+import edu.washington.escience.myria.column.DoubleColumn;
+import edu.washington.escience.myria.column.FloatColumn;
+import edu.washington.escience.myria.column.IntBufferColumn;
+import edu.washington.escience.myria.column.LongColumn;
+import edu.washington.escience.myria.column.StringArrayColumn;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
+import edu.washington.escience.myria.proto.DataProto.DataMessage;
+import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Writes a {@link TupleBatch} as a data {@link TransportMessage}, and reads it back, without building the protobuf
+ * objects.
+ *
+ * The bytes are exactly the protobuf encoding of the message that {@link TupleBatch#toTransportMessage(int)} builds,
+ * so either side can be a process that still uses the protobuf classes. The writer computes the size of the message
+ * first and then writes the column values straight into a single buffer of that size, where building the message
+ * copies every column into a ByteString and then again into the serialized byte array.
+ *
+ * The reader parses the message in the received buffer. INT columns are views of the buffer and the other columns are
+ * copied out of it once. Columns that are compressed by {@link ColumnCompression}, and any message that is not laid
+ * out as expected, are left to the protobuf classes.
+ */
+final class TupleBatchWireCodec {
+
+  /** Wire type of varint fields. */
+  private static final int WIRETYPE_VARINT = 0;
+  /** Wire type of length-delimited fields. */
+  private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+
+  /** Tag of {@link TransportMessage} type. */
+  private static final int TM_TYPE = tag(TransportMessage.TYPE_FIELD_NUMBER, WIRETYPE_VARINT);
+  /** Tag of {@link TransportMessage} dataMessage. */
+  private static final int TM_DATA_MESSAGE = tag(TransportMessage.DATAMESSAGE_FIELD_NUMBER, WIRETYPE_LENGTH_DELIMITED);
+  /** Tag of {@link DataMessage} type. */
+  private static final int DM_TYPE = tag(DataMessage.TYPE_FIELD_NUMBER, WIRETYPE_VARINT);
+  /** Tag of {@link DataMessage} operatorID. */
+  private static final int DM_OPERATOR_ID = tag(DataMessage.OPERATORID_FIELD_NUMBER, WIRETYPE_VARINT);
+  /** Tag of {@link DataMessage} columns. */
+  private static final int DM_COLUMNS = tag(DataMessage.COLUMNS_FIELD_NUMBER, WIRETYPE_LENGTH_DELIMITED);
+  /** Tag of {@link DataMessage} num_tuples. */
+  private static final int DM_NUM_TUPLES = tag(DataMessage.NUM_TUPLES_FIELD_NUMBER, WIRETYPE_VARINT);
+  /** Tag of {@link DataMessage} seq. */
+  private static final int DM_SEQ = tag(DataMessage.SEQ_FIELD_NUMBER, WIRETYPE_VARINT);
+  /** Tag of {@link ColumnMessage} type. */
+  private static final int CM_TYPE = tag(ColumnMessage.TYPE_FIELD_NUMBER, WIRETYPE_VARINT);
+  /** Tag of the data field of every column message of a type. */
+  private static final int COLUMN_DATA = tag(1, WIRETYPE_LENGTH_DELIMITED);
+  /** Tag of the start_indices field of a string column message. */
+  private static final int STRING_START_INDICES = tag(2, WIRETYPE_VARINT);
+  /** Tag of the end_indices field of a string column message. */
+  private static final int STRING_END_INDICES = tag(3, WIRETYPE_VARINT);
+
+  /** Utility class cannot be instantiated. */
+  private TupleBatchWireCodec() {
+  }
+
+  /**
+   * @param fieldNumber a protobuf field number.
+   * @param wireType a protobuf wire type.
+   * @return the tag of the field.
+   */
+  private static int tag(final int fieldNumber, final int wireType) {
+    return (fieldNumber << 3) | wireType;
+  }
+
+  /**
+   * @param type a column type.
+   * @return the column message type of the column type.
+   */
+  private static ColumnMessage.Type messageType(final Type type) {
+    switch (type) {
+      case INT_TYPE:
+        return ColumnMessage.Type.INT;
+      case LONG_TYPE:
+        return ColumnMessage.Type.LONG;
+      case FLOAT_TYPE:
+        return ColumnMessage.Type.FLOAT;
+      case DOUBLE_TYPE:
+        return ColumnMessage.Type.DOUBLE;
+      case STRING_TYPE:
+        return ColumnMessage.Type.STRING;
+      case BOOLEAN_TYPE:
+        return ColumnMessage.Type.BOOLEAN;
+      case DATETIME_TYPE:
+        return ColumnMessage.Type.DATETIME;
+      default:
+        throw new UnsupportedOperationException("Serializing a column of type " + type);
+    }
+  }
+
+  /**
+   * @param type a column message type.
+   * @return the tag of the field of the column message that holds columns of the type.
+   */
+  private static int innerTag(final ColumnMessage.Type type) {
+    switch (type) {
+      case INT:
+        return tag(ColumnMessage.INT_COLUMN_FIELD_NUMBER, WIRETYPE_LENGTH_DELIMITED);
+      case LONG:
+        return tag(ColumnMessage.LONG_COLUMN_FIELD_NUMBER, WIRETYPE_LENGTH_DELIMITED);
+      case FLOAT:
+        return tag(ColumnMessage.FLOAT_COLUMN_FIELD_NUMBER, WIRETYPE_LENGTH_DELIMITED);
+      case DOUBLE:
+        return tag(ColumnMessage.DOUBLE_COLUMN_FIELD_NUMBER, WIRETYPE_LENGTH_DELIMITED);
+      case STRING:
+        return tag(ColumnMessage.STRING_COLUMN_FIELD_NUMBER, WIRETYPE_LENGTH_DELIMITED);
+      case BOOLEAN:
+        return tag(ColumnMessage.BOOLEAN_COLUMN_FIELD_NUMBER, WIRETYPE_LENGTH_DELIMITED);
+      case DATETIME:
+        return tag(ColumnMessage.DATE_COLUMN_FIELD_NUMBER, WIRETYPE_LENGTH_DELIMITED);
+      default:
+        throw new IllegalArgumentException("Unknown column type " + type);
+    }
+  }
+
+  /**
+   * @param type a column message type.
+   * @return the width in bytes of a value of the type, or 0 if the values of the type do not have a fixed width.
+   */
+  private static int valueWidth(final ColumnMessage.Type type) {
+    switch (type) {
+      case INT:
+      case FLOAT:
+        return Integer.SIZE / Byte.SIZE;
+      case LONG:
+      case DOUBLE:
+      case DATETIME:
+        return Long.SIZE / Byte.SIZE;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Serialize a tuple batch.
+   *
+   * @param tb the tuple batch. Must not be an EOI.
+   * @param columnEncodings the {@link ColumnCompression} encodings that the columns may be compressed with.
+   * @return the serialized data {@link TransportMessage}.
+   */
+  static ChannelBuffer write(final TupleBatch tb, final int columnEncodings) {
+    final List<? extends Column<?>> columns = tb.getDataColumns();
+    final int numTuples = tb.numTuples();
+    final int numColumns = columns.size();
+    final ColumnMessage[] compressed = new ColumnMessage[numColumns];
+    final int[][] stringLengths = new int[numColumns][];
+    final int[] dataSizes = new int[numColumns];
+    final int[] innerSizes = new int[numColumns];
+    final int[] columnSizes = new int[numColumns];
+
+    int dataMessageSize =
+        CodedOutputStream.computeEnumSize(DataMessage.TYPE_FIELD_NUMBER, DataMessage.Type.NORMAL_VALUE)
+            + CodedOutputStream.computeUInt32Size(DataMessage.NUM_TUPLES_FIELD_NUMBER, numTuples);
+    for (int i = 0; i < numColumns; ++i) {
+      final Column<?> column = columns.get(i);
+      compressed[i] = ColumnCompression.compress(column, columnEncodings);
+      if (compressed[i] != null) {
+        columnSizes[i] = compressed[i].getSerializedSize();
+      } else {
+        final ColumnMessage.Type type = messageType(column.getType());
+        final int width = valueWidth(type);
+        if (width > 0) {
+          dataSizes[i] = width * numTuples;
+          innerSizes[i] = CodedOutputStream.computeRawVarint32Size(COLUMN_DATA) + lengthDelimitedSize(dataSizes[i]);
+        } else if (type == ColumnMessage.Type.BOOLEAN) {
+          dataSizes[i] = (numTuples + Byte.SIZE - 1) / Byte.SIZE;
+          innerSizes[i] = CodedOutputStream.computeRawVarint32Size(COLUMN_DATA) + lengthDelimitedSize(dataSizes[i]);
+        } else {
+          stringLengths[i] = new int[numTuples];
+          int indexSizes = 0;
+          int start = 0;
+          for (int row = 0; row < numTuples; ++row) {
+            final String value = column.getString(row);
+            stringLengths[i][row] = utf8Length(value);
+            dataSizes[i] += stringLengths[i][row];
+            final int end = start + value.length();
+            indexSizes +=
+                CodedOutputStream.computeRawVarint32Size(STRING_START_INDICES)
+                    + CodedOutputStream.computeRawVarint32Size(start)
+                    + CodedOutputStream.computeRawVarint32Size(STRING_END_INDICES)
+                    + CodedOutputStream.computeRawVarint32Size(end);
+            start = end;
+          }
+          innerSizes[i] =
+              CodedOutputStream.computeRawVarint32Size(COLUMN_DATA) + lengthDelimitedSize(dataSizes[i]) + indexSizes;
+        }
+        columnSizes[i] =
+            CodedOutputStream.computeEnumSize(ColumnMessage.TYPE_FIELD_NUMBER, type.getNumber())
+                + CodedOutputStream.computeRawVarint32Size(innerTag(type)) + lengthDelimitedSize(innerSizes[i]);
+      }
+      dataMessageSize += CodedOutputStream.computeRawVarint32Size(DM_COLUMNS) + lengthDelimitedSize(columnSizes[i]);
+    }
+    final int size =
+        CodedOutputStream.computeEnumSize(TransportMessage.TYPE_FIELD_NUMBER, TransportMessage.Type.DATA_VALUE)
+            + CodedOutputStream.computeRawVarint32Size(TM_DATA_MESSAGE) + lengthDelimitedSize(dataMessageSize);
+
+    final ChannelBuffer out = ChannelBuffers.buffer(size);
+    writeVarint(out, TM_TYPE);
+    writeVarint(out, TransportMessage.Type.DATA_VALUE);
+    writeVarint(out, TM_DATA_MESSAGE);
+    writeVarint(out, dataMessageSize);
+    writeVarint(out, DM_TYPE);
+    writeVarint(out, DataMessage.Type.NORMAL_VALUE);
+    for (int i = 0; i < numColumns; ++i) {
+      writeVarint(out, DM_COLUMNS);
+      writeVarint(out, columnSizes[i]);
+      if (compressed[i] != null) {
+        writeMessage(out, compressed[i], columnSizes[i]);
+      } else {
+        writeColumn(out, columns.get(i), numTuples, dataSizes[i], innerSizes[i], stringLengths[i]);
+      }
+    }
+    writeVarint(out, DM_NUM_TUPLES);
+    writeVarint(out, numTuples);
+    if (out.writableBytes() != 0) {
+      throw new IllegalStateException("Serialized a TupleBatch into " + out.writerIndex() + " bytes instead of "
+          + size);
+    }
+    return out;
+  }
+
+  /**
+   * Write a column message with the column in its plain encoding.
+   *
+   * @param out the output.
+   * @param column the column.
+   * @param numTuples the number of values in the column.
+   * @param dataSize the size of the data field.
+   * @param innerSize the size of the message of the type of the column.
+   * @param stringLengths for a STRING column, the UTF-8 length of every value. Otherwise null.
+   */
+  private static void writeColumn(final ChannelBuffer out, final Column<?> column, final int numTuples,
+      final int dataSize, final int innerSize, final int[] stringLengths) {
+    final ColumnMessage.Type type = messageType(column.getType());
+    writeVarint(out, CM_TYPE);
+    writeVarint(out, type.getNumber());
+    writeVarint(out, innerTag(type));
+    writeVarint(out, innerSize);
+    writeVarint(out, COLUMN_DATA);
+    writeVarint(out, dataSize);
+    switch (type) {
+      case INT:
+        for (int row = 0; row < numTuples; ++row) {
+          out.writeInt(column.getInt(row));
+        }
+        break;
+      case LONG:
+        for (int row = 0; row < numTuples; ++row) {
+          out.writeLong(column.getLong(row));
+        }
+        break;
+      case FLOAT:
+        for (int row = 0; row < numTuples; ++row) {
+          out.writeFloat(column.getFloat(row));
+        }
+        break;
+      case DOUBLE:
+        for (int row = 0; row < numTuples; ++row) {
+          out.writeDouble(column.getDouble(row));
+        }
+        break;
+      case DATETIME:
+        for (int row = 0; row < numTuples; ++row) {
+          out.writeLong(column.getDateTime(row).getMillis());
+        }
+        break;
+      case BOOLEAN: {
+        int b = 0;
+        for (int row = 0; row < numTuples; ++row) {
+          if (column.getBoolean(row)) {
+            b |= 1 << (row % Byte.SIZE);
+          }
+          if (row % Byte.SIZE == Byte.SIZE - 1) {
+            out.writeByte(b);
+            b = 0;
+          }
+        }
+        if (numTuples % Byte.SIZE != 0) {
+          out.writeByte(b);
+        }
+        break;
+      }
+      case STRING: {
+        for (int row = 0; row < numTuples; ++row) {
+          writeUtf8(out, column.getString(row), stringLengths[row]);
+        }
+        int start = 0;
+        for (int row = 0; row < numTuples; ++row) {
+          writeVarint(out, STRING_START_INDICES);
+          writeVarint(out, start);
+          start += column.getString(row).length();
+        }
+        int end = 0;
+        for (int row = 0; row < numTuples; ++row) {
+          end += column.getString(row).length();
+          writeVarint(out, STRING_END_INDICES);
+          writeVarint(out, end);
+        }
+        break;
+      }
+      default:
+        throw new IllegalArgumentException("Unknown column type " + type);
+    }
+  }
+
+  /**
+   * @param out the output.
+   * @param message a message.
+   * @param size the serialized size of the message.
+   */
+  private static void writeMessage(final ChannelBuffer out, final ColumnMessage message, final int size) {
+    final CodedOutputStream coded =
+        CodedOutputStream.newInstance(out.array(), out.arrayOffset() + out.writerIndex(), size);
+    try {
+      message.writeTo(coded);
+    } catch (IOException e) {
+      /* Cannot happen: the output is an array that is large enough. */
+      throw new IllegalStateException(e);
+    }
+    coded.checkNoSpaceLeft();
+    out.writerIndex(out.writerIndex() + size);
+  }
+
+  /**
+   * @param length the length of a length-delimited field.
+   * @return the size of the length and the field.
+   */
+  private static int lengthDelimitedSize(final int length) {
+    return CodedOutputStream.computeRawVarint32Size(length) + length;
+  }
+
+  /**
+   * @param out the output.
+   * @param value a non-negative value.
+   */
+  private static void writeVarint(final ChannelBuffer out, final int value) {
+    int v = value;
+    while ((v & ~0x7F) != 0) {
+      out.writeByte((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte(v);
+  }
+
+  /**
+   * @param s a string.
+   * @return the length of the string in the UTF-8 encoding of {@link String#getBytes}, where an unpaired surrogate
+   *         becomes a '?'.
+   */
+  private static int utf8Length(final String s) {
+    final int length = s.length();
+    int bytes = length;
+    for (int i = 0; i < length; ++i) {
+      final char c = s.charAt(i);
+      if (c < 0x80) {
+        continue;
+      } else if (c < 0x800) {
+        bytes += 1;
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+        bytes += 2;
+        ++i;
+      } else if (!Character.isSurrogate(c)) {
+        bytes += 2;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Write a string in UTF-8.
+   *
+   * @param out the output.
+   * @param s the string.
+   * @param utf8Length the length of the string in UTF-8, see {@link #utf8Length}.
+   */
+  private static void writeUtf8(final ChannelBuffer out, final String s, final int utf8Length) {
+    final int length = s.length();
+    if (utf8Length == length) {
+      for (int i = 0; i < length; ++i) {
+        out.writeByte(s.charAt(i));
+      }
+      return;
+    }
+    for (int i = 0; i < length; ++i) {
+      final char c = s.charAt(i);
+      if (c < 0x80) {
+        out.writeByte(c);
+      } else if (c < 0x800) {
+        out.writeByte(0xC0 | (c >> 6));
+        out.writeByte(0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+        final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+        out.writeByte(0xF0 | (codePoint >> 18));
+        out.writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+        out.writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+        out.writeByte(0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        out.writeByte('?');
+      } else {
+        out.writeByte(0xE0 | (c >> 12));
+        out.writeByte(0x80 | ((c >> 6) & 0x3F));
+        out.writeByte(0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  /**
+   * Deserialize a tuple batch. The reader index of the buffer is not changed.
+   *
+   * @param buffer a serialized {@link TransportMessage}.
+   * @param schema the schema of the tuple batch.
+   * @return the tuple batch, or null if the message is not a data message with a non-EOI tuple batch of the schema, or
+   *         is not laid out as expected. The protobuf classes should be used for such messages.
+   */
+  static TupleBatch read(final ChannelBuffer buffer, final Schema schema) {
+    try {
+      return readDataMessage(new Cursor(buffer, buffer.readerIndex(), buffer.writerIndex()), schema);
+    } catch (IndexOutOfBoundsException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @param in the serialized {@link TransportMessage}.
+   * @param schema the schema of the tuple batch.
+   * @return the tuple batch, or null, see {@link #read}.
+   */
+  private static TupleBatch readDataMessage(final Cursor in, final Schema schema) {
+    if (in.readVarint() != TM_TYPE || in.readVarint() != TransportMessage.Type.DATA_VALUE
+        || in.readVarint() != TM_DATA_MESSAGE) {
+      return null;
+    }
+    final int end = in.readLength();
+    if (end != in.limit) {
+      return null;
+    }
+    final int numColumns = schema.numColumns();
+    final int[] columnStarts = new int[numColumns];
+    final int[] columnEnds = new int[numColumns];
+    int column = 0;
+    int numTuples = -1;
+    while (in.position < end) {
+      final int tag = in.readVarint();
+      if (tag == DM_TYPE) {
+        if (in.readVarint() != DataMessage.Type.NORMAL_VALUE) {
+          return null;
+        }
+      } else if (tag == DM_COLUMNS) {
+        if (column == numColumns) {
+          return null;
+        }
+        columnEnds[column] = in.readLength();
+        columnStarts[column] = in.position;
+        in.position = columnEnds[column];
+        ++column;
+      } else if (tag == DM_NUM_TUPLES) {
+        numTuples = in.readVarint();
+      } else if (tag == DM_OPERATOR_ID || tag == DM_SEQ) {
+        in.readVarint64();
+      } else {
+        return null;
+      }
+    }
+    if (column != numColumns || numTuples < 0) {
+      return null;
+    }
+
+    final List<Column<?>> columns = new ArrayList<Column<?>>(numColumns);
+    for (int i = 0; i < numColumns; ++i) {
+      final Column<?> c =
+          readColumn(new Cursor(in.buffer, columnStarts[i], columnEnds[i]), schema.getColumnType(i), numTuples);
+      if (c == null) {
+        return null;
+      }
+      columns.add(c);
+    }
+    return new TupleBatch(schema, columns, numTuples);
+  }
+
+  /**
+   * @param in a serialized {@link ColumnMessage}.
+   * @param type the type of the column.
+   * @param numTuples the number of values in the column.
+   * @return the column, or null if the message is not a column of the type.
+   */
+  private static Column<?> readColumn(final Cursor in, final Type type, final int numTuples) {
+    final ColumnMessage.Type messageType = messageType(type);
+    final int start = in.position;
+    if (in.readVarint() != CM_TYPE || in.readVarint() != messageType.getNumber()
+        || in.readVarint() != innerTag(messageType)) {
+      return null;
+    }
+    final int innerEnd = in.readLength();
+    if (innerEnd != in.limit) {
+      /* More fields follow, such as the encoding of a compressed column. */
+      return readWithProtobuf(in.buffer, start, in.limit, numTuples);
+    }
+    if (in.readVarint() != COLUMN_DATA) {
+      return null;
+    }
+    final int dataEnd = in.readLength();
+    final int dataStart = in.position;
+    final int dataSize = dataEnd - dataStart;
+    final int width = valueWidth(messageType);
+    final ChannelBuffer buffer = in.buffer;
+    if (width > 0) {
+      if (dataEnd != innerEnd || dataSize != width * numTuples) {
+        return null;
+      }
+      final ByteBuffer data = buffer.toByteBuffer(dataStart, dataSize);
+      switch (messageType) {
+        case INT:
+          return new IntBufferColumn(data.asIntBuffer());
+        case LONG: {
+          final long[] values = new long[numTuples];
+          data.asLongBuffer().get(values);
+          return new LongColumn(values, numTuples);
+        }
+        case FLOAT: {
+          final float[] values = new float[numTuples];
+          data.asFloatBuffer().get(values);
+          return new FloatColumn(values, numTuples);
+        }
+        case DOUBLE: {
+          final double[] values = new double[numTuples];
+          data.asDoubleBuffer().get(values);
+          return new DoubleColumn(values, numTuples);
+        }
+        default: {
+          final LongBuffer millis = data.asLongBuffer();
+          final DateTime[] values = new DateTime[numTuples];
+          for (int row = 0; row < numTuples; ++row) {
+            values[row] = new DateTime(millis.get(row));
+          }
+          return new DateTimeColumn(values, numTuples);
+        }
+      }
+    }
+    if (messageType == ColumnMessage.Type.BOOLEAN) {
+      if (dataEnd != innerEnd) {
+        return null;
+      }
+      return new BooleanColumn(BitSet.valueOf(buffer.toByteBuffer(dataStart, dataSize)), numTuples);
+    }
+
+    in.position = dataEnd;
+    final int[] startIndices = new int[numTuples];
+    final int[] endIndices = new int[numTuples];
+    int numStarts = 0;
+    int numEnds = 0;
+    while (in.position < innerEnd) {
+      final int tag = in.readVarint();
+      if (tag == STRING_START_INDICES && numStarts < numTuples) {
+        startIndices[numStarts++] = in.readVarint();
+      } else if (tag == STRING_END_INDICES && numEnds < numTuples) {
+        endIndices[numEnds++] = in.readVarint();
+      } else {
+        /* Packed indices, or too many of them. */
+        return readWithProtobuf(buffer, start, in.limit, numTuples);
+      }
+    }
+    if (numStarts != numTuples || numEnds != numTuples) {
+      return null;
+    }
+    final String allStrings = buffer.toString(dataStart, dataSize, StandardCharsets.UTF_8);
+    final String[] values = new String[numTuples];
+    for (int row = 0; row < numTuples; ++row) {
+      values[row] = allStrings.substring(startIndices[row], endIndices[row]);
+    }
+    return new StringArrayColumn(values, numTuples);
+  }
+
+  /**
+   * @param buffer the buffer.
+   * @param start the index of the first byte of a serialized {@link ColumnMessage}.
+   * @param end the index after the last byte of the message.
+   * @param numTuples the number of values in the column.
+   * @return the column, parsed with the protobuf classes.
+   */
+  private static Column<?> readWithProtobuf(final ChannelBuffer buffer, final int start, final int end,
+      final int numTuples) {
+    final CodedInputStream coded;
+    if (buffer.hasArray()) {
+      coded = CodedInputStream.newInstance(buffer.array(), buffer.arrayOffset() + start, end - start);
+    } else {
+      final byte[] array = new byte[end - start];
+      buffer.getBytes(start, array);
+      coded = CodedInputStream.newInstance(array);
+    }
+    try {
+      return ColumnFactory.columnFromColumnMessage(ColumnMessage.parseFrom(coded), numTuples);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * A position in a range of a buffer. Reading past the end of the range throws {@link IndexOutOfBoundsException}.
+   */
+  private static final class Cursor {
+    /** The buffer. */
+    private final ChannelBuffer buffer;
+    /** The index of the next byte to read. */
+    private int position;
+    /** The index after the last byte of the range. */
+    private final int limit;
+
+    /**
+     * @param buffer the buffer.
+     * @param position the index of the first byte of the range.
+     * @param limit the index after the last byte of the range.
+     */
+    Cursor(final ChannelBuffer buffer, final int position, final int limit) {
+      this.buffer = buffer;
+      this.position = position;
+      this.limit = limit;
+    }
+
+    /**
+     * @return the next byte.
+     */
+    private byte readByte() {
+      if (position >= limit) {
+        throw new IndexOutOfBoundsException();
+      }
+      return buffer.getByte(position++);
+    }
+
+    /**
+     * @return the next varint, which must fit in an int.
+     */
+    int readVarint() {
+      int value = 0;
+      for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+        final byte b = readByte();
+        value |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+      throw new IndexOutOfBoundsException("Varint does not fit in an int");
+    }
+
+    /**
+     * @return the next varint.
+     */
+    long readVarint64() {
+      long value = 0;
+      for (int shift = 0; shift < Long.SIZE; shift += 7) {
+        final byte b = readByte();
+        value |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+      throw new IndexOutOfBoundsException("Malformed varint");
+    }
+
+    /**
+     * @return the end of the length-delimited field whose length is read.
+     */
+    int readLength() {
+      final int length = readVarint();
+      if (length < 0 || length > limit - position) {
+        throw new IndexOutOfBoundsException("Truncated field");
+      }
+      return position + length;
+    }
+  }
+}
@@ -4,8 +4,14 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
 import java.nio.channels.FileLock;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.BlockingQueue;
@@ -33,6 +39,8 @@ import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.FTMode;
 import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.accessmethod.ConnectionInfo;
+import edu.washington.escience.myria.column.ColumnArrayPool;
+import edu.washington.escience.myria.column.ColumnCompression;
 import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.coordinator.catalog.WorkerCatalog;
 import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
@@ -222,7 +230,52 @@ public final class Worker {
     @Override
     public synchronized void runInner() {
       LOGGER.trace("sending heartbeat to server");
-      sendMessageToMaster(IPCUtils.CONTROL_WORKER_HEARTBEAT).awaitUninterruptibly();
+      sendMessageToMaster(IPCUtils.heartbeat(measureLoad())).awaitUninterruptibly();
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("column array pool: {}", ColumnArrayPool.statistics());
+      }
+    }
+
+    /**
+     * @return the memory and CPU load of this worker, which the master's query scheduler uses for admission control.
+     */
+    private List<ResourceStats> measureLoad() {
+      long timestamp = System.currentTimeMillis();
+      Runtime runtime = Runtime.getRuntime();
+      List<ResourceStats> load = new ArrayList<>();
+      load.add(new ResourceStats(timestamp, 0, QueryScheduler.HEAP_USED_BYTES, liveHeapBytes(), 0, 0));
+      load.add(new ResourceStats(timestamp, 0, QueryScheduler.HEAP_MAX_BYTES, runtime.maxMemory(), 0, 0));
+      load.add(new ResourceStats(timestamp, 0, QueryScheduler.AVAILABLE_PROCESSORS, runtime.availableProcessors(), 0,
+          0));
+      double systemLoad = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+      /* Negative if the platform does not provide a load average. */
+      if (systemLoad >= 0) {
+        load.add(new ResourceStats(timestamp, 0, QueryScheduler.SYSTEM_LOAD_PERCENT, Math.round(systemLoad * 100), 0,
+            0));
+      }
+      return load;
+    }
+
+    /**
+     * @return the bytes of heap still in use after the latest garbage collection. Right before a collection the heap is
+     *         mostly garbage, so the current usage would report memory pressure on every GC cycle. A pool that has not
+     *         been collected yet counts with its current usage.
+     */
+    private long liveHeapBytes() {
+      long used = 0;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() != MemoryType.HEAP) {
+          continue;
+        }
+        /* Null if the pool is not collected; before its first collection nothing is committed. */
+        MemoryUsage afterGc = pool.getCollectionUsage();
+        if (afterGc != null && afterGc.getCommitted() > 0) {
+          used += afterGc.getUsed();
+        } else {
+          used += pool.getUsage().getUsed();
+        }
+      }
+      return used;
     }
   }
 
@@ -616,9 +669,12 @@ public final class Worker {
     int inputBufferRecoverTrigger =
         Integer.valueOf(catalog.getConfigurationValue(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER));
 
+    final int columnEncodings =
+        ColumnCompression.parse(catalog.getConfigurationValue(MyriaSystemConfigKeys.IPC_COLUMN_ENCODINGS));
+
     connectionPool =
         new IPCConnectionPool(myID, computingUnits, IPCConfigurations.createWorkerIPCServerBootstrap(this),
-            IPCConfigurations.createWorkerIPCClientBootstrap(this), new TransportMessageSerializer(),
+            IPCConfigurations.createWorkerIPCClientBootstrap(this), new TransportMessageSerializer(columnEncodings),
             new WorkerShortMessageProcessor(this), inputBufferCapacity, inputBufferRecoverTrigger);
     activeQueries = new ConcurrentHashMap<>();
     executingSubQueries = new ConcurrentHashMap<>();
@@ -632,6 +688,8 @@ public final class Worker {
     execEnvVars.put(MyriaConstants.EXEC_ENV_VAR_DATABASE_SYSTEM, databaseSystem);
     execEnvVars.put(MyriaConstants.EXEC_ENV_VAR_NODE_ID, getID());
     execEnvVars.put(MyriaConstants.EXEC_ENV_VAR_EXECUTION_MODE, queryExecutionMode);
+    execEnvVars.put(MyriaConstants.EXEC_ENV_VAR_SPILL_DIRECTORY, FilenameUtils.concat(workingDirectory, "spill"));
+    execEnvVars.put(MyriaConstants.EXEC_ENV_VAR_COLUMNAR_DIRECTORY, FilenameUtils.concat(workingDirectory, "columnar"));
     LOGGER.info("Worker: Database system " + databaseSystem);
     String jsonConnInfo = catalog.getConfigurationValue(MyriaSystemConfigKeys.WORKER_STORAGE_DATABASE_CONN_INFO);
     if (jsonConnInfo == null) {
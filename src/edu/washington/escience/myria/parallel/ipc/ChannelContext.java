@@ -437,6 +437,12 @@ public class ChannelContext extends AttachmentableAdapter {
    * */
   private volatile Integer remoteReplyID = null;
 
+  /**
+   * the payload features that the remote IPC entity is able to de-serialize, see
+   * {@link PayloadSerializer#getFeatures()}.
+   * */
+  private volatile int remotePayloadFeatures = 0;
+
   /**
    * For channels initiated by this IPC entity, the registration process is that this IPC entity creates a connection,
    * send my IPC ID, and wait for the remote IPC entity sending back its IPC ID within a timeout.
@@ -1115,6 +1121,20 @@ public class ChannelContext extends AttachmentableAdapter {
     remoteReply.setSuccess();
   }
 
+  /**
+   * @param features the payload features that the remote IPC entity sent when connecting.
+   * */
+  final void setRemotePayloadFeatures(final int features) {
+    remotePayloadFeatures = features;
+  }
+
+  /**
+   * @return the payload features that the remote IPC entity is able to de-serialize, or 0 if it did not send any.
+   * */
+  final int getRemotePayloadFeatures() {
+    return remotePayloadFeatures;
+  }
+
   /**
    * Update moste recent IO operation on the owner Channel.
    * */
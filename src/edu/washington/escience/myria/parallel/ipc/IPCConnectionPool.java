@@ -462,7 +462,7 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
     this.myID = myID;
     this.inputBufferCapacity = inputBufferCapacity;
     this.inputBufferRecoverTrigger = inputBufferRecoverTrigger;
-    myIDMsg = new IPCMessage.Meta.CONNECT(myID);
+    myIDMsg = new IPCMessage.Meta.CONNECT(myID, payloadSerializer.getFeatures());
     myIPCServerAddress = remoteAddresses.get(myID).getBindAddress();
     this.clientBootstrap = clientBootstrap;
     this.serverBootstrap = serverBootstrap;
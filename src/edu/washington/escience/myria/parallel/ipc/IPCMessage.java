@@ -126,14 +126,22 @@ public interface IPCMessage {
        * */
       private final ChannelBuffer serializeValue;
 
+      /**
+       * the payload features of the remote IPC entity.
+       * */
+      private final int payloadFeatures;
+
       /**
        * @param remoteID the remote IPC ID.
+       * @param payloadFeatures the payload features, see {@link PayloadSerializer#getFeatures()}.
        * */
-      public CONNECT(final int remoteID) {
+      public CONNECT(final int remoteID, final int payloadFeatures) {
         this.remoteID = remoteID;
-        ChannelBuffer bb = ChannelBuffers.buffer(1 + Integer.SIZE / Byte.SIZE);
+        this.payloadFeatures = payloadFeatures;
+        ChannelBuffer bb = ChannelBuffers.buffer(1 + 2 * Integer.SIZE / Byte.SIZE);
         bb.writeByte((byte) Header.CONNECT.ordinal());
         bb.writeInt(remoteID);
+        bb.writeInt(payloadFeatures);
         serializeValue = ChannelBuffers.unmodifiableBuffer(bb);
       }
 
@@ -144,6 +152,13 @@ public interface IPCMessage {
         return remoteID;
       }
 
+      /**
+       * @return the payload features of the remote IPC entity.
+       * */
+      public int getPayloadFeatures() {
+        return payloadFeatures;
+      }
+
       @Override
       public ChannelBuffer serialize() {
         return serializeValue.duplicate();
@@ -154,7 +169,13 @@ public interface IPCMessage {
        * @param bb serialized data.
        * */
       public static CONNECT deSerialize(final ChannelBuffer bb) {
-        return new CONNECT(bb.readInt());
+        final int remoteID = bb.readInt();
+        int payloadFeatures = 0;
+        if (bb.readableBytes() >= Integer.SIZE / Byte.SIZE) {
+          /* Older IPC entities send no payload features. */
+          payloadFeatures = bb.readInt();
+        }
+        return new CONNECT(remoteID, payloadFeatures);
       }
 
       @Override
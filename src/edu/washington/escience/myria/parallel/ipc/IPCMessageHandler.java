@@ -84,6 +84,7 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
       if (!ownerConnectionPool.isRemoteValid(remoteID)) {
         throw new ChannelException("Unknown RemoteID: " + remoteID);
       }
+      cc.setRemotePayloadFeatures(((IPCMessage.Meta.CONNECT) metaMessage).getPayloadFeatures());
       if (ch.getParent() != null) {
         // server channel
         ch.write(ownerConnectionPool.getMyIDAsMsg()).await(); // await to finish channel registering
@@ -363,7 +364,7 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
          */
         codedMsg =
             ChannelBuffers.wrappedBuffer(IPCMessage.Data.SERIALIZE_HEAD, ownerConnectionPool.getPayloadSerializer()
-                .serialize(m));
+                .serialize(m, cc.getRemotePayloadFeatures()));
       }
       ctx.sendDownstream(new DownstreamMessageEvent(ch, e.getFuture(), codedMsg, e.getRemoteAddress()));
     }
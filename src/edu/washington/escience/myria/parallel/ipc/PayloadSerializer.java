@@ -16,6 +16,21 @@ public interface PayloadSerializer {
    * */
   ChannelBuffer serialize(Object p) throws IOException;
 
+  /**
+   * @return serialized result.
+   * @param p the payload to get serialized.
+   * @param remoteFeatures the optional features, as returned by {@link #getFeatures()} at the remote IPC entity, that
+   *          the receiver of the payload is able to de-serialize.
+   * @throws IOException if any I/O error occurs.
+   * */
+  ChannelBuffer serialize(Object p, int remoteFeatures) throws IOException;
+
+  /**
+   * @return the optional features of the serialized format, as a bitmask, that this serializer is able to
+   *         de-serialize. They are exchanged when two IPC entities connect.
+   * */
+  int getFeatures();
+
   /**
    * De-serialize payload.
    * 
@@ -15,6 +15,8 @@ import edu.washington.escience.myria.accessmethod.AccessMethod;
 import edu.washington.escience.myria.accessmethod.AccessMethod.IndexRef;
 import edu.washington.escience.myria.accessmethod.ConnectionInfo;
 import edu.washington.escience.myria.accessmethod.JdbcAccessMethod;
+import edu.washington.escience.myria.expression.evaluate.Evaluator;
+import edu.washington.escience.myria.expression.evaluate.EvaluatorCache;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.parallel.ResourceStats;
 import edu.washington.escience.myria.parallel.SubQueryId;
@@ -215,6 +217,76 @@ public class ProfilingLogger {
     flush(MyriaConstants.RESOURCE_PROFILING_RELATION, resources.popFilled());
   }
 
+  /**
+   * Record that an operator spilled tuples to local disk because they did not fit in its memory budget. The numbers are
+   * logged as resource measurements of the operator.
+   * 
+   * @param operator the operator that spilled
+   * @param numPartitions the number of partitions the spilled tuples were split into
+   * @param numBytes the number of bytes written to disk
+   * @throws DbException if insertion in the database fails
+   */
+  public synchronized void recordSpill(final Operator operator, final int numPartitions, final long numBytes)
+      throws DbException {
+    SubQueryId sq = operator.getSubQueryId();
+    long timestamp = System.currentTimeMillis();
+    recordResource(new ResourceStats(timestamp, operator.getOpId(), "spillPartitions", numPartitions, sq.getQueryId(),
+        sq.getSubqueryId()));
+    recordResource(new ResourceStats(timestamp, operator.getOpId(), "spillBytes", numBytes, sq.getQueryId(), sq
+        .getSubqueryId()));
+  }
+
+  /**
+   * Record the heavy hitters a shuffle producer found in its input. Each is logged as a resource measurement of the
+   * operator whose value is the hash of the key, which can be listed as a heavy hitter of the partition function of a
+   * later query.
+   * 
+   * @param operator the producer
+   * @param keyHashes the hashes of the keys of the heavy hitters
+   * @throws DbException if insertion in the database fails
+   */
+  public synchronized void recordHeavyHitters(final Operator operator, final int[] keyHashes) throws DbException {
+    SubQueryId sq = operator.getSubQueryId();
+    long timestamp = System.currentTimeMillis();
+    for (int hash : keyHashes) {
+      recordResource(new ResourceStats(timestamp, operator.getOpId(), "heavyHitter", hash, sq.getQueryId(), sq
+          .getSubqueryId()));
+    }
+  }
+
+  /**
+   * Record how the expressions of an operator were compiled: the number of evaluators whose class was reused from the
+   * {@link EvaluatorCache}, the number that were compiled, and the time spent compiling them. They are logged as
+   * resource measurements of the operator.
+   * 
+   * @param operator the operator
+   * @param evaluators the evaluators of the operator
+   * @throws DbException if insertion in the database fails
+   */
+  public synchronized void recordCompilation(final Operator operator, final Iterable<? extends Evaluator> evaluators)
+      throws DbException {
+    int hits = 0;
+    int misses = 0;
+    long compileNanos = 0;
+    for (Evaluator evaluator : evaluators) {
+      EvaluatorCache.Stats stats = evaluator.getCompileStats();
+      hits += stats.getHits();
+      misses += stats.getMisses();
+      compileNanos += stats.getCompileNanos();
+    }
+    if (hits + misses == 0) {
+      return;
+    }
+    SubQueryId sq = operator.getSubQueryId();
+    long timestamp = System.currentTimeMillis();
+    recordResource(new ResourceStats(timestamp, operator.getOpId(), "evaluatorCacheHits", hits, sq.getQueryId(), sq
+        .getSubqueryId()));
+    recordResource(new ResourceStats(timestamp, operator.getOpId(), "evaluatorCacheMisses", misses, sq.getQueryId(),
+        sq.getSubqueryId()));
+    recordResource(new ResourceStats(timestamp, operator.getOpId(), "compileNanos", compileNanos, sq.getQueryId(), sq
+        .getSubqueryId()));
+  }
+
   /**
    * Flush the profiling buffers. The buffer is flushed at a particular number of tuples or on a call to
    * {@link #flush()}.
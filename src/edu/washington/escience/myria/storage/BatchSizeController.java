@@ -0,0 +1,166 @@
+package edu.washington.escience.myria.storage;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+/**
+ * Chooses how many tuples go in a {@link TupleBatch}. The number is driven by a target size in bytes: batches of narrow
+ * tuples hold up to {@link TupleBatch#BATCH_SIZE} tuples, while batches of wide tuples, such as ones with long strings,
+ * hold fewer so that they stay near the target. The width of a tuple is estimated from the column types and, for
+ * strings, from the lengths seen in the batches recorded so far.
+ *
+ * The number is also lowered for latency. When a batch has to be sent before it is full because its tuples arrive
+ * slowly (see {@link TupleBatchBuffer#popAnyUsingTimeout()}), the next batches are made smaller. Each batch that fills
+ * up doubles the limit again, up to the one derived from the target size.
+ */
+public final class BatchSizeController {
+  /** The smallest number of tuples a batch is limited to. */
+  public static final int MIN_BATCH_SIZE = 64;
+  /** The number of characters assumed for a String until some have been seen. */
+  private static final int INITIAL_STRING_CHARS = 16;
+  /** The number of tuples of a batch whose strings are measured. */
+  private static final int STRING_SAMPLE_SIZE = 64;
+  /** The weight of the latest batch in the moving average of the string bytes of a tuple. */
+  private static final double STRING_BYTES_WEIGHT = 0.5;
+
+  /** The number of bytes a batch aims at. */
+  private final int targetBytes;
+  /** The bytes of a tuple, not counting the characters of its strings. */
+  private final int fixedBytesPerTuple;
+  /** The indices of the String columns. */
+  private final int[] stringColumns;
+  /** The moving average of the characters of the strings of a tuple, in bytes. */
+  private double stringBytesPerTuple;
+  /** Whether {@link #stringBytesPerTuple} was measured, rather than guessed. */
+  private boolean stringBytesMeasured;
+  /** The maximum number of tuples in a batch of {@link #targetBytes} bytes. */
+  private int sizeForBytes;
+  /** The maximum number of tuples in a batch, as lowered when batches time out. */
+  private int sizeForLatency;
+
+  /**
+   * @param schema the schema of the tuples.
+   * @param targetBytes the number of bytes a batch aims at.
+   */
+  public BatchSizeController(final Schema schema, final int targetBytes) {
+    Preconditions.checkArgument(targetBytes > 0, "targetBytes must be positive, not %s", targetBytes);
+    this.targetBytes = targetBytes;
+    int bytes = 0;
+    final int[] strings = new int[schema.numColumns()];
+    int numStrings = 0;
+    for (int column = 0; column < schema.numColumns(); ++column) {
+      final Type type = schema.getColumnType(column);
+      bytes += serializedBytes(type);
+      if (type == Type.STRING_TYPE) {
+        strings[numStrings++] = column;
+      }
+    }
+    fixedBytesPerTuple = bytes;
+    stringColumns = new int[numStrings];
+    System.arraycopy(strings, 0, stringColumns, 0, numStrings);
+    stringBytesPerTuple = numStrings * INITIAL_STRING_CHARS;
+    sizeForLatency = TupleBatch.BATCH_SIZE;
+    updateSizeForBytes();
+  }
+
+  /**
+   * @param type the type of a value.
+   * @return the number of bytes a value of the type takes in a serialized batch, not counting the characters of a
+   *         String.
+   */
+  private static int serializedBytes(final Type type) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return 1;
+      case INT_TYPE:
+      case FLOAT_TYPE:
+      case STRING_TYPE:
+        /* A String is prefixed by its length. */
+        return Integer.SIZE / Byte.SIZE;
+      case LONG_TYPE:
+      case DOUBLE_TYPE:
+      case DATETIME_TYPE:
+        return Long.SIZE / Byte.SIZE;
+    }
+    throw new IllegalArgumentException("Unknown type " + type);
+  }
+
+  /**
+   * Recompute {@link #sizeForBytes} from the estimated bytes of a tuple.
+   */
+  private void updateSizeForBytes() {
+    final double bytesPerTuple = Math.max(1, fixedBytesPerTuple + stringBytesPerTuple);
+    sizeForBytes = (int) Math.max(MIN_BATCH_SIZE, Math.min(TupleBatch.BATCH_SIZE, targetBytes / bytesPerTuple));
+  }
+
+  /**
+   * @return the maximum number of tuples the next batch should hold.
+   */
+  public int getBatchSize() {
+    return Math.min(sizeForBytes, sizeForLatency);
+  }
+
+  /**
+   * @return the maximum number of tuples in a batch of about the target number of bytes, ignoring latency.
+   */
+  public int getBatchSizeForBytes() {
+    return sizeForBytes;
+  }
+
+  /**
+   * @return the number of bytes a batch aims at.
+   */
+  public int getTargetBytes() {
+    return targetBytes;
+  }
+
+  /**
+   * Update the estimated width of a tuple using the strings in a newly built batch. Only a sample of about
+   * {@link #STRING_SAMPLE_SIZE} tuples, evenly spaced in the batch, is measured.
+   *
+   * @param batch the batch.
+   */
+  public void recordBatch(final TupleBatch batch) {
+    final int numTuples = batch.numTuples();
+    if (stringColumns.length == 0 || numTuples == 0) {
+      return;
+    }
+    final int step = Math.max(1, numTuples / STRING_SAMPLE_SIZE);
+    long chars = 0;
+    int sampled = 0;
+    for (int row = 0; row < numTuples; row += step) {
+      for (int column : stringColumns) {
+        chars += batch.getString(column, row).length();
+      }
+      ++sampled;
+    }
+    if (stringBytesMeasured) {
+      stringBytesPerTuple =
+          STRING_BYTES_WEIGHT * chars / sampled + (1 - STRING_BYTES_WEIGHT) * stringBytesPerTuple;
+    } else {
+      stringBytesPerTuple = (double) chars / sampled;
+      stringBytesMeasured = true;
+    }
+    updateSizeForBytes();
+  }
+
+  /**
+   * A batch filled up to {@link #getBatchSize()} tuples: let the next batches be larger.
+   */
+  public void batchFilled() {
+    if (sizeForLatency < TupleBatch.BATCH_SIZE) {
+      sizeForLatency = Math.min(TupleBatch.BATCH_SIZE, 2 * sizeForLatency);
+    }
+  }
+
+  /**
+   * A batch had to be sent before it filled up: make the next batches smaller, so that their tuples wait less.
+   *
+   * @param numTuples the number of tuples in the batch that timed out.
+   */
+  public void batchTimedOut(final int numTuples) {
+    sizeForLatency = Math.max(MIN_BATCH_SIZE, Math.min(sizeForLatency, numTuples) / 2);
+  }
+}
@@ -0,0 +1,338 @@
+package edu.washington.escience.myria.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.joda.time.DateTime;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.BooleanColumn;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DateTimeColumn;
+import edu.washington.escience.myria.column.DoubleBufferColumn;
+import edu.washington.escience.myria.column.FloatBufferColumn;
+import edu.washington.escience.myria.column.IntBufferColumn;
+import edu.washington.escience.myria.column.LongBufferColumn;
+import edu.washington.escience.myria.column.StringArrayColumn;
+
+/**
+ * A file of tuples stored column by column, as written by {@link edu.washington.escience.myria.ColumnarTupleWriter}.
+ * The tuples are split into segments of at most {@link TupleBatch#BATCH_SIZE} tuples. A segment is read by mapping it
+ * into memory, and its int, long, float and double columns are views of the mapping rather than copies.
+ *
+ * Each segment keeps the minimum and maximum of each of its numeric and datetime columns (a zone map), so that a scan
+ * can skip the segments that cannot hold the values it looks for.
+ *
+ * The layout of the file, in little-endian byte order, is:
+ *
+ * <pre>
+ * file    := MAGIC, header length (4), header, segment*, footer, footer offset (8), MAGIC
+ * header  := number of columns (4), then for each column its type name and its name
+ * segment := for each column its values, padded to a multiple of {@link #ALIGNMENT} bytes
+ * footer  := number of segments (4), then for each segment its number of tuples (4) and, for each column, the offset
+ *            of its values in the file (8) and their minimum and maximum (8 each)
+ * </pre>
+ *
+ * Names are stored as their length (4) and their UTF-8 bytes. Booleans take one byte, datetimes their milliseconds
+ * since the epoch. A String column holds number of tuples + 1 offsets (4 each) into the UTF-8 bytes that follow them.
+ * In the zone map, int, long and datetime values are stored as longs and float and double values as the bits of a
+ * double; the zone maps of boolean and String columns are unused.
+ */
+public final class ColumnarFile implements AutoCloseable {
+  /** The bytes at the start and at the end of a columnar file. */
+  private static final byte[] MAGIC = "MYRIACOL".getBytes(StandardCharsets.US_ASCII);
+  /** The byte order of a columnar file. */
+  public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+  /** The values of each column of a segment start at a multiple of this many bytes. */
+  public static final int ALIGNMENT = Long.SIZE / Byte.SIZE;
+  /** The number of bytes after the footer: its offset and the magic bytes. */
+  private static final int TRAILER_BYTES = Long.SIZE / Byte.SIZE + 8;
+
+  /** The file. */
+  private final File file;
+  /** The channel the segments are mapped from. */
+  private final FileChannel channel;
+  /** The schema of the tuples. */
+  private final Schema schema;
+  /** The number of tuples in each segment. */
+  private final int[] numTuples;
+  /** For each segment, the offset in the file of the values of each column. */
+  private final long[][] offsets;
+  /** For each segment, the offset in the file of its end. */
+  private final long[] ends;
+  /** For each segment, the minimum of each column, see the class comment. */
+  private final long[][] mins;
+  /** For each segment, the maximum of each column, see the class comment. */
+  private final long[][] maxs;
+
+  /**
+   * Open a columnar file for reading.
+   *
+   * @param file the file.
+   * @throws IOException if the file cannot be read or is not a columnar file.
+   */
+  public ColumnarFile(final File file) throws IOException {
+    this.file = Preconditions.checkNotNull(file, "file");
+    @SuppressWarnings("resource")
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    channel = raf.getChannel();
+    try {
+      final long size = channel.size();
+      if (size < 2 * MAGIC.length + Integer.SIZE / Byte.SIZE + TRAILER_BYTES) {
+        throw new IOException(file + " is too short to be a columnar file");
+      }
+
+      ByteBuffer head = read(0, MAGIC.length + Integer.SIZE / Byte.SIZE);
+      checkMagic(head);
+      head = read(head.limit(), head.getInt());
+      final int numColumns = head.getInt();
+      final List<Type> types = new ArrayList<>(numColumns);
+      final List<String> names = new ArrayList<>(numColumns);
+      for (int column = 0; column < numColumns; ++column) {
+        types.add(Type.valueOf(getName(head)));
+        names.add(getName(head));
+      }
+      schema = new Schema(types, names);
+
+      final ByteBuffer trailer = read(size - TRAILER_BYTES, TRAILER_BYTES);
+      final long footerOffset = trailer.getLong();
+      checkMagic(trailer);
+      final ByteBuffer footer = read(footerOffset, (int) (size - TRAILER_BYTES - footerOffset));
+      final int numSegments = footer.getInt();
+      numTuples = new int[numSegments];
+      offsets = new long[numSegments][numColumns];
+      ends = new long[numSegments];
+      mins = new long[numSegments][numColumns];
+      maxs = new long[numSegments][numColumns];
+      for (int segment = 0; segment < numSegments; ++segment) {
+        numTuples[segment] = footer.getInt();
+        for (int column = 0; column < numColumns; ++column) {
+          offsets[segment][column] = footer.getLong();
+          mins[segment][column] = footer.getLong();
+          maxs[segment][column] = footer.getLong();
+        }
+        if (segment > 0) {
+          ends[segment - 1] = offsets[segment][0];
+        }
+      }
+      if (numSegments > 0) {
+        ends[numSegments - 1] = footerOffset;
+      }
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Read a part of the file into a new buffer.
+   *
+   * @param position the offset in the file of the part.
+   * @param length the number of bytes of the part.
+   * @return a buffer holding the part, ready to be read.
+   * @throws IOException if the part cannot be read.
+   */
+  private ByteBuffer read(final long position, final int length) throws IOException {
+    if (length < 0 || position < 0 || position + length > channel.size()) {
+      throw new IOException(file + " is not a valid columnar file");
+    }
+    final ByteBuffer ret = ByteBuffer.allocate(length).order(BYTE_ORDER);
+    while (ret.hasRemaining()) {
+      if (channel.read(ret, position + ret.position()) < 0) {
+        throw new IOException("Unexpected end of " + file);
+      }
+    }
+    ret.flip();
+    return ret;
+  }
+
+  /**
+   * Check that the next bytes of a buffer are the magic bytes of a columnar file.
+   *
+   * @param buffer the buffer.
+   * @throws IOException if they are not.
+   */
+  private void checkMagic(final ByteBuffer buffer) throws IOException {
+    final byte[] magic = new byte[MAGIC.length];
+    buffer.get(magic);
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new IOException(file + " is not a columnar file");
+    }
+  }
+
+  /**
+   * @param buffer a buffer positioned at a name.
+   * @return the name.
+   */
+  private static String getName(final ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return the magic bytes at the start and at the end of a columnar file.
+   */
+  public static byte[] getMagic() {
+    return MAGIC.clone();
+  }
+
+  /**
+   * @param type the type of a column.
+   * @return whether the zone maps of columns of that type are kept.
+   */
+  public static boolean hasZoneMap(final Type type) {
+    return type != Type.BOOLEAN_TYPE && type != Type.STRING_TYPE;
+  }
+
+  /**
+   * @return the schema of the tuples.
+   */
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * @return the number of segments.
+   */
+  public int numSegments() {
+    return numTuples.length;
+  }
+
+  /**
+   * @param segment the segment.
+   * @return the number of tuples in the segment.
+   */
+  public int numTuples(final int segment) {
+    return numTuples[segment];
+  }
+
+  /**
+   * Whether a segment may hold values of a column in a range, judging from its zone map. Columns without a zone map may
+   * always hold any value.
+   *
+   * @param segment the segment.
+   * @param column the column.
+   * @param lower the lower bound of the range, inclusive.
+   * @param upper the upper bound of the range, inclusive.
+   * @return false if no value of the column in the segment is in the range.
+   */
+  public boolean mayContain(final int segment, final int column, final double lower, final double upper) {
+    final Type type = schema.getColumnType(column);
+    if (!hasZoneMap(type)) {
+      return true;
+    }
+    final double min;
+    final double max;
+    if (type == Type.FLOAT_TYPE || type == Type.DOUBLE_TYPE) {
+      min = Double.longBitsToDouble(mins[segment][column]);
+      max = Double.longBitsToDouble(maxs[segment][column]);
+    } else {
+      min = mins[segment][column];
+      max = maxs[segment][column];
+    }
+    return max >= lower && min <= upper;
+  }
+
+  /**
+   * Map a segment into memory and return its tuples. The numeric columns of the batch are views of the mapping; the
+   * others are decoded.
+   *
+   * @param segment the segment.
+   * @return the tuples of the segment.
+   * @throws IOException if the segment cannot be mapped.
+   */
+  public TupleBatch readSegment(final int segment) throws IOException {
+    Preconditions.checkElementIndex(segment, numSegments());
+    final long start = offsets[segment][0];
+    final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, ends[segment] - start);
+    final int n = numTuples[segment];
+    final List<Column<?>> columns = new ArrayList<>(schema.numColumns());
+    for (int column = 0; column < schema.numColumns(); ++column) {
+      mapped.position((int) (offsets[segment][column] - start));
+      final ByteBuffer values = mapped.slice().order(BYTE_ORDER);
+      switch (schema.getColumnType(column)) {
+        case INT_TYPE:
+          IntBuffer ints = values.asIntBuffer();
+          ints.limit(n);
+          columns.add(new IntBufferColumn(ints));
+          break;
+        case LONG_TYPE:
+          LongBuffer longs = values.asLongBuffer();
+          longs.limit(n);
+          columns.add(new LongBufferColumn(longs));
+          break;
+        case FLOAT_TYPE:
+          FloatBuffer floats = values.asFloatBuffer();
+          floats.limit(n);
+          columns.add(new FloatBufferColumn(floats));
+          break;
+        case DOUBLE_TYPE:
+          DoubleBuffer doubles = values.asDoubleBuffer();
+          doubles.limit(n);
+          columns.add(new DoubleBufferColumn(doubles));
+          break;
+        case DATETIME_TYPE:
+          final DateTime[] dates = new DateTime[n];
+          for (int row = 0; row < n; ++row) {
+            dates[row] = new DateTime(values.getLong(row * (Long.SIZE / Byte.SIZE)));
+          }
+          columns.add(new DateTimeColumn(dates, n));
+          break;
+        case BOOLEAN_TYPE:
+          final BitSet bits = new BitSet(n);
+          for (int row = 0; row < n; ++row) {
+            bits.set(row, values.get(row) != 0);
+          }
+          columns.add(new BooleanColumn(bits, n));
+          break;
+        case STRING_TYPE:
+          columns.add(readStrings(values, n));
+          break;
+      }
+    }
+    return new TupleBatch(schema, columns, n);
+  }
+
+  /**
+   * @param values the values of a String column, starting with their offsets.
+   * @param n the number of values.
+   * @return the column.
+   */
+  private static StringArrayColumn readStrings(final ByteBuffer values, final int n) {
+    final int base = (n + 1) * (Integer.SIZE / Byte.SIZE);
+    final byte[] bytes = new byte[values.getInt(n * (Integer.SIZE / Byte.SIZE))];
+    values.position(base);
+    values.get(bytes);
+    final String[] strings = new String[n];
+    int begin = 0;
+    for (int row = 0; row < n; ++row) {
+      final int end = values.getInt((row + 1) * (Integer.SIZE / Byte.SIZE));
+      strings[row] = new String(bytes, begin, end - begin, StandardCharsets.UTF_8);
+      begin = end;
+    }
+    return new StringArrayColumn(strings, n);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
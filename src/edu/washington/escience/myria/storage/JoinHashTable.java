@@ -0,0 +1,411 @@
+package edu.washington.escience.myria.storage;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+
+/**
+ * A hash table for the build side of a hash join.
+ *
+ * The table is an open-addressing hash table with linear probing over the distinct join keys. The values of the key
+ * columns of every stored tuple are kept inline in primitive arrays, so probing a key never calls into a column of the
+ * stored side. The tuples that share a key form a run that is chained, in insertion order, through an <code>int[]</code>
+ * of next indices. Nothing is allocated per tuple or per key: all the state is in a handful of arrays that grow by
+ * doubling.
+ *
+ * If the table is constructed with <code>storeTuples</code> set, the whole tuples are also appended to a
+ * {@link MutableTupleBuffer}, and a tuple index returned by this table is the row of that tuple in
+ * {@link #getTuples()}. Otherwise only the keys are kept, which is all a counting join needs.
+ */
+public final class JoinHashTable {
+  /** Marks a slot that does not hold a key. */
+  private static final int EMPTY = -1;
+  /** The initial number of slots. Must be a power of two. */
+  private static final int INITIAL_SLOTS = 64;
+  /** The initial number of tuples that the key arrays can hold. */
+  private static final int INITIAL_TUPLES = INITIAL_SLOTS / 2;
+
+  /** The columns of the inserted tuples that form the key. */
+  private final int[] keyColumns;
+  /** The types of the key columns. */
+  private final Type[] keyTypes;
+  /** For each BOOLEAN, INT or LONG key column, its values, else null. */
+  private final long[][] longKeys;
+  /** For each FLOAT or DOUBLE key column, its values, else null. */
+  private final double[][] doubleKeys;
+  /** For each STRING or DATETIME key column, its values, else null. */
+  private final Object[][] objectKeys;
+
+  /** For each tuple, the index of the next tuple with the same key, or {@link #EMPTY}. */
+  private int[] next;
+  /** The number of tuples in this table. */
+  private int numTuples;
+
+  /** For each slot, the first tuple of the run of its key, or {@link #EMPTY}. */
+  private int[] slotHeads;
+  /** For each slot, the last tuple of the run of its key. */
+  private int[] slotTails;
+  /** For each slot, the hash code of its key. */
+  private int[] slotHashes;
+  /** The number of slots minus one, used to map hash codes to slots. */
+  private int mask;
+  /** The number of distinct keys in this table. */
+  private int numKeys;
+
+  /** The tuples, if they are stored. */
+  private final MutableTupleBuffer tuples;
+  /** The estimated number of bytes that each tuple uses, not counting the characters of its strings. */
+  private final int bytesPerTuple;
+  /** The columns of the inserted tuples whose strings are kept by this table. */
+  private final int[] stringColumns;
+  /** The estimated number of bytes used by the tuples in this table. */
+  private long tupleBytes;
+
+  /**
+   * @param schema the schema of the inserted tuples.
+   * @param keyColumns the columns of the inserted tuples that form the key.
+   * @param storeTuples whether to store the whole tuples, in addition to the keys.
+   */
+  public JoinHashTable(final Schema schema, final int[] keyColumns, final boolean storeTuples) {
+    this.keyColumns = Preconditions.checkNotNull(keyColumns, "keyColumns");
+    keyTypes = new Type[keyColumns.length];
+    longKeys = new long[keyColumns.length][];
+    doubleKeys = new double[keyColumns.length][];
+    objectKeys = new Object[keyColumns.length][];
+    for (int i = 0; i < keyColumns.length; ++i) {
+      keyTypes[i] = schema.getColumnType(keyColumns[i]);
+      switch (keyTypes[i]) {
+        case BOOLEAN_TYPE:
+        case INT_TYPE:
+        case LONG_TYPE:
+          longKeys[i] = new long[INITIAL_TUPLES];
+          break;
+        case FLOAT_TYPE:
+        case DOUBLE_TYPE:
+          doubleKeys[i] = new double[INITIAL_TUPLES];
+          break;
+        case STRING_TYPE:
+        case DATETIME_TYPE:
+          objectKeys[i] = new Object[INITIAL_TUPLES];
+          break;
+      }
+    }
+    next = new int[INITIAL_TUPLES];
+    slotHeads = new int[INITIAL_SLOTS];
+    Arrays.fill(slotHeads, EMPTY);
+    slotTails = new int[INITIAL_SLOTS];
+    slotHashes = new int[INITIAL_SLOTS];
+    mask = INITIAL_SLOTS - 1;
+    if (storeTuples) {
+      tuples = new MutableTupleBuffer(schema);
+    } else {
+      tuples = null;
+    }
+
+    /* Each tuple has a next index and a primitive or a reference per key column. */
+    int bytes = Integer.SIZE / Byte.SIZE + keyColumns.length * Long.SIZE / Byte.SIZE;
+    final int[] strings = new int[schema.numColumns()];
+    int numStrings = 0;
+    for (int column = 0; column < schema.numColumns(); ++column) {
+      final Type type = schema.getColumnType(column);
+      if (storeTuples) {
+        bytes += TupleUtils.estimatedBytes(type);
+      } else if (!Ints.contains(keyColumns, column)) {
+        continue;
+      } else if (type == Type.STRING_TYPE || type == Type.DATETIME_TYPE) {
+        bytes += TupleUtils.OBJECT_BYTES;
+      }
+      if (type == Type.STRING_TYPE) {
+        strings[numStrings++] = column;
+      }
+    }
+    bytesPerTuple = bytes;
+    stringColumns = Arrays.copyOf(strings, numStrings);
+  }
+
+  /**
+   * @return the number of tuples in this table.
+   */
+  public int numTuples() {
+    return numTuples;
+  }
+
+  /**
+   * @return the number of distinct keys in this table.
+   */
+  public int numKeys() {
+    return numKeys;
+  }
+
+  /**
+   * @return the estimated number of bytes of heap memory used by this table.
+   */
+  public long getEstimatedBytes() {
+    return tupleBytes + (long) slotHeads.length * 3 * Integer.SIZE / Byte.SIZE;
+  }
+
+  /**
+   * @return the stored tuples, in insertion order.
+   * @throws IllegalStateException if this table does not store tuples.
+   */
+  public MutableTupleBuffer getTuples() {
+    Preconditions.checkState(tuples != null, "this hash table only stores keys");
+    return tuples;
+  }
+
+  /**
+   * Find the first tuple whose key equals the given key.
+   *
+   * @param tb the table holding the key.
+   * @param compareColumns the key columns of <code>tb</code>. Their types must match the key columns of this table.
+   * @param row the row of the key in <code>tb</code>.
+   * @param hashCode the hash code of the key.
+   * @return the index of the first such tuple, or -1 if there is none.
+   */
+  public int find(final ReadableTable tb, final int[] compareColumns, final int row, final int hashCode) {
+    final int slot = findSlot(tb, compareColumns, row, hashCode);
+    return slotHeads[slot];
+  }
+
+  /**
+   * @param index the index of a tuple.
+   * @return the index of the next tuple with the same key, or -1 if it is the last one.
+   */
+  public int next(final int index) {
+    return next[index];
+  }
+
+  /**
+   * Insert a tuple at the end of the run of its key.
+   *
+   * @param tb the table holding the tuple.
+   * @param row the row of the tuple in <code>tb</code>.
+   * @param hashCode the hash code of the key columns of the tuple.
+   * @return the index of the inserted tuple.
+   */
+  public int add(final TupleBatch tb, final int row, final int hashCode) {
+    final int slot = findSlot(tb, keyColumns, row, hashCode);
+    final int index = append(tb, row);
+    if (slotHeads[slot] == EMPTY) {
+      slotHeads[slot] = index;
+      slotHashes[slot] = hashCode;
+      ++numKeys;
+      slotTails[slot] = index;
+      if (numKeys > (mask + 1) / 4 * 3) {
+        rehash();
+      }
+    } else {
+      next[slotTails[slot]] = index;
+      slotTails[slot] = index;
+    }
+    return index;
+  }
+
+  /**
+   * Overwrite a stored tuple. The key of the new tuple must equal the key of the old one.
+   *
+   * @param index the index of the stored tuple.
+   * @param tb the table holding the new tuple.
+   * @param row the row of the new tuple in <code>tb</code>.
+   */
+  public void replace(final int index, final TupleBatch tb, final int row) {
+    if (tuples == null) {
+      return;
+    }
+    final List<? extends Column<?>> columns = tb.getDataColumns();
+    for (int column = 0; column < columns.size(); ++column) {
+      tuples.replace(column, index, columns.get(column), row);
+    }
+  }
+
+  /**
+   * Find the slot holding the given key, or the empty slot where it would be inserted.
+   *
+   * @param tb the table holding the key.
+   * @param compareColumns the key columns of <code>tb</code>.
+   * @param row the row of the key in <code>tb</code>.
+   * @param hashCode the hash code of the key.
+   * @return the slot.
+   */
+  private int findSlot(final ReadableTable tb, final int[] compareColumns, final int row, final int hashCode) {
+    int slot = mix(hashCode) & mask;
+    while (true) {
+      final int head = slotHeads[slot];
+      if (head == EMPTY || slotHashes[slot] == hashCode && keyEquals(head, tb, compareColumns, row)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * The finalizer of MurmurHash3. The hash codes are also used to shuffle tuples among workers, so all keys that reach
+   * a worker may share their low bits; mixing the high bits in spreads them over the slots.
+   *
+   * @param hashCode the hash code of a key.
+   * @return the mixed hash code.
+   */
+  private static int mix(final int hashCode) {
+    int h = hashCode;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /**
+   * @param index the index of a stored tuple.
+   * @param tb the table holding the other key.
+   * @param compareColumns the key columns of <code>tb</code>.
+   * @param row the row of the other key in <code>tb</code>.
+   * @return whether the key of the stored tuple equals the other key.
+   */
+  private boolean keyEquals(final int index, final ReadableTable tb, final int[] compareColumns, final int row) {
+    for (int i = 0; i < keyTypes.length; ++i) {
+      final int column = compareColumns[i];
+      switch (keyTypes[i]) {
+        case BOOLEAN_TYPE:
+          if (longKeys[i][index] != (tb.getBoolean(column, row) ? 1 : 0)) {
+            return false;
+          }
+          break;
+        case INT_TYPE:
+          if (longKeys[i][index] != tb.getInt(column, row)) {
+            return false;
+          }
+          break;
+        case LONG_TYPE:
+          if (longKeys[i][index] != tb.getLong(column, row)) {
+            return false;
+          }
+          break;
+        case FLOAT_TYPE:
+          if (Type.compareRaw(doubleKeys[i][index], tb.getFloat(column, row)) != 0) {
+            return false;
+          }
+          break;
+        case DOUBLE_TYPE:
+          if (Type.compareRaw(doubleKeys[i][index], tb.getDouble(column, row)) != 0) {
+            return false;
+          }
+          break;
+        case STRING_TYPE:
+          if (!objectKeys[i][index].equals(tb.getString(column, row))) {
+            return false;
+          }
+          break;
+        case DATETIME_TYPE:
+          if (!objectKeys[i][index].equals(tb.getDateTime(column, row))) {
+            return false;
+          }
+          break;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Store the key, and the tuple if tuples are stored, of a row as a new tuple.
+   *
+   * @param tb the table holding the tuple.
+   * @param row the row of the tuple in <code>tb</code>.
+   * @return the index of the new tuple.
+   */
+  private int append(final TupleBatch tb, final int row) {
+    final int index = numTuples;
+    if (index == next.length) {
+      grow();
+    }
+    for (int i = 0; i < keyTypes.length; ++i) {
+      final int column = keyColumns[i];
+      switch (keyTypes[i]) {
+        case BOOLEAN_TYPE:
+          longKeys[i][index] = tb.getBoolean(column, row) ? 1 : 0;
+          break;
+        case INT_TYPE:
+          longKeys[i][index] = tb.getInt(column, row);
+          break;
+        case LONG_TYPE:
+          longKeys[i][index] = tb.getLong(column, row);
+          break;
+        case FLOAT_TYPE:
+          doubleKeys[i][index] = tb.getFloat(column, row);
+          break;
+        case DOUBLE_TYPE:
+          doubleKeys[i][index] = tb.getDouble(column, row);
+          break;
+        case STRING_TYPE:
+          objectKeys[i][index] = tb.getString(column, row);
+          break;
+        case DATETIME_TYPE:
+          objectKeys[i][index] = tb.getDateTime(column, row);
+          break;
+      }
+    }
+    next[index] = EMPTY;
+    tupleBytes += bytesPerTuple;
+    for (int column : stringColumns) {
+      tupleBytes += 2L * tb.getString(column, row).length();
+    }
+    if (tuples != null) {
+      final List<? extends Column<?>> columns = tb.getDataColumns();
+      for (int column = 0; column < columns.size(); ++column) {
+        tuples.put(column, columns.get(column), row);
+      }
+    }
+    ++numTuples;
+    return index;
+  }
+
+  /**
+   * Double the capacity of the per-tuple arrays.
+   */
+  private void grow() {
+    final int capacity = next.length * 2;
+    next = Arrays.copyOf(next, capacity);
+    for (int i = 0; i < keyTypes.length; ++i) {
+      if (longKeys[i] != null) {
+        longKeys[i] = Arrays.copyOf(longKeys[i], capacity);
+      } else if (doubleKeys[i] != null) {
+        doubleKeys[i] = Arrays.copyOf(doubleKeys[i], capacity);
+      } else {
+        objectKeys[i] = Arrays.copyOf(objectKeys[i], capacity);
+      }
+    }
+  }
+
+  /**
+   * Double the number of slots and reinsert every key. Keys are distinct, so they are not compared.
+   */
+  private void rehash() {
+    final int[] oldHeads = slotHeads;
+    final int[] oldTails = slotTails;
+    final int[] oldHashes = slotHashes;
+    final int numSlots = oldHeads.length * 2;
+    slotHeads = new int[numSlots];
+    Arrays.fill(slotHeads, EMPTY);
+    slotTails = new int[numSlots];
+    slotHashes = new int[numSlots];
+    mask = numSlots - 1;
+    for (int oldSlot = 0; oldSlot < oldHeads.length; ++oldSlot) {
+      if (oldHeads[oldSlot] == EMPTY) {
+        continue;
+      }
+      int slot = mix(oldHashes[oldSlot]) & mask;
+      while (slotHeads[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      slotHeads[slot] = oldHeads[oldSlot];
+      slotTails[slot] = oldTails[oldSlot];
+      slotHashes[slot] = oldHashes[oldSlot];
+    }
+  }
+}
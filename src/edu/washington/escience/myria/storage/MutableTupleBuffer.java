@@ -12,14 +12,19 @@ import com.google.common.base.Preconditions;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.ColumnArrayPool;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
 import edu.washington.escience.myria.column.builder.ColumnFactory;
 import edu.washington.escience.myria.column.builder.DateTimeColumnBuilder;
 import edu.washington.escience.myria.column.builder.WritableColumn;
 import edu.washington.escience.myria.column.mutable.MutableColumn;
+import edu.washington.escience.myria.column.mutable.OffHeapMutableColumn;
 import edu.washington.escience.myria.util.MyriaUtils;
 
-/** A simplified TupleBatchBuffer which supports random access. Designed for hash tables to use. */
+/**
+ * A simplified TupleBatchBuffer which supports random access. Designed for hash tables to use. Completed batches can be
+ * kept outside the Java heap, see {@link OffHeapMutableColumn}.
+ */
 
 public class MutableTupleBuffer implements ReadableTable, AppendableTable, Cloneable {
   /** Format of the emitted tuples. */
@@ -36,6 +41,8 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
   private int numColumnsReady;
   /** Internal state representing the number of tuples in the in-progress TupleBatch. */
   private int currentInProgressTuples;
+  /** Whether completed batches are moved outside the Java heap. */
+  private final boolean offHeap;
 
   /**
    * Constructs an empty TupleBuffer to hold tuples matching the specified Schema.
@@ -43,7 +50,18 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
    * @param schema specified the columns of the emitted TupleBatch objects.
    */
   public MutableTupleBuffer(final Schema schema) {
+    this(schema, false);
+  }
+
+  /**
+   * Constructs an empty TupleBuffer to hold tuples matching the specified Schema.
+   * 
+   * @param schema specified the columns of the emitted TupleBatch objects.
+   * @param offHeap whether completed batches are moved outside the Java heap. The batch being built stays on the heap.
+   */
+  public MutableTupleBuffer(final Schema schema, final boolean offHeap) {
     this.schema = Objects.requireNonNull(schema);
+    this.offHeap = offHeap;
     readyTuples = new ArrayList<MutableColumn<?>[]>();
     currentBuildingColumns = ColumnFactory.allocateColumns(schema).toArray(new ColumnBuilder<?>[] {});
     numColumns = schema.numColumns();
@@ -73,7 +91,14 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
     MutableColumn<?>[] buildingColumns = new MutableColumn<?>[numColumns];
     int i = 0;
     for (ColumnBuilder<?> cb : currentBuildingColumns) {
-      buildingColumns[i++] = cb.buildMutable();
+      if (offHeap && OffHeapMutableColumn.isSupported(cb.getType())) {
+        Column<?> column = cb.build();
+        buildingColumns[i++] = OffHeapMutableColumn.copyOf(column);
+        /* Nothing else has seen the column, so its array can be reused right away. */
+        ColumnArrayPool.recycle(column);
+      } else {
+        buildingColumns[i++] = cb.buildMutable();
+      }
     }
     readyTuples.add(buildingColumns);
     currentBuildingColumns = ColumnFactory.allocateColumns(schema).toArray(new ColumnBuilder<?>[] {});
@@ -492,7 +517,7 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
 
   @Override
   public MutableTupleBuffer clone() {
-    MutableTupleBuffer ret = new MutableTupleBuffer(getSchema());
+    MutableTupleBuffer ret = new MutableTupleBuffer(getSchema(), offHeap);
     ret.columnsReady = (BitSet) columnsReady.clone();
     ret.numColumnsReady = numColumnsReady;
     ret.currentInProgressTuples = currentInProgressTuples;
@@ -509,6 +534,65 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
     return ret;
   }
 
+  /**
+   * @return an estimate of the number of bytes the values in this buffer take on the Java heap.
+   */
+  public final long getHeapBytes() {
+    long ret = 0;
+    for (MutableColumn<?>[] columns : readyTuples) {
+      for (MutableColumn<?> column : columns) {
+        if (!(column instanceof OffHeapMutableColumn)) {
+          ret += estimateHeapBytes(column.getType(), column.size());
+        }
+      }
+    }
+    if (currentBuildingColumns != null) {
+      /* The arrays of the builders are allocated in full. */
+      for (ColumnBuilder<?> cb : currentBuildingColumns) {
+        ret += estimateHeapBytes(cb.getType(), TupleBatch.BATCH_SIZE);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @return the number of bytes the values in this buffer take outside the Java heap.
+   */
+  public final long getOffHeapBytes() {
+    long ret = 0;
+    for (MutableColumn<?>[] columns : readyTuples) {
+      for (MutableColumn<?> column : columns) {
+        if (column instanceof OffHeapMutableColumn) {
+          ret += ((OffHeapMutableColumn<?>) column).getOffHeapBytes();
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Estimate the heap footprint of the values in a column. Strings and dates count a reference and a small object, so
+   * the estimate for long strings is low.
+   * 
+   * @param type the type of the values.
+   * @param numValues the number of values.
+   * @return an estimate of the number of bytes the values take on the Java heap.
+   */
+  public static long estimateHeapBytes(final Type type, final long numValues) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return numValues / Byte.SIZE;
+      case INT_TYPE:
+      case FLOAT_TYPE:
+        return numValues * 4;
+      case LONG_TYPE:
+      case DOUBLE_TYPE:
+        return numValues * 8;
+      default:
+        return numValues * 48;
+    }
+  }
+
   @Override
   public ReadableColumn asColumn(final int column) {
     return new ReadableSubColumn(this, Preconditions.checkElementIndex(column, numColumns));
@@ -0,0 +1,146 @@
+package edu.washington.escience.myria.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.CountingOutputStream;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.proto.DataProto.DataMessage;
+import edu.washington.escience.myria.util.IPCUtils;
+
+/**
+ * A local temporary file that an operator spills {@link TupleBatch}es to when they do not fit in its memory budget.
+ * Batches are written with the same protobuf encoding that is used to send them over the network, and are read back
+ * in the order they were written. Writing ends with the first call to {@link #read()}.
+ */
+public final class SpillFile {
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(SpillFile.class);
+
+  /** The schema of the spilled tuples. */
+  private final Schema schema;
+  /** The file. */
+  private final File file;
+  /** The stream that batches are written to, or null once writing has ended. */
+  private CountingOutputStream output;
+  /** The stream that batches are read from, or null before writing has ended. */
+  private InputStream input;
+  /** The number of bytes written. */
+  private long numBytes;
+  /** The number of tuples written. */
+  private long numTuples;
+
+  /**
+   * Create a new, empty spill file.
+   *
+   * @param directory the directory to create the file in. If null, the default temporary-file directory is used.
+   * @param schema the schema of the spilled tuples.
+   * @throws DbException if the file cannot be created.
+   */
+  public SpillFile(final String directory, final Schema schema) throws DbException {
+    this.schema = Preconditions.checkNotNull(schema, "schema");
+    try {
+      File dir = null;
+      if (directory != null) {
+        dir = new File(directory);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+          throw new IOException("Unable to create spill directory " + directory);
+        }
+      }
+      file = File.createTempFile("myria-spill-", ".pb", dir);
+      output = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Append a batch to this file.
+   *
+   * @param tb the batch.
+   * @throws DbException if the batch cannot be written.
+   */
+  public void write(final TupleBatch tb) throws DbException {
+    Preconditions.checkState(output != null, "%s is no longer open for writing", file);
+    if (tb.numTuples() == 0) {
+      return;
+    }
+    try {
+      tb.toTransportMessage().getDataMessage().writeDelimitedTo(output);
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+    numTuples += tb.numTuples();
+  }
+
+  /**
+   * Read the next batch. The first call ends writing.
+   *
+   * @return the next batch, or null if all batches have been read.
+   * @throws DbException if the file cannot be read.
+   */
+  public TupleBatch read() throws DbException {
+    try {
+      if (input == null) {
+        output.close();
+        numBytes = output.getCount();
+        output = null;
+        input = new BufferedInputStream(new FileInputStream(file));
+      }
+      DataMessage dm = DataMessage.parseDelimitedFrom(input);
+      if (dm == null) {
+        return null;
+      }
+      return IPCUtils.tmToTupleBatch(dm, schema);
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * @return the number of bytes written to this file.
+   */
+  public long getNumBytes() {
+    if (output != null) {
+      return output.getCount();
+    }
+    return numBytes;
+  }
+
+  /**
+   * @return the number of tuples written to this file.
+   */
+  public long numTuples() {
+    return numTuples;
+  }
+
+  /**
+   * Close and delete this file. Deleting a file more than once has no effect.
+   */
+  public void delete() {
+    try {
+      if (output != null) {
+        numBytes = output.getCount();
+        output.close();
+        output = null;
+      }
+      if (input != null) {
+        input.close();
+        input = null;
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Error closing spill file {}", file, e);
+    }
+    if (file.exists() && !file.delete()) {
+      LOGGER.warn("Unable to delete spill file {}", file);
+    }
+  }
+}
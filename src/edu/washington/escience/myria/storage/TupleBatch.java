@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.jcip.annotations.ThreadSafe;
 
@@ -16,6 +17,7 @@ import com.google.common.collect.ImmutableList;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.ColumnArrayPool;
 import edu.washington.escience.myria.column.PrefixColumn;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
@@ -29,7 +31,7 @@ import edu.washington.escience.myria.util.IPCUtils;
 public class TupleBatch implements ReadableTable, Serializable {
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
-  /** The hard-coded number of tuples in a batch. */
+  /** The maximum number of tuples in a batch. Batches of wide tuples hold fewer, see {@link BatchSizeController}. */
   public static final int BATCH_SIZE = 10 * 1000;
   /** Schema of tuples in this batch. */
   private final Schema schema;
@@ -39,6 +41,11 @@ public class TupleBatch implements ReadableTable, Serializable {
   private final int numTuples;
   /** Whether this TB is an EOI TB. */
   private final boolean isEOI;
+  /**
+   * The number of references to this TB if its arrays go back to the {@link ColumnArrayPool} when it is no longer used,
+   * or null if they are left to the garbage collector.
+   */
+  private transient AtomicInteger references;
 
   /**
    * EOI TB constructor.
@@ -108,6 +115,43 @@ public class TupleBatch implements ReadableTable, Serializable {
     this.isEOI = isEOI;
   }
 
+  /**
+   * Make the arrays of this TB go back to the {@link ColumnArrayPool} once {@link #release()} has been called once more
+   * than {@link #retain()}. Only the creator of the TB may call this, before it hands the TB out, and only if nothing
+   * else shares the arrays of the columns.
+   */
+  final void makeRecyclable() {
+    references = new AtomicInteger(1);
+  }
+
+  /**
+   * Take a reference to this TB, which keeps its arrays out of the {@link ColumnArrayPool} until the matching
+   * {@link #release()}. Does nothing if the TB is not recyclable.
+   */
+  public final void retain() {
+    if (references != null) {
+      int previous = references.getAndIncrement();
+      Preconditions.checkState(previous > 0, "The arrays of this TupleBatch have already been recycled");
+    }
+  }
+
+  /**
+   * Give up a reference to this TB, taken either by {@link #retain()} or by receiving a recyclable TB from a
+   * {@link TupleBatchBuffer}. When the last reference is released the arrays are returned to the
+   * {@link ColumnArrayPool}, and the TB must not be read any more. Does nothing if the TB is not recyclable.
+   */
+  public final void release() {
+    if (references != null) {
+      int remaining = references.decrementAndGet();
+      Preconditions.checkState(remaining >= 0, "TupleBatch released more often than retained");
+      if (remaining == 0) {
+        for (Column<?> column : columns) {
+          ColumnArrayPool.recycle(column);
+        }
+      }
+    }
+  }
+
   /**
    * put the tuple batch into TBB by smashing it into cells and putting them one by one.
    * 
@@ -244,6 +288,15 @@ public class TupleBatch implements ReadableTable, Serializable {
     BitSet[] resultBitSet = new BitSet[result.length];
     for (int i = 0; i < partitions.length; i++) {
       int p = partitions[i];
+      if (p == PartitionFunction.ALL_PARTITIONS) {
+        for (int j = 0; j < result.length; j++) {
+          if (resultBitSet[j] == null) {
+            resultBitSet[j] = new BitSet(result.length);
+          }
+          resultBitSet[j].set(i);
+        }
+        continue;
+      }
       Preconditions.checkElementIndex(p, result.length);
       if (resultBitSet[p] == null) {
         resultBitSet[p] = new BitSet(result.length);
@@ -319,6 +372,15 @@ public class TupleBatch implements ReadableTable, Serializable {
     return IPCUtils.normalDataMessage(columns, numTuples);
   }
 
+  /**
+   * @param columnEncodings the {@link edu.washington.escience.myria.column.ColumnCompression} encodings that the
+   *          columns may be compressed with.
+   * @return a TransportMessage encoding the TupleBatch.
+   * */
+  public final TransportMessage toTransportMessage(final int columnEncodings) {
+    return IPCUtils.normalDataMessage(columns, numTuples, columnEncodings);
+  }
+
   /**
    * Create an EOI TupleBatch.
    * 
@@ -22,6 +22,10 @@ import edu.washington.escience.myria.util.MyriaUtils;
  * Used for creating TupleBatch objects on the fly. A helper class used in, e.g., the Scatter operator. Currently it
  * doesn't support random access to a specific cell. Use TupleBuffer instead.
  * 
+ * The batches this buffer builds are recyclable (see {@link TupleBatch#retain()}), and this buffer holds a reference
+ * to every batch in it. Whoever pops a batch takes over that reference; it may {@link TupleBatch#release()} it once the
+ * batch is no longer used, or just leave the batch to the garbage collector.
+ * 
  * 
  */
 public class TupleBatchBuffer implements AppendableTable {
@@ -44,16 +48,37 @@ public class TupleBatchBuffer implements AppendableTable {
   private long lastPoppedTime;
   /** the total number of tuples in readyTuples. */
   private int readyTuplesNum;
+  /** Chooses the number of tuples in the batches. */
+  private final BatchSizeController batchSizeController;
+  /** The number of tuples at which the in-progress TupleBatch is finished. */
+  private int batchSize;
+  /** The number of tuples the builders of the in-progress TupleBatch can hold. */
+  private int capacity;
 
   /**
-   * Constructs an empty TupleBatchBuffer to hold tuples matching the specified Schema.
+   * Constructs an empty TupleBatchBuffer to hold tuples matching the specified Schema, in batches of about
+   * {@link MyriaConstants#DEFAULT_BATCH_TARGET_BYTES} bytes.
    * 
    * @param schema specified the columns of the emitted TupleBatch objects.
    */
   public TupleBatchBuffer(final Schema schema) {
+    this(schema, MyriaConstants.DEFAULT_BATCH_TARGET_BYTES);
+  }
+
+  /**
+   * Constructs an empty TupleBatchBuffer to hold tuples matching the specified Schema, in batches of about the
+   * specified number of bytes. See {@link BatchSizeController}.
+   * 
+   * @param schema specified the columns of the emitted TupleBatch objects.
+   * @param batchTargetBytes the number of bytes a batch aims at.
+   */
+  public TupleBatchBuffer(final Schema schema, final int batchTargetBytes) {
     this.schema = Objects.requireNonNull(schema);
+    batchSizeController = new BatchSizeController(schema, batchTargetBytes);
+    batchSize = batchSizeController.getBatchSize();
     readyTuples = new LinkedList<TupleBatch>();
-    currentBuildingColumns = ColumnFactory.allocateColumns(schema);
+    capacity = batchSize;
+    currentBuildingColumns = ColumnFactory.allocateColumns(schema, capacity);
     numColumns = schema.numColumns();
     columnsReady = new BitSet(numColumns);
     numColumnsReady = 0;
@@ -74,6 +99,8 @@ public class TupleBatchBuffer implements AppendableTable {
      */
     finishBatch();
 
+    /* The caller keeps its own reference, if it has one. */
+    tb.retain();
     readyTuplesNum += tb.numTuples();
     readyTuples.add(tb);
   }
@@ -116,7 +143,7 @@ public class TupleBatchBuffer implements AppendableTable {
       numColumnsReady = 0;
       columnsReady.clear();
       /* See if the current batch is full and finish it if so. */
-      if (currentInProgressTuples == TupleBatch.BATCH_SIZE) {
+      if (currentInProgressTuples >= batchSize) {
         finishBatch();
       }
     }
@@ -138,11 +165,20 @@ public class TupleBatchBuffer implements AppendableTable {
     for (ColumnBuilder<?> cb : currentBuildingColumns) {
       buildingColumns.add(cb.build());
     }
-    readyTuples.add(new TupleBatch(schema, buildingColumns, currentInProgressTuples));
+    TupleBatch batch = new TupleBatch(schema, buildingColumns, currentInProgressTuples);
+    batch.makeRecyclable();
+    readyTuples.add(batch);
+    batchSizeController.recordBatch(batch);
+    if (currentInProgressTuples >= batchSize) {
+      batchSizeController.batchFilled();
+    }
+    batchSize = batchSizeController.getBatchSize();
 
     /* Update the metadata and refresh the building state. */
     readyTuplesNum += buildingColumns.get(0).size();
-    currentBuildingColumns = ColumnFactory.allocateColumns(schema);
+    /* Size the builders to the batch, which may be much smaller than TupleBatch.BATCH_SIZE. */
+    capacity = batchSize;
+    currentBuildingColumns = ColumnFactory.allocateColumns(schema, capacity);
     currentInProgressTuples = 0;
     return true;
   }
@@ -199,6 +235,13 @@ public class TupleBatchBuffer implements AppendableTable {
     return newColumns;
   }
 
+  /**
+   * @return the number of tuples at which the batch being built is finished.
+   */
+  public final int getBatchSize() {
+    return batchSize;
+  }
+
   /**
    * @return the number of ready tuples.
    */
@@ -289,6 +332,8 @@ public class TupleBatchBuffer implements AppendableTable {
     } else {
       if (currentInProgressTuples > 0 && getElapsedTime() >= MyriaConstants.PUSHING_TB_TIMEOUT) {
         final int size = currentInProgressTuples;
+        /* The tuples arrive too slowly to fill a batch in time; smaller batches will make them wait less. */
+        batchSizeController.batchTimedOut(size);
         finishBatch();
         updateLastPoppedTime();
         readyTuplesNum -= size;
@@ -351,7 +396,7 @@ public class TupleBatchBuffer implements AppendableTable {
           + leftAnswerColumns.length));
     }
     currentInProgressTuples++;
-    if (currentInProgressTuples == TupleBatch.BATCH_SIZE) {
+    if (currentInProgressTuples >= batchSize) {
       finishBatch();
     }
   }
@@ -447,12 +492,16 @@ public class TupleBatchBuffer implements AppendableTable {
   /**
    * Add the specified {@link TupleBatch} to this buffer. The implementation is O(1) when possible, i.e. if the
    * TupleBatch is full and this buffer is not building a partially-complete TupleBatch. Otherwise, it's O(N) in the
-   * size of the TupleBatch because it is a full copy.
+   * size of the TupleBatch because it is a full copy. A TupleBatch whose tuples are too wide for its size is also
+   * copied, so that it is split into batches of about the target number of bytes.
    * 
    * @param tupleBatch the tuple data to be added to this buffer.
    */
   public void absorb(final TupleBatch tupleBatch) {
-    if (currentInProgressTuples == 0) {
+    batchSizeController.recordBatch(tupleBatch);
+    /* The builders of the in-progress batch cannot grow. */
+    batchSize = Math.min(batchSizeController.getBatchSize(), capacity);
+    if (currentInProgressTuples == 0 && tupleBatch.numTuples() <= batchSizeController.getBatchSizeForBytes()) {
       appendTB(tupleBatch);
     } else {
       tupleBatch.compactInto(this);
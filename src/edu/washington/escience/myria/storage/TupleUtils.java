@@ -9,6 +9,9 @@ import edu.washington.escience.myria.column.builder.ColumnBuilder;
  * Utility functions for dealing with tuples.
  */
 public final class TupleUtils {
+  /** Estimated bytes of a String or DateTime object on the heap, not counting the characters of a String. */
+  public static final int OBJECT_BYTES = 40;
+
   /** Utility class cannot be instantiated. */
   private TupleUtils() {
   }
@@ -409,4 +412,25 @@ public final class TupleUtils {
     }
     return true;
   }
-}
\ No newline at end of file
+
+  /**
+   * @param type the type of a value.
+   * @return the estimated number of bytes of a stored value of that type, not counting the characters of a String.
+   */
+  public static int estimatedBytes(final Type type) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return 1;
+      case INT_TYPE:
+      case FLOAT_TYPE:
+        return Integer.SIZE / Byte.SIZE;
+      case LONG_TYPE:
+      case DOUBLE_TYPE:
+        return Long.SIZE / Byte.SIZE;
+      case STRING_TYPE:
+      case DATETIME_TYPE:
+        return Long.SIZE / Byte.SIZE + OBJECT_BYTES;
+    }
+    throw new IllegalArgumentException("Unknown type " + type);
+  }
+}
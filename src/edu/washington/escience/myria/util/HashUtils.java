@@ -3,9 +3,6 @@ package edu.washington.escience.myria.util;
 import java.util.Objects;
 
 import com.google.common.base.Preconditions;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hasher;
-import com.google.common.hash.Hashing;
 
 import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
@@ -21,18 +18,19 @@ public final class HashUtils {
   /** picked from http://planetmath.org/goodhashtableprimes. */
   private static final int[] SEEDS = { 243, 402653189, 24593, 786433, 3145739, 12289, 49157, 6151, 98317, 1572869, };
 
-  /** The hash functions. */
-  private static final HashFunction[] HASH_FUNCTIONS = {
-      Hashing.murmur3_128(SEEDS[0]), Hashing.murmur3_128(SEEDS[1]), Hashing.murmur3_128(SEEDS[2]),
-      Hashing.murmur3_128(SEEDS[3]), Hashing.murmur3_128(SEEDS[4]), Hashing.murmur3_128(SEEDS[5]),
-      Hashing.murmur3_128(SEEDS[6]), Hashing.murmur3_128(SEEDS[7]), Hashing.murmur3_128(SEEDS[8]),
-      Hashing.murmur3_128(SEEDS[9]) };
-
   /**
    * Size of the hash function pool.
    */
   public static final int NUM_OF_HASHFUNCTIONS = 10;
 
+  /** Per-thread state for hashing several columns, so that hashing does not allocate. */
+  private static final ThreadLocal<MurmurHash3> HASHERS = new ThreadLocal<MurmurHash3>() {
+    @Override
+    protected MurmurHash3 initialValue() {
+      return new MurmurHash3();
+    }
+  };
+
   /**
    * Compute the hash code of all the values in the specified row, in column order.
    * 
@@ -41,11 +39,12 @@ public final class HashUtils {
    * @return the hash code of all the values in the specified row, in column order
    */
   public static int hashRow(final ReadableTable table, final int row) {
-    Hasher hasher = HASH_FUNCTIONS[0].newHasher();
+    MurmurHash3 hasher = HASHERS.get();
+    hasher.reset(1, SEEDS[0]);
     for (int i = 0; i < table.numColumns(); ++i) {
-      addValue(hasher, table, i, row);
+      hasher.putColumn(table.asColumn(i), row);
     }
-    return hasher.hash().asInt();
+    return hasher.finish(0);
   }
 
   /**
@@ -57,9 +56,7 @@ public final class HashUtils {
    * @return the hash code of the specified value
    */
   public static int hashValue(final ReadableTable table, final int column, final int row) {
-    Hasher hasher = HASH_FUNCTIONS[0].newHasher();
-    addValue(hasher, table, column, row);
-    return hasher.hash().asInt();
+    return hashValue(table.asColumn(column), row, SEEDS[0]);
   }
 
   /**
@@ -72,10 +69,8 @@ public final class HashUtils {
    * @return hash code of the specified seed
    */
   public static int hashValue(final ReadableTable table, final int column, final int row, final int seedIndex) {
-    Preconditions.checkPositionIndex(seedIndex, NUM_OF_HASHFUNCTIONS);
-    Hasher hasher = HASH_FUNCTIONS[seedIndex].newHasher();
-    addValue(hasher, table, column, row);
-    return hasher.hash().asInt();
+    Preconditions.checkElementIndex(seedIndex, SEEDS.length);
+    return hashValue(table.asColumn(column), row, SEEDS[seedIndex]);
   }
 
   /**
@@ -89,51 +84,182 @@ public final class HashUtils {
   public static int hashSubRow(final ReadableTable table, final int[] hashColumns, final int row) {
     Objects.requireNonNull(table, "table");
     Objects.requireNonNull(hashColumns, "hashColumns");
-    Hasher hasher = HASH_FUNCTIONS[0].newHasher();
+    if (hashColumns.length == 1) {
+      return hashValue(table.asColumn(hashColumns[0]), row, SEEDS[0]);
+    }
+    MurmurHash3 hasher = HASHERS.get();
+    hasher.reset(1, SEEDS[0]);
     for (int column : hashColumns) {
-      addValue(hasher, table, column, row);
+      hasher.putColumn(table.asColumn(column), row);
     }
-    return hasher.hash().asInt();
+    return hasher.finish(0);
   }
 
   /**
-   * Add the value at the specified row and column to the specified hasher.
+   * Compute the hash code of every value in the specified column of the given table. The hash code of row
+   * <code>i</code> equals {@link #hashValue(ReadableTable, int, int, int)} of that row.
    * 
-   * @param hasher the hasher
-   * @param table the table containing the value
-   * @param column the column containing the value
-   * @param row the row containing the value
-   * @return the hasher
+   * @param table the table containing the values to be hashed
+   * @param column the column containing the values to be hashed
+   * @param seedIndex the index of the chosen hashcode
+   * @param result the array that the hash codes are written to, must hold at least <code>table.numTuples()</code>
+   *          elements
+   */
+  public static void hashColumn(final ReadableTable table, final int column, final int seedIndex, final int[] result) {
+    Preconditions.checkElementIndex(seedIndex, SEEDS.length);
+    final int seed = SEEDS[seedIndex];
+    final ReadableColumn values = table.asColumn(column);
+    final int numTuples = table.numTuples();
+    switch (values.getType()) {
+      case BOOLEAN_TYPE:
+        for (int row = 0; row < numTuples; ++row) {
+          result[row] = MurmurHash3.hashBoolean(seed, values.getBoolean(row));
+        }
+        return;
+      case DOUBLE_TYPE:
+        for (int row = 0; row < numTuples; ++row) {
+          result[row] = MurmurHash3.hashLong(seed, Double.doubleToRawLongBits(values.getDouble(row)));
+        }
+        return;
+      case FLOAT_TYPE:
+        for (int row = 0; row < numTuples; ++row) {
+          result[row] = MurmurHash3.hashInt(seed, Float.floatToRawIntBits(values.getFloat(row)));
+        }
+        return;
+      case INT_TYPE:
+        for (int row = 0; row < numTuples; ++row) {
+          result[row] = MurmurHash3.hashInt(seed, values.getInt(row));
+        }
+        return;
+      case LONG_TYPE:
+        for (int row = 0; row < numTuples; ++row) {
+          result[row] = MurmurHash3.hashLong(seed, values.getLong(row));
+        }
+        return;
+      case STRING_TYPE:
+        for (int row = 0; row < numTuples; ++row) {
+          result[row] = MurmurHash3.hashString(seed, values.getString(row));
+        }
+        return;
+      default:
+        MurmurHash3 hasher = HASHERS.get();
+        hasher.reset(numTuples, seed);
+        hasher.putColumn(values);
+        hasher.finish(result);
+    }
+  }
+
+  /**
+   * Compute the hash code of every value in the specified column of the given table.
+   * 
+   * @param table the table containing the values to be hashed
+   * @param column the column containing the values to be hashed
+   * @param seedIndex the index of the chosen hashcode
+   * @return the hash code of every row, as in {@link #hashValue(ReadableTable, int, int, int)}
+   */
+  public static int[] hashColumn(final ReadableTable table, final int column, final int seedIndex) {
+    int[] result = new int[table.numTuples()];
+    hashColumn(table, column, seedIndex, result);
+    return result;
+  }
+
+  /**
+   * Compute the hash code of the specified columns of every row of the given table. Multiple columns are hashed one
+   * column at a time, and the hash code of row <code>i</code> equals {@link #hashSubRow(ReadableTable, int[], int)} of
+   * that row.
+   * 
+   * @param table the table containing the values to be hashed
+   * @param hashColumns the columns to be hashed. Order matters
+   * @param result the array that the hash codes are written to, must hold at least <code>table.numTuples()</code>
+   *          elements
    */
-  private static Hasher addValue(final Hasher hasher, final ReadableTable table, final int column, final int row) {
-    return addValue(hasher, table.asColumn(column), row);
+  public static void hashSubRows(final ReadableTable table, final int[] hashColumns, final int[] result) {
+    hashSubRows(table, hashColumns, 0, result);
+  }
+
+  /**
+   * Compute the hash code of the specified columns of every row of the given table, using the chosen hash function.
+   * 
+   * @param table the table containing the values to be hashed
+   * @param hashColumns the columns to be hashed. Order matters
+   * @param seedIndex the index of the chosen hashcode
+   * @param result the array that the hash codes are written to, must hold at least <code>table.numTuples()</code>
+   *          elements
+   */
+  public static void hashSubRows(final ReadableTable table, final int[] hashColumns, final int seedIndex,
+      final int[] result) {
+    Objects.requireNonNull(table, "table");
+    Objects.requireNonNull(hashColumns, "hashColumns");
+    Preconditions.checkElementIndex(seedIndex, SEEDS.length);
+    if (hashColumns.length == 1) {
+      hashColumn(table, hashColumns[0], seedIndex, result);
+      return;
+    }
+    MurmurHash3 hasher = HASHERS.get();
+    hasher.reset(table.numTuples(), SEEDS[seedIndex]);
+    for (int column : hashColumns) {
+      hasher.putColumn(table.asColumn(column));
+    }
+    hasher.finish(result);
+  }
+
+  /**
+   * Compute the hash code of the specified columns of every row of the given table.
+   * 
+   * @param table the table containing the values to be hashed
+   * @param hashColumns the columns to be hashed. Order matters
+   * @return the hash code of every row, as in {@link #hashSubRow(ReadableTable, int[], int)}
+   */
+  public static int[] hashSubRows(final ReadableTable table, final int[] hashColumns) {
+    int[] result = new int[table.numTuples()];
+    hashSubRows(table, hashColumns, result);
+    return result;
+  }
+
+  /**
+   * Compute the hash code of all the values of every row of the given table, in column order.
+   * 
+   * @param table the table containing the values
+   * @return the hash code of every row, as in {@link #hashRow(ReadableTable, int)}
+   */
+  public static int[] hashRows(final ReadableTable table) {
+    int[] result = new int[table.numTuples()];
+    MurmurHash3 hasher = HASHERS.get();
+    hasher.reset(table.numTuples(), SEEDS[0]);
+    for (int i = 0; i < table.numColumns(); ++i) {
+      hasher.putColumn(table.asColumn(i));
+    }
+    hasher.finish(result);
+    return result;
   }
 
   /**
-   * Add the value at the specified row and column to the specified hasher.
+   * Compute the hash code of a single value.
    * 
-   * @param hasher the hasher
    * @param column the column containing the value
    * @param row the row containing the value
-   * @return the hasher
+   * @param seed the seed of the hash function
+   * @return the hash code of the value
    */
-  private static Hasher addValue(final Hasher hasher, final ReadableColumn column, final int row) {
+  private static int hashValue(final ReadableColumn column, final int row, final int seed) {
     switch (column.getType()) {
       case BOOLEAN_TYPE:
-        return hasher.putBoolean(column.getBoolean(row));
-      case DATETIME_TYPE:
-        return hasher.putObject(column.getDateTime(row), TypeFunnel.INSTANCE);
+        return MurmurHash3.hashBoolean(seed, column.getBoolean(row));
       case DOUBLE_TYPE:
-        return hasher.putDouble(column.getDouble(row));
+        return MurmurHash3.hashLong(seed, Double.doubleToRawLongBits(column.getDouble(row)));
       case FLOAT_TYPE:
-        return hasher.putFloat(column.getFloat(row));
+        return MurmurHash3.hashInt(seed, Float.floatToRawIntBits(column.getFloat(row)));
       case INT_TYPE:
-        return hasher.putInt(column.getInt(row));
+        return MurmurHash3.hashInt(seed, column.getInt(row));
       case LONG_TYPE:
-        return hasher.putLong(column.getLong(row));
+        return MurmurHash3.hashLong(seed, column.getLong(row));
       case STRING_TYPE:
-        return hasher.putObject(column.getString(row), TypeFunnel.INSTANCE);
+        return MurmurHash3.hashString(seed, column.getString(row));
+      default:
+        MurmurHash3 hasher = HASHERS.get();
+        hasher.reset(1, seed);
+        hasher.putColumn(column, row);
+        return hasher.finish(0);
     }
-    throw new UnsupportedOperationException("Hashing a column of type " + column.getType());
   }
 }
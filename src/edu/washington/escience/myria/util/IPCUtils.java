@@ -16,6 +16,7 @@ import com.google.protobuf.ByteString;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.ColumnCompression;
 import edu.washington.escience.myria.column.builder.ColumnFactory;
 import edu.washington.escience.myria.parallel.ExecutionStatistics;
 import edu.washington.escience.myria.parallel.ResourceStats;
@@ -118,6 +119,18 @@ public final class IPCUtils {
       TransportMessage.Type.CONTROL).setControlMessage(
       ControlMessage.newBuilder().setType(ControlMessage.Type.WORKER_HEARTBEAT)).build();
 
+  /**
+   * @param load measurements of the memory and CPU load of the worker.
+   * @return a heartbeat message that also reports the load of the worker.
+   * */
+  public static TransportMessage heartbeat(final List<ResourceStats> load) {
+    ControlMessage.Builder ret = ControlMessage.newBuilder().setType(ControlMessage.Type.WORKER_HEARTBEAT);
+    for (ResourceStats stats : load) {
+      ret.addResourceStats(stats.toProtobuf());
+    }
+    return TransportMessage.newBuilder().setType(TransportMessage.Type.CONTROL).setControlMessage(ret.build()).build();
+  }
+
   /**
    * @param workerId the id of the worker to be removed.
    * @return the remove worker TM.
@@ -312,11 +325,27 @@ public final class IPCUtils {
    * @return a data TM encoding the data columns.
    * */
   public static TransportMessage normalDataMessage(final List<? extends Column<?>> dataColumns, final int numTuples) {
+    return normalDataMessage(dataColumns, numTuples, ColumnCompression.NONE);
+  }
+
+  /**
+   * @param dataColumns data columns
+   * @param numTuples number of tuples in the columns.
+   * @param columnEncodings the {@link ColumnCompression} encodings that the columns may be compressed with.
+   * @return a data TM encoding the data columns.
+   * */
+  public static TransportMessage normalDataMessage(final List<? extends Column<?>> dataColumns, final int numTuples,
+      final int columnEncodings) {
     final ColumnMessage[] columnProtos = new ColumnMessage[dataColumns.size()];
 
     int i = 0;
     for (final Column<?> c : dataColumns) {
-      columnProtos[i] = c.serializeToProto();
+      final ColumnMessage compressed = ColumnCompression.compress(c, columnEncodings);
+      if (compressed != null) {
+        columnProtos[i] = compressed;
+      } else {
+        columnProtos[i] = c.serializeToProto();
+      }
       i++;
     }
     return DATA_TM_BUILDER.get().setDataMessage(
@@ -0,0 +1,309 @@
+package edu.washington.escience.myria.util;
+
+import java.util.Arrays;
+
+import com.google.common.hash.Hashing;
+
+import edu.washington.escience.myria.storage.ReadableColumn;
+
+/**
+ * An allocation-free implementation of the x64 128-bit variant of MurmurHash3 that hashes many rows at once. For the
+ * same sequence of values, the hash of every row equals the one computed by {@link Hashing#murmur3_128(int)} and
+ * {@link com.google.common.hash.HashCode#asInt()}, so hash-partitioned data stays where it is.
+ *
+ * Values are appended one column at a time, so that the type of a column is checked only once per column instead of
+ * once per value. Each row keeps its own streaming state: the two halves of the hash, the up to 15 bytes that have not
+ * been mixed in yet, and the number of bytes seen so far.
+ */
+final class MurmurHash3 {
+  /** First mixing constant. */
+  private static final long C1 = 0x87c37b91114253d5L;
+  /** Second mixing constant. */
+  private static final long C2 = 0x4cf5ad432745937fL;
+  /** Number of bytes that are mixed into the hash at a time. */
+  private static final int CHUNK_SIZE = 16;
+
+  /** First half of the hash of each row. */
+  private long[] h1 = new long[0];
+  /** Second half of the hash of each row. */
+  private long[] h2 = new long[0];
+  /** The first 8 bytes of the current, incomplete chunk of each row. */
+  private long[] k1 = new long[0];
+  /** The last 8 bytes of the current, incomplete chunk of each row. */
+  private long[] k2 = new long[0];
+  /** The number of bytes in the current, incomplete chunk of each row. */
+  private int[] pos = new int[0];
+  /** The number of bytes that have been appended to each row. */
+  private int[] length = new int[0];
+  /** The number of rows being hashed. */
+  private int numRows;
+
+  /**
+   * Start hashing <code>numRows</code> new rows. The internal arrays are reused if they are large enough.
+   *
+   * @param numRows the number of rows
+   * @param seed the seed of the hash function
+   */
+  void reset(final int numRows, final int seed) {
+    if (h1.length < numRows) {
+      h1 = new long[numRows];
+      h2 = new long[numRows];
+      k1 = new long[numRows];
+      k2 = new long[numRows];
+      pos = new int[numRows];
+      length = new int[numRows];
+    }
+    this.numRows = numRows;
+    Arrays.fill(h1, 0, numRows, seed);
+    Arrays.fill(h2, 0, numRows, seed);
+    Arrays.fill(k1, 0, numRows, 0L);
+    Arrays.fill(k2, 0, numRows, 0L);
+    Arrays.fill(pos, 0, numRows, 0);
+    Arrays.fill(length, 0, numRows, 0);
+  }
+
+  /**
+   * Append the values of the first {@link #numRows} rows of a column, one to each row.
+   *
+   * @param column the column
+   */
+  void putColumn(final ReadableColumn column) {
+    putColumn(column, 0);
+  }
+
+  /**
+   * Append the values of rows <code>[offset, offset + numRows)</code> of a column, one to each row.
+   *
+   * @param column the column
+   * @param offset the row of the column that is appended to the first row
+   */
+  void putColumn(final ReadableColumn column, final int offset) {
+    switch (column.getType()) {
+      case BOOLEAN_TYPE:
+        for (int row = 0; row < numRows; ++row) {
+          put(row, column.getBoolean(row + offset) ? 1 : 0, 1);
+        }
+        return;
+      case DATETIME_TYPE:
+        /* TypeFunnel, which was used to hash these values with Guava, ignores DateTimes. Keep it that way so that
+         * existing partitions stay valid. */
+        return;
+      case DOUBLE_TYPE:
+        for (int row = 0; row < numRows; ++row) {
+          put(row, Double.doubleToRawLongBits(column.getDouble(row + offset)), 8);
+        }
+        return;
+      case FLOAT_TYPE:
+        for (int row = 0; row < numRows; ++row) {
+          put(row, Float.floatToRawIntBits(column.getFloat(row + offset)) & 0xFFFFFFFFL, 4);
+        }
+        return;
+      case INT_TYPE:
+        for (int row = 0; row < numRows; ++row) {
+          put(row, column.getInt(row + offset) & 0xFFFFFFFFL, 4);
+        }
+        return;
+      case LONG_TYPE:
+        for (int row = 0; row < numRows; ++row) {
+          put(row, column.getLong(row + offset), 8);
+        }
+        return;
+      case STRING_TYPE:
+        for (int row = 0; row < numRows; ++row) {
+          final String value = column.getString(row + offset);
+          for (int i = 0; i < value.length(); ++i) {
+            put(row, value.charAt(i), 2);
+          }
+        }
+        return;
+    }
+    throw new UnsupportedOperationException("Hashing a column of type " + column.getType());
+  }
+
+  /**
+   * Append the lowest <code>numBytes</code> bytes of a value, in little-endian order, to a row.
+   *
+   * @param row the row
+   * @param value the value. All bits above the lowest <code>numBytes</code> bytes must be zero.
+   * @param numBytes the number of bytes of the value, at most 8
+   */
+  private void put(final int row, final long value, final int numBytes) {
+    final int p = pos[row];
+    final int shift = p * Byte.SIZE;
+    long carry = 0;
+    if (p < Long.SIZE / Byte.SIZE) {
+      k1[row] |= value << shift;
+      if (p + numBytes > Long.SIZE / Byte.SIZE) {
+        k2[row] |= value >>> (Long.SIZE - shift);
+      }
+    } else {
+      k2[row] |= value << (shift - Long.SIZE);
+      if (p + numBytes > CHUNK_SIZE) {
+        carry = value >>> (2 * Long.SIZE - shift);
+      }
+    }
+    length[row] += numBytes;
+    final int newPos = p + numBytes;
+    if (newPos < CHUNK_SIZE) {
+      pos[row] = newPos;
+      return;
+    }
+
+    /* A chunk is complete, mix it in. */
+    long a = h1[row];
+    long b = h2[row];
+    a ^= mixK1(k1[row]);
+    a = Long.rotateLeft(a, 27);
+    a += b;
+    a = a * 5 + 0x52dce729;
+    b ^= mixK2(k2[row]);
+    b = Long.rotateLeft(b, 31);
+    b += a;
+    b = b * 5 + 0x38495ab5;
+    h1[row] = a;
+    h2[row] = b;
+    k1[row] = carry;
+    k2[row] = 0;
+    pos[row] = newPos - CHUNK_SIZE;
+  }
+
+  /**
+   * Finish hashing and store the hash code of every row.
+   *
+   * @param result the array that the hash code of row <code>i</code> is written to at index <code>i</code>
+   */
+  void finish(final int[] result) {
+    for (int row = 0; row < numRows; ++row) {
+      result[row] = finish(row);
+    }
+  }
+
+  /**
+   * Finish hashing a row.
+   *
+   * @param row the row
+   * @return the hash code of the row
+   */
+  int finish(final int row) {
+    return finish(h1[row] ^ mixK1(k1[row]), h2[row] ^ mixK2(k2[row]), length[row]);
+  }
+
+  /**
+   * @param seed the seed of the hash function
+   * @param value the value
+   * @return the hash code of a single boolean
+   */
+  static int hashBoolean(final int seed, final boolean value) {
+    return finish(seed ^ mixK1(value ? 1 : 0), seed, 1);
+  }
+
+  /**
+   * @param seed the seed of the hash function
+   * @param value the value
+   * @return the hash code of a single int
+   */
+  static int hashInt(final int seed, final int value) {
+    return finish(seed ^ mixK1(value & 0xFFFFFFFFL), seed, Integer.SIZE / Byte.SIZE);
+  }
+
+  /**
+   * @param seed the seed of the hash function
+   * @param value the value
+   * @return the hash code of a single long
+   */
+  static int hashLong(final int seed, final long value) {
+    return finish(seed ^ mixK1(value), seed, Long.SIZE / Byte.SIZE);
+  }
+
+  /**
+   * @param seed the seed of the hash function
+   * @param value the value
+   * @return the hash code of the characters of a single string
+   */
+  static int hashString(final int seed, final String value) {
+    long a = seed;
+    long b = seed;
+    final int numChars = value.length();
+    final int charsPerChunk = CHUNK_SIZE / 2;
+    int i = 0;
+    for (; i + charsPerChunk <= numChars; i += charsPerChunk) {
+      final long c1 =
+          value.charAt(i) | (long) value.charAt(i + 1) << 16 | (long) value.charAt(i + 2) << 32
+              | (long) value.charAt(i + 3) << 48;
+      final long c2 =
+          value.charAt(i + 4) | (long) value.charAt(i + 5) << 16 | (long) value.charAt(i + 6) << 32
+              | (long) value.charAt(i + 7) << 48;
+      a ^= mixK1(c1);
+      a = Long.rotateLeft(a, 27);
+      a += b;
+      a = a * 5 + 0x52dce729;
+      b ^= mixK2(c2);
+      b = Long.rotateLeft(b, 31);
+      b += a;
+      b = b * 5 + 0x38495ab5;
+    }
+    long c1 = 0;
+    long c2 = 0;
+    for (int j = 0; i < numChars; ++i, ++j) {
+      if (j < charsPerChunk / 2) {
+        c1 |= (long) value.charAt(i) << (16 * j);
+      } else {
+        c2 |= (long) value.charAt(i) << (16 * (j - charsPerChunk / 2));
+      }
+    }
+    return finish(a ^ mixK1(c1), b ^ mixK2(c2), 2 * numChars);
+  }
+
+  /**
+   * The finalization step of MurmurHash3, after the last partial chunk has been mixed in.
+   *
+   * @param h1 the first half of the hash
+   * @param h2 the second half of the hash
+   * @param length the number of bytes that were hashed
+   * @return the lowest 32 bits of the hash code
+   */
+  private static int finish(final long h1, final long h2, final int length) {
+    long a = h1 ^ length;
+    long b = h2 ^ length;
+    a += b;
+    b += a;
+    a = fmix64(a);
+    b = fmix64(b);
+    a += b;
+    return (int) a;
+  }
+
+  /**
+   * @param k the first half of a chunk
+   * @return the mixed value
+   */
+  private static long mixK1(final long k) {
+    long k1 = k * C1;
+    k1 = Long.rotateLeft(k1, 31);
+    return k1 * C2;
+  }
+
+  /**
+   * @param k the second half of a chunk
+   * @return the mixed value
+   */
+  private static long mixK2(final long k) {
+    long k2 = k * C2;
+    k2 = Long.rotateLeft(k2, 33);
+    return k2 * C1;
+  }
+
+  /**
+   * @param k the value
+   * @return the final avalanche mix of the value
+   */
+  private static long fmix64(final long k) {
+    long f = k;
+    f ^= f >>> 33;
+    f *= 0xff51afd7ed558ccdL;
+    f ^= f >>> 33;
+    f *= 0xc4ceb9fe1a85ec53L;
+    f ^= f >>> 33;
+    return f;
+  }
+}
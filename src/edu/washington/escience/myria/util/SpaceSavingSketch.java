@@ -0,0 +1,103 @@
+package edu.washington.escience.myria.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
+
+/**
+ * Finds the most frequent keys of a stream in bounded memory, using the Space-Saving algorithm of Metwally, Agrawal and
+ * El Abbadi. At most a fixed number of keys are counted; when a new key arrives and the counters are full, the key with
+ * the smallest count is replaced and the new key inherits its count. Every key that occurs more than
+ * <code>total / capacity</code> times is guaranteed to be counted, and no count is underestimated.
+ */
+public final class SpaceSavingSketch {
+  /** The maximum number of keys counted. */
+  private final int capacity;
+  /** The (over)estimated number of occurrences of each counted key. */
+  private final Map<Integer, Long> counts;
+  /** The number of keys added. */
+  private long total;
+
+  /**
+   * @param capacity the maximum number of keys counted.
+   */
+  public SpaceSavingSketch(final int capacity) {
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive, not %s", capacity);
+    this.capacity = capacity;
+    counts = new HashMap<>(2 * capacity);
+  }
+
+  /**
+   * @param fraction the smallest share of the stream a key must have to be found.
+   * @return a sketch that finds every key whose share of the stream is at least <code>fraction</code>.
+   */
+  public static SpaceSavingSketch forFraction(final double fraction) {
+    Preconditions.checkArgument(fraction > 0 && fraction <= 1, "fraction must be in (0, 1], not %s", fraction);
+    return new SpaceSavingSketch(Ints.checkedCast((long) Math.ceil(2 / fraction)));
+  }
+
+  /**
+   * Count one occurrence of the specified key.
+   *
+   * @param key the key.
+   */
+  public void add(final int key) {
+    total++;
+    Long count = counts.get(key);
+    if (count != null) {
+      counts.put(key, count + 1);
+      return;
+    }
+    if (counts.size() < capacity) {
+      counts.put(key, 1L);
+      return;
+    }
+    Map.Entry<Integer, Long> min = null;
+    for (Map.Entry<Integer, Long> e : counts.entrySet()) {
+      if (min == null || e.getValue() < min.getValue()) {
+        min = e;
+      }
+    }
+    counts.remove(min.getKey());
+    counts.put(key, min.getValue() + 1);
+  }
+
+  /**
+   * @return the number of keys added.
+   */
+  public long getTotal() {
+    return total;
+  }
+
+  /**
+   * @param key the key.
+   * @return an upper bound of the number of occurrences of the key, or 0 if the key is not counted.
+   */
+  public long estimate(final int key) {
+    Long count = counts.get(key);
+    if (count == null) {
+      return 0;
+    }
+    return count;
+  }
+
+  /**
+   * @param fraction the smallest share of the stream a key must have.
+   * @return the keys whose estimated share of the stream is at least <code>fraction</code>. This includes every key
+   *         whose true share is at least <code>fraction</code>, provided the capacity is at least
+   *         <code>1 / fraction</code>.
+   */
+  public int[] getHeavyHitters(final double fraction) {
+    List<Integer> ret = new ArrayList<>();
+    for (Map.Entry<Integer, Long> e : counts.entrySet()) {
+      if (e.getValue() >= fraction * total) {
+        ret.add(e.getKey());
+      }
+    }
+    return Ints.toArray(ret);
+  }
+}
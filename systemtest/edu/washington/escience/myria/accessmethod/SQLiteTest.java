@@ -34,6 +34,21 @@ public class SQLiteTest {
 
   @Test
   public void sqliteTest() throws Exception {
+    scanTest(1);
+  }
+
+  @Test
+  public void sqlitePartitionedTest() throws Exception {
+    scanTest(3);
+  }
+
+  /**
+   * Scan a sorted relation, using the specified number of connections.
+   * 
+   * @param numPartitions the number of connections.
+   * @throws Exception if the scan fails.
+   */
+  private void scanTest(final int numPartitions) throws Exception {
     Logger.getLogger("com.almworks.sqlite4java").setLevel(Level.SEVERE);
     Logger.getLogger("com.almworks.sqlite4java.Internal").setLevel(Level.SEVERE);
     final RelationKey testtableKey = RelationKey.of("test", "test", "testtable");
@@ -65,6 +80,7 @@ public class SQLiteTest {
     final DbQueryScan scan =
         new DbQueryScan(SQLiteInfo.of(dbAbsolutePath), testtableKey, outputSchema, new int[] { 0, 1 }, new boolean[] {
             true, false });
+    scan.setPartitions(numPartitions, 0);
 
     final Operator root = scan;
     root.open(null);
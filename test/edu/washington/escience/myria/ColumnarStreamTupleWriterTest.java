@@ -0,0 +1,95 @@
+package edu.washington.escience.myria;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class ColumnarStreamTupleWriterTest {
+
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.INT_TYPE, Type.DOUBLE_TYPE, Type.STRING_TYPE,
+      Type.BOOLEAN_TYPE, Type.DATETIME_TYPE), ImmutableList.of("id", "d", "s", "b", "t"));
+
+  private static String readName(final ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static ByteBuffer readBuffer(final ByteBuffer in) {
+    int length = (int) in.getLong();
+    ByteBuffer buffer = in.slice().order(ColumnarStreamTupleWriter.BYTE_ORDER);
+    buffer.limit(length);
+    in.position(in.position() + (length + 7) / 8 * 8);
+    return buffer;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final int numTuples = 13;
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putInt(0, i);
+      tbb.putDouble(1, i / 2.0);
+      tbb.putString(2, "t\u00e9st " + i);
+      tbb.putBoolean(3, i % 3 == 0);
+      tbb.putDateTime(4, new DateTime(1000L * i));
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ColumnarStreamTupleWriter writer = new ColumnarStreamTupleWriter(out, SCHEMA);
+    writer.writeColumnHeaders(SCHEMA.getColumnNames());
+    for (TupleBatch tb : tbb.getAll()) {
+      writer.writeTuples(tb);
+    }
+    writer.done();
+
+    ByteBuffer in = ByteBuffer.wrap(out.toByteArray()).order(ColumnarStreamTupleWriter.BYTE_ORDER);
+    byte[] magic = new byte[ColumnarStreamTupleWriter.getMagic().length];
+    in.get(magic);
+    assertArrayEquals(ColumnarStreamTupleWriter.getMagic(), magic);
+    int headerEnd = in.getInt() + in.position();
+    assertEquals(SCHEMA.numColumns(), in.getInt());
+    for (int column = 0; column < SCHEMA.numColumns(); ++column) {
+      assertEquals(SCHEMA.getColumnType(column).name(), readName(in));
+      assertEquals(SCHEMA.getColumnName(column), readName(in));
+    }
+    assertEquals(headerEnd, in.position());
+    in.position((in.position() + 7) / 8 * 8);
+
+    assertEquals(numTuples, in.getInt());
+    assertEquals(0, in.getInt());
+    ByteBuffer ints = readBuffer(in);
+    ByteBuffer doubles = readBuffer(in);
+    ByteBuffer offsets = readBuffer(in);
+    ByteBuffer strings = readBuffer(in);
+    ByteBuffer bits = readBuffer(in);
+    ByteBuffer times = readBuffer(in);
+    assertEquals(ColumnarStreamTupleWriter.END_OF_STREAM, in.getInt());
+    assertEquals(0, in.getInt());
+    assertEquals(0, in.remaining());
+
+    assertEquals(2, bits.remaining());
+    for (int i = 0; i < numTuples; ++i) {
+      assertEquals(i, ints.getInt(4 * i));
+      assertEquals(i / 2.0, doubles.getDouble(8 * i), 0);
+      byte[] string = new byte[offsets.getInt(4 * i + 4) - offsets.getInt(4 * i)];
+      strings.position(offsets.getInt(4 * i));
+      strings.get(string);
+      assertEquals("t\u00e9st " + i, new String(string, StandardCharsets.UTF_8));
+      assertEquals(i % 3 == 0, (bits.get(i / 8) & (1 << (i % 8))) != 0);
+      assertEquals(1000L * i, times.getLong(8 * i));
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package edu.washington.escience.myria;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class ParallelTupleWriterTest {
+
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.INT_TYPE, Type.STRING_TYPE, Type.DOUBLE_TYPE),
+      ImmutableList.of("id", "name", "value"));
+
+  private static List<TupleBatch> getBatches(final int numTuples) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putInt(0, i);
+      tbb.putString(1, "name, \"" + i + "\"");
+      tbb.putDouble(2, i / 3.0);
+    }
+    return tbb.getAll();
+  }
+
+  private static String write(final TupleWriter writer, final ByteArrayOutputStream out, final int numTuples)
+      throws IOException {
+    writer.writeColumnHeaders(SCHEMA.getColumnNames());
+    for (TupleBatch tb : getBatches(numTuples)) {
+      writer.writeTuples(tb);
+    }
+    writer.done();
+    return out.toString();
+  }
+
+  @Test
+  public void testCsv() throws IOException {
+    final int numTuples = 10 * TupleBatch.BATCH_SIZE + 7;
+    ByteArrayOutputStream serial = new ByteArrayOutputStream();
+    ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+    assertEquals(write(new CsvTupleWriter(serial), serial, numTuples), write(new ParallelTupleWriter(
+        new CsvTupleWriter(parallel), 3), parallel, numTuples));
+  }
+
+  @Test
+  public void testJson() throws IOException {
+    final int numTuples = 10 * TupleBatch.BATCH_SIZE + 7;
+    ByteArrayOutputStream serial = new ByteArrayOutputStream();
+    ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+    assertEquals(write(new JsonTupleWriter(serial), serial, numTuples), write(new ParallelTupleWriter(
+        new JsonTupleWriter(parallel), 3), parallel, numTuples));
+  }
+
+  @Test
+  public void testJsonEmpty() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals("[]", write(new ParallelTupleWriter(new JsonTupleWriter(out), 2), out, 0));
+  }
+}
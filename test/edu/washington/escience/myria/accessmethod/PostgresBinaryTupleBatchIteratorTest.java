@@ -0,0 +1,67 @@
+package edu.washington.escience.myria.accessmethod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.BatchSizeController;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+public class PostgresBinaryTupleBatchIteratorTest {
+
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.BOOLEAN_TYPE, Type.INT_TYPE, Type.LONG_TYPE,
+      Type.FLOAT_TYPE, Type.DOUBLE_TYPE, Type.STRING_TYPE, Type.DATETIME_TYPE));
+
+  @Test
+  public void testBinaryInput() throws IOException {
+    /* The file written by PostgreSQL for PostgresBinaryTupleWriterTest. */
+    byte[] data = Files.readAllBytes(Paths.get("testdata", "tuplewriter", "pg.bin"));
+    PostgresBinaryTupleBatchIterator tuples =
+        new PostgresBinaryTupleBatchIterator(new ByteArrayInputStream(data), null, SCHEMA, new BatchSizeController(
+            SCHEMA, MyriaConstants.DEFAULT_BATCH_TARGET_BYTES));
+
+    assertTrue(tuples.hasNext());
+    TupleBatch tb = tuples.next();
+    assertFalse(tuples.hasNext());
+    assertEquals(3, tb.numTuples());
+
+    assertEquals(true, tb.getBoolean(0, 0));
+    assertEquals(1, tb.getInt(1, 0));
+    assertEquals(100L, tb.getLong(2, 0));
+    assertEquals(3.14f, tb.getFloat(3, 0), 0);
+    assertEquals(3.14, tb.getDouble(4, 0), 0);
+    assertEquals("one", tb.getString(5, 0));
+    assertEquals(new DateTime(1990, 7, 18, 2, 3, 10).getMillis(), tb.getDateTime(6, 0).getMillis());
+
+    assertEquals(false, tb.getBoolean(0, 1));
+    assertEquals(200L, tb.getLong(2, 1));
+    assertEquals(-3.14, tb.getDouble(4, 1), 0);
+    assertEquals("two", tb.getString(5, 1));
+    assertEquals(new DateTime(2013, 9, 30, 3, 1, 10).getMillis(), tb.getDateTime(6, 1).getMillis());
+
+    assertEquals(3, tb.getInt(1, 2));
+    assertEquals(123.456, tb.getDouble(4, 2), 0);
+    assertEquals("three", tb.getString(5, 2));
+    assertEquals(new DateTime(2000, 1, 1, 0, 0, 0).getMillis(), tb.getDateTime(6, 2).getMillis());
+  }
+
+  @Test
+  public void testCopyQuery() {
+    Schema schema = Schema.ofFields("x", Type.LONG_TYPE, "y", Type.FLOAT_TYPE);
+    assertEquals("COPY (SELECT CAST(q.c0 AS BIGINT),CAST(q.c1 AS REAL) FROM (SELECT a, b FROM t) AS q(c0,c1)) "
+        + "TO STDOUT WITH BINARY", JdbcAccessMethod.postgresBinaryCopyQuery("SELECT a, b FROM t;", schema));
+  }
+}
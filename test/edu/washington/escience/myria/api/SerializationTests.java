@@ -13,6 +13,7 @@ import edu.washington.escience.myria.operator.network.partition.MultiFieldHashPa
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.RoundRobinPartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.WholeTupleHashPartitionFunction;
 
 public class SerializationTests {
@@ -51,6 +52,15 @@ public class SerializationTests {
     MultiFieldHashPartitionFunction pfMFH = (MultiFieldHashPartitionFunction) deserialized;
     assertArrayEquals(multiFieldIndex, pfMFH.getIndexes());
 
+    /* Skew-aware hash */
+    pf = new SkewAwareHashPartitionFunction(5, multiFieldIndex, new int[] { 42 }, null, true, 1000, null);
+    serialized = mapper.writeValueAsString(pf);
+    deserialized = reader.readValue(serialized);
+    assertEquals(pf.getClass(), deserialized.getClass());
+    assertEquals(5, deserialized.numPartition());
+    assertArrayEquals(multiFieldIndex, ((SkewAwareHashPartitionFunction) deserialized).getIndexes());
+    assertEquals(1000, ((SkewAwareHashPartitionFunction) deserialized).getSampleSize());
+
     /* Whole tuple hash */
     pf = new WholeTupleHashPartitionFunction(5);
     serialized = mapper.writeValueAsString(pf);
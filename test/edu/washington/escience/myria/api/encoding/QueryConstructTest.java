@@ -0,0 +1,151 @@
+package edu.washington.escience.myria.api.encoding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.LessThanExpression;
+import edu.washington.escience.myria.expression.RandomExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.agg.AggregationPhase;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
+import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction;
+
+public class QueryConstructTest {
+
+  private static EmptyRelationEncoding scan(final int opId) {
+    EmptyRelationEncoding scan = new EmptyRelationEncoding();
+    scan.opId = opId;
+    scan.schema = Schema.ofFields("a", Type.LONG_TYPE);
+    return scan;
+  }
+
+  private static ApplyEncoding apply(final int opId, final int child, final Expression... emitExpressions) {
+    ApplyEncoding apply = new ApplyEncoding();
+    apply.opId = opId;
+    apply.argChild = child;
+    apply.emitExpressions = ImmutableList.copyOf(emitExpressions);
+    return apply;
+  }
+
+  private static FilterEncoding filter(final int opId, final int child, final Expression predicate) {
+    FilterEncoding filter = new FilterEncoding();
+    filter.opId = opId;
+    filter.argChild = child;
+    filter.argPredicate = predicate;
+    return filter;
+  }
+
+  private static ShuffleProducerEncoding shuffle(final int opId, final int child, final boolean broadcast) {
+    ShuffleProducerEncoding shuffle = new ShuffleProducerEncoding();
+    shuffle.opId = opId;
+    shuffle.argChild = child;
+    shuffle.argPf =
+        new SkewAwareHashPartitionFunction(null, new int[] { 0 }, new int[] { 42 }, null, broadcast, null, null);
+    return shuffle;
+  }
+
+  private static ShuffleConsumerEncoding consume(final int opId, final int producer) {
+    ShuffleConsumerEncoding consumer = new ShuffleConsumerEncoding();
+    consumer.opId = opId;
+    consumer.argOperatorId = producer;
+    return consumer;
+  }
+
+  @Test
+  public void testRandomColumnIsNotSubstitutedTwice() {
+    /* r = RANDOM(); r < 0.5; emit r */
+    PlanFragmentEncoding fragment =
+        PlanFragmentEncoding.of(scan(1), apply(2, 1, new Expression("r", new RandomExpression())), filter(3, 2,
+            new Expression(new LessThanExpression(new VariableExpression(0), new ConstantExpression(0.5)))), apply(
+            4, 3, new Expression("r", new VariableExpression(0))));
+    QueryConstruct.fusePipelines(ImmutableList.of(fragment));
+
+    /* The apply and the filter are fused, but the last apply would compute RANDOM() again. */
+    List<OperatorEncoding<? extends Operator>> operators = fragment.operators;
+    assertEquals(3, operators.size());
+    assertTrue(operators.get(1) instanceof FusedPipelineEncoding);
+    FusedPipelineEncoding fused = (FusedPipelineEncoding) operators.get(1);
+    assertEquals(3, (int) fused.opId);
+    assertEquals(1, (int) fused.argChild);
+    assertTrue(operators.get(2) instanceof ApplyEncoding);
+    assertEquals(3, (int) ((ApplyEncoding) operators.get(2)).argChild);
+  }
+
+  @Test
+  public void testTrivialColumnsAreSubstituted() {
+    /* b = a; b < 5; emit b */
+    PlanFragmentEncoding fragment =
+        PlanFragmentEncoding.of(scan(1), apply(2, 1, new Expression("b", new VariableExpression(0))), filter(3, 2,
+            new Expression(new LessThanExpression(new VariableExpression(0), new ConstantExpression(5L)))), apply(4,
+            3, new Expression("b", new VariableExpression(0))));
+    QueryConstruct.fusePipelines(ImmutableList.of(fragment));
+
+    assertEquals(2, fragment.operators.size());
+    FusedPipelineEncoding fused = (FusedPipelineEncoding) fragment.operators.get(1);
+    assertEquals(4, (int) fused.opId);
+    assertEquals(1, (int) fused.argChild);
+  }
+
+  @Test
+  public void testParallelAggregateOverScan() {
+    MultiGroupByAggregateEncoding aggregate = new MultiGroupByAggregateEncoding();
+    aggregate.opId = 2;
+    aggregate.argChild = 1;
+    aggregate.argGroupFields = new int[] { 0 };
+    aggregate.aggregators = new AggregatorFactory[] { new SingleColumnAggregatorFactory(0, AggregationOp.COUNT) };
+    PlanFragmentEncoding fragment = PlanFragmentEncoding.of(scan(1), aggregate);
+    QueryConstruct.useParallelPipelines(ImmutableList.of(fragment), 4);
+
+    /* The partial aggregate is the only stage of the pipeline, and the aggregate merges its output. */
+    List<OperatorEncoding<? extends Operator>> operators = fragment.operators;
+    assertEquals(3, operators.size());
+    ParallelPipelineEncoding pipeline = (ParallelPipelineEncoding) operators.get(2);
+    assertEquals(1, (int) pipeline.argChild);
+    assertEquals(1, pipeline.argStages.size());
+    assertEquals(AggregationPhase.PARTIAL, ((MultiGroupByAggregateEncoding) pipeline.argStages.get(0)).argPhase);
+    MultiGroupByAggregateEncoding merge = (MultiGroupByAggregateEncoding) operators.get(1);
+    assertEquals(2, (int) merge.opId);
+    assertEquals(AggregationPhase.FINAL, merge.argPhase);
+    assertEquals(pipeline.opId, merge.argChild);
+
+    /* The rewrite is idempotent. */
+    QueryConstruct.useParallelPipelines(ImmutableList.of(fragment), 4);
+    assertEquals(3, fragment.operators.size());
+  }
+
+  @Test
+  public void testSpreadHeavyHittersIntoJoin() {
+    SymmetricHashJoinEncoding join = new SymmetricHashJoinEncoding();
+    join.opId = 7;
+    join.argChild1 = 5;
+    join.argChild2 = 6;
+    QueryConstruct.checkSpreadHeavyHitters(ImmutableList.of(PlanFragmentEncoding.of(scan(1), shuffle(2, 1, false)),
+        PlanFragmentEncoding.of(scan(3), shuffle(4, 3, true)), PlanFragmentEncoding.of(consume(5, 2), consume(6, 4),
+            join)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSpreadHeavyHittersIntoAggregate() {
+    MultiGroupByAggregateEncoding aggregate = new MultiGroupByAggregateEncoding();
+    aggregate.opId = 4;
+    aggregate.argChild = 3;
+    aggregate.argGroupFields = new int[] { 0 };
+    aggregate.aggregators = new AggregatorFactory[] { new SingleColumnAggregatorFactory(0, AggregationOp.COUNT) };
+    /* Spreading a group round-robin would split it over several workers. */
+    QueryConstruct.checkSpreadHeavyHitters(ImmutableList.of(PlanFragmentEncoding.of(scan(1), shuffle(2, 1, false)),
+        PlanFragmentEncoding.of(consume(3, 2), aggregate)));
+  }
+}
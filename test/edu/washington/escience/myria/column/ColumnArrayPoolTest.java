@@ -0,0 +1,130 @@
+package edu.washington.escience.myria.column;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.builder.IntColumnBuilder;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class ColumnArrayPoolTest {
+
+  private final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE, Type.FLOAT_TYPE,
+      Type.DOUBLE_TYPE, Type.STRING_TYPE), ImmutableList.of("int", "long", "float", "double", "string"));
+
+  @Before
+  public void clearPool() {
+    ColumnArrayPool.clear();
+  }
+
+  private TupleBatchBuffer fill(final int numTuples, final int offset) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putInt(0, i + offset);
+      tbb.putLong(1, i + offset);
+      tbb.putFloat(2, i + offset);
+      tbb.putDouble(3, i + offset);
+      tbb.putString(4, "s" + (i + offset));
+    }
+    return tbb;
+  }
+
+  @Test
+  public void testRecycle() {
+    TupleBatch tb = fill(TupleBatch.BATCH_SIZE, 0).popAny();
+    assertEquals(0, ColumnArrayPool.getRecycled());
+    tb.release();
+    /* The string column is not pooled. */
+    assertEquals(4, ColumnArrayPool.getRecycled());
+    assertEquals((4 + 8 + 4 + 8) * TupleBatch.BATCH_SIZE, ColumnArrayPool.getBytesRecycled());
+
+    long hits = ColumnArrayPool.getHits();
+    TupleBatch second = fill(TupleBatch.BATCH_SIZE, 7).popAny();
+    assertEquals(hits + 4, ColumnArrayPool.getHits());
+    assertEquals(TupleBatch.BATCH_SIZE - 1 + 7, second.getInt(0, TupleBatch.BATCH_SIZE - 1));
+    assertEquals(7, second.getLong(1, 0));
+  }
+
+  @Test
+  public void testRetain() {
+    TupleBatch tb = fill(100, 0).popAny();
+    tb.retain();
+    tb.release();
+    assertEquals(0, ColumnArrayPool.getRecycled());
+    tb.release();
+    assertEquals(4, ColumnArrayPool.getRecycled());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReleaseTooOften() {
+    TupleBatch tb = fill(100, 0).popAny();
+    tb.release();
+    tb.release();
+  }
+
+  @Test
+  public void testAbsorbKeepsReference() {
+    TupleBatch tb = fill(100, 0).popAny();
+    TupleBatchBuffer other = new TupleBatchBuffer(schema);
+    other.absorb(tb);
+    /* The popped batch is the same object, and the original owner still holds its reference. */
+    other.popAny().release();
+    assertEquals(0, ColumnArrayPool.getRecycled());
+    tb.release();
+    assertEquals(4, ColumnArrayPool.getRecycled());
+  }
+
+  @Test
+  public void testNotRecyclable() {
+    TupleBatch tb = new TupleBatch(schema, fill(100, 0).getAll().get(0).getDataColumns());
+    tb.retain();
+    tb.release();
+    tb.release();
+    assertEquals(0, ColumnArrayPool.getRecycled());
+  }
+
+  @Test
+  public void testSmallBatchesAreNotPooled() {
+    /* 4 + 8 + 4 + 8 bytes, and 4 + 16 for a string until some have been measured: 100 tuples per batch. */
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema, 100 * 44);
+    for (int i = 0; i < 100; ++i) {
+      tbb.putInt(0, i);
+      tbb.putLong(1, i);
+      tbb.putFloat(2, i);
+      tbb.putDouble(3, i);
+      tbb.putString(4, "s" + i);
+    }
+    TupleBatch tb = tbb.popFilled();
+    assertEquals(100, tb.numTuples());
+    /* The builders were sized to the batch, rather than take arrays of TupleBatch.BATCH_SIZE elements. */
+    assertEquals(100, ((IntArrayColumn) tb.getDataColumns().get(0)).getArray().length);
+    assertEquals(0, ColumnArrayPool.getHits() + ColumnArrayPool.getMisses());
+    tb.release();
+    assertEquals(0, ColumnArrayPool.getRecycled());
+  }
+
+  @Test
+  public void testExpandClearsPooledArray() {
+    IntColumnBuilder builder = new IntColumnBuilder();
+    for (int i = 0; i < TupleBatch.BATCH_SIZE; ++i) {
+      builder.appendInt(i + 1);
+    }
+    ColumnArrayPool.recycle(builder.build());
+
+    IntColumnBuilder reused = new IntColumnBuilder();
+    assertEquals(1, ColumnArrayPool.getHits());
+    reused.appendInt(-1);
+    reused.expand(10);
+    Column<?> column = reused.build();
+    assertEquals(-1, column.getInt(0));
+    for (int i = 1; i <= 10; ++i) {
+      assertEquals(0, column.getInt(i));
+    }
+  }
+}
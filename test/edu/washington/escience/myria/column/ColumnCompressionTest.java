@@ -0,0 +1,156 @@
+package edu.washington.escience.myria.column;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.builder.BooleanColumnBuilder;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.column.builder.DoubleColumnBuilder;
+import edu.washington.escience.myria.column.builder.LongColumnBuilder;
+import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
+import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.IPCUtils;
+
+public class ColumnCompressionTest {
+
+  private final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE, Type.LONG_TYPE,
+      Type.DATETIME_TYPE, Type.STRING_TYPE, Type.STRING_TYPE, Type.STRING_TYPE, Type.DOUBLE_TYPE, Type.FLOAT_TYPE,
+      Type.BOOLEAN_TYPE, Type.BOOLEAN_TYPE), ImmutableList.of("runs", "sorted", "random", "date", "dictionary",
+      "strings", "strRuns", "double", "float", "bool", "boolRuns"));
+
+  private List<TupleBatch> makeInput(final int numTuples) {
+    Random random = new Random(1);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putInt(0, i / 100);
+      tbb.putLong(1, 1000000000000L + 3 * i + random.nextInt(3));
+      tbb.putLong(2, random.nextLong());
+      tbb.putDateTime(3, new DateTime(1400000000000L + 1000L * random.nextInt(86400)));
+      tbb.putString(4, "category" + random.nextInt(20));
+      tbb.putString(5, "string \u00e9\u4e2d " + random.nextInt());
+      tbb.putString(6, (i / 500) % 2 == 0 ? "" : "run");
+      tbb.putDouble(7, random.nextInt(10) / 4.0);
+      tbb.putFloat(8, random.nextFloat());
+      tbb.putBoolean(9, random.nextBoolean());
+      tbb.putBoolean(10, (i / 300) % 2 == 0);
+    }
+    return tbb.getAll();
+  }
+
+  private void checkRoundTrip(final int encodings) {
+    for (TupleBatch tb : makeInput(25000)) {
+      TransportMessage tm = tb.toTransportMessage(encodings);
+      TupleBatch decoded = IPCUtils.tmToTupleBatch(tm.getDataMessage(), schema);
+      assertEquals(tb.numTuples(), decoded.numTuples());
+      assertEquals(tb.toString(), decoded.toString());
+      if (encodings == ColumnCompression.DEFAULT) {
+        assertTrue(tm.getSerializedSize() < tb.toTransportMessage().getSerializedSize());
+      }
+    }
+  }
+
+  @Test
+  public void testNone() {
+    checkRoundTrip(ColumnCompression.NONE);
+  }
+
+  @Test
+  public void testDefault() {
+    checkRoundTrip(ColumnCompression.DEFAULT);
+  }
+
+  @Test
+  public void testEachEncoding() {
+    checkRoundTrip(ColumnCompression.BIT_PACKING);
+    checkRoundTrip(ColumnCompression.RUN_LENGTH);
+    checkRoundTrip(ColumnCompression.DICTIONARY);
+    checkRoundTrip(ColumnCompression.DEFLATE);
+  }
+
+  @Test
+  public void testAll() {
+    checkRoundTrip(ColumnCompression.ALL);
+  }
+
+  @Test
+  public void testSortedLongs() {
+    LongColumnBuilder builder = new LongColumnBuilder();
+    for (int i = 0; i < TupleBatch.BATCH_SIZE; ++i) {
+      builder.appendLong(Long.MIN_VALUE + 7L * i);
+    }
+    Column<?> column = builder.build();
+    ColumnMessage compressed = ColumnCompression.compress(column, ColumnCompression.BIT_PACKING);
+    assertNotNull(compressed);
+    /* Every delta is the same, so only the first value and the delta are left. */
+    assertTrue(compressed.getSerializedSize() < 32);
+    assertEquals(column.toString(), ColumnFactory.columnFromColumnMessage(compressed, column.size()).toString());
+  }
+
+  @Test
+  public void testBooleanRuns() {
+    BooleanColumnBuilder builder = new BooleanColumnBuilder();
+    for (int i = 0; i < TupleBatch.BATCH_SIZE; ++i) {
+      builder.appendBoolean(i % 1000 < 10);
+    }
+    Column<?> column = builder.build();
+    ColumnMessage compressed = ColumnCompression.compress(column, ColumnCompression.RUN_LENGTH);
+    assertNotNull(compressed);
+    assertTrue(compressed.getSerializedSize() < column.serializeToProto().getSerializedSize());
+    assertEquals(column.toString(), ColumnFactory.columnFromColumnMessage(compressed, column.size()).toString());
+  }
+
+  @Test
+  public void testPlainColumnIsNotDecoded() {
+    LongColumnBuilder builder = new LongColumnBuilder();
+    /* The plain encoding of the column starts with what would be the tag byte of a delta-encoded column. */
+    for (int i = 0; i < 10; ++i) {
+      builder.appendLong(2L << 56);
+    }
+    Column<?> column = builder.build();
+    ColumnMessage plain = column.serializeToProto();
+    assertNull(ColumnCompression.decompress(plain, column.size()));
+    assertEquals(column.toString(), ColumnFactory.columnFromColumnMessage(plain, column.size()).toString());
+  }
+
+  @Test
+  public void testIncompressible() {
+    Random random = new Random(1);
+    DoubleColumnBuilder doubles = new DoubleColumnBuilder();
+    LongColumnBuilder longs = new LongColumnBuilder();
+    for (int i = 0; i < 1000; ++i) {
+      doubles.appendDouble(random.nextDouble());
+      longs.appendLong(random.nextLong());
+    }
+    assertNull(ColumnCompression.compress(doubles.build(), ColumnCompression.DEFAULT));
+    assertNull(ColumnCompression.compress(longs.build(), ColumnCompression.ALL));
+    assertNull(ColumnCompression.compress(longs.build(), ColumnCompression.NONE));
+  }
+
+  @Test
+  public void testParse() {
+    assertEquals(ColumnCompression.DEFAULT, ColumnCompression.parse(null));
+    assertEquals(ColumnCompression.NONE, ColumnCompression.parse("none"));
+    assertEquals(ColumnCompression.ALL, ColumnCompression.parse("all"));
+    assertEquals(ColumnCompression.BIT_PACKING | ColumnCompression.DEFLATE, ColumnCompression
+        .parse(" BitPacking, deflate"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseUnknown() {
+    ColumnCompression.parse("lz4");
+  }
+}
@@ -0,0 +1,120 @@
+package edu.washington.escience.myria.hash;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.HashUtils;
+import edu.washington.escience.myria.util.SpaceSavingSketch;
+
+public class SkewAwareHashPartitionFunctionTest {
+
+  private static final int NUM_PARTITIONS = 4;
+  private static final int HOT_KEY = 7;
+
+  /*
+   * Generates a batch with the schema a (long), b (long) where half the tuples have a = HOT_KEY and the others have
+   * distinct keys.
+   */
+  private TupleBatch generateSkewedBatch(final int numTuples) {
+    final Schema schema = Schema.ofFields(Type.LONG_TYPE, "a", Type.LONG_TYPE, "b");
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < numTuples; i++) {
+      tbb.putLong(0, i % 2 == 0 ? HOT_KEY : 1000 + i);
+      tbb.putLong(1, i);
+    }
+    TupleBatch tb = tbb.popAny();
+    assertNotNull(tb);
+    return tb;
+  }
+
+  private int[] countPerPartition(final int[] partitions) {
+    int[] counts = new int[NUM_PARTITIONS];
+    for (int p : partitions) {
+      counts[p]++;
+    }
+    return counts;
+  }
+
+  @Test
+  public void testSpreadListedHeavyHitter() {
+    TupleBatch tb = generateSkewedBatch(1000);
+    int hotHash = HashUtils.hashSubRow(tb, new int[] { 0 }, 0);
+    SkewAwareHashPartitionFunction pf =
+        new SkewAwareHashPartitionFunction(NUM_PARTITIONS, new int[] { 0 }, new int[] { hotHash }, null, null, null,
+            null);
+    int[] partitions = pf.partition(tb);
+    int[] hotCounts = new int[NUM_PARTITIONS];
+    for (int i = 0; i < tb.numTuples(); i += 2) {
+      hotCounts[partitions[i]]++;
+    }
+    /* The hot key is spread evenly instead of landing on one partition. */
+    assertArrayEquals(new int[] { 125, 125, 125, 125 }, hotCounts);
+  }
+
+  @Test
+  public void testBroadcastListedHeavyHitter() {
+    TupleBatch tb = generateSkewedBatch(100);
+    int hotHash = HashUtils.hashSubRow(tb, new int[] { 0 }, 0);
+    SkewAwareHashPartitionFunction pf =
+        new SkewAwareHashPartitionFunction(NUM_PARTITIONS, new int[] { 0 }, new int[] { hotHash }, null, true, null,
+            null);
+    int[] partitions = pf.partition(tb);
+    for (int i = 0; i < tb.numTuples(); i++) {
+      if (i % 2 == 0) {
+        assertEquals(PartitionFunction.ALL_PARTITIONS, partitions[i]);
+      } else {
+        assertTrue(partitions[i] >= 0 && partitions[i] < NUM_PARTITIONS);
+      }
+    }
+
+    /* Every partition receives a copy of each hot tuple. */
+    TupleBatch[] split = tb.partition(pf);
+    int total = 0;
+    for (TupleBatch part : split) {
+      assertNotNull(part);
+      total += part.numTuples();
+    }
+    assertEquals(50 * NUM_PARTITIONS + 50, total);
+  }
+
+  @Test
+  public void testSpreadHeavyHitterKey() {
+    TupleBatch tb = generateSkewedBatch(1000);
+    List<List<String>> hotKeys = ImmutableList.<List<String>> of(ImmutableList.of(String.valueOf(HOT_KEY)));
+    assertArrayEquals(new int[] { HashUtils.hashSubRow(tb, new int[] { 0 }, 0) }, SkewAwareHashPartitionFunction
+        .hashKeys(tb.getSchema(), new int[] { 0 }, hotKeys));
+    SkewAwareHashPartitionFunction pf =
+        new SkewAwareHashPartitionFunction(NUM_PARTITIONS, new int[] { 0 }, null, hotKeys, null, null, null);
+    int[] partitions = pf.partition(tb);
+    int[] hotCounts = new int[NUM_PARTITIONS];
+    for (int i = 0; i < tb.numTuples(); i += 2) {
+      hotCounts[partitions[i]]++;
+    }
+    assertArrayEquals(new int[] { 125, 125, 125, 125 }, hotCounts);
+  }
+
+  @Test
+  public void testSpaceSavingSketch() {
+    SpaceSavingSketch sketch = new SpaceSavingSketch(10);
+    for (int i = 0; i < 10000; i++) {
+      sketch.add(i % 3 == 0 ? -1 : i);
+    }
+    assertEquals(10000, sketch.getTotal());
+    assertTrue(sketch.estimate(-1) >= 3334);
+    assertArrayEquals(new int[] { -1 }, sketch.getHeavyHitters(0.2));
+  }
+}
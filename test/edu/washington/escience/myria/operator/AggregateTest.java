@@ -6,6 +6,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -35,7 +36,11 @@ import edu.washington.escience.myria.column.builder.IntColumnBuilder;
 import edu.washington.escience.myria.column.builder.LongColumnBuilder;
 import edu.washington.escience.myria.column.builder.StringColumnBuilder;
 import edu.washington.escience.myria.operator.agg.Aggregate;
+import edu.washington.escience.myria.operator.agg.AggUtils;
+import edu.washington.escience.myria.operator.agg.AggregationPhase;
+import edu.washington.escience.myria.operator.agg.Aggregator;
 import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.CountAllAggregatorFactory;
 import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
 import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
 import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
@@ -889,6 +894,227 @@ public class AggregateTest {
     mga.close();
   }
 
+  /** The number of tuples made by {@link #makeAllTypesTuples(int, int)}, which fall into 700 groups. */
+  private static final int ALL_TYPES_NUM_TUPLES = 3 * TupleBatch.BATCH_SIZE + 17;
+
+  /** Every aggregate over the non-grouping columns of the tuples made by {@link #makeAllTypesTuples(int, int)}. */
+  private static final AggregatorFactory[] ALL_TYPES_FACTORIES;
+  static {
+    final AggregationOp[] numericOps =
+        { AggregationOp.COUNT, AggregationOp.MIN, AggregationOp.MAX, AggregationOp.SUM, AggregationOp.AVG,
+            AggregationOp.STDEV };
+    final AggregationOp[] orderedOps = { AggregationOp.COUNT, AggregationOp.MIN, AggregationOp.MAX };
+    ALL_TYPES_FACTORIES =
+        new AggregatorFactory[] { new SingleColumnAggregatorFactory(2, numericOps),
+            new SingleColumnAggregatorFactory(3, numericOps), new SingleColumnAggregatorFactory(4, numericOps),
+            new SingleColumnAggregatorFactory(5, numericOps), new SingleColumnAggregatorFactory(6, orderedOps),
+            new SingleColumnAggregatorFactory(7, orderedOps), new SingleColumnAggregatorFactory(8, AggregationOp.COUNT),
+            new CountAllAggregatorFactory() };
+  }
+
+  /**
+   * @param from the first tuple.
+   * @param to after the last tuple.
+   * @return tuples with two int grouping columns and a column of every type.
+   */
+  private static TupleBatchBuffer makeAllTypesTuples(final int from, final int to) {
+    final Schema schema =
+        Schema.ofFields(Type.INT_TYPE, "g1", Type.INT_TYPE, "g2", Type.INT_TYPE, "i", Type.LONG_TYPE, "l",
+            Type.FLOAT_TYPE, "f", Type.DOUBLE_TYPE, "d", Type.STRING_TYPE, "s", Type.DATETIME_TYPE, "t",
+            Type.BOOLEAN_TYPE, "b");
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = from; i < to; i++) {
+      tbb.putInt(0, i % 100);
+      tbb.putInt(1, i % 7);
+      tbb.putInt(2, i * 31 % 1000 - 500);
+      tbb.putLong(3, i * 123L - 100000L);
+      tbb.putFloat(4, -1.5f - i % 13);
+      tbb.putDouble(5, (i % 17) * -0.25);
+      tbb.putString(6, "s" + (i * 7 % 101));
+      tbb.putDateTime(7, new DateTime(i * 1000L * 3600));
+      tbb.putBoolean(8, i % 3 == 0);
+    }
+    return tbb;
+  }
+
+  /**
+   * Drain an aggregate operator.
+   * 
+   * @param op the operator, which is opened and closed.
+   * @param numGroupColumns the number of grouping columns, which come first.
+   * @return the aggregates of each group, by grouping key.
+   */
+  private static Map<List<Object>, List<Object>> getGroupResults(final Operator op, final int numGroupColumns)
+      throws DbException {
+    Map<List<Object>, List<Object>> ret = new HashMap<>();
+    op.open(null);
+    for (TupleBatch result = op.nextReady(); result != null; result = op.nextReady()) {
+      for (int row = 0; row < result.numTuples(); ++row) {
+        List<Object> key = new ArrayList<>();
+        List<Object> aggs = new ArrayList<>();
+        for (int column = 0; column < result.numColumns(); ++column) {
+          (column < numGroupColumns ? key : aggs).add(result.getObject(column, row));
+        }
+        assertNull(ret.put(key, aggs));
+      }
+    }
+    op.close();
+    return ret;
+  }
+
+  /**
+   * Run the partial phase of an aggregate over each of the specified inputs, as on different workers.
+   * 
+   * @param inputs the input of each partial aggregate.
+   * @param gfields the grouping columns, or null for no group by.
+   * @param factories the aggregates.
+   * @return the partial states output by all the partial aggregates.
+   */
+  private static List<TupleBatch> runPartialAggregates(final List<TupleBatchBuffer> inputs, final int[] gfields,
+      final AggregatorFactory... factories) throws DbException {
+    List<TupleBatch> ret = new ArrayList<>();
+    for (TupleBatchBuffer input : inputs) {
+      Operator partial;
+      if (gfields == null) {
+        partial = new Aggregate(new TupleSource(input), AggregationPhase.PARTIAL, factories);
+      } else {
+        partial = new MultiGroupByAggregate(new TupleSource(input), gfields, AggregationPhase.PARTIAL, factories);
+      }
+      partial.open(null);
+      for (TupleBatch tb = partial.nextReady(); tb != null; tb = partial.nextReady()) {
+        ret.add(tb);
+      }
+      partial.close();
+    }
+    return ret;
+  }
+
+  @Test
+  public void testMultiGroupAllTypesManyGroups() throws DbException {
+    final TupleBatchBuffer tbb = makeAllTypesTuples(0, ALL_TYPES_NUM_TUPLES);
+    final Schema schema = tbb.getSchema();
+    final AggregatorFactory[] factories = ALL_TYPES_FACTORIES;
+
+    /* Compute the expected results one row at a time. */
+    Aggregator[] aggregators = AggUtils.allocateAggs(factories, schema);
+    Map<String, Object[]> states = new HashMap<>();
+    for (TupleBatch tb : tbb.getAll()) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        String key = tb.getInt(0, row) + "," + tb.getInt(1, row);
+        Object[] rowStates = states.get(key);
+        if (rowStates == null) {
+          rowStates = AggUtils.allocateAggStates(aggregators);
+          states.put(key, rowStates);
+        }
+        for (int agg = 0; agg < aggregators.length; ++agg) {
+          aggregators[agg].addRow(tb, row, rowStates[agg]);
+        }
+      }
+    }
+
+    MultiGroupByAggregate mga = new MultiGroupByAggregate(new TupleSource(tbb), new int[] { 0, 1 }, factories);
+    mga.open(null);
+    int numGroups = 0;
+    for (TupleBatch result = mga.nextReady(); result != null; result = mga.nextReady()) {
+      for (int row = 0; row < result.numTuples(); ++row) {
+        Object[] rowStates = states.get(result.getInt(0, row) + "," + result.getInt(1, row));
+        assertNotNull(rowStates);
+        int column = 2;
+        for (int agg = 0; agg < aggregators.length; ++agg) {
+          TupleBatchBuffer expected = new TupleBatchBuffer(aggregators[agg].getResultSchema());
+          aggregators[agg].getResult(expected, 0, rowStates[agg]);
+          TupleBatch expectedTb = expected.popAny();
+          for (int i = 0; i < expectedTb.numColumns(); ++i) {
+            assertEquals(expectedTb.getObject(i, 0), result.getObject(column, row));
+            ++column;
+          }
+        }
+        assertEquals(result.numColumns(), column);
+      }
+      numGroups += result.numTuples();
+    }
+    assertEquals(states.size(), numGroups);
+    mga.close();
+  }
+
+  @Test
+  public void testMultiGroupTwoPhase() throws DbException {
+    final int[] gfields = { 0, 1 };
+    Map<List<Object>, List<Object>> expected =
+        getGroupResults(new MultiGroupByAggregate(new TupleSource(makeAllTypesTuples(0, ALL_TYPES_NUM_TUPLES)),
+            gfields, ALL_TYPES_FACTORIES), gfields.length);
+    assertEquals(700, expected.size());
+
+    final int split = ALL_TYPES_NUM_TUPLES / 3;
+    List<TupleBatch> partials =
+        runPartialAggregates(ImmutableList.of(makeAllTypesTuples(0, split),
+            makeAllTypesTuples(split, ALL_TYPES_NUM_TUPLES)), gfields, ALL_TYPES_FACTORIES);
+    int numPartials = 0;
+    for (TupleBatch tb : partials) {
+      numPartials += tb.numTuples();
+    }
+    assertEquals(2 * expected.size(), numPartials);
+
+    Map<List<Object>, List<Object>> actual =
+        getGroupResults(new MultiGroupByAggregate(new TupleSource(partials), gfields, AggregationPhase.FINAL,
+            ALL_TYPES_FACTORIES), gfields.length);
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testMultiGroupPartialFlush() throws DbException {
+    final int numGroups = MultiGroupByAggregate.MAX_PARTIAL_GROUPS + 100;
+    final Schema schema = Schema.ofFields(Type.LONG_TYPE, "g", Type.LONG_TYPE, "v");
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < 2 * numGroups; ++i) {
+      tbb.putLong(0, i % numGroups);
+      tbb.putLong(1, i);
+    }
+    final int[] gfields = { 0 };
+    final AggregatorFactory[] factories =
+        { new SingleColumnAggregatorFactory(1, AggregationOp.SUM, AggregationOp.MIN), new CountAllAggregatorFactory() };
+    List<TupleBatch> partials = runPartialAggregates(ImmutableList.of(tbb), gfields, factories);
+    int numPartials = 0;
+    for (TupleBatch tb : partials) {
+      assertEquals(Schema.ofFields(Type.LONG_TYPE, "g", Type.LONG_TYPE, "sum_v", Type.LONG_TYPE, "min_v",
+          Type.LONG_TYPE, "count_all"), tb.getSchema());
+      numPartials += tb.numTuples();
+    }
+    /* The partial aggregate started over once it held too many groups, so some groups were output twice. */
+    assertTrue(numPartials > numGroups);
+
+    Map<List<Object>, List<Object>> actual =
+        getGroupResults(new MultiGroupByAggregate(new TupleSource(partials), gfields, AggregationPhase.FINAL,
+            factories), gfields.length);
+    assertEquals(numGroups, actual.size());
+    for (Map.Entry<List<Object>, List<Object>> e : actual.entrySet()) {
+      long g = (Long) e.getKey().get(0);
+      assertEquals(ImmutableList.<Object> of(2 * g + numGroups, g, 2L), e.getValue());
+    }
+  }
+
+  @Test
+  public void testAggregateTwoPhase() throws DbException {
+    final AggregatorFactory[] factories = ALL_TYPES_FACTORIES;
+    Map<List<Object>, List<Object>> expected =
+        getGroupResults(new Aggregate(new TupleSource(makeAllTypesTuples(0, ALL_TYPES_NUM_TUPLES)), factories), 0);
+
+    final int split = ALL_TYPES_NUM_TUPLES / 2;
+    List<TupleBatch> partials =
+        runPartialAggregates(ImmutableList.of(makeAllTypesTuples(0, split), makeAllTypesTuples(split, split),
+            makeAllTypesTuples(split, ALL_TYPES_NUM_TUPLES)), null, factories);
+    int numPartials = 0;
+    for (TupleBatch tb : partials) {
+      numPartials += tb.numTuples();
+    }
+    /* The partial aggregate of the empty input outputs nothing. */
+    assertEquals(2, numPartials);
+
+    Map<List<Object>, List<Object>> actual =
+        getGroupResults(new Aggregate(new TupleSource(partials), AggregationPhase.FINAL, factories), 0);
+    assertEquals(expected, actual);
+  }
+
   @Test
   public void testMultiGroupCountMultiColumnEmpty() throws DbException {
     final Schema schema =
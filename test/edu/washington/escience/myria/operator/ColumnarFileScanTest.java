@@ -0,0 +1,153 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.joda.time.DateTime;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.IntBufferColumn;
+import edu.washington.escience.myria.storage.ColumnarFile;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.FSUtils;
+
+public class ColumnarFileScanTest {
+
+  private static final int NUM_TUPLES = 2 * TupleBatch.BATCH_SIZE + TupleBatch.BATCH_SIZE / 2;
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE, Type.FLOAT_TYPE,
+      Type.DOUBLE_TYPE, Type.STRING_TYPE, Type.BOOLEAN_TYPE, Type.DATETIME_TYPE), ImmutableList.of("id", "l", "f", "d",
+      "s", "b", "t"));
+  private static Path tempDir;
+  private static File file;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    tempDir = Files.createTempDirectory(MyriaConstants.SYSTEM_NAME + "_ColumnarFileScanTest");
+    file = new File(tempDir.toString(), "tuples.col");
+
+    TupleBatchBuffer data = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      data.putInt(0, i);
+      data.putLong(1, -3L * i);
+      data.putFloat(2, i / 2.0f);
+      data.putDouble(3, i / 4.0);
+      data.putString(4, "t\u00e9st " + i);
+      data.putBoolean(5, i % 3 == 0);
+      data.putDateTime(6, new DateTime(1000L * i));
+    }
+    ColumnarFileInsert insert = new ColumnarFileInsert(new TupleSource(data), file.getAbsolutePath());
+    insert.open(null);
+    while (!insert.eos()) {
+      insert.nextReady();
+    }
+    insert.close();
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    ColumnarFileScan scan = new ColumnarFileScan(SCHEMA, file.getAbsolutePath());
+    scan.open(null);
+    int row = 0;
+    TupleBatch tb;
+    while (!scan.eos()) {
+      tb = scan.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      assertEquals(SCHEMA, tb.getSchema());
+      assertTrue(tb.getDataColumns().get(0) instanceof IntBufferColumn);
+      for (int i = 0; i < tb.numTuples(); ++i, ++row) {
+        assertEquals(row, tb.getInt(0, i));
+        assertEquals(-3L * row, tb.getLong(1, i));
+        assertEquals(row / 2.0f, tb.getFloat(2, i), 0);
+        assertEquals(row / 4.0, tb.getDouble(3, i), 0);
+        assertEquals("t\u00e9st " + row, tb.getString(4, i));
+        assertEquals(row % 3 == 0, tb.getBoolean(5, i));
+        assertEquals(1000L * row, tb.getDateTime(6, i).getMillis());
+      }
+    }
+    scan.close();
+    assertEquals(NUM_TUPLES, row);
+  }
+
+  @Test
+  public void testZoneMaps() throws Exception {
+    try (ColumnarFile columnar = new ColumnarFile(file)) {
+      assertEquals(3, columnar.numSegments());
+      assertTrue(columnar.mayContain(1, 0, TupleBatch.BATCH_SIZE, TupleBatch.BATCH_SIZE));
+      assertFalse(columnar.mayContain(0, 0, TupleBatch.BATCH_SIZE, TupleBatch.BATCH_SIZE));
+      assertFalse(columnar.mayContain(2, 3, -10, -1));
+      /* Strings have no zone map. */
+      assertTrue(columnar.mayContain(0, 4, 0, 0));
+    }
+
+    final int low = TupleBatch.BATCH_SIZE + 100;
+    ColumnarFileScan scan = new ColumnarFileScan(SCHEMA, file.getAbsolutePath(), 0, low, low + 100);
+    scan.open(null);
+    int numTuples = 0;
+    while (!scan.eos()) {
+      TupleBatch tb = scan.nextReady();
+      if (tb != null) {
+        numTuples += tb.numTuples();
+      }
+    }
+    assertEquals(2, scan.getNumSkippedSegments());
+    scan.close();
+    assertEquals(TupleBatch.BATCH_SIZE, numTuples);
+  }
+
+  @Test
+  public void testNaNZoneMap() throws Exception {
+    final Schema schema = Schema.ofFields("f", Type.FLOAT_TYPE, "d", Type.DOUBLE_TYPE);
+    final File nanFile = new File(tempDir.toString(), "nan.col");
+    TupleBatchBuffer data = new TupleBatchBuffer(schema);
+    for (int i = 0; i < TupleBatch.BATCH_SIZE; ++i) {
+      data.putFloat(0, i == 1 ? Float.NaN : i);
+      data.putDouble(1, i == 0 ? Double.NaN : i);
+    }
+    ColumnarFileInsert insert = new ColumnarFileInsert(new TupleSource(data), nanFile.getAbsolutePath());
+    insert.open(null);
+    while (!insert.eos()) {
+      insert.nextReady();
+    }
+    insert.close();
+
+    try (ColumnarFile columnar = new ColumnarFile(nanFile)) {
+      /* A NaN does not hide the other values of the segment. */
+      assertTrue(columnar.mayContain(0, 0, 5, 5));
+      assertTrue(columnar.mayContain(0, 1, 5, 5));
+      assertFalse(columnar.mayContain(0, 1, -10, -1));
+    }
+
+    ColumnarFileScan scan = new ColumnarFileScan(schema, nanFile.getAbsolutePath(), 1, 5, 5);
+    scan.open(null);
+    int numTuples = 0;
+    while (!scan.eos()) {
+      TupleBatch tb = scan.nextReady();
+      if (tb != null) {
+        numTuples += tb.numTuples();
+      }
+    }
+    assertEquals(0, scan.getNumSkippedSegments());
+    scan.close();
+    assertEquals(TupleBatch.BATCH_SIZE, numTuples);
+  }
+
+  @AfterClass
+  public static void cleanUp() throws Exception {
+    FSUtils.blockingDeleteDirectory(tempDir.toString());
+  }
+}
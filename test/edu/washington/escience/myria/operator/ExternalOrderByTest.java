@@ -0,0 +1,121 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestUtils;
+
+public class ExternalOrderByTest {
+
+  private List<TupleBatch> drain(final Operator op) throws DbException {
+    op.open(null);
+    List<TupleBatch> result = new ArrayList<TupleBatch>();
+    while (!op.eos()) {
+      TupleBatch tb = op.nextReady();
+      if (tb != null) {
+        result.add(tb);
+      }
+    }
+    op.close();
+    return result;
+  }
+
+  /** The sort is stable, so it must return exactly the tuples of {@link InMemoryOrderBy}, in the same order. */
+  private void checkSameAsInMemory(final int[] sortColumns, final boolean[] ascending, final long memoryBudget)
+      throws DbException {
+    TupleBatchBuffer randomTuples = TestUtils.generateRandomTuples(52300, 5000, false);
+    List<TupleBatch> expected = drain(new InMemoryOrderBy(new TupleSource(randomTuples), sortColumns, ascending));
+    ExternalOrderBy order = new ExternalOrderBy(new TupleSource(randomTuples), sortColumns, ascending);
+    order.setMemoryBudget(memoryBudget);
+    List<TupleBatch> actual = drain(order);
+
+    List<String> expectedTuples = new ArrayList<String>();
+    for (TupleBatch tb : expected) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        expectedTuples.add(tb.getLong(0, row) + "|" + tb.getString(1, row));
+      }
+    }
+    List<String> actualTuples = new ArrayList<String>();
+    for (TupleBatch tb : actual) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        actualTuples.add(tb.getLong(0, row) + "|" + tb.getString(1, row));
+      }
+    }
+    assertEquals(52300, actualTuples.size());
+    assertEquals(expectedTuples, actualTuples);
+  }
+
+  @Test
+  public void testInMemory() throws DbException {
+    checkSameAsInMemory(new int[] { 0, 1 }, new boolean[] { true, true }, 0);
+  }
+
+  @Test
+  public void testSpillRuns() throws DbException {
+    checkSameAsInMemory(new int[] { 0, 1 }, new boolean[] { true, false }, 64 * 1024);
+  }
+
+  @Test
+  public void testSpillRunsStringKey() throws DbException {
+    checkSameAsInMemory(new int[] { 1 }, new boolean[] { false }, 64 * 1024);
+  }
+
+  @Test
+  public void testDoubles() throws DbException {
+    Schema schema = new Schema(ImmutableList.of(Type.DOUBLE_TYPE, Type.FLOAT_TYPE), ImmutableList.of("d", "f"));
+    TupleBatchBuffer input = new TupleBatchBuffer(schema);
+    Random random = new Random(1);
+    double[] special = new double[] { -0.0, 0.0, Double.NaN, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY };
+    for (int i = 0; i < 30000; ++i) {
+      double d;
+      if (i % 10 == 0) {
+        d = special[random.nextInt(special.length)];
+      } else {
+        d = random.nextGaussian() * 1000;
+      }
+      input.putDouble(0, d);
+      input.putFloat(1, (float) -d);
+    }
+
+    ExternalOrderBy order = new ExternalOrderBy(new TupleSource(input), new int[] { 0 }, new boolean[] { true });
+    order.setMemoryBudget(32 * 1024);
+    int count = 0;
+    Double previous = null;
+    for (TupleBatch tb : drain(order)) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        double d = tb.getDouble(0, row);
+        if (previous != null) {
+          assertTrue(Double.compare(previous, d) <= 0);
+        }
+        previous = d;
+        ++count;
+      }
+    }
+    assertEquals(30000, count);
+
+    order = new ExternalOrderBy(new TupleSource(input), new int[] { 1 }, new boolean[] { false });
+    Float previousFloat = null;
+    for (TupleBatch tb : drain(order)) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        float f = tb.getFloat(1, row);
+        if (previousFloat != null) {
+          assertTrue(Float.compare(previousFloat, f) >= 0);
+        }
+        previousFloat = f;
+      }
+    }
+  }
+}
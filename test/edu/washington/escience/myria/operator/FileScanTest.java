@@ -1,11 +1,15 @@
 package edu.washington.escience.myria.operator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -15,6 +19,7 @@ import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.io.ByteArraySource;
+import edu.washington.escience.myria.io.FileSource;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 public class FileScanTest {
@@ -228,4 +233,109 @@ public class FileScanTest {
             Type.INT_TYPE, Type.INT_TYPE));
     assertEquals(100, getRowCount(filename, schema, '|'));
   }
+
+  /**
+   * Helper function used to compare the parallel and sequential modes.
+   * 
+   * @param fileScan the FileScan object to be tested.
+   * @return the tuples of the file, each as a String, in sorted order.
+   * @throws DbException if the file does not match the given Schema.
+   * @throws InterruptedException
+   */
+  private static List<String> getSortedRows(final FileScan fileScan) throws DbException, InterruptedException {
+    fileScan.open(null);
+    List<String> rows = new ArrayList<>();
+    while (!fileScan.eos()) {
+      TupleBatch tb = fileScan.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        StringBuilder sb = new StringBuilder();
+        for (int column = 0; column < tb.numColumns(); ++column) {
+          sb.append(tb.getObject(column, row)).append('|');
+        }
+        rows.add(sb.toString());
+      }
+    }
+    fileScan.close();
+    Collections.sort(rows);
+    return rows;
+  }
+
+  @Test
+  public void testSplitRandomCSV() throws Exception {
+    final FileSource source = new FileSource(Paths.get("testdata", "filescan", "random.csv").toString());
+    final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.INT_TYPE, Type.FLOAT_TYPE, Type.STRING_TYPE));
+    List<String> expected = getSortedRows(new FileScan(source, schema, ' ', null, null, null));
+    assertEquals(10000, expected.size());
+    for (int numSplits : new int[] { 1, 3, 16 }) {
+      assertEquals(expected, getSortedRows(new FileScan(source, schema, ' ', null, null, null, numSplits)));
+    }
+  }
+
+  @Test
+  public void testSplitSmallFiles() throws Exception {
+    final Schema ints = new Schema(ImmutableList.of(Type.INT_TYPE, Type.INT_TYPE));
+    final Schema strings = new Schema(ImmutableList.of(Type.STRING_TYPE, Type.STRING_TYPE));
+    /* More splits than bytes per line, so that splits start everywhere in a line. */
+    for (int numSplits : new int[] { 2, 5, 40 }) {
+      for (String filename : new String[] {
+          "comma_two_col_int_unix.txt", "comma_two_col_int_dos.txt",
+          "comma_two_col_int_unix_no_trailing_newline.txt" }) {
+        FileSource source = new FileSource(Paths.get("testdata", "filescan", filename).toString());
+        assertEquals(getSortedRows(new FileScan(source, ints, ',', null, null, null)), getSortedRows(new FileScan(
+            source, ints, ',', null, null, null, numSplits)));
+      }
+      FileSource quoted = new FileSource(Paths.get("testdata", "filescan", "two_col_string_quoted.txt").toString());
+      assertEquals(getSortedRows(new FileScan(quoted, strings, ',', null, null, null)), getSortedRows(new FileScan(
+          quoted, strings, ',', null, null, null, numSplits)));
+    }
+  }
+
+  @Test
+  public void testReadInParts() throws Exception {
+    final FileSource source = new FileSource(Paths.get("testdata", "filescan", "random.csv").toString());
+    final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.INT_TYPE, Type.FLOAT_TYPE, Type.STRING_TYPE));
+    List<String> expected = getSortedRows(new FileScan(source, schema, ' ', null, null, null));
+    final int numParts = 4;
+    List<String> actual = new ArrayList<>();
+    for (int part = 0; part < numParts; ++part) {
+      actual.addAll(getSortedRows(new FileScan(source, schema, ' ', null, null, null, 2, part, numParts)));
+    }
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+  }
+
+  @Test(expected = DbException.class)
+  public void testSplitBadTwoColumnInt() throws Exception {
+    FileSource source = new FileSource(Paths.get("testdata", "filescan", "bad_two_col_int.txt").toString());
+    getSortedRows(new FileScan(source, new Schema(ImmutableList.of(Type.INT_TYPE, Type.INT_TYPE)), ' ', null, null,
+        null, 2));
+  }
+
+  @Test
+  public void testParseNumbersFromBytes() throws Exception {
+    for (String s : new String[] { "0", "-0", "+17", "2147483647", "-2147483648", "-9223372036854775808" }) {
+      byte[] bytes = s.getBytes("US-ASCII");
+      assertEquals(Long.parseLong(s), CsvChunkParser.parseLong(bytes, bytes.length, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+    for (String s : new String[] { "", "-", "2147483648", "1a", "9223372036854775808" }) {
+      byte[] bytes = s.getBytes("US-ASCII");
+      try {
+        CsvChunkParser.parseLong(bytes, bytes.length, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        assertTrue("parsed " + s, false);
+      } catch (NumberFormatException e) {
+        /* Expected. */
+      }
+    }
+    for (String s : new String[] {
+        "0", "-0.0", "1.5", "0.1", "-12.345", "3.14159265358979", "0.27502931836911926", "1e10", "NaN", ".5", "7." }) {
+      byte[] bytes = s.getBytes("US-ASCII");
+      assertEquals(Double.doubleToLongBits(Double.parseDouble(s)), Double.doubleToLongBits(CsvChunkParser.parseDouble(
+          bytes, bytes.length)));
+      assertEquals(Float.floatToIntBits(Float.parseFloat(s)), Float.floatToIntBits(CsvChunkParser.parseFloat(bytes,
+          bytes.length)));
+    }
+  }
 }
@@ -10,6 +10,7 @@ import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.expression.AndExpression;
+import edu.washington.escience.myria.expression.ConstantExpression;
 import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.expression.ExpressionOperator;
 import edu.washington.escience.myria.expression.LessThanExpression;
@@ -140,6 +141,29 @@ public class FilterTest {
     assertEquals(2, getRowCount(filter));
   }
 
+  @Test
+  public void testBooleanColumnPredicate() throws DbException {
+    final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.BOOLEAN_TYPE), ImmutableList.of("a", "b"));
+    final TupleBatchBuffer testBase = new TupleBatchBuffer(schema);
+    for (int i = 0; i < 2 * TupleBatch.BATCH_SIZE + 7; ++i) {
+      testBase.putInt(0, i);
+      testBase.putBoolean(1, i % 3 == 0);
+    }
+    Filter filter = new Filter(new Expression("b", new VariableExpression(1)), new TupleSource(testBase));
+    assertEquals((2 * TupleBatch.BATCH_SIZE + 7 + 2) / 3, getRowCount(filter));
+  }
+
+  @Test
+  public void testConstantPredicate() throws DbException {
+    final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE), ImmutableList.of("a"));
+    final TupleBatchBuffer testBase = new TupleBatchBuffer(schema);
+    for (int i = 0; i < TupleBatch.BATCH_SIZE + 1; ++i) {
+      testBase.putInt(0, i);
+    }
+    Filter filter = new Filter(new Expression("true", new ConstantExpression(true)), new TupleSource(testBase));
+    assertEquals(TupleBatch.BATCH_SIZE + 1, getRowCount(filter));
+  }
+
   /*
    * helper method for getting the row count
    */
@@ -0,0 +1,125 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.EqualsExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.ExpressionOperator;
+import edu.washington.escience.myria.expression.Expressions;
+import edu.washington.escience.myria.expression.GreaterThanExpression;
+import edu.washington.escience.myria.expression.LessThanExpression;
+import edu.washington.escience.myria.expression.ModuloExpression;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.SqrtExpression;
+import edu.washington.escience.myria.expression.TimesExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestEnvVars;
+
+public class FusedPipelineTest {
+
+  private static final int NUM_TUPLES = 2 * TupleBatch.BATCH_SIZE + 17;
+
+  private static TupleBatchBuffer input() {
+    final Schema schema = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.INT_TYPE), ImmutableList.of("a", "b"));
+    final TupleBatchBuffer data = new TupleBatchBuffer(schema);
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      data.putLong(0, i);
+      data.putInt(1, (i * 7) % 101);
+    }
+    return data;
+  }
+
+  /** a < 2 * b */
+  private static Expression firstPredicate() {
+    return new Expression(new LessThanExpression(new VariableExpression(0), new TimesExpression(
+        new ConstantExpression(2), new VariableExpression(1))));
+  }
+
+  /** s = a + b, r = sqrt(a), even = b % 2 == 0 */
+  private static List<Expression> emitExpressions() {
+    return ImmutableList.of(new Expression("s", new PlusExpression(new VariableExpression(0),
+        new VariableExpression(1))), new Expression("r", new SqrtExpression(new VariableExpression(0))),
+        new Expression("even", new EqualsExpression(new ModuloExpression(new VariableExpression(1),
+            new ConstantExpression(2)), new ConstantExpression(0))));
+  }
+
+  /** s > 50, over the output of the apply. */
+  private static Expression secondPredicate() {
+    return new Expression(new GreaterThanExpression(new VariableExpression(0), new ConstantExpression(50L)));
+  }
+
+  @Test
+  public void testFilterApplyFilter() throws DbException {
+    Operator interpreted =
+        new Filter(secondPredicate(), new Apply(new Filter(firstPredicate(), new TupleSource(input())),
+            emitExpressions()));
+
+    ImmutableList.Builder<ExpressionOperator> columns = ImmutableList.builder();
+    for (Expression expression : emitExpressions()) {
+      columns.add(expression.getRootExpressionOperator());
+    }
+    Expression composed =
+        new Expression(Expressions.substituteColumns(secondPredicate().getRootExpressionOperator(), columns.build()));
+    Operator fused =
+        new FusedPipeline(new TupleSource(input()), ImmutableList.of(firstPredicate(), composed), emitExpressions());
+
+    assertSameOutput(interpreted, fused);
+  }
+
+  @Test
+  public void testFiltersOnly() throws DbException {
+    Operator interpreted = new Filter(secondPredicate(), new Filter(firstPredicate(), new TupleSource(input())));
+    Operator fused =
+        new FusedPipeline(new TupleSource(input()), ImmutableList.of(firstPredicate(), secondPredicate()), null);
+    assertSameOutput(interpreted, fused);
+  }
+
+  @Test
+  public void testSubstituteColumns() {
+    ExpressionOperator composed =
+        Expressions.substituteColumns(secondPredicate().getRootExpressionOperator(), ImmutableList
+            .<ExpressionOperator> of(new PlusExpression(new VariableExpression(1), new VariableExpression(0))));
+    assertEquals(new GreaterThanExpression(new PlusExpression(new VariableExpression(1), new VariableExpression(0)),
+        new ConstantExpression(50L)), composed);
+  }
+
+  private static void assertSameOutput(final Operator expected, final Operator actual) throws DbException {
+    List<List<Object>> expectedRows = drain(expected);
+    List<List<Object>> actualRows = drain(actual);
+    assertEquals(expected.getSchema(), actual.getSchema());
+    assertEquals(expectedRows, actualRows);
+  }
+
+  private static List<List<Object>> drain(final Operator operator) throws DbException {
+    operator.open(TestEnvVars.get());
+    List<List<Object>> rows = new ArrayList<List<Object>>();
+    while (!operator.eos()) {
+      TupleBatch tb = operator.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        List<Object> values = new ArrayList<Object>();
+        for (int column = 0; column < tb.numColumns(); ++column) {
+          values.add(tb.getObject(column, row));
+        }
+        rows.add(values);
+      }
+    }
+    operator.close();
+    return rows;
+  }
+}
@@ -0,0 +1,165 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.LessThanExpression;
+import edu.washington.escience.myria.expression.ModuloExpression;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.operator.agg.AggregationPhase;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
+import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
+import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestEnvVars;
+
+public class ParallelPipelineTest {
+
+  private static final int NUM_TUPLES = 20 * TupleBatch.BATCH_SIZE + 17;
+
+  private static TupleBatchBuffer input() {
+    final Schema schema = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.INT_TYPE), ImmutableList.of("a", "b"));
+    final TupleBatchBuffer data = new TupleBatchBuffer(schema);
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      data.putLong(0, i);
+      data.putInt(1, (i * 7) % 101);
+    }
+    return data;
+  }
+
+  /** a % 3 < 2 */
+  private static Filter filter() {
+    return new Filter(new Expression(new LessThanExpression(new ModuloExpression(new VariableExpression(0),
+        new ConstantExpression(3L)), new ConstantExpression(2L))), null);
+  }
+
+  /** g = b % 10, s = a + b */
+  private static Apply apply() {
+    return new Apply(null, ImmutableList.of(new Expression("g", new ModuloExpression(new VariableExpression(1),
+        new ConstantExpression(10))), new Expression("s", new PlusExpression(new VariableExpression(0),
+        new VariableExpression(1)))));
+  }
+
+  private static AggregatorFactory[] sumAndCount() {
+    return new AggregatorFactory[] { new SingleColumnAggregatorFactory(1, AggregationOp.SUM, AggregationOp.COUNT) };
+  }
+
+  @Test
+  public void testFilterApply() throws DbException {
+    Operator serialFilter = filter();
+    serialFilter.setChildren(new Operator[] { new TupleSource(input()) });
+    Operator serial = apply();
+    serial.setChildren(new Operator[] { serialFilter });
+
+    Operator parallel = new ParallelPipeline(new TupleSource(input()), ImmutableList.of(filter(), apply()), 4);
+
+    assertSameRows(serial, parallel);
+  }
+
+  @Test
+  public void testPartialAggregate() throws DbException {
+    Operator serialApply = apply();
+    serialApply.setChildren(new Operator[] { new TupleSource(input()) });
+    Operator serial = new MultiGroupByAggregate(serialApply, new int[] { 0 }, sumAndCount());
+
+    Operator parallel =
+        new ParallelPipeline(new TupleSource(input()), ImmutableList.of(apply(), new MultiGroupByAggregate(null,
+            new int[] { 0 }, AggregationPhase.PARTIAL, sumAndCount())), 3);
+    Operator merged = new MultiGroupByAggregate(parallel, new int[] { 0 }, AggregationPhase.FINAL, sumAndCount());
+
+    assertSameRows(serial, merged);
+  }
+
+  @Test
+  public void testEndOfIteration() throws DbException {
+    Operator serialFilter = filter();
+    serialFilter.setChildren(new Operator[] { new TupleSource(input()) });
+    Operator serial = apply();
+    serial.setChildren(new Operator[] { serialFilter });
+    List<List<Object>> expected = drain(serial);
+
+    /* The same tuples in two iterations. */
+    List<TupleBatch> batches = new ArrayList<TupleBatch>(input().getAll());
+    batches.add(TupleBatch.eoiTupleBatch(batches.get(0).getSchema()));
+    batches.addAll(input().getAll());
+    Operator parallel = new ParallelPipeline(new TupleSource(batches), ImmutableList.of(filter(), apply()), 4);
+
+    parallel.open(TestEnvVars.get());
+    List<List<Object>> first = new ArrayList<List<Object>>();
+    while (!parallel.eoi()) {
+      assertFalse(parallel.eos());
+      addRows(parallel.nextReady(), first);
+    }
+    /* All the output of the first iteration comes before the end of the iteration. */
+    assertEquals(expected, sorted(first));
+
+    parallel.setEOI(false);
+    List<List<Object>> second = new ArrayList<List<Object>>();
+    while (!parallel.eos()) {
+      assertFalse(parallel.eoi());
+      addRows(parallel.nextReady(), second);
+    }
+    parallel.close();
+    assertEquals(expected, sorted(second));
+  }
+
+  private static void assertSameRows(final Operator expected, final Operator actual) throws DbException {
+    List<List<Object>> expectedRows = drain(expected);
+    List<List<Object>> actualRows = drain(actual);
+    assertEquals(expected.getSchema(), actual.getSchema());
+    assertEquals(expectedRows, actualRows);
+  }
+
+  /**
+   * @return the rows of the operator, sorted since a parallel pipeline returns them in no particular order.
+   */
+  private static List<List<Object>> drain(final Operator operator) throws DbException {
+    operator.open(TestEnvVars.get());
+    List<List<Object>> rows = new ArrayList<List<Object>>();
+    while (!operator.eos()) {
+      addRows(operator.nextReady(), rows);
+    }
+    operator.close();
+    return sorted(rows);
+  }
+
+  private static void addRows(final TupleBatch tb, final List<List<Object>> rows) {
+    if (tb == null) {
+      return;
+    }
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      List<Object> values = new ArrayList<Object>();
+      for (int column = 0; column < tb.numColumns(); ++column) {
+        values.add(tb.getObject(column, row));
+      }
+      rows.add(values);
+    }
+  }
+
+  private static List<List<Object>> sorted(final List<List<Object>> rows) {
+    Collections.sort(rows, new Comparator<List<Object>>() {
+      @Override
+      public int compare(final List<Object> left, final List<Object> right) {
+        return left.toString().compareTo(right.toString());
+      }
+    });
+    return rows;
+  }
+}
@@ -2,13 +2,20 @@ package edu.washington.escience.myria.operator;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.HashMap;
+
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.util.JoinTestUtils;
 import edu.washington.escience.myria.util.TestEnvVars;
+import edu.washington.escience.myria.util.TestUtils;
+import edu.washington.escience.myria.util.Tuple;
 
 public class RightHashJoinTest {
 
@@ -31,6 +38,84 @@ public class RightHashJoinTest {
     assertEquals(5L, count);
   }
 
+  @Test
+  public void testSpillToDisk() throws DbException {
+    TupleBatchBuffer leftInput = TestUtils.generateRandomTuples(20000, 5000, false);
+    TupleBatchBuffer rightInput = TestUtils.generateRandomTuples(20000, 5000, false);
+    HashMap<Tuple, Integer> expected = TestUtils.naturalJoin(leftInput, rightInput, 0, 0);
+
+    TupleSource left = new TupleSource(leftInput);
+    TupleSource right = new TupleSource(rightInput);
+    RightHashJoin join =
+        new RightHashJoin(ImmutableList.of("id1", "name1", "id2", "name2"), left, right, new int[] { 0 },
+            new int[] { 0 });
+    /* Much less than the size of the right child, so that it is spilled. */
+    join.setMemoryBudget(64 * 1024);
+    join.open(TestEnvVars.get());
+    TupleBatchBuffer result = new TupleBatchBuffer(join.getSchema());
+    while (!join.eos()) {
+      TupleBatch tb = join.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      result.appendTB(tb);
+    }
+    join.close();
+    TestUtils.assertTupleBagEqual(expected, TestUtils.tupleBatchToTupleBag(result));
+  }
+
+  @Test
+  public void testSpillAndSplitPartitions() throws DbException {
+    TupleBatchBuffer leftInput = TestUtils.generateRandomTuples(20000, 5000, false);
+    TupleBatchBuffer rightInput = TestUtils.generateRandomTuples(20000, 5000, false);
+    HashMap<Tuple, Integer> expected = TestUtils.naturalJoin(leftInput, rightInput, 0, 0);
+
+    TupleSource left = new TupleSource(leftInput);
+    TupleSource right = new TupleSource(rightInput);
+    RightHashJoin join =
+        new RightHashJoin(ImmutableList.of("id1", "name1", "id2", "name2"), left, right, new int[] { 0 },
+            new int[] { 0 });
+    /* Smaller than a spilled partition of the right child, so that the partitions are split again. */
+    join.setMemoryBudget(8 * 1024);
+    join.open(TestEnvVars.get());
+    TupleBatchBuffer result = new TupleBatchBuffer(join.getSchema());
+    while (!join.eos()) {
+      TupleBatch tb = join.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      result.appendTB(tb);
+    }
+    join.close();
+    TestUtils.assertTupleBagEqual(expected, TestUtils.tupleBatchToTupleBag(result));
+  }
+
+  @Test(expected = DbException.class)
+  public void testSpillSingleKey() throws DbException {
+    TupleBatchBuffer leftInput = TestUtils.generateRandomTuples(100, 5000, false);
+    TupleBatchBuffer rightInput = new TupleBatchBuffer(leftInput.getSchema());
+    for (int i = 0; i < 20000; ++i) {
+      rightInput.putLong(0, 1L);
+      rightInput.putString(1, "name" + i);
+    }
+
+    TupleSource left = new TupleSource(leftInput);
+    TupleSource right = new TupleSource(rightInput);
+    RightHashJoin join =
+        new RightHashJoin(ImmutableList.of("id1", "name1", "id2", "name2"), left, right, new int[] { 0 },
+            new int[] { 0 });
+    /* No split can make a single key fit. */
+    join.setMemoryBudget(8 * 1024);
+    join.open(TestEnvVars.get());
+    try {
+      while (!join.eos()) {
+        join.nextReady();
+      }
+    } finally {
+      join.close();
+    }
+  }
+
   @Test(expected = IllegalStateException.class)
   public void testIncompatibleJoinKeys() throws DbException {
     TupleSource left = new TupleSource(JoinTestUtils.leftInput);
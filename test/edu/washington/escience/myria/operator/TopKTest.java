@@ -0,0 +1,79 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestUtils;
+
+public class TopKTest {
+
+  private List<String> drain(final Operator op) throws DbException {
+    op.open(null);
+    List<String> result = new ArrayList<String>();
+    while (!op.eos()) {
+      TupleBatch tb = op.nextReady();
+      if (tb != null) {
+        for (int row = 0; row < tb.numTuples(); ++row) {
+          result.add(tb.getLong(0, row) + "|" + tb.getString(1, row));
+        }
+      }
+    }
+    op.close();
+    return result;
+  }
+
+  /** TopK is stable, so it must return exactly the tuples of {@link InMemoryOrderBy} followed by {@link Limit}. */
+  private void checkSameAsOrderByLimit(final int[] sortColumns, final boolean[] ascending, final int k)
+      throws DbException {
+    TupleBatchBuffer randomTuples = TestUtils.generateRandomTuples(52300, 5000, false);
+    List<String> expected =
+        drain(new Limit((long) k, new InMemoryOrderBy(new TupleSource(randomTuples), sortColumns, ascending)));
+    List<String> actual = drain(new TopK(new TupleSource(randomTuples), sortColumns, ascending, k));
+    assertEquals(Math.min(k, 52300), actual.size());
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testSmallK() throws DbException {
+    checkSameAsOrderByLimit(new int[] { 0, 1 }, new boolean[] { true, false }, 10);
+  }
+
+  @Test
+  public void testTies() throws DbException {
+    /* Only 5000 distinct ids, so many tuples tie on the sort column. */
+    checkSameAsOrderByLimit(new int[] { 0 }, new boolean[] { false }, 100);
+  }
+
+  @Test
+  public void testStringKey() throws DbException {
+    checkSameAsOrderByLimit(new int[] { 1 }, new boolean[] { true }, 1000);
+  }
+
+  @Test
+  public void testLargeK() throws DbException {
+    checkSameAsOrderByLimit(new int[] { 0, 1 }, new boolean[] { true, true }, 20000);
+  }
+
+  @Test
+  public void testKLargerThanInput() throws DbException {
+    checkSameAsOrderByLimit(new int[] { 1, 0 }, new boolean[] { false, true }, 100000);
+  }
+
+  @Test
+  public void testMaxK() throws DbException {
+    /* The heap grows with the input, so a huge K does not allocate K slots up front. */
+    checkSameAsOrderByLimit(new int[] { 0, 1 }, new boolean[] { true, false }, Integer.MAX_VALUE);
+  }
+
+  @Test
+  public void testZero() throws DbException {
+    checkSameAsOrderByLimit(new int[] { 0 }, new boolean[] { true }, 0);
+  }
+}
@@ -13,6 +13,7 @@ import com.google.common.hash.Hashing;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.expression.AbsExpression;
 import edu.washington.escience.myria.expression.AndExpression;
 import edu.washington.escience.myria.expression.CeilExpression;
@@ -49,6 +50,7 @@ import edu.washington.escience.myria.expression.ToUpperCaseExpression;
 import edu.washington.escience.myria.expression.VariableExpression;
 import edu.washington.escience.myria.expression.WorkerIdExpression;
 import edu.washington.escience.myria.expression.evaluate.ConstantEvaluator;
+import edu.washington.escience.myria.expression.evaluate.EvaluatorCache;
 import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
 import edu.washington.escience.myria.expression.evaluate.GenericEvaluator;
 import edu.washington.escience.myria.operator.Apply;
@@ -647,4 +649,36 @@ public class ApplyTest {
     conditional.getOutputType(new ExpressionOperatorParameter());
   }
 
+  @Test
+  public void testEvaluatorCache() throws Exception {
+    final Schema schema = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE), ImmutableList.of("a", "b"));
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (long i = 0; i < SMALL_NUM_TUPLES; i++) {
+      tbb.putLong(0, i);
+      tbb.putLong(1, 3 * i);
+    }
+    TupleBatch tb = tbb.popAny();
+    Expression expr = new Expression("sum", new PlusExpression(new VariableExpression(0), new VariableExpression(1)));
+
+    EvaluatorCache.invalidateAll();
+    GenericEvaluator first = new GenericEvaluator(expr, new ExpressionOperatorParameter(schema));
+    first.compile();
+    GenericEvaluator second = new GenericEvaluator(expr, new ExpressionOperatorParameter(schema));
+    second.compile();
+    assertEquals(0, first.getCompileStats().getHits());
+    assertEquals(1, first.getCompileStats().getMisses());
+    assertEquals(1, second.getCompileStats().getHits());
+    assertEquals(0, second.getCompileStats().getMisses());
+
+    Column<?> result = second.evaluateColumn(tb);
+    for (int i = 0; i < tb.numTuples(); i++) {
+      assertEquals(4L * i, result.getLong(i));
+    }
+
+    /* A different input schema is a different key. */
+    final Schema intSchema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.INT_TYPE), ImmutableList.of("a", "b"));
+    GenericEvaluator third = new GenericEvaluator(expr, new ExpressionOperatorParameter(intSchema));
+    third.compile();
+    assertEquals(1, third.getCompileStats().getMisses());
+  }
 }
@@ -0,0 +1,150 @@
+package edu.washington.escience.myria.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import edu.washington.escience.myria.MyriaConstants.QueryPriority;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.api.encoding.QuerySchedulerEncoding;
+
+public class QuerySchedulerTest {
+
+  private static final Set<Integer> WORKERS = ImmutableSet.of(1, 2);
+  private static final Set<RelationKey> NONE = ImmutableSet.of();
+
+  private static class FakeTicker extends Ticker {
+    private long nanos = 0;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    void advanceMillis(final long millis) {
+      nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+  }
+
+  @Test
+  public void testConcurrencyCap() {
+    QueryScheduler scheduler = new QueryScheduler(2);
+    for (long i = 1; i <= 3; ++i) {
+      scheduler.enqueue(i, QueryPriority.NORMAL, null, NONE, NONE);
+    }
+    assertEquals(ImmutableList.of(1L, 2L), scheduler.admit(WORKERS));
+    assertEquals(ImmutableList.of(), scheduler.admit(WORKERS));
+    scheduler.finished(1);
+    assertEquals(ImmutableList.of(3L), scheduler.admit(WORKERS));
+  }
+
+  @Test
+  public void testPriorityAndFairShare() {
+    QueryScheduler scheduler = new QueryScheduler(1);
+    scheduler.enqueue(1, QueryPriority.BATCH, "etl", NONE, NONE);
+    assertEquals(ImmutableList.of(1L), scheduler.admit(WORKERS));
+    scheduler.enqueue(2, QueryPriority.BATCH, "etl", NONE, NONE);
+    scheduler.enqueue(3, QueryPriority.NORMAL, "etl", NONE, NONE);
+    scheduler.enqueue(4, QueryPriority.NORMAL, "alice", NONE, NONE);
+    scheduler.enqueue(5, QueryPriority.INTERACTIVE, "etl", NONE, NONE);
+    scheduler.finished(1);
+    /* The interactive query goes first even though it was submitted last. */
+    assertEquals(ImmutableList.of(5L), scheduler.admit(WORKERS));
+    scheduler.finished(5);
+    assertEquals(ImmutableList.of(3L), scheduler.admit(WORKERS));
+    scheduler.finished(3);
+    assertEquals(ImmutableList.of(4L), scheduler.admit(WORKERS));
+    scheduler.finished(4);
+    assertEquals(ImmutableList.of(2L), scheduler.admit(WORKERS));
+  }
+
+  @Test
+  public void testFairShareWithinPriority() {
+    QueryScheduler scheduler = new QueryScheduler(3);
+    scheduler.enqueue(1, QueryPriority.NORMAL, "bob", NONE, NONE);
+    scheduler.enqueue(2, QueryPriority.NORMAL, "bob", NONE, NONE);
+    scheduler.enqueue(3, QueryPriority.NORMAL, "bob", NONE, NONE);
+    scheduler.enqueue(4, QueryPriority.NORMAL, "alice", NONE, NONE);
+    /* Once bob has a query running, alice's query overtakes bob's older ones. */
+    assertEquals(ImmutableList.of(1L, 4L, 2L), scheduler.admit(WORKERS));
+  }
+
+  @Test
+  public void testConflictingQueries() {
+    Set<RelationKey> edges = ImmutableSet.of(RelationKey.of("public", "adhoc", "edges"));
+    Set<RelationKey> nodes = ImmutableSet.of(RelationKey.of("public", "adhoc", "nodes"));
+    QueryScheduler scheduler = new QueryScheduler(4);
+    scheduler.enqueue(1, QueryPriority.NORMAL, null, edges, NONE);
+    scheduler.enqueue(2, QueryPriority.NORMAL, null, edges, nodes);
+    scheduler.enqueue(3, QueryPriority.INTERACTIVE, null, nodes, NONE);
+    scheduler.enqueue(4, QueryPriority.NORMAL, null, NONE, edges);
+    scheduler.enqueue(5, QueryPriority.NORMAL, null, edges, NONE);
+    /* Readers of edges run together; 3 waits for the older 2, which writes nodes; 5 waits for the older 4. */
+    assertEquals(ImmutableList.of(1L, 2L), scheduler.admit(WORKERS));
+    scheduler.finished(2);
+    assertEquals(ImmutableList.of(3L), scheduler.admit(WORKERS));
+    scheduler.finished(1);
+    assertEquals(ImmutableList.of(4L), scheduler.admit(WORKERS));
+    assertEquals(ImmutableList.of(), scheduler.admit(WORKERS));
+    scheduler.finished(4);
+    assertEquals(ImmutableList.of(5L), scheduler.admit(WORKERS));
+  }
+
+  @Test
+  public void testAdmissionUnderLoad() {
+    QueryScheduler scheduler = new QueryScheduler(4);
+    scheduler.updateWorker(2, ImmutableList.of(new ResourceStats(0, 0, QueryScheduler.HEAP_USED_BYTES, 95, 0, 0),
+        new ResourceStats(0, 0, QueryScheduler.HEAP_MAX_BYTES, 100, 0, 0)));
+    assertTrue(scheduler.isOverloaded(2));
+    assertFalse(scheduler.isOverloaded(1));
+    scheduler.enqueue(1, QueryPriority.NORMAL, null, NONE, NONE);
+    scheduler.enqueue(2, QueryPriority.NORMAL, null, NONE, NONE);
+    /* One query is always admitted when none is running. */
+    assertEquals(ImmutableList.of(1L), scheduler.admit(WORKERS));
+    assertEquals(ImmutableList.of(), scheduler.admit(WORKERS));
+    /* Dead workers do not hold back admission. */
+    assertEquals(ImmutableList.of(2L), scheduler.admit(ImmutableSet.of(1)));
+
+    scheduler.updateWorker(1, ImmutableList.of(new ResourceStats(0, 0, QueryScheduler.SYSTEM_LOAD_PERCENT, 1600, 0, 0),
+        new ResourceStats(0, 0, QueryScheduler.AVAILABLE_PROCESSORS, 8, 0, 0)));
+    assertTrue(scheduler.isOverloaded(1));
+    scheduler.updateWorker(1, ImmutableList.of(new ResourceStats(0, 0, QueryScheduler.SYSTEM_LOAD_PERCENT, 400, 0, 0)));
+    assertFalse(scheduler.isOverloaded(1));
+  }
+
+  @Test
+  public void testStatistics() {
+    FakeTicker ticker = new FakeTicker();
+    QueryScheduler scheduler = new QueryScheduler(1, ticker);
+    scheduler.enqueue(1, QueryPriority.NORMAL, null, NONE, NONE);
+    scheduler.enqueue(2, QueryPriority.NORMAL, null, NONE, NONE);
+    scheduler.admit(WORKERS);
+    ticker.advanceMillis(300);
+    scheduler.finished(1);
+    scheduler.admit(WORKERS);
+    ticker.advanceMillis(100);
+    scheduler.finished(2);
+
+    QuerySchedulerEncoding status = scheduler.getStatus();
+    assertEquals(1, status.maxConcurrentQueries);
+    assertTrue(status.running.isEmpty());
+    assertTrue(status.queued.isEmpty());
+    QuerySchedulerEncoding.PriorityStatistics normal = status.priorities.get(QueryPriority.NORMAL);
+    assertEquals(2, normal.admitted);
+    assertEquals(2, normal.finished);
+    assertEquals(300, normal.totalQueueWaitMillis);
+    assertEquals(300, normal.maxQueueWaitMillis);
+    assertEquals(400, normal.totalRunMillis);
+    assertEquals(300, normal.maxRunMillis);
+    assertEquals(0, status.priorities.get(QueryPriority.BATCH).admitted);
+  }
+}
@@ -0,0 +1,93 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+public class BatchSizeControllerTest {
+
+  private static final Schema NARROW = Schema.ofFields(Type.INT_TYPE, "a", Type.INT_TYPE, "b");
+  private static final Schema WIDE = Schema.ofFields(Type.LONG_TYPE, "id", Type.STRING_TYPE, "text");
+
+  @Test
+  public void testNarrowTuplesFillBatches() {
+    BatchSizeController controller = new BatchSizeController(NARROW, 1024 * 1024);
+    assertEquals(TupleBatch.BATCH_SIZE, controller.getBatchSize());
+  }
+
+  @Test
+  public void testSmallTargetLimitsBatches() {
+    /* 8 bytes per tuple. */
+    BatchSizeController controller = new BatchSizeController(NARROW, 8 * 1000);
+    assertEquals(1000, controller.getBatchSize());
+    controller = new BatchSizeController(NARROW, 1);
+    assertEquals(BatchSizeController.MIN_BATCH_SIZE, controller.getBatchSize());
+  }
+
+  @Test
+  public void testWideStringsShrinkBatches() {
+    final int targetBytes = 1024 * 1024;
+    final String text = Strings.repeat("x", 1000);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(WIDE, targetBytes);
+    final int numTuples = 5 * TupleBatch.BATCH_SIZE;
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putLong(0, i);
+      tbb.putString(1, text);
+    }
+    /* After the first batch, batches are sized from the measured string length. */
+    TupleBatch first = tbb.popFilled();
+    int seen = first.numTuples();
+    TupleBatch tb;
+    while ((tb = tbb.popAny()) != null) {
+      assertTrue(tb.numTuples() < TupleBatch.BATCH_SIZE);
+      assertTrue((long) tb.numTuples() * text.length() <= targetBytes);
+      seen += tb.numTuples();
+    }
+    assertEquals(numTuples, seen);
+  }
+
+  @Test
+  public void testAbsorbSplitsWideBatches() {
+    final String text = Strings.repeat("y", 500);
+    TupleBatchBuffer source = new TupleBatchBuffer(WIDE, Integer.MAX_VALUE);
+    for (int i = 0; i < TupleBatch.BATCH_SIZE; ++i) {
+      source.putLong(0, i);
+      source.putString(1, text);
+    }
+    TupleBatch big = source.popFilled();
+    assertEquals(TupleBatch.BATCH_SIZE, big.numTuples());
+
+    TupleBatchBuffer dest = new TupleBatchBuffer(WIDE, 1024 * 1024);
+    dest.absorb(big);
+    dest.absorb(big);
+    int seen = 0;
+    TupleBatch tb;
+    while ((tb = dest.popAny()) != null) {
+      assertTrue(tb.numTuples() < TupleBatch.BATCH_SIZE);
+      seen += tb.numTuples();
+    }
+    assertEquals(2 * TupleBatch.BATCH_SIZE, seen);
+  }
+
+  @Test
+  public void testLatencyAdaptation() {
+    BatchSizeController controller = new BatchSizeController(NARROW, 1024 * 1024);
+    controller.batchTimedOut(1000);
+    assertEquals(500, controller.getBatchSize());
+    controller.batchTimedOut(300);
+    assertEquals(150, controller.getBatchSize());
+    controller.batchTimedOut(10);
+    assertEquals(BatchSizeController.MIN_BATCH_SIZE, controller.getBatchSize());
+    /* Full batches grow the limit back, up to the one derived from the target size. */
+    for (int i = 0; i < 20; ++i) {
+      controller.batchFilled();
+    }
+    assertEquals(TupleBatch.BATCH_SIZE, controller.getBatchSize());
+  }
+}
@@ -0,0 +1,125 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.util.HashUtils;
+
+public class JoinHashTableTest {
+
+  private final Schema schema = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.STRING_TYPE, Type.DOUBLE_TYPE),
+      ImmutableList.of("id", "name", "value"));
+
+  private final int[] keys = new int[] { 0, 1 };
+
+  /** 10000 tuples with 100 distinct keys; tuple i has key i % 100 and value i. */
+  private List<TupleBatch> makeInput() {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < 10000; ++i) {
+      tbb.putLong(0, i % 100);
+      tbb.putString(1, "key" + (i % 100) % 7);
+      tbb.putDouble(2, i);
+    }
+    return tbb.getAll();
+  }
+
+  private JoinHashTable build(final boolean storeTuples, final boolean collide) {
+    JoinHashTable table = new JoinHashTable(schema, keys, storeTuples);
+    for (TupleBatch tb : makeInput()) {
+      int[] hashCodes = HashUtils.hashSubRows(tb, keys);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        table.add(tb, row, collide ? 42 : hashCodes[row]);
+      }
+    }
+    return table;
+  }
+
+  private void checkRuns(final JoinHashTable table, final boolean collide) {
+    assertEquals(10000, table.numTuples());
+    assertEquals(100, table.numKeys());
+    MutableTupleBuffer tuples = table.getTuples();
+    TupleBatch tb = makeInput().get(0);
+    int[] hashCodes = HashUtils.hashSubRows(tb, keys);
+    for (int row = 0; row < 100; ++row) {
+      int count = 0;
+      double last = -1;
+      for (int index = table.find(tb, keys, row, collide ? 42 : hashCodes[row]); index != -1; index =
+          table.next(index)) {
+        assertEquals(tb.getLong(0, row), tuples.getLong(0, index));
+        assertEquals(tb.getString(1, row), tuples.getString(1, index));
+        /* Tuples with the same key are returned in insertion order. */
+        assertFalse(tuples.getDouble(2, index) <= last);
+        last = tuples.getDouble(2, index);
+        ++count;
+      }
+      assertEquals(100, count);
+    }
+  }
+
+  @Test
+  public void testRuns() {
+    checkRuns(build(true, false), false);
+  }
+
+  @Test
+  public void testCollidingHashCodes() {
+    checkRuns(build(true, true), true);
+  }
+
+  @Test
+  public void testMissingKey() {
+    JoinHashTable table = build(false, false);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    tbb.putLong(0, 1);
+    tbb.putString(1, "key2");
+    tbb.putDouble(2, 0);
+    TupleBatch tb = tbb.popAny();
+    assertEquals(-1, table.find(tb, keys, 0, HashUtils.hashSubRow(tb, keys, 0)));
+  }
+
+  @Test
+  public void testReplace() {
+    JoinHashTable table = new JoinHashTable(schema, keys, true);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    tbb.putLong(0, 1);
+    tbb.putString(1, "a");
+    tbb.putDouble(2, 1.0);
+    tbb.putLong(0, 1);
+    tbb.putString(1, "a");
+    tbb.putDouble(2, 2.0);
+    TupleBatch tb = tbb.popAny();
+    int[] hashCodes = HashUtils.hashSubRows(tb, keys);
+    int index = table.add(tb, 0, hashCodes[0]);
+    assertEquals(index, table.find(tb, keys, 1, hashCodes[1]));
+    table.replace(index, tb, 1);
+    assertEquals(1, table.numTuples());
+    assertEquals(2.0, table.getTuples().getDouble(2, index), 0.0);
+    assertEquals(-1, table.next(index));
+  }
+
+  @Test
+  public void testNaNKey() {
+    final int[] doubleKey = new int[] { 2 };
+    JoinHashTable table = new JoinHashTable(schema, doubleKey, true);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < 2; ++i) {
+      tbb.putLong(0, i);
+      tbb.putString(1, "nan");
+      tbb.putDouble(2, Double.NaN);
+    }
+    TupleBatch tb = tbb.popAny();
+    int[] hashCodes = HashUtils.hashSubRows(tb, doubleKey);
+    int index = table.add(tb, 0, hashCodes[0]);
+    /* NaN keys match each other, as they do under Type.compareRaw. */
+    assertEquals(index, table.find(tb, doubleKey, 1, hashCodes[1]));
+    assertEquals(1, table.numKeys());
+  }
+}
@@ -0,0 +1,122 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.builder.StringColumnBuilder;
+import edu.washington.escience.myria.column.mutable.OffHeapMutableColumn;
+
+public class MutableTupleBufferTest {
+
+  private final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE, Type.FLOAT_TYPE,
+      Type.DOUBLE_TYPE, Type.STRING_TYPE, Type.DATETIME_TYPE, Type.BOOLEAN_TYPE), ImmutableList.of("int", "long",
+      "float", "double", "string", "date", "bool"));
+
+  private void fill(final MutableTupleBuffer buffer, final int numTuples) {
+    Random random = new Random(1);
+    for (int i = 0; i < numTuples; ++i) {
+      buffer.putInt(0, random.nextInt());
+      buffer.putLong(1, random.nextLong());
+      buffer.putFloat(2, random.nextFloat());
+      buffer.putDouble(3, random.nextDouble());
+      buffer.putString(4, "caf\u00e9 " + random.nextInt(1000));
+      buffer.putDateTime(5, new DateTime(random.nextInt() * 1000L));
+      buffer.putBoolean(6, random.nextBoolean());
+    }
+  }
+
+  private static String contents(final MutableTupleBuffer buffer) {
+    StringBuilder sb = new StringBuilder();
+    for (TupleBatch tb : buffer.getAll()) {
+      sb.append(tb.toString());
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testOffHeapSameTuples() {
+    MutableTupleBuffer heap = new MutableTupleBuffer(schema);
+    MutableTupleBuffer offHeap = new MutableTupleBuffer(schema, true);
+    fill(heap, 25000);
+    fill(offHeap, 25000);
+    assertEquals(contents(heap), contents(offHeap));
+    assertEquals(0, heap.getOffHeapBytes());
+    assertTrue(offHeap.getOffHeapBytes() > 0);
+    assertTrue(offHeap.getHeapBytes() < heap.getHeapBytes());
+  }
+
+  @Test
+  public void testOffHeapReplaceAndSwap() {
+    MutableTupleBuffer heap = new MutableTupleBuffer(schema);
+    MutableTupleBuffer offHeap = new MutableTupleBuffer(schema, true);
+    fill(heap, 23456);
+    fill(offHeap, 23456);
+
+    StringColumnBuilder strings = new StringColumnBuilder();
+    for (int i = 0; i < 3000; ++i) {
+      strings.appendString("a much longer replacement string \u4e2d\u6587 " + i);
+    }
+    Column<?> replacements = strings.build();
+    Random random = new Random(2);
+    for (int i = 0; i < replacements.size(); ++i) {
+      int row = random.nextInt(TupleBatch.BATCH_SIZE * 2);
+      heap.replace(4, row, replacements, i);
+      offHeap.replace(4, row, replacements, i);
+      int other = random.nextInt(heap.numTuples());
+      for (int column = 0; column < schema.numColumns(); ++column) {
+        heap.swap(column, row, other);
+        offHeap.swap(column, row, other);
+      }
+    }
+    assertEquals(contents(heap), contents(offHeap));
+
+    MutableTupleBuffer clone = offHeap.clone();
+    offHeap.replace(4, 0, replacements, 0);
+    assertEquals(contents(heap), contents(clone));
+  }
+
+  @Test
+  public void testOffHeapColumnSerialization() throws Exception {
+    MutableTupleBuffer offHeap = new MutableTupleBuffer(schema, true);
+    fill(offHeap, TupleBatch.BATCH_SIZE);
+    for (int column = 0; column < schema.numColumns(); ++column) {
+      ReadableColumn original = offHeap.getColumns(0)[column];
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+        out.writeObject(original);
+      }
+      Object copy;
+      try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+        copy = in.readObject();
+      }
+      assertEquals(original.getType() != Type.BOOLEAN_TYPE, copy instanceof OffHeapMutableColumn);
+      assertEquals(original.toString(), copy.toString());
+    }
+  }
+
+  @Test
+  public void testBatchContents() {
+    MutableTupleBuffer offHeap = new MutableTupleBuffer(schema, true);
+    fill(offHeap, TupleBatch.BATCH_SIZE + 1);
+    List<TupleBatch> batches = offHeap.getAll();
+    assertEquals(2, batches.size());
+    assertEquals(offHeap.getString(4, 17), batches.get(0).getString(4, 17));
+    assertEquals(offHeap.getDateTime(5, TupleBatch.BATCH_SIZE - 1), batches.get(0).getDateTime(5,
+        TupleBatch.BATCH_SIZE - 1));
+  }
+}
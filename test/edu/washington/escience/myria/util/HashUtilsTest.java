@@ -0,0 +1,116 @@
+package edu.washington.escience.myria.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * Checks that {@link HashUtils} computes the same hash codes as the Guava hash functions it replaced, so that data that
+ * was hash-partitioned before stays valid.
+ */
+public class HashUtilsTest {
+
+  private static final int[] SEEDS = { 243, 402653189, 24593, 786433, 3145739, 12289, 49157, 6151, 98317, 1572869, };
+
+  private final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE, Type.FLOAT_TYPE,
+      Type.DOUBLE_TYPE, Type.BOOLEAN_TYPE, Type.STRING_TYPE), ImmutableList.of("i", "l", "f", "d", "b", "s"));
+
+  private TupleBatch makeBatch() {
+    Random rand = new Random(42);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int row = 0; row < 1000; ++row) {
+      tbb.putInt(0, rand.nextInt());
+      tbb.putLong(1, rand.nextLong());
+      tbb.putFloat(2, rand.nextFloat());
+      tbb.putDouble(3, rand.nextGaussian());
+      tbb.putBoolean(4, rand.nextBoolean());
+      StringBuilder sb = new StringBuilder();
+      for (int i = rand.nextInt(30); i > 0; --i) {
+        sb.append((char) rand.nextInt(Character.MAX_VALUE));
+      }
+      tbb.putString(5, sb.toString());
+    }
+    return tbb.popAny();
+  }
+
+  private static void addValue(final Hasher hasher, final TupleBatch tb, final int column, final int row) {
+    switch (tb.getSchema().getColumnType(column)) {
+      case BOOLEAN_TYPE:
+        hasher.putBoolean(tb.getBoolean(column, row));
+        break;
+      case DOUBLE_TYPE:
+        hasher.putDouble(tb.getDouble(column, row));
+        break;
+      case FLOAT_TYPE:
+        hasher.putFloat(tb.getFloat(column, row));
+        break;
+      case INT_TYPE:
+        hasher.putInt(tb.getInt(column, row));
+        break;
+      case LONG_TYPE:
+        hasher.putLong(tb.getLong(column, row));
+        break;
+      case STRING_TYPE:
+        hasher.putUnencodedChars(tb.getString(column, row));
+        break;
+      default:
+        throw new UnsupportedOperationException();
+    }
+  }
+
+  private static int guavaHash(final TupleBatch tb, final int[] columns, final int row, final int seedIndex) {
+    Hasher hasher = Hashing.murmur3_128(SEEDS[seedIndex]).newHasher();
+    for (int column : columns) {
+      addValue(hasher, tb, column, row);
+    }
+    return hasher.hash().asInt();
+  }
+
+  @Test
+  public void testSingleColumn() {
+    TupleBatch tb = makeBatch();
+    for (int column = 0; column < schema.numColumns(); ++column) {
+      for (int seedIndex = 0; seedIndex < HashUtils.NUM_OF_HASHFUNCTIONS; ++seedIndex) {
+        int[] hashes = HashUtils.hashColumn(tb, column, seedIndex);
+        for (int row = 0; row < tb.numTuples(); ++row) {
+          int expected = guavaHash(tb, new int[] { column }, row, seedIndex);
+          assertEquals(expected, hashes[row]);
+          assertEquals(expected, HashUtils.hashValue(tb, column, row, seedIndex));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMultipleColumns() {
+    TupleBatch tb = makeBatch();
+    int[][] keys = { { 0, 1 }, { 5, 0 }, { 4, 2, 5 }, { 1, 3, 4, 5, 0 }, { 5, 5, 4 } };
+    for (int[] key : keys) {
+      int[] hashes = HashUtils.hashSubRows(tb, key);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        int expected = guavaHash(tb, key, row, 0);
+        assertEquals(expected, hashes[row]);
+        assertEquals(expected, HashUtils.hashSubRow(tb, key, row));
+      }
+    }
+
+    int[] allColumns = { 0, 1, 2, 3, 4, 5 };
+    int[] hashes = HashUtils.hashRows(tb);
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      int expected = guavaHash(tb, allColumns, row, 0);
+      assertEquals(expected, hashes[row]);
+      assertEquals(expected, HashUtils.hashRow(tb, row));
+    }
+  }
+}